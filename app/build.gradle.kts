@@ -29,6 +29,16 @@ android {
         sourceCompatibility = JavaVersion.VERSION_11
         targetCompatibility = JavaVersion.VERSION_11
     }
+    testOptions {
+        // Let JVM tests run code that logs through android.util.Log
+        unitTests.isReturnDefaultValues = true
+        // ./gradlew test -Pbenchmark prints the benchmark timings
+        unitTests.all { it.systemProperty("benchmark", project.hasProperty("benchmark")) }
+    }
+    androidResources {
+        // The card model is memory-mapped straight from the APK
+        noCompress += "tflite"
+    }
 }
 
 dependencies {
@@ -37,6 +47,10 @@ dependencies {
     implementation(libs.material)
     implementation(libs.activity)
     implementation(libs.constraintlayout)
+    implementation(libs.camera.core)
+    implementation(libs.camera.camera2)
+    implementation(libs.camera.lifecycle)
+    implementation(libs.tensorflow.lite)
     testImplementation(libs.junit)
     androidTestImplementation(libs.ext.junit)
     androidTestImplementation(libs.espresso.core)
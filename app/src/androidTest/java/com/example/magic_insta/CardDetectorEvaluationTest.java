@@ -0,0 +1,76 @@
+package com.example.magic_insta;
+
+import android.content.Context;
+import android.graphics.ImageFormat;
+import android.graphics.Rect;
+import android.graphics.YuvImage;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Compares the bundled on-device model with the remote API on a labelled set pushed to
+ * {@code <external files dir>/card_eval} (see {@link CardDetectorEvaluator} for the layout).
+ * Skipped when the set or the model is missing. Results go to logcat under "CardEval".
+ */
+@RunWith(AndroidJUnit4.class)
+public class CardDetectorEvaluationTest {
+    private static final String TAG = "CardEval";
+    private static final int WARMUP_RUNS = 3;
+
+    private Context context;
+    private List<CardDetectorEvaluator.Sample> samples;
+
+    @Before
+    public void loadSamples() throws Exception {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        File root = new File(context.getExternalFilesDir(null), "card_eval");
+        assumeTrue("No labelled set at " + root, root.isDirectory());
+        samples = CardDetectorEvaluator.load(root);
+        assumeTrue(!samples.isEmpty());
+    }
+
+    @Test
+    public void evaluateLocalModel() throws Exception {
+        assumeTrue("No bundled card model", TfliteCardDetector.isAvailable(context));
+        try (TfliteCardDetector detector = new TfliteCardDetector(context)) {
+            CardDetectorEvaluator.Report report = CardDetectorEvaluator.evaluate(detector, samples, WARMUP_RUNS);
+            Log.i(TAG, report.toString());
+            assertEquals(0, report.errors);
+        }
+    }
+
+    @Test
+    public void evaluateRemoteApi() {
+        CardDetectorEvaluator.Report report =
+                CardDetectorEvaluator.evaluate(new RemoteCardDetector(), withJpeg(samples), 0);
+        Log.i(TAG, report.toString());
+    }
+
+    private static List<CardDetectorEvaluator.Sample> withJpeg(List<CardDetectorEvaluator.Sample> samples) {
+        List<CardDetectorEvaluator.Sample> encoded = new ArrayList<>();
+        for (CardDetectorEvaluator.Sample sample : samples) {
+            CardImage image = sample.image;
+            ByteArrayOutputStream jpeg = new ByteArrayOutputStream();
+            new YuvImage(image.getNv21(), ImageFormat.NV21,
+                    image.getWidth(), image.getHeight(), null)
+                    .compressToJpeg(new Rect(0, 0, image.getWidth(), image.getHeight()), 90, jpeg);
+            encoded.add(new CardDetectorEvaluator.Sample(sample.label, sample.name,
+                    new CardImage(image.getNv21(), image.getWidth(), image.getHeight(), jpeg.toByteArray())));
+        }
+        return encoded;
+    }
+}
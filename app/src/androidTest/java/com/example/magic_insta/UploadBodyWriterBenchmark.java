@@ -0,0 +1,123 @@
+package com.example.magic_insta;
+
+import android.graphics.Bitmap;
+import android.os.Debug;
+import android.util.Base64;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Java heap allocated per OCR-style upload body, building the JSON as Strings (the old
+ * uploaders) versus streaming it through {@link UploadBodyWriter}. Bodies go to a counting sink
+ * instead of the network; results go to logcat under "UploadBenchmark".
+ */
+@RunWith(AndroidJUnit4.class)
+public class UploadBodyWriterBenchmark {
+    private static final String TAG = "UploadBenchmark";
+    private static final int RUNS = 5;
+    private static final String PREFIX = "{\"image\":\"";
+    private static final String SUFFIX = "\"}";
+
+    private Bitmap bitmap;
+
+    private static class CountingSink extends OutputStream {
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+
+    @Before
+    public void createBitmap() {
+        // Camera-sized noise so the JPEG is a few megabytes, like a full-resolution still
+        int width = 3000;
+        int height = 2000;
+        int[] row = new int[width];
+        Random random = new Random(1);
+        bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                row[x] = 0xFF000000 | random.nextInt(0x1000000);
+            }
+            bitmap.setPixels(row, 0, width, 0, y, width, 1);
+        }
+    }
+
+    @After
+    public void recycleBitmap() {
+        bitmap.recycle();
+    }
+
+    private static long allocatedBytes() {
+        return Long.parseLong(Debug.getRuntimeStat("art.gc.bytes-allocated"));
+    }
+
+    private long legacyUpload(OutputStream out) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        bitmap.compress(Bitmap.CompressFormat.JPEG, 90, baos);
+        String base64Image = Base64.encodeToString(baos.toByteArray(), Base64.NO_WRAP);
+        String payload = PREFIX + base64Image + SUFFIX;
+        out.write(payload.getBytes());
+        return baos.size();
+    }
+
+    private void streamingUpload(OutputStream out) throws IOException {
+        UploadBodyWriter.writeBody(out, PREFIX.getBytes(StandardCharsets.UTF_8),
+                o -> bitmap.compress(Bitmap.CompressFormat.JPEG, 90, o),
+                SUFFIX.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void streamingAllocatesAFractionOfTheLegacyBody() throws IOException {
+        CountingSink warmup = new CountingSink();
+        long jpegSize = legacyUpload(warmup);
+        streamingUpload(new CountingSink());
+
+        long legacy = 0;
+        long streaming = 0;
+        long legacyBodySize = 0;
+        long streamingBodySize = 0;
+        for (int i = 0; i < RUNS; i++) {
+            CountingSink sink = new CountingSink();
+            long before = allocatedBytes();
+            legacyUpload(sink);
+            legacy += allocatedBytes() - before;
+            legacyBodySize = sink.count;
+
+            sink = new CountingSink();
+            before = allocatedBytes();
+            streamingUpload(sink);
+            streaming += allocatedBytes() - before;
+            streamingBodySize = sink.count;
+        }
+        legacy /= RUNS;
+        streaming /= RUNS;
+
+        Log.i(TAG, "JPEG " + jpegSize + " bytes, body " + legacyBodySize + " bytes; allocated per upload: legacy "
+                + legacy + " bytes, streaming " + streaming + " bytes");
+        assertEquals(legacyBodySize, streamingBodySize);
+        assertEquals(PREFIX.length() + UploadBodyWriter.base64Length(jpegSize) + SUFFIX.length(), streamingBodySize);
+        assertTrue("streaming allocated " + streaming + " bytes", streaming < legacy / 10);
+    }
+}
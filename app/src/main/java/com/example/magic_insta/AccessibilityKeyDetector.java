@@ -1,117 +1,300 @@
 package com.example.magic_insta;
 
 import android.accessibilityservice.AccessibilityService;
+import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
-import android.content.pm.PackageManager;
-import android.content.pm.ResolveInfo;
-import android.graphics.Rect;
-import android.net.Uri;
+import android.content.IntentFilter;
+import android.content.pm.ApplicationInfo;
 import android.os.Build;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.os.VibrationEffect;
 import android.os.Vibrator;
 import android.util.Log;
+import android.view.Choreographer;
 import android.view.KeyEvent;
 import android.view.accessibility.AccessibilityEvent;
 import android.view.accessibility.AccessibilityNodeInfo;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Random;
+import androidx.core.content.ContextCompat;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
 
 /**
  * AccessibilityKeyDetector - Instagram automation service
- * 
- * Uses randomized delays to make automation more human-like and avoid detection:
- * - getRandomDelay(): 3-6 seconds for main operations
- * - getRandomShortDelay(): 1-2 seconds for retries
- * - getRandomVeryShortDelay(): 0.3-0.8 seconds for quick sequential operations
+ *
+ * The reveal runs as a {@link FlowEngine} over the steps of {@link RevealFlow}: each step acts
+ * as soon as window events show its screen, with per-step timeouts only as an upper bound.
+ * When the detected card has a post in {@link RevealTargets}, Instagram opens that post directly
+ * and only the post page steps run; the walk through the archive is the fallback. The walk
+ * scrolls straight to the photo's page recorded in {@link ArchiveLayout} by a calibration walk,
+ * which MainActivity requests with {@link #ACTION_CALIBRATE_ARCHIVE}.
+ *
+ * The volume keys drive the trick through a {@link KeySequenceMatcher}: a volume down tap reveals,
+ * a volume up tap aborts and a long volume up re-arms. {@link #KEY_TRIGGERS_FILE} can add or
+ * replace triggers, including {@code reveal:<n>} to walk to archived photo n.
+ *
+ * When the {@link #RECORDINGS_DIR} directory exists in the app's files directory, each flow run
+ * is saved there as a {@link FlowRecording} for replaying on the JVM.
  */
 public class AccessibilityKeyDetector extends AccessibilityService {
     private static final String TAG = "AccessKeyDetector";
-    private final Random random = new Random();
-
-    private int indexToClick = 1;
-
-    /**
-     * Generates a random delay between 3000-6000 milliseconds (3-6 seconds)
-     * to make automation more human-like and avoid detection
-     */
-    private long getRandomDelay() {
-        return 3000 + random.nextInt(3001); // 3000-6000 milliseconds
-    }
-
-    /**
-     * Generates a shorter random delay between 1000-2000 milliseconds (1-2 seconds)
-     * for retry operations
-     */
-    private long getRandomShortDelay() {
-        return 1000 + random.nextInt(1001); // 1000-2000 milliseconds
-    }
-
-    /**
-     * Generates a very short random delay between 300-800 milliseconds
-     * for quick sequential operations
-     */
-    private long getRandomVeryShortDelay() {
-        return 300 + random.nextInt(501); // 300-800 milliseconds
-    }
+    // Re-check the screen this often when no window event arrives
+    private static final long FLOW_POLL_INTERVAL_MS = 500;
+    // Archive position revealed for cards without a registered one
+    private static final int DEFAULT_ARCHIVE_INDEX = 1;
+    public static final String ACTION_CALIBRATE_ARCHIVE = "com.example.magic_insta.CALIBRATE_ARCHIVE";
+    public static final String RECORDINGS_DIR = "recordings";
+    // Longest the failure dump of the screen may take
+    private static final long LOG_BUDGET_MS = 20;
+    // Key events slower than this are logged; the system gives up on a filter after a few hundred ms
+    private static final long SLOW_KEY_EVENT_MS = 50;
+    public static final String KEY_TRIGGERS_FILE = "key_triggers.txt";
+    private static final String TRIGGER_REVEAL = "reveal";
+    private static final String TRIGGER_ABORT = "abort";
+    private static final String TRIGGER_REARM = "rearm";
+    // Followed by an archive position: reveals that photo whatever card was detected
+    private static final String TRIGGER_REVEAL_PHOTO = "reveal:";
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final LatencyRecorder keyEventLatency = new LatencyRecorder("Key event", 64);
+    private SettingsStore settings;
+    private OverlayController overlay;
+    private KeySequenceMatcher keyTriggers;
+    // When the key filter was entered for the event being matched
+    private long triggerKeyPressNanos;
+    private final Runnable keyTriggerTimer = () -> {
+        triggerKeyPressNanos = System.nanoTime();
+        keyTriggers.onTimeout(uptimeNanos());
+        scheduleKeyTriggerTimer();
+    };
+    private InstagramLauncher instagramLauncher;
+    private RevealTargets revealTargets = RevealTargets.empty();
+    private FlowEngine walkFlow;
+    private FlowEngine postFlow;
+    private FlowEngine calibrationFlow;
+    private final RevealFlow.ArchiveTarget archiveTarget = new RevealFlow.ArchiveTarget();
+    private final ArchiveLayout.Recorder archiveRecorder = new ArchiveLayout.Recorder();
+    private ArchiveLayout archiveLayout = ArchiveLayout.empty();
+    private final BroadcastReceiver calibrationReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            startCalibration();
+        }
+    };
+    // The flow of the current or last reveal
+    private FlowEngine revealFlow;
+    // Null unless flow runs are being recorded
+    private RecordingUiDriver recordingDriver;
+    private final Runnable flowTimer = () -> evaluateRevealFlow(false);
+    private EventSubscription eventSubscription;
+    private Choreographer choreographer;
+    // Content changes arrive in bursts; they are folded into one evaluation on the next frame
+    private boolean contentChangePending;
+    private final Choreographer.FrameCallback contentChangeFrame = frameTimeNanos -> {
+        contentChangePending = false;
+        eventSubscription.onProcessed();
+        evaluateRevealFlow(true);
+    };
 
     /**
      * Shows the touch blocking overlay to prevent accidental touches during automation
      */
     private void showTouchBlockingOverlay() {
-        Intent intent = new Intent(this, TouchBlockOverlayService.class);
-        intent.setAction(TouchBlockOverlayService.ACTION_SHOW_OVERLAY);
-        startService(intent);
-        Log.d(TAG, "Touch blocking overlay requested");
+        overlay.show();
     }
 
     /**
      * Hides the touch blocking overlay when automation is complete
      */
     private void hideTouchBlockingOverlay() {
-        Intent intent = new Intent(this, TouchBlockOverlayService.class);
-        intent.setAction(TouchBlockOverlayService.ACTION_HIDE_OVERLAY);
-        startService(intent);
-        Log.d(TAG, "Touch blocking overlay hide requested");
+        overlay.hide();
     }
 
     @Override
     protected void onServiceConnected() {
         Log.i(TAG, "Accessibility Service Connected");
+        NodeScope.setLeakTracking((getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0);
+        // Load the settings before the first key event needs them
+        settings = SettingsStore.get(this);
+        loadKeyTriggers();
+        // Bind the overlay service now so it is connected before the first reveal
+        overlay = OverlayController.get(this);
+        UiDriver driver = new ServiceUiDriver();
+        if (new File(getFilesDir(), RECORDINGS_DIR).isDirectory()) {
+            recordingDriver = new RecordingUiDriver(driver);
+            driver = recordingDriver;
+            Log.d(TAG, "Recording flow runs");
+        }
+        long pollInterval = TimeUnit.MILLISECONDS.toNanos(FLOW_POLL_INTERVAL_MS);
+        walkFlow = new FlowEngine("Reveal walk", RevealFlow.create(archiveTarget), driver, pollInterval);
+        postFlow = new FlowEngine("Reveal post", RevealFlow.createForPost(), driver, pollInterval);
+        calibrationFlow = new FlowEngine("Archive calibration", RevealFlow.createCalibration(archiveRecorder),
+                driver, pollInterval);
+        revealFlow = walkFlow;
+        loadRevealTargets();
+
+        IntentFilter filter = new IntentFilter(ACTION_CALIBRATE_ARCHIVE);
+        ContextCompat.registerReceiver(this, calibrationReceiver, filter, ContextCompat.RECEIVER_NOT_EXPORTED);
+        choreographer = Choreographer.getInstance();
+        eventSubscription = new EventSubscription(this);
+        // Nothing to react to until a flow starts
+        eventSubscription.clear();
+        // Resolve the launch intent now rather than on the first key press
+        instagramLauncher = InstagramLauncher.get(this);
+        instagramLauncher.resolve();
     }
 
+    /**
+     * Runs on the input dispatch path: the system holds the key until this returns and drops
+     * the filter's answer when it takes too long, so it only reads cached settings and feeds the
+     * trigger matcher; triggered actions are posted and run after the filter has answered.
+     */
     @Override
     public boolean onKeyEvent(KeyEvent event) {
+        long keyPressNanos = System.nanoTime();
+        boolean handled = handleKeyEvent(event, keyPressNanos);
+        long elapsed = System.nanoTime() - keyPressNanos;
+        keyEventLatency.record(elapsed);
+        if (elapsed > TimeUnit.MILLISECONDS.toNanos(SLOW_KEY_EVENT_MS)) {
+            Log.w(TAG, "Slow key event: " + TimeUnit.NANOSECONDS.toMillis(elapsed) + " ms");
+        }
+        return handled;
+    }
+
+    private boolean handleKeyEvent(KeyEvent event, long keyPressNanos) {
+        int keyCode = event.getKeyCode();
+        if (!keyTriggers.handles(keyCode)
+                || !(settings.isInstagramManagerEnabled() || settings.isFakeLockscreenEnabled())) {
+            return false;
+        }
+        triggerKeyPressNanos = keyPressNanos;
+        long eventNanos = TimeUnit.MILLISECONDS.toNanos(event.getEventTime());
         if (event.getAction() == KeyEvent.ACTION_DOWN) {
-            int keyCode = event.getKeyCode();
+            keyTriggers.onKeyDown(keyCode, eventNanos);
+        } else if (event.getAction() == KeyEvent.ACTION_UP) {
+            keyTriggers.onKeyUp(keyCode, eventNanos);
+        }
+        scheduleKeyTriggerTimer();
+        return true;
+    }
 
-            if (keyCode == KeyEvent.KEYCODE_VOLUME_UP) {
-                if (MainActivity.isFakeLockscreenEnabled(this)) {
-                    handleVolumeUp();
-                    return true;
-                }
-            } else if (keyCode == KeyEvent.KEYCODE_VOLUME_DOWN) {
-                if (MainActivity.isInstagramManagerEnabled(this)) {
-                    handleInstagramManager();
-                    return true;
-                } else if (MainActivity.isFakeLockscreenEnabled(this)) {
-                    handleVolumeDown();
-                    return true;
-                }
+    private void onKeyTrigger(String name) {
+        long keyPressNanos = triggerKeyPressNanos;
+        handler.post(() -> runKeyTrigger(name, keyPressNanos));
+    }
+
+    private void runKeyTrigger(String name, long keyPressNanos) {
+        Log.d(TAG, "Key trigger " + name);
+        if (TRIGGER_REVEAL.equals(name)) {
+            if (settings.isInstagramManagerEnabled()) {
+                handleInstagramManager(findRevealTarget(), keyPressNanos);
+            } else if (settings.isFakeLockscreenEnabled()) {
+                handleVolumeDown();
             }
+        } else if (TRIGGER_ABORT.equals(name)) {
+            if (settings.isFakeLockscreenEnabled()) {
+                handleVolumeUp();
+            } else {
+                vibrate();
+                cancelRevealFlow();
+                hideTouchBlockingOverlay();
+            }
+        } else if (TRIGGER_REARM.equals(name)) {
+            rearm();
+        } else if (name.startsWith(TRIGGER_REVEAL_PHOTO) && settings.isInstagramManagerEnabled()) {
+            int index;
+            try {
+                index = Integer.parseInt(name.substring(TRIGGER_REVEAL_PHOTO.length()));
+            } catch (NumberFormatException e) {
+                Log.w(TAG, "Bad archive position in key trigger " + name);
+                return;
+            }
+            handleInstagramManager(new RevealTargets.Target(name, null, index), keyPressNanos);
+        } else {
+            Log.w(TAG, "Key trigger " + name + " does nothing in the current mode");
         }
-        return false;
+    }
+
+    /**
+     * Stops any reveal and forgets the detected card, ready for the next performance.
+     */
+    private void rearm() {
+        vibrate();
+        cancelRevealFlow();
+        hideTouchBlockingOverlay();
+        TrickState.setDetectedCard(null);
+        loadRevealTargets();
+        instagramLauncher.resolve();
+        Log.d(TAG, "Re-armed");
+    }
+
+    private void scheduleKeyTriggerTimer() {
+        handler.removeCallbacks(keyTriggerTimer);
+        long next = keyTriggers.getNextTimeoutNanos();
+        if (next >= 0) {
+            // Round up: a timer that fires early finds nothing to do
+            long delayNanos = Math.max(0, next - uptimeNanos());
+            handler.postDelayed(keyTriggerTimer, (delayNanos + 999_999) / 1_000_000);
+        }
+    }
+
+    // The clock of KeyEvent.getEventTime(), in nanoseconds
+    private static long uptimeNanos() {
+        return TimeUnit.MILLISECONDS.toNanos(SystemClock.uptimeMillis());
+    }
+
+    /**
+     * Default triggers plus those in {@link #KEY_TRIGGERS_FILE}, which replace defaults with the
+     * same presses.
+     */
+    private void loadKeyTriggers() {
+        KeySequenceMatcher.Builder builder = defaultKeyTriggers();
+        File file = new File(getFilesDir(), KEY_TRIGGERS_FILE);
+        if (file.exists()) {
+            try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+                builder.load(reader);
+                Log.d(TAG, "Loaded key triggers from " + file);
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to load key triggers, using the defaults", e);
+                builder = defaultKeyTriggers();
+            }
+        }
+        keyTriggers = builder.build(this::onKeyTrigger);
+    }
+
+    private static KeySequenceMatcher.Builder defaultKeyTriggers() {
+        return new KeySequenceMatcher.Builder()
+                .add(TRIGGER_REVEAL, "down")
+                .add(TRIGGER_ABORT, "up")
+                .add(TRIGGER_REARM, "up:long");
+    }
+
+    /**
+     * Time spent handling each key event, from entering the key filter to returning.
+     */
+    public LatencyRecorder getKeyEventLatency() {
+        return keyEventLatency;
     }
 
     private void handleVolumeUp() {
         vibrate();
         Log.d(TAG, "Volume Up pressed - vibration triggered");
         
-        // Hide overlay if it's showing (in case user wants to stop automation)
+        // Stop the automation and hide the overlay if it's showing
+        cancelRevealFlow();
         hideTouchBlockingOverlay();
         
         Intent intent = new Intent(this, FakeLockActivity.class);
@@ -132,748 +315,285 @@ public class AccessibilityKeyDetector extends AccessibilityService {
         startActivity(intent);
     }
 
-    private void handleInstagramManager() {
+    private void handleInstagramManager(RevealTargets.Target target, long keyPressNanos) {
         vibrate();
-        Log.d(TAG, "Instagram Manager - Volume Down pressed");
+        Log.d(TAG, "Instagram Manager - reveal triggered");
+
+        if (revealFlow.getState() == FlowEngine.State.RUNNING) {
+            Log.d(TAG, "Reveal already running");
+            return;
+        }
 
         // Show touch blocking overlay at the start of automation
         showTouchBlockingOverlay();
 
-        try {
-            boolean launched = launchInstagram();
-            if (launched) {
-                Log.d(TAG, "Instagram app launched successfully");
-                
-                new Handler(Looper.getMainLooper()).postDelayed(() -> {
-                    tryNavigateToInstagramProfile(0);
-                }, getRandomDelay()); // Random delay between 3-6 seconds for Instagram to load
-            } else {
-                Log.e(TAG, "Failed to launch Instagram app");
-                // Hide overlay if Instagram launch failed
-                hideTouchBlockingOverlay();
-            }
-        } catch (Exception e) {
-            Log.e(TAG, "Error launching Instagram: " + e.getMessage());
-            // Hide overlay on error
+        if (target != null && target.hasPostId() && instagramLauncher.launchPost(target.getPostUrl(), keyPressNanos)) {
+            Log.d(TAG, "Instagram opened on post " + target);
+            startRevealFlow(postFlow);
+        } else if (instagramLauncher.launch(keyPressNanos)) {
+            Log.d(TAG, "Instagram app launched successfully");
+            startWalk(target);
+        } else {
+            Log.e(TAG, "Failed to launch Instagram app");
+            // Hide overlay if Instagram launch failed
             hideTouchBlockingOverlay();
         }
     }
 
-    /**
-     * Multiple methods to launch Instagram with fallbacks
-     */
-    private boolean launchInstagram() {
-        // Method 1: Try standard package manager launch intent
-        try {
-            Intent launchIntent = getPackageManager().getLaunchIntentForPackage("com.instagram.android");
-            if (launchIntent != null) {
-                launchIntent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TOP);
-                startActivity(launchIntent);
-                Log.d(TAG, "Instagram launched via package manager");
-                return true;
-            }
-        } catch (Exception e) {
-            Log.w(TAG, "Method 1 failed: " + e.getMessage());
-        }
-
-        // Method 2: Try launching via Intent with Instagram's main activity
-        try {
-            Intent intent = new Intent();
-            intent.setClassName("com.instagram.android", "com.instagram.android.activity.MainTabActivity");
-            intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TOP);
-            startActivity(intent);
-            Log.d(TAG, "Instagram launched via explicit activity");
-            return true;
-        } catch (Exception e) {
-            Log.w(TAG, "Method 2 failed: " + e.getMessage());
-        }
-
-        // Method 3: Try launching via another known Instagram activity
-        try {
-            Intent intent = new Intent();
-            intent.setClassName("com.instagram.android", "com.instagram.android.activity.UrlHandlerActivity");
-            intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TOP);
-            startActivity(intent);
-            Log.d(TAG, "Instagram launched via URL handler activity");
-            return true;
-        } catch (Exception e) {
-            Log.w(TAG, "Method 3 failed: " + e.getMessage());
-        }
-
-        // Method 4: Try using ACTION_VIEW with Instagram URL
-        try {
-            Intent intent = new Intent(Intent.ACTION_VIEW);
-            intent.setData(Uri.parse("https://www.instagram.com/"));
-            intent.setPackage("com.instagram.android");
-            intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TOP);
-            startActivity(intent);
-            Log.d(TAG, "Instagram launched via ACTION_VIEW");
-            return true;
-        } catch (Exception e) {
-            Log.w(TAG, "Method 4 failed: " + e.getMessage());
-        }
-
-        // Method 5: Try launching with custom Instagram URL scheme
+    private void loadRevealTargets() {
         try {
-            Intent intent = new Intent(Intent.ACTION_VIEW);
-            intent.setData(Uri.parse("instagram://camera"));
-            intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TOP);
-            startActivity(intent);
-            Log.d(TAG, "Instagram launched via custom URL scheme");
-            return true;
-        } catch (Exception e) {
-            Log.w(TAG, "Method 5 failed: " + e.getMessage());
+            revealTargets = RevealTargets.load(new File(getFilesDir(), RevealTargets.FILE_NAME));
+            Log.d(TAG, "Loaded " + revealTargets.size() + " reveal target(s)");
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to load reveal targets, using the archive walk", e);
         }
-
-        // Method 6: Try resolving activities that can handle Instagram intent
         try {
-            Intent intent = new Intent(Intent.ACTION_MAIN);
-            intent.addCategory(Intent.CATEGORY_LAUNCHER);
-            PackageManager pm = getPackageManager();
-            List<ResolveInfo> activities = pm.queryIntentActivities(intent, 0);
-            
-            for (ResolveInfo activity : activities) {
-                if (activity.activityInfo.packageName.equals("com.instagram.android")) {
-                    Intent launchIntent = new Intent(Intent.ACTION_MAIN);
-                    launchIntent.addCategory(Intent.CATEGORY_LAUNCHER);
-                    launchIntent.setClassName(activity.activityInfo.packageName, activity.activityInfo.name);
-                    launchIntent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TOP);
-                    startActivity(launchIntent);
-                    Log.d(TAG, "Instagram launched via resolved activity: " + activity.activityInfo.name);
-                    return true;
-                }
-            }
-        } catch (Exception e) {
-            Log.w(TAG, "Method 6 failed: " + e.getMessage());
+            archiveLayout = ArchiveLayout.load(new File(getFilesDir(), ArchiveLayout.FILE_NAME));
+            Log.d(TAG, "Loaded archive layout of " + archiveLayout.size() + " photo(s)");
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to load archive layout, recalibrate", e);
         }
-
-        // Method 7: Check if Instagram is actually installed
-        try {
-            PackageManager pm = getPackageManager();
-            pm.getPackageInfo("com.instagram.android", PackageManager.GET_ACTIVITIES);
-            Log.e(TAG, "Instagram is installed but all launch methods failed");
-        } catch (PackageManager.NameNotFoundException e) {
-            Log.e(TAG, "Instagram is not installed on this device");
-        }
-
-        return false;
     }
 
-    private void tryNavigateToInstagramProfile(int attempt) {
-        Log.d(TAG, "Attempting to navigate to Instagram profile (Attempt " + (attempt + 1) + ")");
-        AccessibilityNodeInfo rootNode = getRootInActiveWindow();
-
-        if (rootNode == null) {
-            Log.e(TAG, "Root node is null");
-            if (attempt < 3) {
-                new Handler(Looper.getMainLooper()).postDelayed(() -> tryNavigateToInstagramProfile(attempt + 1), getRandomDelay());
-            } else {
-                // Hide overlay if all attempts failed
-                Log.e(TAG, "Failed to navigate to Instagram profile after all attempts");
-                hideTouchBlockingOverlay();
-            }
-            return;
-        }
-
-        AccessibilityNodeInfo profileButton = findLastClickableFrameLayout(rootNode);
-        if (profileButton != null && profileButton.isClickable()) {
-            profileButton.performAction(AccessibilityNodeInfo.ACTION_CLICK);
-            Log.d(TAG, "Clicked profile button");
-
-            new Handler(Looper.getMainLooper()).postDelayed(() -> {
-                clickOptionsButton();
-            }, getRandomDelay()); // Random delay after clicking profile
+    /**
+     * Walks the archive to the target's photo, at its calibrated page when there is one.
+     */
+    private void startWalk(RevealTargets.Target target) {
+        int index = target != null && target.archiveIndex >= 0 ? target.archiveIndex : DEFAULT_ARCHIVE_INDEX;
+        ArchiveLayout.Entry entry = archiveLayout.get(index);
+        if (entry != null) {
+            archiveTarget.set(entry);
+            Log.d(TAG, "Walking to archived photo " + entry);
         } else {
-            Log.d(TAG, "Profile button not found");
+            archiveTarget.setVisibleIndex(index);
+            Log.d(TAG, "Archived photo #" + index + " is not calibrated, looking on the first page");
         }
+        startRevealFlow(walkFlow);
     }
 
-    private void clickOptionsButton() {
-        AccessibilityNodeInfo rootNode = getRootInActiveWindow();
-        if (rootNode == null) {
-            Log.e(TAG, "Root node is null - can't click Options button");
+    private void startCalibration() {
+        if (revealFlow.getState() == FlowEngine.State.RUNNING) {
+            Log.d(TAG, "A flow is running, calibration not started");
             return;
         }
-
-        AccessibilityNodeInfo optionsButton = findNodeByContentDescription(rootNode, "Options");
-
-        if (optionsButton != null && optionsButton.isClickable()) {
-            optionsButton.performAction(AccessibilityNodeInfo.ACTION_CLICK);
-            Log.d(TAG, "Clicked on 'Options' button");
-
-            new Handler(Looper.getMainLooper()).postDelayed(() -> {
-                clickElementByBounds(0, 784, 720, 875);
-            }, getRandomDelay());
-        } else {
-            Log.d(TAG, "'Options' button not found or not clickable");
-        }
-    }
-
-    private void clickElementByBounds(int left, int top, int right, int bottom) {
-        AccessibilityNodeInfo rootNode = getRootInActiveWindow();
-        if (rootNode == null) {
-            Log.e(TAG, "Root node is null - can't click element by bounds");
+        showTouchBlockingOverlay();
+        if (!instagramLauncher.launch(System.nanoTime())) {
+            hideTouchBlockingOverlay();
             return;
         }
-
-        AccessibilityNodeInfo targetNode = findClickableNodeByBounds(rootNode, left, top, right, bottom);
-        if (targetNode != null && targetNode.isClickable()) {
-            targetNode.performAction(AccessibilityNodeInfo.ACTION_CLICK);
-            Log.d(TAG, "Clicked archive element");
-
-            new Handler(Looper.getMainLooper()).postDelayed(() -> {
-                clickArchivedPhotoByIndex(indexToClick);
-            }, getRandomDelay());
-        } else {
-            Log.d(TAG, "No clickable element found with specified bounds");
-        }
+        archiveRecorder.reset();
+        startRevealFlow(calibrationFlow);
     }
 
-    private void clickArchivedPhotoByIndex(int indexToClick) {
-        AccessibilityNodeInfo rootNode = getRootInActiveWindow();
-        if (rootNode == null) {
-            Log.e(TAG, "Root node is null - can't extract archived photos");
+    private void saveArchiveLayout() {
+        if (archiveRecorder.getDuplicate() != null) {
+            Log.e(TAG, "Calibration failed: more than one archived photo is described as '"
+                    + archiveRecorder.getDuplicate() + "'");
             return;
         }
-
-        List<AccessibilityNodeInfo> matchingPhotos = new ArrayList<>();
-        extractPhotoButtons(rootNode, matchingPhotos);
-
-        Log.d(TAG, "Found " + matchingPhotos.size() + " photo buttons matching 'Photo by Dhia'");
-
-        if (indexToClick < matchingPhotos.size()) {
-            AccessibilityNodeInfo target = matchingPhotos.get(indexToClick);
-            if (target != null && target.isClickable()) {
-                target.performAction(AccessibilityNodeInfo.ACTION_CLICK);
-                Log.d(TAG, "Clicked archived photo at index " + indexToClick);
-
-                // Wait longer and verify we're on the photo page before logging elements
-                new Handler(Looper.getMainLooper()).postDelayed(() -> {
-                    waitForPhotoPageAndLogElements(0);
-                }, getRandomDelay()); // Random initial wait
-
-            } else {
-                Log.e(TAG, "Target photo not clickable or null");
-            }
-        } else {
-            Log.e(TAG, "Requested index " + indexToClick + " exceeds available photos");
+        ArchiveLayout layout = archiveRecorder.build();
+        try {
+            layout.save(new File(getFilesDir(), ArchiveLayout.FILE_NAME));
+            archiveLayout = layout;
+            Log.d(TAG, "Calibrated archive layout of " + layout.size() + " photo(s)");
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to save archive layout", e);
         }
     }
 
-    private void waitForPhotoPageAndLogElements(int attempt) {
-        Log.d(TAG, "Checking if photo page is loaded (Attempt " + (attempt + 1) + ")");
-
-        AccessibilityNodeInfo rootNode = getRootInActiveWindow();
-
-        if (rootNode == null) {
-            Log.e(TAG, "Root node is null - cannot check photo page");
-            if (attempt < 5) {
-                new Handler(Looper.getMainLooper()).postDelayed(() ->
-                        waitForPhotoPageAndLogElements(attempt + 1), getRandomShortDelay());
-            }
-            return;
+    /**
+     * The registered post for the last detected card, or null to walk the archive.
+     */
+    private RevealTargets.Target findRevealTarget() {
+        CardDetectionUploader.DetectionResult card = TrickState.getDetectedCard();
+        if (card == null || !card.hasCard) {
+            Log.d(TAG, "No card detected yet");
+            return null;
         }
-
-        // Check if we're on the photo page by looking for indicators
-        boolean isPhotoPage = isOnPhotoViewPage(rootNode);
-
-        if (isPhotoPage) {
-            Log.d(TAG, "Photo page detected! Looking for 'More actions for this post' button...");
-            clickMoreActionsButton();
-        } else {
-            Log.d(TAG, "Still not on photo page, waiting...");
-            if (attempt < 5) {
-                new Handler(Looper.getMainLooper()).postDelayed(() ->
-                        waitForPhotoPageAndLogElements(attempt + 1), getRandomShortDelay());
-            } else {
-                Log.e(TAG, "Timeout waiting for photo page to load");
-                // Try to click more actions anyway after timeout
-                Log.d(TAG, "=== TIMEOUT - TRYING TO CLICK MORE ACTIONS ANYWAY ===");
-                clickMoreActionsButton();
-            }
+        RevealTargets.Target target = revealTargets.get(card.cardClass);
+        if (target == null) {
+            Log.d(TAG, "No post registered for " + card.cardClass);
         }
+        return target;
     }
 
-    private void clickMoreActionsButton() {
-        AccessibilityNodeInfo rootNode = getRootInActiveWindow();
-        if (rootNode == null) {
-            Log.e(TAG, "Root node is null - can't click More actions button");
-            return;
-        }
-
-        AccessibilityNodeInfo moreActionsButton = findNodeByContentDescription(rootNode, "More actions for this post");
-
-        if (moreActionsButton != null && moreActionsButton.isClickable()) {
-            moreActionsButton.performAction(AccessibilityNodeInfo.ACTION_CLICK);
-            Log.d(TAG, "Clicked 'More actions for this post' button");
-
-            // Wait longer for menu to fully load and then try to click "Show on Profile"
-            new Handler(Looper.getMainLooper()).postDelayed(() -> {
-                tryClickShowOnProfileButton(0);
-            }, getRandomDelay()); // Random wait time for menu to load
-        } else {
-            Log.e(TAG, "'More actions for this post' button not found or not clickable");
-            // Log current elements to see what's available
-            Log.d(TAG, "=== CURRENT PAGE ELEMENTS (More actions not found) ===");
-            logClickableElementsRecursive(rootNode, 0);
-            Log.d(TAG, "=== CURRENT PAGE ELEMENTS END ===");
+    private void startRevealFlow(FlowEngine flow) {
+        revealFlow = flow;
+        long now = System.nanoTime();
+        if (recordingDriver != null) {
+            recordingDriver.start(now);
         }
+        revealFlow.start(now);
+        subscribeForCurrentStep();
+        scheduleFlowTimer();
     }
 
-    private void tryClickShowOnProfileButton(int attempt) {
-        Log.d(TAG, "Trying to click 'Show on Profile' button (Attempt " + (attempt + 1) + ")");
-
-        AccessibilityNodeInfo rootNode = getRootInActiveWindow();
-
-        if (rootNode == null) {
-            Log.e(TAG, "Root node is null - can't click Show on Profile button");
-            if (attempt < 5) {
-                new Handler(Looper.getMainLooper()).postDelayed(() ->
-                        tryClickShowOnProfileButton(attempt + 1), getRandomShortDelay());
-            }
-            return;
-        }
-
-        // Find the "Show on profile" button
-        AccessibilityNodeInfo showOnProfileButton = findShowOnProfileButton(rootNode);
-
-        if (showOnProfileButton != null) {
-            // Log button details before clicking
-            Rect bounds = new Rect();
-            showOnProfileButton.getBoundsInScreen(bounds);
-            Log.d(TAG, "Found 'Show on Profile' button - Class: " + showOnProfileButton.getClassName() +
-                    ", Text: '" + showOnProfileButton.getText() +
-                    "', Bounds: " + bounds.flattenToString() +
-                    ", Enabled: " + showOnProfileButton.isEnabled() +
-                    ", Clickable: " + showOnProfileButton.isClickable());
-
-            // Try improved click method
-            boolean clickSuccess = performEnhancedClick(showOnProfileButton);
-
-            if (clickSuccess) {
-                Log.d(TAG, "Successfully clicked 'Show on Profile' button");
-
-                // Wait and verify the action was successful
-                new Handler(Looper.getMainLooper()).postDelayed(() -> {
-                    verifyShowOnProfileClick();
-                }, getRandomShortDelay());
-
-                // wait random time and then close the insta app
-                new Handler(Looper.getMainLooper()).postDelayed(() -> {
-                    closeInstagramApp();
-                }, getRandomDelay());
-            } else {
-                Log.e(TAG, "Failed to click 'Show on Profile' button");
-                if (attempt < 3) {
-                    new Handler(Looper.getMainLooper()).postDelayed(() ->
-                            tryClickShowOnProfileButton(attempt + 1), getRandomShortDelay());
-                } else {
-                    Log.e(TAG, "All attempts to click 'Show on Profile' failed");
-                    // Hide overlay if all attempts failed
-                    hideTouchBlockingOverlay();
-                }
-            }
-        } else {
-            Log.e(TAG, "'Show on Profile' button not found (Attempt " + (attempt + 1) + ")");
-            if (attempt < 3) {
-                new Handler(Looper.getMainLooper()).postDelayed(() ->
-                        tryClickShowOnProfileButton(attempt + 1), getRandomShortDelay());
-            } else {
-                Log.e(TAG, "Could not find 'Show on Profile' button after all attempts");
-                // Hide overlay if all attempts failed
-                hideTouchBlockingOverlay();
-                // Log current elements for debugging
-                Log.d(TAG, "=== FINAL DEBUG - ALL CLICKABLE ELEMENTS ===");
-                logClickableElementsRecursive(rootNode, 0);
-                Log.d(TAG, "=== FINAL DEBUG END ===");
-            }
+    private void cancelRevealFlow() {
+        if (revealFlow != null && revealFlow.getState() == FlowEngine.State.RUNNING) {
+            revealFlow.cancel();
+            stopFlowWakeUps();
+            Log.d(TAG, revealFlow.report());
+            saveRecording();
         }
     }
 
-    private boolean performEnhancedClick(AccessibilityNodeInfo node) {
-        if (node == null) {
-            Log.e(TAG, "Cannot click null node");
-            return false;
+    private void evaluateRevealFlow(boolean windowChanged) {
+        if (recordingDriver != null) {
+            recordingDriver.setLabel(revealFlow.getCurrentStepName());
         }
-
-        // Method 1: Direct click with focus
-        try {
-            Log.d(TAG, "Attempting Method 1: Focus + Click");
-            boolean focused = node.performAction(AccessibilityNodeInfo.ACTION_FOCUS);
-            Log.d(TAG, "Focus result: " + focused);
-
-            // Small delay to ensure focus is set
-            Thread.sleep(200);
-
-            boolean clicked = node.performAction(AccessibilityNodeInfo.ACTION_CLICK);
-            Log.d(TAG, "Click result: " + clicked);
-
-            if (clicked) {
-                Log.d(TAG, "Method 1 successful");
-                return true;
-            }
-        } catch (InterruptedException e) {
-            Log.e(TAG, "Method 1 interrupted: " + e.getMessage());
+        FlowEngine.State state = revealFlow.evaluate(System.nanoTime(), windowChanged);
+        if (state == FlowEngine.State.RUNNING) {
+            overlay.setProgress(revealFlow.getCompletedStepCount(), revealFlow.getStepCount());
+            subscribeForCurrentStep();
+            scheduleFlowTimer();
+            return;
         }
 
-        // Method 2: Accessibility focus + click
-        try {
-            Log.d(TAG, "Attempting Method 2: Accessibility Focus + Click");
-            boolean accFocused = node.performAction(AccessibilityNodeInfo.ACTION_ACCESSIBILITY_FOCUS);
-            Log.d(TAG, "Accessibility focus result: " + accFocused);
-
-            Thread.sleep(300);
-
-            boolean clicked = node.performAction(AccessibilityNodeInfo.ACTION_CLICK);
-            Log.d(TAG, "Click after acc focus result: " + clicked);
-
-            if (clicked) {
-                Log.d(TAG, "Method 2 successful");
-                return true;
-            }
-        } catch (InterruptedException e) {
-            Log.e(TAG, "Method 2 interrupted: " + e.getMessage());
-        }
-
-        // Method 3: Parent click if available
-        AccessibilityNodeInfo parent = node.getParent();
-        if (parent != null && parent.isClickable()) {
-            Log.d(TAG, "Attempting Method 3: Parent Click");
-            boolean parentClicked = parent.performAction(AccessibilityNodeInfo.ACTION_CLICK);
-            Log.d(TAG, "Parent click result: " + parentClicked);
-            if (parentClicked) {
-                Log.d(TAG, "Method 3 successful");
-                return true;
+        stopFlowWakeUps();
+        Log.d(TAG, revealFlow.report());
+        saveRecording();
+        if (state == FlowEngine.State.FAILED && revealFlow == postFlow && revealFlow.getCompletedStepCount() == 0) {
+            // The post page never showed up; walk to the post from Instagram's main screen
+            Log.d(TAG, "Post link failed, falling back to the archive walk");
+            if (instagramLauncher.launch(System.nanoTime())) {
+                startWalk(findRevealTarget());
+                return;
             }
         }
-
-        Log.e(TAG, "All enhanced click methods failed");
-        return false;
-    }
-
-    private AccessibilityNodeInfo findClickableAtCoordinates(AccessibilityNodeInfo node, int x, int y) {
-        if (node == null) return null;
-
-        if (node.isClickable()) {
-            Rect bounds = new Rect();
-            node.getBoundsInScreen(bounds);
-            if (bounds.contains(x, y)) {
-                return node;
-            }
+        if (state == FlowEngine.State.SUCCEEDED && revealFlow == calibrationFlow) {
+            saveArchiveLayout();
         }
-
-        for (int i = 0; i < node.getChildCount(); i++) {
-            AccessibilityNodeInfo result = findClickableAtCoordinates(node.getChild(i), x, y);
-            if (result != null) return result;
-        }
-
-        return null;
-    }
-
-    private void verifyShowOnProfileClick() {
-        Log.d(TAG, "=== VERIFYING SHOW ON PROFILE CLICK ===");
-        AccessibilityNodeInfo rootNode = getRootInActiveWindow();
-        if (rootNode != null) {
-            // Check if we still see the "Show on profile" button
-            AccessibilityNodeInfo showButton = findShowOnProfileButton(rootNode);
-            if (showButton != null) {
-                Log.e(TAG, "VERIFICATION FAILED: 'Show on profile' button still visible");
-                // Try one more time with a different approach
-                Log.d(TAG, "Attempting final click with all methods...");
-                performEnhancedClick(showButton);
-            } else {
-                Log.d(TAG, "VERIFICATION SUCCESSFUL: 'Show on profile' button no longer visible");
-                // closeInstagramApp();
+        Log.d(TAG, eventSubscription.toString());
+        Log.d(TAG, NodeScope.leakReport());
+        Log.d(TAG, keyEventLatency.toString());
+        if (state == FlowEngine.State.SUCCEEDED) {
+            Log.d(TAG, revealFlow.getTotalLatency().toString());
+        } else {
+            Log.d(TAG, "=== CURRENT PAGE ELEMENTS (reveal failed) ===");
+            NodeSnapshot snapshot = takeSnapshot();
+            if (snapshot != null) {
+                logClickableElements(snapshot);
+                snapshot.release();
             }
+            Log.d(TAG, "=== CURRENT PAGE ELEMENTS END ===");
         }
-        Log.d(TAG, "=== VERIFICATION END ===");
-    }
-
-    private void closeInstagramApp() {
-        Log.d(TAG, "Closing Instagram app...");
-        
         // Hide the touch blocking overlay when automation is complete
         hideTouchBlockingOverlay();
-        
-        try {
-            // Method 1: Use home button to go to home screen
-            performGlobalAction(GLOBAL_ACTION_HOME);
-            Log.d(TAG, "Instagram app closed using HOME action");
-        } catch (Exception e) {
-            Log.e(TAG, "Error closing Instagram app: " + e.getMessage());
-
-            // Method 2: Alternative - try to go back multiple times
-            try {
-                performGlobalAction(GLOBAL_ACTION_BACK);
-                new Handler(Looper.getMainLooper()).postDelayed(() -> {
-                    performGlobalAction(GLOBAL_ACTION_BACK);
-                }, getRandomVeryShortDelay());
-                Log.d(TAG, "Instagram app closed using BACK actions");
-            } catch (Exception e2) {
-                Log.e(TAG, "Error with BACK action: " + e2.getMessage());
-            }
-        }
     }
 
-    private AccessibilityNodeInfo findShowOnProfileButton(AccessibilityNodeInfo node) {
-        if (node == null) return null;
-
-        // Search by exact text match first
-        AccessibilityNodeInfo byText = findNodeByExactText(node, "Show on profile");
-        if (byText != null) {
-            Log.d(TAG, "Found 'Show on profile' by exact text");
-            return byText;
-        }
-
-        // Search by case-insensitive text match
-        AccessibilityNodeInfo byCaseInsensitive = findNodeByCaseInsensitiveText(node, "show on profile");
-        if (byCaseInsensitive != null) {
-            Log.d(TAG, "Found 'Show on profile' by case-insensitive text");
-            return byCaseInsensitive;
-        }
-
-        // Search by partial text match
-        AccessibilityNodeInfo byPartialText = findNodeByPartialText(node, "Show on profile");
-        if (byPartialText != null) {
-            Log.d(TAG, "Found 'Show on profile' by partial text");
-            return byPartialText;
-        }
-
-        // Search specifically for Button class with the expected bounds
-        AccessibilityNodeInfo byButtonBounds = findButtonByBounds(node, 144, 903, 576, 1001);
-        if (byButtonBounds != null) {
-            Log.d(TAG, "Found 'Show on profile' by button bounds");
-            return byButtonBounds;
-        }
-
-        return null;
-    }
-
-    private AccessibilityNodeInfo findNodeByExactText(AccessibilityNodeInfo node, String text) {
-        if (node == null) return null;
-
-        if (node.getText() != null && text.equals(node.getText().toString())) {
-            return node;
-        }
-
-        for (int i = 0; i < node.getChildCount(); i++) {
-            AccessibilityNodeInfo result = findNodeByExactText(node.getChild(i), text);
-            if (result != null) return result;
-        }
-
-        return null;
-    }
-
-    private AccessibilityNodeInfo findNodeByCaseInsensitiveText(AccessibilityNodeInfo node, String text) {
-        if (node == null) return null;
-
-        if (node.getText() != null && text.equalsIgnoreCase(node.getText().toString())) {
-            return node;
+    /**
+     * Writes the recording of the run that just ended, named after the flow and its end time.
+     */
+    private void saveRecording() {
+        if (recordingDriver == null) {
+            return;
         }
-
-        for (int i = 0; i < node.getChildCount(); i++) {
-            AccessibilityNodeInfo result = findNodeByCaseInsensitiveText(node.getChild(i), text);
-            if (result != null) return result;
+        String name = revealFlow.getName().toLowerCase(Locale.ROOT).replace(' ', '_')
+                + "_" + System.currentTimeMillis() + ".txt";
+        File file = new File(new File(getFilesDir(), RECORDINGS_DIR), name);
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            recordingDriver.getRecording().write(writer);
+            Log.d(TAG, "Saved " + recordingDriver.getRecording().getFrameCount() + " screen(s) to " + file);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to save flow recording", e);
         }
-
-        return null;
     }
 
-    private AccessibilityNodeInfo findButtonByBounds(AccessibilityNodeInfo node, int left, int top, int right, int bottom) {
-        if (node == null) return null;
-
-        if ("android.widget.Button".equals(node.getClassName()) && node.isClickable()) {
-            Rect bounds = new Rect();
-            node.getBoundsInScreen(bounds);
-
-            if (bounds.left == left && bounds.top == top && bounds.right == right && bounds.bottom == bottom) {
-                return node;
-            }
-        }
-
-        for (int i = 0; i < node.getChildCount(); i++) {
-            AccessibilityNodeInfo result = findButtonByBounds(node.getChild(i), left, top, right, bottom);
-            if (result != null) return result;
-        }
-
-        return null;
+    private void subscribeForCurrentStep() {
+        FlowStep step = revealFlow.getCurrentStep();
+        eventSubscription.subscribe(step.getEventTypes(), step.getPackageName());
     }
 
-    private AccessibilityNodeInfo findNodeByPartialText(AccessibilityNodeInfo node, String targetText) {
-        if (node == null) return null;
-
-        if (node.getText() != null &&
-                node.getText().toString().toLowerCase().contains(targetText.toLowerCase())) {
-            return node;
-        }
-
-        for (int i = 0; i < node.getChildCount(); i++) {
-            AccessibilityNodeInfo result = findNodeByPartialText(node.getChild(i), targetText);
-            if (result != null) return result;
+    private void stopFlowWakeUps() {
+        handler.removeCallbacks(flowTimer);
+        if (contentChangePending) {
+            choreographer.removeFrameCallback(contentChangeFrame);
+            contentChangePending = false;
         }
-
-        return null;
+        eventSubscription.clear();
     }
 
-    private AccessibilityNodeInfo findNodeByText(AccessibilityNodeInfo node, String text) {
-        if (node == null) return null;
-
-        if (node.getText() != null && node.getText().toString().equals(text)) {
-            return node;
-        }
-
-        for (int i = 0; i < node.getChildCount(); i++) {
-            AccessibilityNodeInfo result = findNodeByText(node.getChild(i), text);
-            if (result != null) return result;
-        }
-
-        return null;
-    }
-
-    private boolean isOnPhotoViewPage(AccessibilityNodeInfo node) {
-        if (node == null) return false;
-
-        // Look for indicators that we're on a photo view page
-        // This could be specific UI elements that only appear on photo pages
-
-        // Check for common photo page indicators
-        boolean hasBackButton = findNodeByContentDescription(node, "Back") != null;
-        boolean hasMoreOptions = findNodeByContentDescription(node, "More options") != null;
-        boolean hasImageView = findNodeByClassName(node, "android.widget.ImageView") != null;
-
-        // Check if we no longer see archive-specific elements
-        boolean hasArchiveElements = hasArchivePageElements(node);
-
-        // We're likely on photo page if we have photo indicators and no archive elements
-        boolean isPhotoPage = (hasBackButton || hasMoreOptions || hasImageView) && !hasArchiveElements;
-
-        Log.d(TAG, "Photo page check - Back: " + hasBackButton +
-                ", More: " + hasMoreOptions +
-                ", Image: " + hasImageView +
-                ", NoArchive: " + !hasArchiveElements +
-                ", IsPhoto: " + isPhotoPage);
-
-        return isPhotoPage;
-    }
-
-    private boolean hasArchivePageElements(AccessibilityNodeInfo node) {
-        // Check if we still see elements specific to the archive page
-        List<AccessibilityNodeInfo> photoButtons = new ArrayList<>();
-        extractPhotoButtons(node, photoButtons);
-
-        // If we still see multiple "Photo by Dhia" buttons, we're likely still on archive page
-        return photoButtons.size() > 1;
-    }
-
-    private AccessibilityNodeInfo findNodeByClassName(AccessibilityNodeInfo node, String className) {
-        if (node == null) return null;
-
-        if (className.equals(node.getClassName())) {
-            return node;
-        }
-
-        for (int i = 0; i < node.getChildCount(); i++) {
-            AccessibilityNodeInfo result = findNodeByClassName(node.getChild(i), className);
-            if (result != null) return result;
-        }
-
-        return null;
+    private void scheduleFlowTimer() {
+        handler.removeCallbacks(flowTimer);
+        long delayNanos = revealFlow.getNextWakeNanos() - System.nanoTime();
+        handler.postDelayed(flowTimer, Math.max(0, TimeUnit.NANOSECONDS.toMillis(delayNanos)));
     }
 
-    private void extractPhotoButtons(AccessibilityNodeInfo node, List<AccessibilityNodeInfo> result) {
-        if (node == null) return;
-
-        CharSequence desc = node.getContentDescription();
-        if ("android.widget.Button".equals(node.getClassName()) &&
-                desc != null && desc.toString().startsWith("Photo by Dhia")) {
-            result.add(node);
-        }
-
-        for (int i = 0; i < node.getChildCount(); i++) {
-            extractPhotoButtons(node.getChild(i), result);
+    /**
+     * Captures the active window once for all lookups of a step, or returns null if there is none.
+     */
+    private NodeSnapshot takeSnapshot() {
+        AccessibilityNodeInfo rootNode = getRootInActiveWindow();
+        if (rootNode == null) {
+            return null;
         }
+        NodeSnapshot snapshot = NodeSnapshot.capture(rootNode);
+        Log.d(TAG, snapshot.toString());
+        return snapshot;
     }
 
-    private AccessibilityNodeInfo findLastClickableFrameLayout(AccessibilityNodeInfo node) {
-        AccessibilityNodeInfo result = null;
-
-        if ("android.widget.FrameLayout".equals(node.getClassName()) && node.isClickable()) {
-            result = node;
+    private class ServiceUiDriver implements UiDriver {
+        @Override
+        public NodeSnapshot snapshot() {
+            return takeSnapshot();
         }
 
-        for (int i = 0; i < node.getChildCount(); i++) {
-            AccessibilityNodeInfo temp = findLastClickableFrameLayout(node.getChild(i));
-            if (temp != null) {
-                result = temp;
+        @Override
+        public boolean click(NodeSnapshot snapshot, int index) {
+            // Fall back to the nearest clickable ancestor when the node itself ignores the click
+            for (int i = index; i >= 0; i = snapshot.getParent(i)) {
+                AccessibilityNodeInfo node = snapshot.getNode(i);
+                if (node != null && snapshot.isClickable(i) && node.performAction(AccessibilityNodeInfo.ACTION_CLICK)) {
+                    Log.d(TAG, "Clicked " + snapshot.getClassName(i) + " '" + snapshot.getContentDescription(i)
+                            + "' at " + snapshot.boundsToString(i));
+                    return true;
+                }
             }
+            Log.d(TAG, "Click failed on node " + index);
+            return false;
         }
-        return result;
-    }
-
-    private AccessibilityNodeInfo findNodeByContentDescription(AccessibilityNodeInfo node, String contentDescription) {
-        if (node == null) return null;
 
-        if (node.getContentDescription() != null &&
-                node.getContentDescription().toString().equalsIgnoreCase(contentDescription)) {
-            return node;
+        @Override
+        public boolean scrollForward(NodeSnapshot snapshot, int index) {
+            AccessibilityNodeInfo node = snapshot.getNode(index);
+            return node != null && node.performAction(AccessibilityNodeInfo.ACTION_SCROLL_FORWARD);
         }
 
-        for (int i = 0; i < node.getChildCount(); i++) {
-            AccessibilityNodeInfo result = findNodeByContentDescription(node.getChild(i), contentDescription);
-            if (result != null) return result;
+        @Override
+        public boolean performGlobalAction(int action) {
+            return AccessibilityKeyDetector.this.performGlobalAction(action);
         }
-
-        return null;
     }
 
-    private AccessibilityNodeInfo findClickableNodeByBounds(AccessibilityNodeInfo node, int left, int top, int right, int bottom) {
-        if (node == null) return null;
-
-        Rect bounds = new Rect();
-        node.getBoundsInScreen(bounds);
-
-        if (node.isClickable() && "android.view.View".equals(node.getClassName())
-                && bounds.left == left
-                && bounds.top == top
-                && bounds.right == right
-                && bounds.bottom == bottom) {
-            return node;
-        }
-
-        for (int i = 0; i < node.getChildCount(); i++) {
-            AccessibilityNodeInfo found = findClickableNodeByBounds(node.getChild(i), left, top, right, bottom);
-            if (found != null) return found;
+    private void logClickableElements(NodeSnapshot snapshot) {
+        // A failure dump must not stall the main looper on a huge feed screen
+        NodeTraversal traversal = new NodeTraversal().budget(TimeUnit.MILLISECONDS.toNanos(LOG_BUDGET_MS));
+        traversal.run(snapshot, (s, i) -> {
+            if (s.isClickable(i) || s.hasFlags(i, NodeSnapshot.FLAG_LONG_CLICKABLE)) {
+                logClickableElement(s, i);
+            }
+            return NodeTraversal.CONTINUE;
+        });
+        if (traversal.getStatus() == NodeTraversal.Status.OUT_OF_BUDGET) {
+            Log.d(TAG, "Stopped after " + traversal.getVisitedCount() + " of " + snapshot.size() + " nodes");
         }
-        return null;
     }
 
-    private void logClickableElementsRecursive(AccessibilityNodeInfo node, int depth) {
-        if (node == null) return;
-
-        String indent = "  ".repeat(depth);
-
-        if (node.isClickable() || node.isLongClickable()) {
-            Rect bounds = new Rect();
-            node.getBoundsInScreen(bounds);
-
-            String className = node.getClassName() != null ? node.getClassName().toString() : "null";
-            String text = node.getText() != null ? node.getText().toString() : "";
-            String contentDesc = node.getContentDescription() != null ? node.getContentDescription().toString() : "";
-            String resourceId = node.getViewIdResourceName() != null ? node.getViewIdResourceName() : "";
+    private void logClickableElement(NodeSnapshot snapshot, int i) {
+        String indent = "  ".repeat(snapshot.getDepth(i));
+        String className = snapshot.getClassName(i) != null ? snapshot.getClassName(i) : "null";
+        String text = snapshot.getText(i) != null ? snapshot.getText(i) : "";
+        String contentDesc = snapshot.getContentDescription(i) != null ? snapshot.getContentDescription(i) : "";
+        String resourceId = snapshot.getViewId(i) != null ? snapshot.getViewId(i) : "";
 
-            Log.d(TAG, indent + "CLICKABLE ELEMENT:");
-            Log.d(TAG, indent + "  Class: " + className);
-            Log.d(TAG, indent + "  Text: '" + text + "'");
-            Log.d(TAG, indent + "  Content Description: '" + contentDesc + "'");
-            Log.d(TAG, indent + "  Resource ID: '" + resourceId + "'");
-            Log.d(TAG, indent + "  Bounds: " + bounds.flattenToString());
-            Log.d(TAG, indent + "  Enabled: " + node.isEnabled());
-            Log.d(TAG, indent + "  Child Count: " + node.getChildCount());
-        }
-
-        for (int i = 0; i < node.getChildCount(); i++) {
-            logClickableElementsRecursive(node.getChild(i), depth + 1);
-        }
+        Log.d(TAG, indent + "CLICKABLE ELEMENT:");
+        Log.d(TAG, indent + "  Class: " + className);
+        Log.d(TAG, indent + "  Text: '" + text + "'");
+        Log.d(TAG, indent + "  Content Description: '" + contentDesc + "'");
+        Log.d(TAG, indent + "  Resource ID: '" + resourceId + "'");
+        Log.d(TAG, indent + "  Bounds: " + snapshot.boundsToString(i));
+        Log.d(TAG, indent + "  Enabled: " + snapshot.hasFlags(i, NodeSnapshot.FLAG_ENABLED));
+        Log.d(TAG, indent + "  Child Count: " + snapshot.getChildCount(i));
     }
 
     private void vibrate() {
@@ -889,7 +609,34 @@ public class AccessibilityKeyDetector extends AccessibilityService {
 
     @Override
     public void onAccessibilityEvent(AccessibilityEvent event) {
-        // Not used
+        if (eventSubscription == null) {
+            return;
+        }
+        eventSubscription.onReceived();
+        // Only Instagram's events are subscribed to while a reveal runs
+        instagramLauncher.onWindowEvent(System.nanoTime());
+        if (revealFlow.getState() != FlowEngine.State.RUNNING) {
+            return;
+        }
+        int type = event.getEventType();
+        if (type == AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED) {
+            // A new window is worth looking at right away; it also covers pending content changes
+            if (contentChangePending) {
+                choreographer.removeFrameCallback(contentChangeFrame);
+                contentChangePending = false;
+            }
+            eventSubscription.onProcessed();
+            evaluateRevealFlow(true);
+        } else if (type == AccessibilityEvent.TYPE_WINDOW_CONTENT_CHANGED && !contentChangePending) {
+            contentChangePending = true;
+            choreographer.postFrameCallback(contentChangeFrame);
+        }
+    }
+
+    @Override
+    public void onDestroy() {
+        unregisterReceiver(calibrationReceiver);
+        super.onDestroy();
     }
 
     @Override
@@ -0,0 +1,204 @@
+package com.example.magic_insta;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Where each archived photo sits in Instagram's archive grid, recorded once by a calibration
+ * walk so the reveal can scroll straight to its photo instead of searching for it.
+ *
+ * Photos are numbered in grid order from 0. Each is identified by its content description and
+ * the number of forward scrolls of the grid after which it first showed up. Saved to
+ * {@link #FILE_NAME} in the app's files directory as a header line followed by one
+ * {@code <index><TAB><scrolls><TAB><description>} line per photo. Pure Java.
+ */
+public final class ArchiveLayout {
+    public static final String FILE_NAME = "archive_layout.txt";
+    private static final String HEADER = "archive-layout 1";
+
+    private static final ArchiveLayout EMPTY = new ArchiveLayout(Collections.emptyList());
+
+    private final List<Entry> entries;
+
+    public static class Entry {
+        public final int index;
+        public final int scrolls;
+        public final String description;
+
+        public Entry(int index, int scrolls, String description) {
+            this.index = index;
+            this.scrolls = scrolls;
+            this.description = description;
+        }
+
+        @Override
+        public String toString() {
+            return "#" + index + " '" + description + "' after " + scrolls + " scroll(s)";
+        }
+    }
+
+    /**
+     * Collects the photos of each grid page during calibration.
+     */
+    public static class Recorder {
+        private final List<Entry> entries = new ArrayList<>();
+        private final Set<String> seen = new HashSet<>();
+        private final Set<String> previousPage = new HashSet<>();
+        private int scrolls;
+        private String duplicate;
+
+        /**
+         * Records the photos not seen on earlier pages. Consecutive pages overlap, so a photo
+         * of the previous page is not new. A description repeated on one page, or seen again
+         * after a page without it, belongs to a second photo that the walk could not tell
+         * apart from the first; the page is then not recorded and {@link #getDuplicate()}
+         * returns the description.
+         *
+         * @return how many new photos the page had
+         */
+        public int addPage(List<String> descriptions) {
+            Set<String> page = new HashSet<>();
+            for (String description : descriptions) {
+                if (description == null) continue;
+                if (!page.add(description) || (seen.contains(description) && !previousPage.contains(description))) {
+                    duplicate = description;
+                    return 0;
+                }
+            }
+            int added = 0;
+            for (String description : descriptions) {
+                if (description != null && seen.add(description)) {
+                    entries.add(new Entry(entries.size(), scrolls, description));
+                    added++;
+                }
+            }
+            previousPage.clear();
+            previousPage.addAll(page);
+            return added;
+        }
+
+        /**
+         * A description shared by two photos, or null. The layout is not usable once set.
+         */
+        public String getDuplicate() {
+            return duplicate;
+        }
+
+        /**
+         * Call after each forward scroll of the grid.
+         */
+        public void onScrolled() {
+            scrolls++;
+        }
+
+        /**
+         * Photos recorded so far.
+         */
+        public int size() {
+            return entries.size();
+        }
+
+        public void reset() {
+            entries.clear();
+            seen.clear();
+            previousPage.clear();
+            scrolls = 0;
+            duplicate = null;
+        }
+
+        public ArchiveLayout build() {
+            return new ArchiveLayout(new ArrayList<>(entries));
+        }
+    }
+
+    private ArchiveLayout(List<Entry> entries) {
+        this.entries = entries;
+    }
+
+    public static ArchiveLayout empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Loads a saved layout, or returns an empty one if none was saved.
+     */
+    public static ArchiveLayout load(File file) throws IOException {
+        if (!file.exists()) {
+            return EMPTY;
+        }
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            return parse(reader);
+        }
+    }
+
+    public static ArchiveLayout parse(Reader reader) throws IOException {
+        BufferedReader lines = new BufferedReader(reader);
+        if (!HEADER.equals(lines.readLine())) {
+            throw new IOException("Not an archive layout");
+        }
+        List<Entry> entries = new ArrayList<>();
+        String line;
+        while ((line = lines.readLine()) != null) {
+            if (line.isEmpty()) continue;
+            String[] fields = line.split("\t", 3);
+            try {
+                int index = Integer.parseInt(fields[0]);
+                if (fields.length < 3 || index != entries.size()) {
+                    throw new IOException("Bad archive layout line '" + line + "'");
+                }
+                entries.add(new Entry(index, Integer.parseInt(fields[1]), fields[2]));
+            } catch (NumberFormatException e) {
+                throw new IOException("Bad archive layout line '" + line + "'", e);
+            }
+        }
+        return new ArchiveLayout(entries);
+    }
+
+    /**
+     * Writes the layout to a temporary file and moves it over {@code file}, so a failed save
+     * leaves the previous layout in place.
+     */
+    public void save(File file) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8)) {
+            write(writer);
+        }
+        if (!temp.renameTo(file)) {
+            throw new IOException("Could not replace " + file);
+        }
+    }
+
+    public void write(Writer writer) throws IOException {
+        writer.write(HEADER);
+        writer.write('\n');
+        for (Entry entry : entries) {
+            // Descriptions are single-line labels, but keep the format line-based regardless
+            writer.write(entry.index + "\t" + entry.scrolls + "\t"
+                    + entry.description.replace('\n', ' ').replace('\r', ' ') + "\n");
+        }
+    }
+
+    /**
+     * The photo at grid position {@code index}, or null if it was not recorded.
+     */
+    public Entry get(int index) {
+        return index >= 0 && index < entries.size() ? entries.get(index) : null;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+}
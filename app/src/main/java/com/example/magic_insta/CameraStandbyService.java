@@ -0,0 +1,165 @@
+package com.example.magic_insta;
+
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.Service;
+import android.content.Intent;
+import android.content.pm.ServiceInfo;
+import android.os.Binder;
+import android.os.Build;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the front camera and the card analysis running between fake lock screens, so arming
+ * the trick attaches to frames that are already flowing instead of opening the camera.
+ *
+ * A foreground service of type camera, which {@link FakeLockActivity} starts while it is in the
+ * foreground; that lets it keep the camera while other apps are. The activity binds in
+ * {@code onResume} and {@link #arm}s the analysis; when it unbinds, the analysis is paused and
+ * frames are released unread, so nothing is detected while Instagram is up. After
+ * {@link #STANDBY_TIMEOUT_MS} without an attached activity the service closes the camera and
+ * stops. If it cannot become a camera foreground service it stops right away without opening
+ * the camera, and {@link #arm} returns false.
+ *
+ * The time from arming to the first analyzed frame is recorded separately for cold arms, which
+ * wait for the camera to open, and warm ones.
+ */
+public class CameraStandbyService extends Service {
+    private static final String TAG = "CameraStandby";
+    private static final String CHANNEL_ID = "camera_standby";
+    private static final int NOTIFICATION_ID = 1;
+    // Analysis resolution; the card only needs to be legible, not sharp
+    static final int ANALYSIS_WIDTH = 640;
+    static final int ANALYSIS_HEIGHT = 480;
+    private static final long STANDBY_TIMEOUT_MS = TimeUnit.MINUTES.toMillis(10);
+    // Kept across service restarts: most services see one cold arm
+    private static final LatencyRecorder coldArmLatency = new LatencyRecorder("First frame, cold arm", 16);
+    private static final LatencyRecorder warmArmLatency = new LatencyRecorder("First frame, warm arm", 64);
+
+    public class LocalBinder extends Binder {
+        public CameraStandbyService getService() {
+            return CameraStandbyService.this;
+        }
+    }
+
+    private final LocalBinder binder = new LocalBinder();
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable standbyTimeout = () -> {
+        Log.d(TAG, "Standby timed out, closing the camera");
+        stopSelf();
+    };
+    private MotionAnalyzer analyzer;
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        try {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+                startForeground(NOTIFICATION_ID, buildNotification(), ServiceInfo.FOREGROUND_SERVICE_TYPE_CAMERA);
+            } else {
+                startForeground(NOTIFICATION_ID, buildNotification());
+            }
+        } catch (RuntimeException e) {
+            // No camera permission, or not allowed to start from the background; arm() fails
+            Log.e(TAG, "Cannot run as a camera foreground service", e);
+            stopSelf();
+            return;
+        }
+        analyzer = new MotionAnalyzer(this, new CameraXFrameSource(this, ANALYSIS_WIDTH, ANALYSIS_HEIGHT), false);
+        analyzer.start();
+        Log.d(TAG, "Camera standby started");
+    }
+
+    private Notification buildNotification() {
+        Notification.Builder builder;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            NotificationManager manager = (NotificationManager) getSystemService(NOTIFICATION_SERVICE);
+            manager.createNotificationChannel(new NotificationChannel(CHANNEL_ID,
+                    getString(R.string.camera_standby_channel), NotificationManager.IMPORTANCE_MIN));
+            builder = new Notification.Builder(this, CHANNEL_ID);
+        } else {
+            builder = new Notification.Builder(this).setPriority(Notification.PRIORITY_MIN);
+        }
+        return builder.setSmallIcon(R.drawable.ic_notification)
+                .setContentTitle(getString(R.string.camera_standby_title))
+                .setOngoing(true)
+                .build();
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        // Without an activity in the foreground a restarted service could not open the camera
+        return START_NOT_STICKY;
+    }
+
+    /**
+     * Starts analyzing frames for a card. The first frame is timed from {@code nowNanos}.
+     *
+     * @return false if the service could not start the camera
+     */
+    public boolean arm(long nowNanos) {
+        if (analyzer == null) {
+            return false;
+        }
+        // The pooled connection from the last arm has likely been dropped by now; reopen it
+        // while the card is shown
+        CardDetectionUploader.warmUp();
+        boolean warm = analyzer.getFrameCount() > 0;
+        analyzer.arm(nowNanos, warm ? warmArmLatency : coldArmLatency);
+        Log.d(TAG, (warm ? "Warm" : "Cold") + " arm");
+        return true;
+    }
+
+    /**
+     * Stops analyzing; the camera stays open.
+     */
+    public void disarm() {
+        if (analyzer != null) {
+            analyzer.pause();
+        }
+    }
+
+    public static LatencyRecorder getColdArmLatency() {
+        return coldArmLatency;
+    }
+
+    public static LatencyRecorder getWarmArmLatency() {
+        return warmArmLatency;
+    }
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        handler.removeCallbacks(standbyTimeout);
+        return binder;
+    }
+
+    @Override
+    public void onRebind(Intent intent) {
+        handler.removeCallbacks(standbyTimeout);
+    }
+
+    @Override
+    public boolean onUnbind(Intent intent) {
+        disarm();
+        handler.postDelayed(standbyTimeout, STANDBY_TIMEOUT_MS);
+        // Get onRebind for the next activity
+        return true;
+    }
+
+    @Override
+    public void onDestroy() {
+        handler.removeCallbacks(standbyTimeout);
+        if (analyzer != null) {
+            analyzer.stop();
+        }
+        Log.d(TAG, coldArmLatency.toString());
+        Log.d(TAG, warmArmLatency.toString());
+        super.onDestroy();
+    }
+}
@@ -0,0 +1,153 @@
+package com.example.magic_insta;
+
+import android.content.Context;
+import android.util.Log;
+import android.util.Size;
+
+import androidx.annotation.NonNull;
+import androidx.camera.core.CameraSelector;
+import androidx.camera.core.ImageAnalysis;
+import androidx.camera.core.ImageProxy;
+import androidx.camera.core.resolutionselector.ResolutionSelector;
+import androidx.camera.core.resolutionselector.ResolutionStrategy;
+import androidx.camera.lifecycle.ProcessCameraProvider;
+import androidx.core.content.ContextCompat;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleOwner;
+import androidx.lifecycle.LifecycleRegistry;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * {@link FrameSource} backed by CameraX {@link ImageAnalysis}.
+ *
+ * Images arrive as YUV_420_888 with {@link ImageAnalysis#STRATEGY_KEEP_ONLY_LATEST}, so at most
+ * one image is in flight and a single {@link Frame} wraps its planes without copying. Releasing
+ * the frame closes the image, which lets CameraX deliver the next one.
+ *
+ * The source is its own {@link LifecycleOwner}, so it works from any context, not just
+ * lifecycle-aware activities.
+ */
+public class CameraXFrameSource implements FrameSource, ImageAnalysis.Analyzer, LifecycleOwner, Frame.Releaser {
+    private static final String TAG = "CameraXFrameSource";
+
+    private final Context context;
+    private final Size targetResolution;
+    private final LifecycleRegistry lifecycle = new LifecycleRegistry(this);
+    private final Frame frame = new Frame(this);
+
+    private ExecutorService analysisExecutor;
+    private ProcessCameraProvider cameraProvider;
+    private ImageAnalysis imageAnalysis;
+    private ImageProxy currentImage;
+    private volatile Listener listener;
+
+    public CameraXFrameSource(Context context, int targetWidth, int targetHeight) {
+        this.context = context.getApplicationContext();
+        this.targetResolution = new Size(targetWidth, targetHeight);
+        lifecycle.setCurrentState(Lifecycle.State.CREATED);
+    }
+
+    @NonNull
+    @Override
+    public Lifecycle getLifecycle() {
+        return lifecycle;
+    }
+
+    /**
+     * Must be called on the main thread.
+     */
+    @Override
+    public void start(Listener listener) {
+        if (analysisExecutor != null) return;
+        this.listener = listener;
+        analysisExecutor = Executors.newSingleThreadExecutor(r -> new Thread(r, "CameraXAnalysis"));
+
+        ListenableFuture<ProcessCameraProvider> providerFuture = ProcessCameraProvider.getInstance(context);
+        providerFuture.addListener(() -> {
+            try {
+                cameraProvider = providerFuture.get();
+                bindAnalysis();
+            } catch (Exception e) {
+                Log.e(TAG, "Failed to get camera provider", e);
+            }
+        }, ContextCompat.getMainExecutor(context));
+    }
+
+    private void bindAnalysis() {
+        if (analysisExecutor == null) return; // stopped before the provider was ready
+
+        ResolutionSelector resolutionSelector = new ResolutionSelector.Builder()
+                .setResolutionStrategy(new ResolutionStrategy(targetResolution,
+                        ResolutionStrategy.FALLBACK_RULE_CLOSEST_LOWER_THEN_HIGHER))
+                .build();
+        imageAnalysis = new ImageAnalysis.Builder()
+                .setResolutionSelector(resolutionSelector)
+                .setBackpressureStrategy(ImageAnalysis.STRATEGY_KEEP_ONLY_LATEST)
+                .setOutputImageFormat(ImageAnalysis.OUTPUT_IMAGE_FORMAT_YUV_420_888)
+                .build();
+        imageAnalysis.setAnalyzer(analysisExecutor, this);
+
+        cameraProvider.unbindAll();
+        cameraProvider.bindToLifecycle(this, CameraSelector.DEFAULT_FRONT_CAMERA, imageAnalysis);
+        lifecycle.setCurrentState(Lifecycle.State.RESUMED);
+        Log.d(TAG, "Image analysis bound, target " + targetResolution);
+    }
+
+    @Override
+    public void analyze(@NonNull ImageProxy image) {
+        Listener current = listener;
+        if (current == null) {
+            image.close();
+            return;
+        }
+
+        ImageProxy.PlaneProxy[] planes = image.getPlanes();
+        currentImage = image;
+        frame.setPlanes(image.getWidth(), image.getHeight(),
+                        planes[0].getBuffer(), planes[0].getRowStride(),
+                        planes[1].getBuffer(), planes[2].getBuffer(),
+                        planes[1].getRowStride(), planes[1].getPixelStride())
+                .setTimestampNanos(System.nanoTime());
+        current.onFrame(frame);
+    }
+
+    @Override
+    public void onRelease(Frame released) {
+        ImageProxy image = currentImage;
+        currentImage = null;
+        if (image != null) {
+            image.close();
+        }
+    }
+
+    /**
+     * Must be called on the main thread.
+     */
+    @Override
+    public void stop() {
+        if (analysisExecutor == null) return;
+        listener = null;
+
+        if (imageAnalysis != null) {
+            imageAnalysis.clearAnalyzer();
+        }
+        if (cameraProvider != null) {
+            cameraProvider.unbindAll();
+        }
+        lifecycle.setCurrentState(Lifecycle.State.CREATED);
+        analysisExecutor.shutdown();
+        analysisExecutor = null;
+    }
+
+    /**
+     * CameraX drops stale images internally and does not report how many.
+     */
+    @Override
+    public long getSkippedFrameCount() {
+        return 0;
+    }
+}
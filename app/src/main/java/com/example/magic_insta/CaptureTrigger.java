@@ -0,0 +1,76 @@
+package com.example.magic_insta;
+
+/**
+ * Decides which preview frame to capture after motion.
+ *
+ * Motion starts when the global score or enough blocks exceed their thresholds. The trigger then
+ * waits for {@code stableFrames} consecutive frames below {@code stableThreshold}, i.e. the card
+ * has stopped moving, and fires on the last of them. If the scene never settles the trigger
+ * fires anyway once {@code settleTimeoutNanos} have passed since motion started.
+ */
+public class CaptureTrigger {
+    private final float motionThreshold;
+    private final float blockThreshold;
+    private final int minActiveBlocks;
+    private final float stableThreshold;
+    private final int stableFrames;
+    private final long settleTimeoutNanos;
+
+    private boolean settling = false;
+    private int stableCount = 0;
+    private long motionStartNanos = 0;
+
+    public CaptureTrigger(float motionThreshold, float blockThreshold, int minActiveBlocks,
+                          float stableThreshold, int stableFrames, long settleTimeoutNanos) {
+        this.motionThreshold = motionThreshold;
+        this.blockThreshold = blockThreshold;
+        this.minActiveBlocks = minActiveBlocks;
+        this.stableThreshold = stableThreshold;
+        this.stableFrames = stableFrames;
+        this.settleTimeoutNanos = settleTimeoutNanos;
+    }
+
+    /**
+     * Feeds the result of {@link MotionDetector#process} for one frame.
+     *
+     * @return true if this frame is the one to capture
+     */
+    public boolean onFrame(MotionDetector detector, long nowNanos) {
+        float score = detector.getLastScore();
+
+        if (!settling) {
+            if (score > motionThreshold || detector.countActiveBlocks(blockThreshold) >= minActiveBlocks) {
+                settling = true;
+                stableCount = 0;
+                motionStartNanos = nowNanos;
+            }
+            return false;
+        }
+
+        stableCount = score < stableThreshold ? stableCount + 1 : 0;
+        if (stableCount >= stableFrames || nowNanos - motionStartNanos >= settleTimeoutNanos) {
+            settling = false;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * True between motion and capture.
+     */
+    public boolean isSettling() {
+        return settling;
+    }
+
+    /**
+     * When the motion that led to the latest capture started.
+     */
+    public long getMotionStartNanos() {
+        return motionStartNanos;
+    }
+
+    public void reset() {
+        settling = false;
+        stableCount = 0;
+    }
+}
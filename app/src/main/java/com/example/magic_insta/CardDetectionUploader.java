@@ -1,15 +1,9 @@
 package com.example.magic_insta;
 
 import android.graphics.Bitmap;
-import android.util.Base64;
 import android.util.Log;
 import org.json.JSONArray;
 import org.json.JSONObject;
-import java.io.ByteArrayOutputStream;
-import java.io.OutputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.util.Scanner;
 
 public class CardDetectionUploader {
     private static final String TAG = "CardDetection";
@@ -30,37 +24,29 @@ public class CardDetectionUploader {
     }
     
     public static DetectionResult detectCard(Bitmap bitmap) throws Exception {
-        String fullUrl = API_URL + "?api_key=" + API_KEY;
-        URL url = new URL(fullUrl);
-        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-
-        conn.setRequestMethod("POST");
-        conn.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
-        conn.setDoOutput(true);
+        // Compress straight into the base64 request body
+        return parseResponse(post(conn -> UploadBodyWriter.writeBase64(conn, bitmap, 90, null, null)));
+    }
 
-        // Convert bitmap to base64 (without data URI prefix)
-        String base64Image = encodeToBase64(bitmap);
+    public static DetectionResult detectCard(byte[] jpeg) throws Exception {
+        // Send the base64 image directly as body (without data URI prefix)
+        return parseResponse(post(conn -> UploadBodyWriter.writeBase64(conn, jpeg)));
+    }
 
-        // Send the base64 image directly as body
-        OutputStream os = conn.getOutputStream();
-        os.write(base64Image.getBytes());
-        os.flush();
-        os.close();
+    /**
+     * Opens a pooled connection to the detection API so the first reveal skips the handshake.
+     */
+    public static void warmUp() {
+        HttpTransport.get().warmUp(API_URL);
+    }
 
-        // Read response
-        Scanner in = new Scanner(conn.getInputStream());
-        StringBuilder result = new StringBuilder();
-        while (in.hasNextLine()) {
-            result.append(in.nextLine());
-        }
-        in.close();
-        
-        String response = result.toString();
+    private static String post(HttpTransport.Body body) throws Exception {
+        String fullUrl = API_URL + "?api_key=" + API_KEY;
+        String response = HttpTransport.get().post(fullUrl, "application/x-www-form-urlencoded", body);
         Log.d(TAG, "API Response: " + response);
-        
-        return parseResponse(response);
+        return response;
     }
-    
+
     private static DetectionResult parseResponse(String jsonResponse) throws Exception {
         JSONObject jsonObject = new JSONObject(jsonResponse);
         JSONArray predictions = jsonObject.getJSONArray("predictions");
@@ -85,11 +71,4 @@ public class CardDetectionUploader {
         Log.d(TAG, "Cards detected but confidence below threshold");
         return new DetectionResult(false, null, 0.0);
     }
-
-    private static String encodeToBase64(Bitmap bitmap) {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        bitmap.compress(Bitmap.CompressFormat.JPEG, 90, baos);
-        byte[] imageBytes = baos.toByteArray();
-        return Base64.encodeToString(imageBytes, Base64.NO_WRAP);
-    }
 }
\ No newline at end of file
@@ -0,0 +1,18 @@
+package com.example.magic_insta;
+
+/**
+ * Finds a playing card in a captured image.
+ *
+ * Implementations return a {@link CardDetectionUploader.DetectionResult} with hasCard set only
+ * when the card is recognized with enough confidence, and throw when the detector itself fails
+ * (network error, missing model), so callers can tell "no card" from "could not tell".
+ */
+public interface CardDetector {
+
+    CardDetectionUploader.DetectionResult detect(CardImage image) throws Exception;
+
+    /**
+     * Short name for logs.
+     */
+    String getName();
+}
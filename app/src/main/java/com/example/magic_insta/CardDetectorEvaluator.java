@@ -0,0 +1,140 @@
+package com.example.magic_insta;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Measures a {@link CardDetector} on a labelled set of captured images: accuracy, misses and
+ * per-image latency. Pure Java, so it runs on the JVM with a fake or remote-backed detector and
+ * on a device against the bundled model.
+ *
+ * The set is a directory with one subdirectory per class name, each holding raw NV21 captures
+ * named {@code <anything>_<width>x<height>.nv21}. Images of the {@code none} class must not be
+ * reported as a card.
+ */
+public final class CardDetectorEvaluator {
+    public static final String NO_CARD_LABEL = TfliteCardDetector.NO_CARD_LABEL;
+    private static final Pattern SIZE = Pattern.compile("_(\\d+)x(\\d+)\\.nv21$");
+
+    private CardDetectorEvaluator() {
+    }
+
+    public static class Sample {
+        public final String label;
+        public final String name;
+        public final CardImage image;
+
+        public Sample(String label, String name, CardImage image) {
+            this.label = label;
+            this.name = name;
+            this.image = image;
+        }
+    }
+
+    public static class Report {
+        public final String detectorName;
+        public int total;
+        public int correct;
+        // A card was present but not reported
+        public int missed;
+        // A card was reported with the wrong class, or reported where there was none
+        public int wrong;
+        public int errors;
+        public final LatencyRecorder latency;
+
+        Report(String detectorName, int samples) {
+            this.detectorName = detectorName;
+            this.latency = new LatencyRecorder(detectorName, Math.max(1, samples));
+        }
+
+        public double getAccuracy() {
+            return total == 0 ? 0 : (double) correct / total;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%s: accuracy %.3f (%d/%d), missed=%d, wrong=%d, errors=%d, %s",
+                    detectorName, getAccuracy(), correct, total, missed, wrong, errors, latency);
+        }
+    }
+
+    /**
+     * Loads every {@code .nv21} capture under {@code root}, labelled by its directory name.
+     */
+    public static List<Sample> load(File root) throws IOException {
+        File[] classDirs = root.listFiles(File::isDirectory);
+        if (classDirs == null) {
+            throw new IOException("Not a directory: " + root);
+        }
+        Arrays.sort(classDirs);
+
+        List<Sample> samples = new ArrayList<>();
+        for (File classDir : classDirs) {
+            File[] files = classDir.listFiles((dir, name) -> name.endsWith(".nv21"));
+            if (files == null) continue;
+            Arrays.sort(files);
+            for (File file : files) {
+                Matcher matcher = SIZE.matcher(file.getName());
+                if (!matcher.find()) {
+                    throw new IOException("No <width>x<height> in file name: " + file);
+                }
+                int width = Integer.parseInt(matcher.group(1));
+                int height = Integer.parseInt(matcher.group(2));
+                byte[] nv21 = Files.readAllBytes(file.toPath());
+                samples.add(new Sample(classDir.getName(), file.getName(), new CardImage(nv21, width, height, null)));
+            }
+        }
+        return samples;
+    }
+
+    /**
+     * Runs the detector over all samples after {@code warmupRuns} untimed passes on the first one.
+     */
+    public static Report evaluate(CardDetector detector, List<Sample> samples, int warmupRuns) {
+        Report report = new Report(detector.getName(), samples.size());
+        if (!samples.isEmpty()) {
+            for (int i = 0; i < warmupRuns; i++) {
+                try {
+                    detector.detect(samples.get(0).image);
+                } catch (Exception ignored) {
+                    // Counted in the timed pass
+                }
+            }
+        }
+
+        for (Sample sample : samples) {
+            report.total++;
+            CardDetectionUploader.DetectionResult result;
+            long start = System.nanoTime();
+            try {
+                result = detector.detect(sample.image);
+            } catch (Exception e) {
+                report.errors++;
+                continue;
+            } finally {
+                report.latency.record(System.nanoTime() - start);
+            }
+
+            boolean expectCard = !NO_CARD_LABEL.equalsIgnoreCase(sample.label);
+            if (!result.hasCard) {
+                if (expectCard) {
+                    report.missed++;
+                } else {
+                    report.correct++;
+                }
+            } else if (expectCard && sample.label.equalsIgnoreCase(result.cardClass)) {
+                report.correct++;
+            } else {
+                report.wrong++;
+            }
+        }
+        return report;
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.magic_insta;
+
+import android.content.Context;
+import android.util.Log;
+
+/**
+ * Picks the card detector for this install: the on-device model when its assets are bundled,
+ * with the remote API as fallback, otherwise the remote API alone. The model is loaded once per
+ * process and shared.
+ */
+public final class CardDetectors {
+    private static final String TAG = "CardDetectors";
+    private static CardDetector shared;
+
+    private CardDetectors() {
+    }
+
+    /**
+     * Returns the shared detector, loading the model on first use. Call off the main thread.
+     */
+    public static synchronized CardDetector get(Context context) {
+        if (shared == null) {
+            long start = System.nanoTime();
+            shared = create(context.getApplicationContext());
+            Log.d(TAG, "Using " + shared.getName() + " detection, ready in "
+                    + (System.nanoTime() - start) / 1000000 + " ms");
+        }
+        return shared;
+    }
+
+    private static CardDetector create(Context context) {
+        RemoteCardDetector remote = new RemoteCardDetector();
+        if (!TfliteCardDetector.isAvailable(context)) {
+            Log.d(TAG, "No bundled card model, using remote detection");
+            return remote;
+        }
+        try {
+            return new FallbackCardDetector(new TfliteCardDetector(context), remote);
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to load card model, using remote detection", e);
+            return remote;
+        }
+    }
+}
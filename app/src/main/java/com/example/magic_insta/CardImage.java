@@ -0,0 +1,81 @@
+package com.example.magic_insta;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A captured card image as the detectors see it: the downscaled NV21 pixels for on-device
+ * inference, plus the JPEG encoding of the same pixels for remote detection.
+ */
+public class CardImage {
+    private final byte[] nv21;
+    private final int width;
+    private final int height;
+    private final byte[] jpeg;
+
+    /**
+     * @param jpeg JPEG encoding of the same image, or null when only local detection is used
+     */
+    public CardImage(byte[] nv21, int width, int height, byte[] jpeg) {
+        if (nv21.length < width * height * 3 / 2) {
+            throw new IllegalArgumentException("NV21 buffer too small for " + width + "x" + height);
+        }
+        this.nv21 = nv21;
+        this.width = width;
+        this.height = height;
+        this.jpeg = jpeg;
+    }
+
+    public byte[] getNv21() {
+        return nv21;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public byte[] getJpeg() {
+        return jpeg;
+    }
+
+    /**
+     * Writes the image resized to outWidth x outHeight as interleaved RGB into {@code out},
+     * either as unsigned bytes or as floats in [0, 1], which is what image classifiers expect.
+     */
+    public void toRgb(int outWidth, int outHeight, ByteBuffer out, boolean asFloat) {
+        int chromaStart = width * height;
+        for (int y = 0; y < outHeight; y++) {
+            int srcY = y * height / outHeight;
+            int lumaRow = srcY * width;
+            int chromaRow = chromaStart + (srcY / 2) * width;
+            for (int x = 0; x < outWidth; x++) {
+                int srcX = x * width / outWidth;
+                int luma = nv21[lumaRow + srcX] & 0xFF;
+                int chroma = chromaRow + (srcX & ~1);
+                int v = (nv21[chroma] & 0xFF) - 128;
+                int u = (nv21[chroma + 1] & 0xFF) - 128;
+
+                // BT.601 full range
+                int r = clamp(luma + ((359 * v) >> 8));
+                int g = clamp(luma - ((88 * u + 183 * v) >> 8));
+                int b = clamp(luma + ((454 * u) >> 8));
+                if (asFloat) {
+                    out.putFloat(r / 255f);
+                    out.putFloat(g / 255f);
+                    out.putFloat(b / 255f);
+                } else {
+                    out.put((byte) r);
+                    out.put((byte) g);
+                    out.put((byte) b);
+                }
+            }
+        }
+    }
+
+    private static int clamp(int value) {
+        return value < 0 ? 0 : (value > 255 ? 255 : value);
+    }
+}
@@ -0,0 +1,278 @@
+package com.example.magic_insta;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs card detection on one or more candidate images concurrently and returns the most
+ * confident answer within a deadline.
+ *
+ * Each candidate gets one request. If it has not answered after the hedge delay (the p95 of
+ * recent request latencies, never below {@code minHedgeDelayNanos}) a second, hedged request for
+ * the same image is sent, and whichever answers first wins; the other is cancelled. A "no card"
+ * answer is final for its candidate. Only failures are retried, after an exponential backoff
+ * with full jitter. When every candidate has answered, or the deadline passes, the best card
+ * found so far is returned and requests still running are cancelled.
+ *
+ * The hedge delay is measured over every request sent, not just the winners. A request that is
+ * cancelled, because its twin answered first or the deadline passed, is recorded with the time
+ * it had run; otherwise a primary that is always slower than its hedge would never be counted
+ * and the delay would shrink to the hedge's latency.
+ *
+ * The calling thread coordinates; requests run on the given executor.
+ */
+public class DetectionScheduler {
+    // Latency samples needed before the hedge delay follows the measured p95
+    private static final int MIN_LATENCY_SAMPLES = 5;
+
+    private final ExecutorService executor;
+    private final long deadlineNanos;
+    private final long initialHedgeDelayNanos;
+    private final long minHedgeDelayNanos;
+    private final long backoffBaseNanos;
+    private final long backoffMaxNanos;
+    private final Random random;
+    private final LatencyRecorder requestLatency = new LatencyRecorder("Detection request", 64);
+
+    public static class Result {
+        // Most confident card, or a no-card result
+        public final CardDetectionUploader.DetectionResult best;
+        // Index of the candidate that gave {@link #best}, or -1
+        public final int candidate;
+        public final boolean timedOut;
+        public final int requests;
+        public final int hedges;
+        public final int retries;
+        public final int errors;
+        public final long elapsedNanos;
+
+        Result(CardDetectionUploader.DetectionResult best, int candidate, boolean timedOut,
+               int requests, int hedges, int retries, int errors, long elapsedNanos) {
+            this.best = best;
+            this.candidate = candidate;
+            this.timedOut = timedOut;
+            this.requests = requests;
+            this.hedges = hedges;
+            this.retries = retries;
+            this.errors = errors;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%s in %.1f ms (candidate %d, requests=%d, hedges=%d, retries=%d, errors=%d%s)",
+                    best.hasCard ? best.cardClass + " " + best.confidence : "no card",
+                    elapsedNanos / 1e6, candidate, requests, hedges, retries, errors, timedOut ? ", timed out" : "");
+        }
+    }
+
+    private static class Slot {
+        final CardImage image;
+        // Requests still running, with the time each was submitted
+        final Map<Future<?>, Long> inFlight = new HashMap<>();
+        long sentAt;
+        long retryAt;
+        int failures;
+        boolean hedged;
+        boolean done;
+        CardDetectionUploader.DetectionResult result;
+
+        Slot(CardImage image) {
+            this.image = image;
+        }
+    }
+
+    private static class Outcome {
+        final Slot slot;
+        final Future<?> future;
+        final CardDetectionUploader.DetectionResult result;
+        final Exception error;
+        final long nanos;
+
+        Outcome(Slot slot, Future<?> future, CardDetectionUploader.DetectionResult result, Exception error, long nanos) {
+            this.slot = slot;
+            this.future = future;
+            this.result = result;
+            this.error = error;
+            this.nanos = nanos;
+        }
+    }
+
+    public DetectionScheduler(ExecutorService executor, long deadlineNanos, long initialHedgeDelayNanos,
+                              long minHedgeDelayNanos, long backoffBaseNanos, long backoffMaxNanos, Random random) {
+        this.executor = executor;
+        this.deadlineNanos = deadlineNanos;
+        this.initialHedgeDelayNanos = initialHedgeDelayNanos;
+        this.minHedgeDelayNanos = minHedgeDelayNanos;
+        this.backoffBaseNanos = backoffBaseNanos;
+        this.backoffMaxNanos = backoffMaxNanos;
+        this.random = random;
+    }
+
+    /**
+     * Delay after which an unanswered request is hedged.
+     */
+    public long getHedgeDelayNanos() {
+        if (requestLatency.getCount() < MIN_LATENCY_SAMPLES) {
+            return initialHedgeDelayNanos;
+        }
+        return Math.max(minHedgeDelayNanos, requestLatency.percentile(95));
+    }
+
+    /**
+     * Latency of answered requests, and time run by cancelled ones, which drives the hedge delay.
+     */
+    public LatencyRecorder getRequestLatency() {
+        return requestLatency;
+    }
+
+    public Result detect(CardDetector detector, List<CardImage> candidates) throws InterruptedException {
+        long start = System.nanoTime();
+        long deadline = start + deadlineNanos;
+        BlockingQueue<Outcome> outcomes = new LinkedBlockingQueue<>();
+        List<Slot> slots = new ArrayList<>();
+        int requests = 0;
+        int hedges = 0;
+        int retries = 0;
+        int errors = 0;
+
+        for (CardImage image : candidates) {
+            Slot slot = new Slot(image);
+            slots.add(slot);
+            send(detector, slot, outcomes, start);
+            requests++;
+        }
+
+        int pending = slots.size();
+        boolean timedOut = false;
+        try {
+            while (pending > 0) {
+                long now = System.nanoTime();
+                if (now >= deadline) {
+                    timedOut = true;
+                    break;
+                }
+
+                // Fire due hedges and retries, and find the next timer
+                long hedgeDelay = getHedgeDelayNanos();
+                long nextTimer = deadline;
+                for (Slot slot : slots) {
+                    if (slot.done) continue;
+                    if (slot.inFlight.isEmpty()) {
+                        if (slot.retryAt <= now) {
+                            send(detector, slot, outcomes, now);
+                            requests++;
+                            retries++;
+                        } else {
+                            nextTimer = Math.min(nextTimer, slot.retryAt);
+                            continue;
+                        }
+                    }
+                    if (!slot.hedged) {
+                        long hedgeAt = slot.sentAt + hedgeDelay;
+                        if (hedgeAt <= now) {
+                            slot.hedged = true;
+                            send(detector, slot, outcomes, slot.sentAt);
+                            requests++;
+                            hedges++;
+                        } else {
+                            nextTimer = Math.min(nextTimer, hedgeAt);
+                        }
+                    }
+                }
+
+                Outcome outcome = outcomes.poll(Math.max(0, nextTimer - System.nanoTime()), TimeUnit.NANOSECONDS);
+                if (outcome == null) continue;
+                Slot slot = outcome.slot;
+                slot.inFlight.remove(outcome.future);
+                if (slot.done) continue;
+
+                if (outcome.error == null) {
+                    requestLatency.record(outcome.nanos);
+                    slot.result = outcome.result;
+                    slot.done = true;
+                    pending--;
+                    cancelAll(slot, System.nanoTime());
+                } else {
+                    errors++;
+                    slot.failures++;
+                    if (slot.inFlight.isEmpty()) {
+                        slot.retryAt = System.nanoTime() + backoff(slot.failures);
+                        slot.hedged = false;
+                    }
+                }
+            }
+        } finally {
+            long now = System.nanoTime();
+            for (Slot slot : slots) {
+                cancelAll(slot, now);
+            }
+        }
+
+        CardDetectionUploader.DetectionResult best = new CardDetectionUploader.DetectionResult(false, null, 0.0);
+        int bestIndex = -1;
+        for (int i = 0; i < slots.size(); i++) {
+            CardDetectionUploader.DetectionResult result = slots.get(i).result;
+            if (result != null && result.hasCard && (!best.hasCard || result.confidence > best.confidence)) {
+                best = result;
+                bestIndex = i;
+            }
+        }
+        return new Result(best, bestIndex, timedOut, requests, hedges, retries, errors, System.nanoTime() - start);
+    }
+
+    /**
+     * Starts a request for the slot's image; {@code sentAt} is when the slot's current attempt
+     * began, which a hedge shares with the request it backs up.
+     */
+    private void send(CardDetector detector, Slot slot, BlockingQueue<Outcome> outcomes, long sentAt) {
+        slot.sentAt = sentAt;
+        Future<?>[] self = new Future<?>[1];
+        // The task may finish before submit returns, so it reports itself once the future is set
+        synchronized (self) {
+            self[0] = executor.submit(() -> {
+                long start = System.nanoTime();
+                CardDetectionUploader.DetectionResult result = null;
+                Exception error = null;
+                try {
+                    result = detector.detect(slot.image);
+                } catch (Exception e) {
+                    error = e;
+                }
+                synchronized (self) {
+                    outcomes.add(new Outcome(slot, self[0], result, error, System.nanoTime() - start));
+                }
+            });
+            slot.inFlight.put(self[0], System.nanoTime());
+        }
+    }
+
+    /**
+     * Cancels the slot's running requests, recording how long each had run as a lower bound on
+     * its latency.
+     */
+    private void cancelAll(Slot slot, long now) {
+        for (Map.Entry<Future<?>, Long> request : slot.inFlight.entrySet()) {
+            request.getKey().cancel(true);
+            requestLatency.record(now - request.getValue());
+        }
+        slot.inFlight.clear();
+    }
+
+    /**
+     * Full jitter: uniform in [0, min(max, base * 2^(failures - 1))].
+     */
+    private long backoff(int failures) {
+        long ceiling = Math.min(backoffMaxNanos, backoffBaseNanos << Math.min(failures - 1, 20));
+        return (long) (random.nextDouble() * ceiling);
+    }
+}
@@ -0,0 +1,264 @@
+package com.example.magic_insta;
+
+import java.util.Locale;
+
+/**
+ * Finds one element of a {@link NodeSnapshot} by a weighted match on several of its features,
+ * so it still resolves when one of them differs from where it was first recorded: another
+ * screen size, a changed label, a missing view id.
+ *
+ * Each feature adds its weight times how well it matches:
+ * <ul>
+ * <li>view id: full weight when equal or equal after the {@code package:id/} prefix;</li>
+ * <li>text and content description: full weight when equal ignoring case, half when contained;</li>
+ * <li>class name: full weight when equal;</li>
+ * <li>bounds: weight times the overlap (intersection over union) of the node's bounds and the
+ * expected ones, both taken relative to the snapshot's root so they scale with the screen.</li>
+ * </ul>
+ * A node that shows a label, as text or content description, none of which matches the
+ * locator's text or description scores 0: it is another element in the expected place, like a
+ * "Delete" button where "Show on profile" should be. Labels are often on a child of the
+ * clickable node, so a node without one of its own is judged by the labels under it, and one
+ * with no label anywhere below is scored on the other features.
+ *
+ * The node with the highest score at or above the minimum wins; ties go to the first in
+ * pre-order. A locator is built once and matched with a single allocation-free pass over the
+ * snapshot.
+ */
+public final class ElementLocator {
+    private final String name;
+    private final String viewId;
+    private final String viewIdSuffix;
+    private final float viewIdWeight;
+    private final String text;
+    private final float textWeight;
+    private final String description;
+    private final float descriptionWeight;
+    private final String className;
+    private final float classWeight;
+    // Expected bounds as fractions of the root's width and height
+    private final float left;
+    private final float top;
+    private final float right;
+    private final float bottom;
+    private final float boundsWeight;
+    private final boolean clickable;
+    private final float minScore;
+
+    public static class Builder {
+        private final String name;
+        private String viewId;
+        private float viewIdWeight;
+        private String text;
+        private float textWeight;
+        private String description;
+        private float descriptionWeight;
+        private String className;
+        private float classWeight;
+        private float left;
+        private float top;
+        private float right;
+        private float bottom;
+        private float boundsWeight;
+        private boolean clickable;
+        private float minScore;
+
+        private Builder(String name) {
+            this.name = name;
+        }
+
+        public Builder viewId(String viewId, float weight) {
+            this.viewId = viewId;
+            this.viewIdWeight = weight;
+            return this;
+        }
+
+        public Builder text(String text, float weight) {
+            this.text = text;
+            this.textWeight = weight;
+            return this;
+        }
+
+        public Builder description(String description, float weight) {
+            this.description = description;
+            this.descriptionWeight = weight;
+            return this;
+        }
+
+        public Builder className(String className, float weight) {
+            this.className = className;
+            this.classWeight = weight;
+            return this;
+        }
+
+        /**
+         * Expected bounds in pixels on a screen of {@code screenWidth} x {@code screenHeight},
+         * e.g. as recorded on the device the flow was written on.
+         */
+        public Builder bounds(int left, int top, int right, int bottom, int screenWidth, int screenHeight,
+                              float weight) {
+            this.left = (float) left / screenWidth;
+            this.top = (float) top / screenHeight;
+            this.right = (float) right / screenWidth;
+            this.bottom = (float) bottom / screenHeight;
+            this.boundsWeight = weight;
+            return this;
+        }
+
+        /**
+         * Only considers clickable nodes.
+         */
+        public Builder clickable() {
+            this.clickable = true;
+            return this;
+        }
+
+        public Builder minScore(float minScore) {
+            this.minScore = minScore;
+            return this;
+        }
+
+        public ElementLocator build() {
+            if (minScore <= 0) {
+                throw new IllegalStateException("Locator " + name + " needs a positive minimum score");
+            }
+            return new ElementLocator(this);
+        }
+    }
+
+    public static Builder named(String name) {
+        return new Builder(name);
+    }
+
+    private ElementLocator(Builder builder) {
+        name = builder.name;
+        viewId = builder.viewId;
+        viewIdSuffix = viewId != null && viewId.indexOf(":id/") < 0 ? ":id/" + viewId : null;
+        viewIdWeight = builder.viewIdWeight;
+        text = builder.text != null ? builder.text.toLowerCase(Locale.ROOT) : null;
+        textWeight = builder.textWeight;
+        description = builder.description != null ? builder.description.toLowerCase(Locale.ROOT) : null;
+        descriptionWeight = builder.descriptionWeight;
+        className = builder.className;
+        classWeight = builder.classWeight;
+        left = builder.left;
+        top = builder.top;
+        right = builder.right;
+        bottom = builder.bottom;
+        boundsWeight = builder.boundsWeight;
+        clickable = builder.clickable;
+        minScore = builder.minScore;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Best matching node, or -1 if none reaches the minimum score.
+     */
+    public int find(NodeSnapshot snapshot) {
+        int best = -1;
+        float bestScore = minScore;
+        for (int i = 0; i < snapshot.size(); i++) {
+            if (clickable && !snapshot.isClickable(i)) continue;
+            float score = score(snapshot, i);
+            if (score > bestScore || (score == bestScore && best < 0)) {
+                best = i;
+                bestScore = score;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * How well node {@code index} matches, 0 if it shows another label; independent of the
+     * clickable requirement.
+     */
+    public float score(NodeSnapshot snapshot, int index) {
+        float score = 0;
+        if (viewId != null) {
+            String id = snapshot.getViewId(index);
+            if (id != null && (id.equals(viewId) || (viewIdSuffix != null && id.endsWith(viewIdSuffix)))) {
+                score += viewIdWeight;
+            }
+        }
+        if (text != null) {
+            score += textWeight * matchIgnoreCase(snapshot.getText(index), text);
+        }
+        if (description != null) {
+            score += descriptionWeight * matchIgnoreCase(snapshot.getContentDescription(index), description);
+        }
+        if (className != null && className.equals(snapshot.getClassName(index))) {
+            score += classWeight;
+        }
+        if (boundsWeight > 0) {
+            score += boundsWeight * boundsOverlap(snapshot, index);
+        }
+        if (score > 0 && (text != null || description != null) && showsOtherLabel(snapshot, index)) {
+            return 0;
+        }
+        return score;
+    }
+
+    // The node's own labels, or if it has none the labels of the nodes under it
+    private boolean showsOtherLabel(NodeSnapshot snapshot, int index) {
+        boolean labelled = false;
+        int end = snapshot.getSubtreeEnd(index);
+        for (int i = index; i < end; i++) {
+            String nodeText = snapshot.getText(i);
+            String nodeDescription = snapshot.getContentDescription(i);
+            boolean hasText = nodeText != null && !nodeText.isEmpty();
+            boolean hasDescription = nodeDescription != null && !nodeDescription.isEmpty();
+            if (hasText && matchesLabel(nodeText)) return false;
+            if (hasDescription && matchesLabel(nodeDescription)) return false;
+            labelled |= hasText || hasDescription;
+            if (labelled && i == index) return true;
+        }
+        return labelled;
+    }
+
+    private boolean matchesLabel(String value) {
+        return (text != null && matchIgnoreCase(value, text) > 0)
+                || (description != null && matchIgnoreCase(value, description) > 0);
+    }
+
+    /**
+     * 1 for equal ignoring case, 0.5 for contained ignoring case, else 0.
+     */
+    private static float matchIgnoreCase(String value, String lowerNeedle) {
+        if (value == null || value.length() < lowerNeedle.length()) return 0;
+        if (value.length() == lowerNeedle.length()) {
+            return value.regionMatches(true, 0, lowerNeedle, 0, lowerNeedle.length()) ? 1 : 0;
+        }
+        for (int start = 0; start + lowerNeedle.length() <= value.length(); start++) {
+            if (value.regionMatches(true, start, lowerNeedle, 0, lowerNeedle.length())) return 0.5f;
+        }
+        return 0;
+    }
+
+    private float boundsOverlap(NodeSnapshot snapshot, int index) {
+        float rootLeft = snapshot.getLeft(0);
+        float rootTop = snapshot.getTop(0);
+        float width = snapshot.getRight(0) - rootLeft;
+        float height = snapshot.getBottom(0) - rootTop;
+        if (width <= 0 || height <= 0) return 0;
+
+        float nodeLeft = (snapshot.getLeft(index) - rootLeft) / width;
+        float nodeTop = (snapshot.getTop(index) - rootTop) / height;
+        float nodeRight = (snapshot.getRight(index) - rootLeft) / width;
+        float nodeBottom = (snapshot.getBottom(index) - rootTop) / height;
+        float overlapWidth = Math.min(right, nodeRight) - Math.max(left, nodeLeft);
+        float overlapHeight = Math.min(bottom, nodeBottom) - Math.max(top, nodeTop);
+        if (overlapWidth <= 0 || overlapHeight <= 0) return 0;
+
+        float overlap = overlapWidth * overlapHeight;
+        float union = (right - left) * (bottom - top) + (nodeRight - nodeLeft) * (nodeBottom - nodeTop) - overlap;
+        return overlap / union;
+    }
+
+    @Override
+    public String toString() {
+        return "ElementLocator " + name;
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.magic_insta;
+
+import android.accessibilityservice.AccessibilityService;
+import android.accessibilityservice.AccessibilityServiceInfo;
+import android.util.Log;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Keeps the accessibility service subscribed to only the events it currently acts on.
+ *
+ * The static config in {@code accessibility_service.xml} is only the starting point; the service
+ * calls {@link #subscribe} with the event types and package of the current flow step and
+ * {@link #clear} when nothing is running, so the system does not deliver events that would be
+ * dropped. Unchanged subscriptions are not re-sent. Key event filtering is a flag and is not
+ * affected.
+ *
+ * Also counts events received against events that led to an evaluation, so the cost of the
+ * subscription is visible in the log. Use from the main thread.
+ */
+public class EventSubscription {
+    private static final String TAG = "EventSubscription";
+
+    private final AccessibilityService service;
+    private int eventTypes = -1;
+    private String packageName;
+    private boolean applied;
+    private long received;
+    private long processed;
+    private long changes;
+
+    public EventSubscription(AccessibilityService service) {
+        this.service = service;
+    }
+
+    /**
+     * @param eventTypes  {@code AccessibilityEvent.TYPE_*} mask
+     * @param packageName package to receive events from, or null for any
+     */
+    public void subscribe(int eventTypes, String packageName) {
+        if (applied && this.eventTypes == eventTypes && equals(this.packageName, packageName)) {
+            return;
+        }
+        AccessibilityServiceInfo info = service.getServiceInfo();
+        if (info == null) {
+            // Not connected yet
+            return;
+        }
+        info.eventTypes = eventTypes;
+        info.packageNames = packageName != null ? new String[]{packageName} : null;
+        // Bursts are coalesced by the service, so don't let the system hold events back
+        info.notificationTimeout = 0;
+        service.setServiceInfo(info);
+
+        this.eventTypes = eventTypes;
+        this.packageName = packageName;
+        applied = true;
+        changes++;
+        Log.d(TAG, "Subscribed to events 0x" + Integer.toHexString(eventTypes)
+                + (packageName != null ? " from " + packageName : ""));
+    }
+
+    /**
+     * Stops all event delivery; key events still arrive.
+     */
+    public void clear() {
+        subscribe(0, null);
+    }
+
+    public void onReceived() {
+        received++;
+    }
+
+    public void onProcessed() {
+        processed++;
+    }
+
+    public long getReceived() {
+        return received;
+    }
+
+    public long getProcessed() {
+        return processed;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "Events received=%d, processed=%d (%.0f%%), subscription changes=%d",
+                received, processed, received == 0 ? 0.0 : 100.0 * processed / received, changes);
+    }
+
+    private static boolean equals(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
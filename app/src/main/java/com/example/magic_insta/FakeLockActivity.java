@@ -1,15 +1,51 @@
 package com.example.magic_insta;
 
+import android.Manifest;
 import android.app.Activity;
+import android.content.ComponentName;
 import android.content.Intent;
+import android.content.ServiceConnection;
+import android.content.pm.PackageManager;
+import android.os.Build;
 import android.os.Bundle;
+import android.os.IBinder;
+import android.util.Log;
 import android.view.View;
 import android.view.WindowManager;
 import android.widget.FrameLayout;
 
+/**
+ * Black screen that stands in for the lock screen while the camera watches for the card.
+ *
+ * The camera lives in {@link CameraStandbyService}, which stays up between showings: the
+ * activity binds to it in onResume and arms its analysis, so a repeat showing starts analyzing
+ * the next camera frame. Only when the service cannot be started or bound, or cannot get the
+ * camera, does the activity open the camera itself through a {@link MotionCameraPreview}.
+ */
 public class FakeLockActivity extends Activity {
+    private static final String TAG = "FakeLockActivity";
 
+    private FrameLayout rootLayout;
     private MotionCameraPreview cameraPreview;
+    private CameraStandbyService standby;
+    private boolean standbyBound;
+    private long resumedAtNanos;
+    private final ServiceConnection standbyConnection = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder binder) {
+            standby = ((CameraStandbyService.LocalBinder) binder).getService();
+            if (!standby.arm(resumedAtNanos)) {
+                Log.w(TAG, "Camera standby has no camera, opening it here");
+                unbindStandby();
+                startCameraPreview();
+            }
+        }
+
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            standby = null;
+        }
+    };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -29,17 +65,7 @@ public class FakeLockActivity extends Activity {
         getWindow().setAttributes(layout);
 
         // Root layout
-        FrameLayout rootLayout = new FrameLayout(this);
-
-        // Add small camera preview container (bottom layer)
-        FrameLayout previewContainer = new FrameLayout(this);
-        FrameLayout.LayoutParams params = new FrameLayout.LayoutParams(
-                dpToPx(200), dpToPx(200)
-        );
-        params.setMargins(dpToPx(16), dpToPx(16), 0, 0); // top-left
-        previewContainer.setLayoutParams(params);
-        previewContainer.setBackgroundColor(0xFF222222);
-        rootLayout.addView(previewContainer); // added first = bottom
+        rootLayout = new FrameLayout(this);
 
         // Add black full-screen overlay (top layer)
         View blackView = new View(this);
@@ -58,9 +84,56 @@ public class FakeLockActivity extends Activity {
         if (getActionBar() != null) {
             getActionBar().hide();
         }
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        resumedAtNanos = System.nanoTime();
+        if (cameraPreview != null) {
+            // Fell back to the activity's own camera before
+            return;
+        }
+        // A camera foreground service started without the permission is an error on Android 14+
+        if (checkSelfPermission(Manifest.permission.CAMERA) == PackageManager.PERMISSION_GRANTED) {
+            Intent intent = new Intent(this, CameraStandbyService.class);
+            try {
+                // Started, not just bound, so the camera outlives this activity
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                    startForegroundService(intent);
+                } else {
+                    startService(intent);
+                }
+                standbyBound = bindService(intent, standbyConnection, BIND_AUTO_CREATE);
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Failed to start camera standby", e);
+            }
+        }
+        if (!standbyBound) {
+            startCameraPreview();
+        }
+    }
+
+    /**
+     * Opens the camera in this activity, behind the black view.
+     */
+    private void startCameraPreview() {
+        // Open the detection API connection while the camera starts
+        CardDetectionUploader.warmUp();
+
+        // Add small camera preview container (bottom layer)
+        FrameLayout previewContainer = new FrameLayout(this);
+        FrameLayout.LayoutParams params = new FrameLayout.LayoutParams(
+                dpToPx(200), dpToPx(200)
+        );
+        params.setMargins(dpToPx(16), dpToPx(16), 0, 0); // top-left
+        previewContainer.setLayoutParams(params);
+        previewContainer.setBackgroundColor(0xFF222222);
+        rootLayout.addView(previewContainer, 0); // added first = bottom
 
         // Start camera with motion detection
-        cameraPreview = new MotionCameraPreview(this);
+        cameraPreview = new MotionCameraPreview(this, new CameraXFrameSource(this,
+                CameraStandbyService.ANALYSIS_WIDTH, CameraStandbyService.ANALYSIS_HEIGHT));
         previewContainer.addView(cameraPreview);
     }
 
@@ -72,11 +145,24 @@ public class FakeLockActivity extends Activity {
     @Override
     protected void onPause() {
         super.onPause();
+        unbindStandby();
         if (cameraPreview != null) {
             cameraPreview.releaseCamera();
         }
     }
 
+    private void unbindStandby() {
+        if (!standbyBound) {
+            return;
+        }
+        if (standby != null) {
+            standby.disarm();
+            standby = null;
+        }
+        unbindService(standbyConnection);
+        standbyBound = false;
+    }
+
     @Override
     public void onBackPressed() {
         // Disable back button
@@ -0,0 +1,38 @@
+package com.example.magic_insta;
+
+import android.util.Log;
+
+/**
+ * Tries a primary detector and asks a fallback when the primary fails or finds no card, e.g.
+ * the on-device model first and the network only when it is unsure.
+ */
+public class FallbackCardDetector implements CardDetector {
+    private static final String TAG = "FallbackDetector";
+
+    private final CardDetector primary;
+    private final CardDetector fallback;
+
+    public FallbackCardDetector(CardDetector primary, CardDetector fallback) {
+        this.primary = primary;
+        this.fallback = fallback;
+    }
+
+    @Override
+    public CardDetectionUploader.DetectionResult detect(CardImage image) throws Exception {
+        try {
+            CardDetectionUploader.DetectionResult result = primary.detect(image);
+            if (result.hasCard) {
+                return result;
+            }
+            Log.d(TAG, primary.getName() + " found no card, asking " + fallback.getName());
+        } catch (Exception e) {
+            Log.w(TAG, primary.getName() + " failed, asking " + fallback.getName(), e);
+        }
+        return fallback.detect(image);
+    }
+
+    @Override
+    public String getName() {
+        return primary.getName() + "+" + fallback.getName();
+    }
+}
@@ -0,0 +1,260 @@
+package com.example.magic_insta;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Runs a list of {@link FlowStep}s against the UI, advancing as soon as each step's screen shows
+ * up instead of after fixed delays.
+ *
+ * The owner calls {@link #evaluate} whenever a window event arrives and again at
+ * {@link #getNextWakeNanos()}, which covers step timeouts and a slow poll in case an event was
+ * missed. Right after a step acts, the next step waits for a window event (or one poll
+ * interval) before looking, so it does not match the screen the action is about to leave.
+ *
+ * Step and end-to-end latencies are kept per run and across runs. Not thread-safe; use from
+ * one thread.
+ */
+public class FlowEngine {
+
+    public enum State {
+        IDLE, RUNNING, SUCCEEDED, FAILED
+    }
+
+    private final String name;
+    private final List<FlowStep> steps;
+    private final UiDriver driver;
+    private final long pollIntervalNanos;
+    private final LatencyRecorder[] stepLatency;
+    private final LatencyRecorder totalLatency;
+    private final long[] lastRunNanos;
+    private final boolean[] lastRunTimedOut;
+
+    private State state = State.IDLE;
+    private int stepIndex;
+    private long flowStart;
+    private long stepStart;
+    // When the current step's timeout started counting, and its progress then
+    private long timeoutStart;
+    private int stepProgress;
+    private long lastEvaluation;
+    private long lastAction;
+    private boolean awaitingChange;
+    private int snapshots;
+    private String failure;
+
+    public FlowEngine(String name, List<FlowStep> steps, UiDriver driver, long pollIntervalNanos) {
+        if (steps.isEmpty()) {
+            throw new IllegalArgumentException("Flow " + name + " has no steps");
+        }
+        this.name = name;
+        this.steps = new ArrayList<>(steps);
+        this.driver = driver;
+        this.pollIntervalNanos = pollIntervalNanos;
+        stepLatency = new LatencyRecorder[steps.size()];
+        for (int i = 0; i < steps.size(); i++) {
+            stepLatency[i] = new LatencyRecorder(steps.get(i).getName(), 32);
+        }
+        totalLatency = new LatencyRecorder(name, 32);
+        lastRunNanos = new long[steps.size()];
+        lastRunTimedOut = new boolean[steps.size()];
+    }
+
+    /**
+     * Starts a new run from the first step. The first step is evaluated on the next call to
+     * {@link #evaluate}.
+     */
+    public void start(long nowNanos) {
+        state = State.RUNNING;
+        stepIndex = 0;
+        flowStart = nowNanos;
+        stepStart = nowNanos;
+        timeoutStart = nowNanos;
+        stepProgress = steps.get(0).progress();
+        lastEvaluation = nowNanos;
+        lastAction = nowNanos;
+        awaitingChange = false;
+        snapshots = 0;
+        failure = null;
+        for (int i = 0; i < lastRunNanos.length; i++) {
+            lastRunNanos[i] = -1;
+            lastRunTimedOut[i] = false;
+        }
+    }
+
+    public void cancel() {
+        if (state == State.RUNNING) {
+            fail("cancelled");
+        }
+    }
+
+    /**
+     * Checks the current step against the screen and acts if it is ready or timed out.
+     *
+     * @param windowChanged true when called for a window state or content change event
+     */
+    public State evaluate(long nowNanos, boolean windowChanged) {
+        if (state != State.RUNNING) {
+            return state;
+        }
+        FlowStep step = steps.get(stepIndex);
+        boolean timedOut = nowNanos - timeoutStart >= step.getTimeoutNanos();
+        if (awaitingChange && !windowChanged && !timedOut && nowNanos - lastAction < pollIntervalNanos) {
+            return state;
+        }
+        awaitingChange = false;
+        lastEvaluation = nowNanos;
+
+        NodeSnapshot snapshot = driver.snapshot();
+        snapshots++;
+        try {
+            boolean ready = snapshot != null && step.isReady(snapshot);
+            if (ready || (timedOut && step.isProceedOnTimeout() && snapshot != null)) {
+                if (step.perform(snapshot, driver)) {
+                    completeStep(nowNanos, !ready);
+                    return state;
+                }
+                // Acted without finishing the step; let the screen settle as after a completed step
+                lastAction = nowNanos;
+                awaitingChange = true;
+                int progress = step.progress();
+                if (progress != stepProgress) {
+                    stepProgress = progress;
+                    timeoutStart = nowNanos;
+                    timedOut = false;
+                }
+            }
+        } finally {
+            // Its live nodes are only needed for this step's action
+            if (snapshot != null) {
+                snapshot.release();
+            }
+        }
+        if (timedOut) {
+            fail("timed out in step '" + step.getName() + "'");
+        }
+        return state;
+    }
+
+    private void completeStep(long nowNanos, boolean timedOut) {
+        long elapsed = nowNanos - stepStart;
+        stepLatency[stepIndex].record(elapsed);
+        lastRunNanos[stepIndex] = elapsed;
+        lastRunTimedOut[stepIndex] = timedOut;
+
+        stepIndex++;
+        stepStart = nowNanos;
+        timeoutStart = nowNanos;
+        lastAction = nowNanos;
+        awaitingChange = true;
+        if (stepIndex == steps.size()) {
+            state = State.SUCCEEDED;
+            totalLatency.record(nowNanos - flowStart);
+        } else {
+            stepProgress = steps.get(stepIndex).progress();
+        }
+    }
+
+    private void fail(String reason) {
+        failure = reason;
+        state = State.FAILED;
+    }
+
+    /**
+     * When {@link #evaluate} should next be called if no event arrives, or -1 when not running.
+     */
+    public long getNextWakeNanos() {
+        if (state != State.RUNNING) {
+            return -1;
+        }
+        long timeout = timeoutStart + steps.get(stepIndex).getTimeoutNanos();
+        long poll = (awaitingChange ? lastAction : lastEvaluation) + pollIntervalNanos;
+        return Math.min(timeout, poll);
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Name of the step being waited for, or null when not running.
+     */
+    public String getCurrentStepName() {
+        return state == State.RUNNING ? steps.get(stepIndex).getName() : null;
+    }
+
+    /**
+     * The step being waited for, or null when not running.
+     */
+    public FlowStep getCurrentStep() {
+        return state == State.RUNNING ? steps.get(stepIndex) : null;
+    }
+
+    public int getStepCount() {
+        return steps.size();
+    }
+
+    /**
+     * Steps completed in the current or last run.
+     */
+    public int getCompletedStepCount() {
+        return stepIndex;
+    }
+
+    public String getFailureReason() {
+        return failure;
+    }
+
+    /**
+     * Latency of step {@code index} across successful passes of all runs.
+     */
+    public LatencyRecorder getStepLatency(int index) {
+        return stepLatency[index];
+    }
+
+    /**
+     * End-to-end latency of successful runs.
+     */
+    public LatencyRecorder getTotalLatency() {
+        return totalLatency;
+    }
+
+    /**
+     * Per-step timings of the current or last run.
+     */
+    public String report() {
+        StringBuilder report = new StringBuilder(name).append(' ').append(state);
+        if (failure != null) {
+            report.append(" (").append(failure).append(')');
+        }
+        if (state == State.SUCCEEDED) {
+            // Steps run back to back, so their sum is the end-to-end time
+            report.append(String.format(Locale.US, " in %.0f ms", sumLastRun() / 1e6));
+        }
+        report.append(", snapshots=").append(snapshots).append(" [");
+        for (int i = 0; i < steps.size(); i++) {
+            if (i > 0) report.append(", ");
+            report.append(steps.get(i).getName()).append(": ");
+            if (lastRunNanos[i] < 0) {
+                report.append('-');
+            } else {
+                report.append(String.format(Locale.US, "%.0f ms", lastRunNanos[i] / 1e6));
+                if (lastRunTimedOut[i]) report.append(" (timeout)");
+            }
+        }
+        return report.append(']').toString();
+    }
+
+    private long sumLastRun() {
+        long total = 0;
+        for (long nanos : lastRunNanos) {
+            if (nanos > 0) total += nanos;
+        }
+        return total;
+    }
+}
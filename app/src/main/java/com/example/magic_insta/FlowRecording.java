@@ -0,0 +1,221 @@
+package com.example.magic_insta;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * What a UI flow saw and did on a device: each distinct screen as a {@link NodeSnapshot} and
+ * each action, with times relative to the start of the recording. Written by
+ * {@link RecordingUiDriver} and replayed on the JVM, so flows can be tested and timed without a
+ * phone.
+ *
+ * The text format is line based:
+ * <pre>
+ * flow-recording 1
+ * frame   &lt;ms&gt;  &lt;label&gt;
+ * snapshot  &lt;package&gt;  &lt;node count&gt;
+ * &lt;depth&gt;  &lt;class&gt;  &lt;flags&gt;  &lt;left&gt;,&lt;top&gt;,&lt;right&gt;,&lt;bottom&gt;  &lt;text&gt;  &lt;description&gt;  &lt;view id&gt;
+ * ...
+ * action  &lt;ms&gt;  click|scroll|global  &lt;node index or global action&gt;  ok|failed
+ * </pre>
+ * Fields are tab-separated; nodes are listed in pre-order with their depth, an empty field is
+ * null, and tabs, newlines and backslashes in strings are escaped. Pure Java.
+ */
+public final class FlowRecording {
+    private static final String HEADER = "flow-recording 1";
+
+    public enum ActionKind {
+        CLICK, SCROLL, GLOBAL
+    }
+
+    public static final class Event {
+        public final long timeMs;
+        // A screen, or null for an action
+        public final NodeSnapshot snapshot;
+        public final String label;
+        public final ActionKind action;
+        // Node index for clicks and scrolls, action id for global actions
+        public final int argument;
+        // Whether the action took effect on the device
+        public final boolean delivered;
+
+        private Event(long timeMs, NodeSnapshot snapshot, String label, ActionKind action, int argument,
+                      boolean delivered) {
+            this.timeMs = timeMs;
+            this.snapshot = snapshot;
+            this.label = label;
+            this.action = action;
+            this.argument = argument;
+            this.delivered = delivered;
+        }
+
+        public boolean isFrame() {
+            return snapshot != null;
+        }
+
+        @Override
+        public String toString() {
+            return isFrame() ? "frame at " + timeMs + " ms (" + label + ")"
+                    : action.name().toLowerCase() + " " + argument + " at " + timeMs + " ms"
+                    + (delivered ? "" : " (failed)");
+        }
+    }
+
+    private final List<Event> events = new ArrayList<>();
+
+    public void addFrame(long timeMs, String label, NodeSnapshot snapshot) {
+        events.add(new Event(timeMs, snapshot, label != null ? label : "", null, 0, false));
+    }
+
+    public void addAction(long timeMs, ActionKind action, int argument, boolean delivered) {
+        events.add(new Event(timeMs, null, null, action, argument, delivered));
+    }
+
+    public List<Event> getEvents() {
+        return Collections.unmodifiableList(events);
+    }
+
+    public int getFrameCount() {
+        int frames = 0;
+        for (Event event : events) {
+            if (event.isFrame()) frames++;
+        }
+        return frames;
+    }
+
+    public void write(Writer writer) throws IOException {
+        writer.write(HEADER);
+        writer.write('\n');
+        for (Event event : events) {
+            if (event.isFrame()) {
+                writer.write("frame\t" + event.timeMs + "\t" + escape(event.label) + "\n");
+                writeSnapshot(event.snapshot, writer);
+            } else {
+                writer.write("action\t" + event.timeMs + "\t" + event.action.name().toLowerCase()
+                        + "\t" + event.argument + "\t" + (event.delivered ? "ok" : "failed") + "\n");
+            }
+        }
+    }
+
+    public static FlowRecording read(Reader reader) throws IOException {
+        BufferedReader lines = new BufferedReader(reader);
+        if (!HEADER.equals(lines.readLine())) {
+            throw new IOException("Not a flow recording");
+        }
+        FlowRecording recording = new FlowRecording();
+        String line;
+        while ((line = lines.readLine()) != null) {
+            if (line.isEmpty()) continue;
+            String[] fields = line.split("\t", -1);
+            try {
+                if (fields[0].equals("frame") && fields.length == 3) {
+                    recording.addFrame(Long.parseLong(fields[1]), unescape(fields[2]), readSnapshot(lines));
+                } else if (fields[0].equals("action") && fields.length == 5
+                        && (fields[4].equals("ok") || fields[4].equals("failed"))) {
+                    recording.addAction(Long.parseLong(fields[1]), ActionKind.valueOf(fields[2].toUpperCase()),
+                            Integer.parseInt(fields[3]), fields[4].equals("ok"));
+                } else {
+                    throw new IOException("Unexpected line '" + line + "'");
+                }
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Bad line '" + line + "'", e);
+            }
+        }
+        return recording;
+    }
+
+    /**
+     * Writes one snapshot: a {@code snapshot} line and one line per node.
+     */
+    public static void writeSnapshot(NodeSnapshot snapshot, Writer writer) throws IOException {
+        StringBuilder line = new StringBuilder(128);
+        writer.write("snapshot\t" + escape(snapshot.getPackageName()) + "\t" + snapshot.size() + "\n");
+        for (int i = 0; i < snapshot.size(); i++) {
+            line.setLength(0);
+            line.append(snapshot.getDepth(i)).append('\t')
+                    .append(escape(snapshot.getClassName(i))).append('\t')
+                    .append(snapshot.getFlags(i)).append('\t')
+                    .append(snapshot.getLeft(i)).append(',').append(snapshot.getTop(i)).append(',')
+                    .append(snapshot.getRight(i)).append(',').append(snapshot.getBottom(i)).append('\t')
+                    .append(escape(snapshot.getText(i))).append('\t')
+                    .append(escape(snapshot.getContentDescription(i))).append('\t')
+                    .append(escape(snapshot.getViewId(i))).append('\n');
+            writer.write(line.toString());
+        }
+    }
+
+    /**
+     * Reads a snapshot written by {@link #writeSnapshot}.
+     */
+    public static NodeSnapshot readSnapshot(BufferedReader lines) throws IOException {
+        String header = lines.readLine();
+        String[] fields = header != null ? header.split("\t", -1) : new String[0];
+        if (fields.length != 3 || !fields[0].equals("snapshot")) {
+            throw new IOException("Expected a snapshot, got '" + header + "'");
+        }
+        NodeSnapshot.Builder builder = new NodeSnapshot.Builder().setPackageName(unescape(fields[1]));
+        int count = Integer.parseInt(fields[2]);
+        // Index of the last node at each depth, to find parents
+        int[] ancestors = new int[NodeSnapshot.DEFAULT_MAX_DEPTH + 2];
+        for (int i = 0; i < count; i++) {
+            String line = lines.readLine();
+            String[] node = line != null ? line.split("\t", -1) : new String[0];
+            if (node.length != 7) {
+                throw new IOException("Bad node line '" + line + "'");
+            }
+            String[] bounds = node[3].split(",");
+            try {
+                int depth = Integer.parseInt(node[0]);
+                if (depth < 0 || depth >= ancestors.length || (depth == 0) != (i == 0)) {
+                    throw new IOException("Bad depth in '" + line + "'");
+                }
+                int index = builder.add(depth == 0 ? -1 : ancestors[depth - 1], unescape(node[1]),
+                        unescape(node[4]), unescape(node[5]), unescape(node[6]),
+                        Integer.parseInt(bounds[0]), Integer.parseInt(bounds[1]),
+                        Integer.parseInt(bounds[2]), Integer.parseInt(bounds[3]),
+                        Integer.parseInt(node[2]));
+                ancestors[depth] = index;
+            } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                throw new IOException("Bad node line '" + line + "'", e);
+            }
+        }
+        return builder.build();
+    }
+
+    private static String escape(String value) {
+        if (value == null) return "";
+        StringBuilder escaped = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\': escaped.append("\\\\"); break;
+                case '\t': escaped.append("\\t"); break;
+                case '\n': escaped.append("\\n"); break;
+                case '\r': escaped.append("\\r"); break;
+                default: escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+
+    private static String unescape(String value) {
+        if (value.isEmpty()) return null;
+        if (value.indexOf('\\') < 0) return value;
+        StringBuilder plain = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length()) {
+                char next = value.charAt(++i);
+                plain.append(next == 't' ? '\t' : next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+            } else {
+                plain.append(c);
+            }
+        }
+        return plain.toString();
+    }
+}
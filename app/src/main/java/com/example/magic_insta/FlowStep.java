@@ -0,0 +1,122 @@
+package com.example.magic_insta;
+
+import android.view.accessibility.AccessibilityEvent;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One screen of a UI flow: a condition that tells the expected screen is showing, and the
+ * action to take on it.
+ *
+ * The {@link FlowEngine} runs the action as soon as the condition holds. The timeout is only an
+ * upper bound: when it passes the flow fails, or, for steps marked
+ * {@link #proceedOnTimeout()}, the action runs anyway on whatever screen is showing. Steps that
+ * act many times, like paging through a list, can count it from their last progress instead.
+ *
+ * While the step is current the service only subscribes to the accessibility events it lists
+ * in {@link #watching}: by default window state and content changes from any package.
+ */
+public final class FlowStep {
+
+    public interface Condition {
+        boolean test(NodeSnapshot snapshot);
+    }
+
+    public interface Action {
+        /**
+         * @return true if the step is done; false to stay on it and look again once the screen
+         *         changed, e.g. after scrolling
+         */
+        boolean perform(NodeSnapshot snapshot, UiDriver driver);
+    }
+
+    public interface Progress {
+        /**
+         * A count that changes whenever the step gets further, e.g. items recorded so far.
+         */
+        int get();
+    }
+
+    private final String name;
+    private final long timeoutNanos;
+    private final Condition condition;
+    private final Action action;
+    private boolean proceedOnTimeout;
+    private Progress progress;
+    private int eventTypes = DEFAULT_EVENT_TYPES;
+    private String packageName;
+
+    public static final int DEFAULT_EVENT_TYPES =
+            AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED | AccessibilityEvent.TYPE_WINDOW_CONTENT_CHANGED;
+
+    public FlowStep(String name, long timeoutMs, Condition condition, Action action) {
+        this.name = name;
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        this.condition = condition;
+        this.action = action;
+    }
+
+    /**
+     * Runs the action even if the condition never held, instead of failing the flow.
+     */
+    public FlowStep proceedOnTimeout() {
+        proceedOnTimeout = true;
+        return this;
+    }
+
+    /**
+     * Counts the timeout from the last action after which {@code progress} changed, rather than
+     * from the start of the step.
+     */
+    public FlowStep timeoutSinceProgress(Progress progress) {
+        this.progress = progress;
+        return this;
+    }
+
+    /**
+     * Limits the events that wake the flow during this step.
+     *
+     * @param eventTypes  {@code AccessibilityEvent.TYPE_*} mask
+     * @param packageName package whose events count, or null for any
+     */
+    public FlowStep watching(int eventTypes, String packageName) {
+        this.eventTypes = eventTypes;
+        this.packageName = packageName;
+        return this;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getTimeoutNanos() {
+        return timeoutNanos;
+    }
+
+    public boolean isProceedOnTimeout() {
+        return proceedOnTimeout;
+    }
+
+    public int getEventTypes() {
+        return eventTypes;
+    }
+
+    /**
+     * Package whose events this step waits for, or null for any.
+     */
+    public String getPackageName() {
+        return packageName;
+    }
+
+    boolean isReady(NodeSnapshot snapshot) {
+        return condition.test(snapshot);
+    }
+
+    boolean perform(NodeSnapshot snapshot, UiDriver driver) {
+        return action.perform(snapshot, driver);
+    }
+
+    int progress() {
+        return progress != null ? progress.get() : 0;
+    }
+}
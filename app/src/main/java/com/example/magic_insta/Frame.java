@@ -0,0 +1,179 @@
+package com.example.magic_insta;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A YUV 4:2:0 frame described the way YUV_420_888 images are: a luma plane plus two chroma
+ * planes with their own row and pixel strides. NV21 buffers and CameraX image planes are
+ * wrapped without copying.
+ *
+ * Frames are owned by the {@link FrameSource} that produced them and are usually reused, so
+ * consumers must call {@link #release()} exactly once and must not touch the frame afterwards.
+ */
+public class Frame {
+
+    /**
+     * Called when a consumer is done with a frame so its storage can be reused.
+     */
+    public interface Releaser {
+        void onRelease(Frame frame);
+    }
+
+    private int width;
+    private int height;
+    private long timestampNanos;
+
+    private ByteBuffer yPlane;
+    private ByteBuffer uPlane;
+    private ByteBuffer vPlane;
+    private int yRowStride;
+    private int uvRowStride;
+    private int uvPixelStride;
+
+    // Backing NV21 array when the frame wraps one, for zero-copy encoding
+    private byte[] nv21;
+
+    private Object tag;
+    private final Releaser releaser;
+
+    public Frame(Releaser releaser) {
+        this.releaser = releaser;
+    }
+
+    /**
+     * Points this frame at an NV21 buffer (Y plane followed by interleaved V/U).
+     */
+    public Frame setNv21(byte[] data, int width, int height) {
+        int ySize = width * height;
+        if (data.length < ySize * 3 / 2) {
+            throw new IllegalArgumentException("NV21 buffer too small for " + width + "x" + height);
+        }
+        if (nv21 != data || this.width != width || this.height != height) {
+            // Plane views are only rebuilt when the backing buffer changes
+            yPlane = ByteBuffer.wrap(data, 0, ySize).slice();
+            vPlane = ByteBuffer.wrap(data, ySize, ySize / 2).slice();
+            uPlane = ByteBuffer.wrap(data, ySize + 1, ySize / 2 - 1).slice();
+        }
+        this.nv21 = data;
+        this.width = width;
+        this.height = height;
+        this.yRowStride = width;
+        this.uvRowStride = width;
+        this.uvPixelStride = 2;
+        return this;
+    }
+
+    /**
+     * Points this frame at separate planes, as delivered by YUV_420_888 images.
+     */
+    public Frame setPlanes(int width, int height,
+                           ByteBuffer yPlane, int yRowStride,
+                           ByteBuffer uPlane, ByteBuffer vPlane, int uvRowStride, int uvPixelStride) {
+        this.nv21 = null;
+        this.width = width;
+        this.height = height;
+        this.yPlane = yPlane;
+        this.uPlane = uPlane;
+        this.vPlane = vPlane;
+        this.yRowStride = yRowStride;
+        this.uvRowStride = uvRowStride;
+        this.uvPixelStride = uvPixelStride;
+        return this;
+    }
+
+    public Frame setTimestampNanos(long timestampNanos) {
+        this.timestampNanos = timestampNanos;
+        return this;
+    }
+
+    /**
+     * Arbitrary per-frame state for the producing source.
+     */
+    public Frame setTag(Object tag) {
+        this.tag = tag;
+        return this;
+    }
+
+    public Object getTag() {
+        return tag;
+    }
+
+    public void release() {
+        if (releaser != null) {
+            releaser.onRelease(this);
+        }
+    }
+
+    /**
+     * Copies the frame into {@code out} in NV21 layout, or returns the backing array directly
+     * when the frame already wraps an NV21 buffer.
+     *
+     * @param out buffer of at least width * height * 3 / 2 bytes, or null to allocate one
+     */
+    public byte[] toNv21(byte[] out) {
+        if (nv21 != null) {
+            return nv21;
+        }
+        int ySize = width * height;
+        if (out == null || out.length < ySize * 3 / 2) {
+            out = new byte[ySize * 3 / 2];
+        }
+
+        for (int row = 0; row < height; row++) {
+            int src = row * yRowStride;
+            int dst = row * width;
+            for (int col = 0; col < width; col++) {
+                out[dst + col] = yPlane.get(src + col);
+            }
+        }
+
+        int chromaWidth = width / 2;
+        int chromaHeight = height / 2;
+        int dst = ySize;
+        for (int row = 0; row < chromaHeight; row++) {
+            int src = row * uvRowStride;
+            for (int col = 0; col < chromaWidth; col++) {
+                int index = src + col * uvPixelStride;
+                out[dst++] = vPlane.get(index);
+                out[dst++] = uPlane.get(index);
+            }
+        }
+        return out;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public long getTimestampNanos() {
+        return timestampNanos;
+    }
+
+    public ByteBuffer getYPlane() {
+        return yPlane;
+    }
+
+    public ByteBuffer getUPlane() {
+        return uPlane;
+    }
+
+    public ByteBuffer getVPlane() {
+        return vPlane;
+    }
+
+    public int getYRowStride() {
+        return yRowStride;
+    }
+
+    public int getUvRowStride() {
+        return uvRowStride;
+    }
+
+    public int getUvPixelStride() {
+        return uvPixelStride;
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.magic_insta;
+
+import java.util.function.Consumer;
+
+/**
+ * Bounded handoff between the camera thread (producer) and the analysis thread (consumer).
+ *
+ * When the queue is full the oldest waiting item is evicted and returned from
+ * {@link #offer(Object, long)} so the producer can recycle it. With {@link Policy#LATEST_ONLY}
+ * the queue holds a single item, so the consumer always sees the newest frame.
+ *
+ * Each item carries its arrival timestamp; read it with {@link #getPolledTimestamp()} right
+ * after {@link #poll()}. Only one consumer thread is supported.
+ */
+public class FrameHandoff<T> {
+
+    public enum Policy {
+        /** Keep only the newest frame; anything not yet analyzed is replaced. */
+        LATEST_ONLY,
+        /** Keep up to {@code capacity} frames and evict the oldest when full. */
+        DROP_OLDEST
+    }
+
+    private final Object[] items;
+    private final long[] timestamps;
+    private int head = 0;
+    private int size = 0;
+    private long polledTimestamp = 0;
+    private long evicted = 0;
+
+    public FrameHandoff(Policy policy, int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        int slots = policy == Policy.LATEST_ONLY ? 1 : capacity;
+        items = new Object[slots];
+        timestamps = new long[slots];
+    }
+
+    /**
+     * @return the evicted item if the queue was full, otherwise null
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized T offer(T item, long timestampNanos) {
+        T dropped = null;
+        if (size == items.length) {
+            dropped = (T) items[head];
+            items[head] = null;
+            head = (head + 1) % items.length;
+            size--;
+            evicted++;
+        }
+        int tail = (head + size) % items.length;
+        items[tail] = item;
+        timestamps[tail] = timestampNanos;
+        size++;
+        return dropped;
+    }
+
+    /**
+     * @return the oldest waiting item, or null if empty
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized T poll() {
+        if (size == 0) {
+            return null;
+        }
+        T item = (T) items[head];
+        polledTimestamp = timestamps[head];
+        items[head] = null;
+        head = (head + 1) % items.length;
+        size--;
+        return item;
+    }
+
+    /**
+     * Arrival timestamp of the item returned by the last {@link #poll()}.
+     */
+    public synchronized long getPolledTimestamp() {
+        return polledTimestamp;
+    }
+
+    /**
+     * Removes every waiting item, passing each to {@code sink}.
+     */
+    public synchronized void drainTo(Consumer<T> sink) {
+        T item;
+        while ((item = poll()) != null) {
+            sink.accept(item);
+        }
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized long getEvictedCount() {
+        return evicted;
+    }
+}
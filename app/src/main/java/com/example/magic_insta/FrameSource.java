@@ -0,0 +1,33 @@
+package com.example.magic_insta;
+
+/**
+ * Something that produces camera-like YUV frames: the legacy camera, CameraX image analysis,
+ * or a recording replayed from disk.
+ *
+ * Frames are delivered on a thread owned by the source. Listeners must {@link Frame#release()}
+ * every frame they receive, either inline or after handing it to another thread; sources keep
+ * a fixed number of frames in flight and skip new ones while all of them are held.
+ */
+public interface FrameSource {
+
+    interface Listener {
+        void onFrame(Frame frame);
+    }
+
+    /**
+     * Starts delivering frames to {@code listener}. Opening the underlying device may finish
+     * asynchronously.
+     */
+    void start(Listener listener);
+
+    /**
+     * Stops delivery and releases the underlying device. Frames still held by the listener may
+     * be released afterwards.
+     */
+    void stop();
+
+    /**
+     * Frames produced but never delivered because every frame was still held by the listener.
+     */
+    long getSkippedFrameCount();
+}
@@ -0,0 +1,72 @@
+package com.example.magic_insta;
+
+import java.util.Locale;
+
+/**
+ * Counts frames and dropped frames from the frame times of consecutive Choreographer callbacks.
+ *
+ * A gap between two frames of n frame intervals (rounded) means n - 1 vsyncs went by without a
+ * frame, which count as dropped. {@link #pause()} ends a run of frames, so the time between two
+ * runs is not counted as a gap. Not thread-safe; feed it from the thread of the callbacks.
+ */
+public final class FrameStats {
+    private final String name;
+    private final long frameIntervalNanos;
+    private long lastFrameNanos = -1;
+    private long frames;
+    private long dropped;
+    private long longestGapNanos;
+
+    public FrameStats(String name, long frameIntervalNanos) {
+        if (frameIntervalNanos <= 0) {
+            throw new IllegalArgumentException("Frame interval must be positive");
+        }
+        this.name = name;
+        this.frameIntervalNanos = frameIntervalNanos;
+    }
+
+    public void onFrame(long frameTimeNanos) {
+        if (lastFrameNanos >= 0) {
+            long gap = frameTimeNanos - lastFrameNanos;
+            long missed = (gap + frameIntervalNanos / 2) / frameIntervalNanos - 1;
+            if (missed > 0) {
+                dropped += missed;
+            }
+            longestGapNanos = Math.max(longestGapNanos, gap);
+        }
+        lastFrameNanos = frameTimeNanos;
+        frames++;
+    }
+
+    /**
+     * Ends the current run of frames; the next frame starts a new one.
+     */
+    public void pause() {
+        lastFrameNanos = -1;
+    }
+
+    public long getFrameCount() {
+        return frames;
+    }
+
+    public long getDroppedFrameCount() {
+        return dropped;
+    }
+
+    public long getLongestGapNanos() {
+        return longestGapNanos;
+    }
+
+    public void reset() {
+        lastFrameNanos = -1;
+        frames = 0;
+        dropped = 0;
+        longestGapNanos = 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "%s: %d frame(s), %d dropped, longest gap %.2fms",
+                name, frames, dropped, longestGapNanos / 1e6);
+    }
+}
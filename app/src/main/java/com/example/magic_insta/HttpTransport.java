@@ -0,0 +1,161 @@
+package com.example.magic_insta;
+
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Shared HTTP client for the detection and OCR endpoints, built on {@link HttpURLConnection}.
+ *
+ * The platform keeps idle keep-alive connections in a pool and hands them to the next request
+ * to the same host, but only when the previous response body was read to the end and closed.
+ * {@link #readResponse} always does that, so retries skip DNS and the TLS handshake; error
+ * responses are drained too and failed connections are disconnected. {@link #warmUp} opens the
+ * connection ahead of the first real request.
+ */
+public class HttpTransport {
+    private static final String TAG = "HttpTransport";
+    public static final int DEFAULT_CONNECT_TIMEOUT_MS = 5000;
+    public static final int DEFAULT_READ_TIMEOUT_MS = 10000;
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    private static final HttpTransport shared =
+            new HttpTransport(DEFAULT_CONNECT_TIMEOUT_MS, DEFAULT_READ_TIMEOUT_MS);
+
+    private final int connectTimeoutMs;
+    private final int readTimeoutMs;
+    private final ExecutorService warmUpExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "HttpWarmUp");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final LatencyRecorder requestLatency = new LatencyRecorder("HTTP request", 64);
+
+    public static HttpTransport get() {
+        return shared;
+    }
+
+    public HttpTransport(int connectTimeoutMs, int readTimeoutMs) {
+        this.connectTimeoutMs = connectTimeoutMs;
+        this.readTimeoutMs = readTimeoutMs;
+    }
+
+    /**
+     * Writes a request body into an open connection, e.g. through {@link UploadBodyWriter}.
+     */
+    public interface Body {
+        void writeTo(HttpURLConnection conn) throws IOException;
+    }
+
+    /**
+     * Sends a POST and returns the response body.
+     *
+     * @throws IOException for transport errors and non-2xx responses; the message has the status
+     *                     code and body
+     */
+    public String post(String url, String contentType, Body body) throws IOException {
+        long start = System.nanoTime();
+        HttpURLConnection conn = open(url, "POST", contentType);
+        try {
+            body.writeTo(conn);
+        } catch (IOException | RuntimeException e) {
+            conn.disconnect();
+            throw e;
+        }
+        String response = readResponse(conn);
+        requestLatency.record(System.nanoTime() - start);
+        return response;
+    }
+
+    /**
+     * Opens a connection with the transport's timeouts and headers. For requests with a body
+     * pass a content type; the caller writes the body and then calls {@link #readResponse}.
+     */
+    public HttpURLConnection open(String url, String method, String contentType) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+        conn.setRequestMethod(method);
+        conn.setConnectTimeout(connectTimeoutMs);
+        conn.setReadTimeout(readTimeoutMs);
+        conn.setUseCaches(false);
+        conn.setRequestProperty("Connection", "keep-alive");
+        conn.setRequestProperty("Accept-Encoding", "gzip");
+        if (contentType != null) {
+            conn.setRequestProperty("Content-Type", contentType);
+            conn.setDoOutput(true);
+        }
+        return conn;
+    }
+
+    /**
+     * Reads the whole response body as UTF-8 and releases the connection for reuse.
+     *
+     * @throws IOException for transport errors and non-2xx responses; the message has the status
+     *                     code and body
+     */
+    public String readResponse(HttpURLConnection conn) throws IOException {
+        try {
+            int code = conn.getResponseCode();
+            boolean success = code >= 200 && code < 300;
+            String body = readBody(conn, success ? conn.getInputStream() : conn.getErrorStream());
+            if (!success) {
+                throw new IOException("HTTP " + code + ": " + body);
+            }
+            return body;
+        } catch (IOException e) {
+            conn.disconnect();
+            throw e;
+        }
+    }
+
+    private static String readBody(HttpURLConnection conn, InputStream stream) throws IOException {
+        if (stream == null) {
+            return "";
+        }
+        try (InputStream in = "gzip".equalsIgnoreCase(conn.getContentEncoding())
+                ? new GZIPInputStream(stream, BUFFER_SIZE) : stream) {
+            ByteArrayOutputStream body = new ByteArrayOutputStream(BUFFER_SIZE);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                body.write(buffer, 0, read);
+            }
+            return new String(body.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Opens a connection to {@code url}'s host in the background with a HEAD request, so the
+     * next request finds a pooled connection. Any response counts as warm.
+     */
+    public Future<?> warmUp(String url) {
+        return warmUpExecutor.submit(() -> {
+            long start = System.nanoTime();
+            try {
+                HttpURLConnection conn = open(url, "HEAD", null);
+                int code = conn.getResponseCode();
+                readBody(conn, code < 400 ? conn.getInputStream() : conn.getErrorStream());
+                Log.d(TAG, "Warmed up " + conn.getURL().getHost() + " (HTTP " + code + ") in "
+                        + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+            } catch (IOException e) {
+                Log.w(TAG, "Warm-up failed for " + url, e);
+            }
+        });
+    }
+
+    /**
+     * Time from opening the connection to the end of the response for each {@link #post}.
+     */
+    public LatencyRecorder getRequestLatency() {
+        return requestLatency;
+    }
+}
@@ -0,0 +1,254 @@
+package com.example.magic_insta;
+
+import android.content.ActivityNotFoundException;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.pm.PackageManager;
+import android.content.pm.ResolveInfo;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Starts Instagram with a launch intent that is resolved once and cached, instead of trying
+ * every launch strategy on each key press. The intent is resolved again when Instagram is
+ * installed, updated or removed, and when a cached intent stops working.
+ *
+ * Also measures the time from the key press to Instagram's first window event. A launch counts
+ * as warm when Instagram was started (or prewarmed) by this launcher within the last
+ * {@link #WARM_WINDOW_MS}, since the system usually keeps such a process cached; otherwise it
+ * counts as cold. Use from the main thread.
+ */
+public final class InstagramLauncher {
+    private static final String TAG = "InstagramLauncher";
+    public static final String INSTAGRAM_PACKAGE = RevealFlow.INSTAGRAM_PACKAGE;
+    // How long after its last start Instagram's process is assumed to still be around
+    static final long WARM_WINDOW_MS = 10 * 60 * 1000;
+    // Time Instagram gets to start its process before a prewarm returns to the caller
+    private static final long PREWARM_RETURN_DELAY_MS = 800;
+
+    private static final String[] EXPLICIT_ACTIVITIES = {
+            "com.instagram.android.activity.MainTabActivity",
+            "com.instagram.android.activity.UrlHandlerActivity",
+    };
+
+    private static InstagramLauncher shared;
+
+    private final Context context;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final LatencyRecorder coldLaunchLatency = new LatencyRecorder("Instagram cold launch", 32);
+    private final LatencyRecorder warmLaunchLatency = new LatencyRecorder("Instagram warm launch", 32);
+    private Intent launchIntent;
+    private boolean resolved;
+    private long lastStartNanos = -1;
+    // Key press of the launch waiting for its first window event, or -1
+    private long pendingKeyPressNanos = -1;
+    private boolean pendingWarm;
+
+    private final BroadcastReceiver packageReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context c, Intent intent) {
+            Uri data = intent.getData();
+            if (data != null && INSTAGRAM_PACKAGE.equals(data.getSchemeSpecificPart())) {
+                Log.d(TAG, "Instagram package changed (" + intent.getAction() + ")");
+                resolve();
+                // A new or updated package starts without a process
+                lastStartNanos = -1;
+            }
+        }
+    };
+
+    private InstagramLauncher(Context context) {
+        this.context = context;
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_PACKAGE_ADDED);
+        filter.addAction(Intent.ACTION_PACKAGE_REPLACED);
+        filter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+        filter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        filter.addDataScheme("package");
+        context.registerReceiver(packageReceiver, filter);
+    }
+
+    /**
+     * Returns the process-wide launcher, registering for package changes on first use.
+     */
+    public static synchronized InstagramLauncher get(Context context) {
+        if (shared == null) {
+            shared = new InstagramLauncher(context.getApplicationContext());
+        }
+        return shared;
+    }
+
+    /**
+     * Finds a launch intent for Instagram and caches it, or caches nothing if Instagram is not
+     * installed. Called on first use; call early (e.g. when the service connects) to keep the
+     * package manager queries off the key press.
+     */
+    public void resolve() {
+        long start = System.nanoTime();
+        launchIntent = findLaunchIntent(context.getPackageManager());
+        resolved = true;
+        if (launchIntent != null) {
+            launchIntent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TOP);
+            Log.d(TAG, "Resolved Instagram launch intent in "
+                    + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+        } else {
+            Log.e(TAG, "Instagram is not installed on this device");
+        }
+    }
+
+    private static Intent findLaunchIntent(PackageManager pm) {
+        Intent intent = pm.getLaunchIntentForPackage(INSTAGRAM_PACKAGE);
+        if (intent != null) {
+            return intent;
+        }
+
+        for (String activity : EXPLICIT_ACTIVITIES) {
+            intent = new Intent();
+            intent.setClassName(INSTAGRAM_PACKAGE, activity);
+            if (pm.resolveActivity(intent, 0) != null) {
+                return intent;
+            }
+        }
+
+        Intent main = new Intent(Intent.ACTION_MAIN);
+        main.addCategory(Intent.CATEGORY_LAUNCHER);
+        List<ResolveInfo> activities = pm.queryIntentActivities(main, 0);
+        for (ResolveInfo info : activities) {
+            if (INSTAGRAM_PACKAGE.equals(info.activityInfo.packageName)) {
+                main.setClassName(info.activityInfo.packageName, info.activityInfo.name);
+                return main;
+            }
+        }
+
+        intent = new Intent(Intent.ACTION_VIEW);
+        intent.setData(Uri.parse("https://www.instagram.com/"));
+        intent.setPackage(INSTAGRAM_PACKAGE);
+        if (pm.resolveActivity(intent, PackageManager.MATCH_DEFAULT_ONLY) != null) {
+            return intent;
+        }
+        return null;
+    }
+
+    public boolean isInstalled() {
+        if (!resolved) {
+            resolve();
+        }
+        return launchIntent != null;
+    }
+
+    /**
+     * Starts Instagram for a reveal; the latency to its first window event is recorded when the
+     * service reports it through {@link #onWindowEvent}.
+     *
+     * @param keyPressNanos {@link System#nanoTime()} of the key press that triggered the launch
+     * @return false if Instagram is not installed or could not be started
+     */
+    public boolean launch(long keyPressNanos) {
+        if (!start()) {
+            return false;
+        }
+        onLaunched(keyPressNanos);
+        return true;
+    }
+
+    /**
+     * Opens a post straight on its page through Instagram's handling of web links, measured
+     * like {@link #launch}.
+     *
+     * @return false if Instagram does not handle the link
+     */
+    public boolean launchPost(String postUrl, long keyPressNanos) {
+        Intent intent = new Intent(Intent.ACTION_VIEW, Uri.parse(postUrl));
+        intent.setPackage(INSTAGRAM_PACKAGE);
+        intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TOP);
+        try {
+            context.startActivity(intent);
+        } catch (ActivityNotFoundException | SecurityException e) {
+            Log.w(TAG, "Instagram did not take " + postUrl + ": " + e.getMessage());
+            return false;
+        }
+        onLaunched(keyPressNanos);
+        return true;
+    }
+
+    private void onLaunched(long keyPressNanos) {
+        pendingWarm = isWarm(keyPressNanos);
+        pendingKeyPressNanos = keyPressNanos;
+        lastStartNanos = System.nanoTime();
+    }
+
+    /**
+     * Starts Instagram's process ahead of the reveal: Instagram is launched and {@code returnTo}
+     * is brought back to the front once Instagram had time to start. The screen briefly shows
+     * Instagram, so only call this when the performer arms the trick.
+     */
+    public void prewarm(Context caller, Intent returnTo) {
+        if (!start()) {
+            return;
+        }
+        lastStartNanos = System.nanoTime();
+        Log.d(TAG, "Prewarming Instagram");
+        Intent back = new Intent(returnTo);
+        back.addFlags(Intent.FLAG_ACTIVITY_REORDER_TO_FRONT | Intent.FLAG_ACTIVITY_NO_ANIMATION);
+        handler.postDelayed(() -> caller.startActivity(back), PREWARM_RETURN_DELAY_MS);
+    }
+
+    private boolean start() {
+        if (!isInstalled()) {
+            return false;
+        }
+        try {
+            context.startActivity(launchIntent);
+            return true;
+        } catch (ActivityNotFoundException | SecurityException e) {
+            // The cached intent went stale; resolve once more before giving up
+            Log.w(TAG, "Cached launch intent failed: " + e.getMessage());
+            resolve();
+            if (launchIntent == null) {
+                return false;
+            }
+            try {
+                context.startActivity(launchIntent);
+                return true;
+            } catch (ActivityNotFoundException | SecurityException retry) {
+                Log.e(TAG, "Failed to launch Instagram", retry);
+                return false;
+            }
+        }
+    }
+
+    private boolean isWarm(long nowNanos) {
+        return lastStartNanos >= 0 && nowNanos - lastStartNanos < TimeUnit.MILLISECONDS.toNanos(WARM_WINDOW_MS);
+    }
+
+    /**
+     * Call for every window event from Instagram; the first one after a launch ends its
+     * measurement.
+     */
+    public void onWindowEvent(long nowNanos) {
+        if (pendingKeyPressNanos < 0) {
+            return;
+        }
+        long latency = nowNanos - pendingKeyPressNanos;
+        pendingKeyPressNanos = -1;
+        LatencyRecorder recorder = pendingWarm ? warmLaunchLatency : coldLaunchLatency;
+        recorder.record(latency);
+        Log.d(TAG, (pendingWarm ? "Warm" : "Cold") + " launch: key press to first window event in "
+                + TimeUnit.NANOSECONDS.toMillis(latency) + " ms; " + recorder);
+    }
+
+    public LatencyRecorder getColdLaunchLatency() {
+        return coldLaunchLatency;
+    }
+
+    public LatencyRecorder getWarmLaunchLatency() {
+        return warmLaunchLatency;
+    }
+}
@@ -0,0 +1,338 @@
+package com.example.magic_insta;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Recognizes named key triggers: sequences of taps and long presses, where a multi-tap is the
+ * same tap repeated. The triggers are compiled into a trie whose nodes are the automaton's
+ * states; each key press moves along one transition, so matching costs a few array lookups
+ * and never allocates.
+ *
+ * A press counts as a tap as soon as the key goes down unless some trigger continues with a
+ * long press of that key from the current state; only then does the matcher wait for the key
+ * to come up (a tap) or stay down for the long-press time (a long press). A trigger fires when
+ * its last press is recognized, or, if a longer trigger starts with it, once no further press
+ * follows within the sequence timeout or the next press does not continue it. Presses that lead
+ * nowhere restart matching from the beginning.
+ *
+ * Triggers are written as presses separated by spaces: a key ({@code up}, {@code down} or a
+ * key code), optionally {@code :long}, optionally {@code *n} for n taps, e.g.
+ * {@code "down*2 up:long"}. Not thread-safe; feed it from the thread that gets the key events,
+ * and call {@link #onTimeout} at {@link #getNextTimeoutNanos()}.
+ */
+public final class KeySequenceMatcher {
+    public static final int KEYCODE_VOLUME_UP = 24;
+    public static final int KEYCODE_VOLUME_DOWN = 25;
+
+    public interface Listener {
+        void onTrigger(String name);
+    }
+
+    // Automaton: per state, its transitions (symbol -> state) and the trigger it completes
+    private final int[][] symbols;
+    private final int[][] targets;
+    private final String[] accepts;
+    private final int[] keyCodes;
+    private final long longPressNanos;
+    private final long sequenceTimeoutNanos;
+    private final Listener listener;
+
+    private int state;
+    private long lastPressNanos;
+    // Key held down whose tap or long press is not decided yet, or -1
+    private int pendingKey = -1;
+    private long pendingSinceNanos;
+    // Key already counted at key down whose up is ignored, or -1
+    private int countedKey = -1;
+
+    public static class Builder {
+        private final List<int[]> sequences = new ArrayList<>();
+        private final List<String> names = new ArrayList<>();
+        private long longPressNanos = 500_000_000L;
+        private long sequenceTimeoutNanos = 400_000_000L;
+
+        public Builder longPress(long nanos) {
+            longPressNanos = nanos;
+            return this;
+        }
+
+        /**
+         * Longest gap between presses of one trigger.
+         */
+        public Builder sequenceTimeout(long nanos) {
+            sequenceTimeoutNanos = nanos;
+            return this;
+        }
+
+        /**
+         * Adds a trigger; a later trigger with the same presses replaces an earlier one.
+         *
+         * @throws IllegalArgumentException if {@code spec} is malformed
+         */
+        public Builder add(String name, String spec) {
+            sequences.add(parse(spec));
+            names.add(name);
+            return this;
+        }
+
+        /**
+         * Adds triggers from lines of {@code <name><TAB><spec>}; blank lines and lines starting
+         * with {@code #} are ignored.
+         *
+         * @throws IOException if a line is malformed; the message has the line number
+         */
+        public Builder load(Reader reader) throws IOException {
+            BufferedReader lines = new BufferedReader(reader);
+            String line;
+            int number = 0;
+            while ((line = lines.readLine()) != null) {
+                number++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                String[] fields = line.split("\t");
+                if (fields.length != 2 || fields[0].trim().isEmpty()) {
+                    throw new IOException("Line " + number + ": expected <name><TAB><presses>");
+                }
+                try {
+                    add(fields[0].trim(), fields[1].trim());
+                } catch (IllegalArgumentException e) {
+                    throw new IOException("Line " + number + ": " + e.getMessage());
+                }
+            }
+            return this;
+        }
+
+        public KeySequenceMatcher build(Listener listener) {
+            return new KeySequenceMatcher(this, listener);
+        }
+    }
+
+    private KeySequenceMatcher(Builder builder, Listener listener) {
+        this.listener = listener;
+        longPressNanos = builder.longPressNanos;
+        sequenceTimeoutNanos = builder.sequenceTimeoutNanos;
+
+        List<int[]> stateSymbols = new ArrayList<>();
+        List<int[]> stateTargets = new ArrayList<>();
+        List<String> stateAccepts = new ArrayList<>();
+        stateSymbols.add(new int[0]);
+        stateTargets.add(new int[0]);
+        stateAccepts.add(null);
+        int[] keys = new int[0];
+        for (int t = 0; t < builder.sequences.size(); t++) {
+            int node = 0;
+            for (int symbol : builder.sequences.get(t)) {
+                int next = find(stateSymbols.get(node), stateTargets.get(node), symbol);
+                if (next < 0) {
+                    next = stateSymbols.size();
+                    stateSymbols.add(new int[0]);
+                    stateTargets.add(new int[0]);
+                    stateAccepts.add(null);
+                    stateSymbols.set(node, append(stateSymbols.get(node), symbol));
+                    stateTargets.set(node, append(stateTargets.get(node), next));
+                }
+                node = next;
+                if (find(keys, keys, keyOf(symbol)) < 0) {
+                    keys = append(keys, keyOf(symbol));
+                }
+            }
+            stateAccepts.set(node, builder.names.get(t));
+        }
+        symbols = stateSymbols.toArray(new int[0][]);
+        targets = stateTargets.toArray(new int[0][]);
+        accepts = stateAccepts.toArray(new String[0]);
+        keyCodes = keys;
+    }
+
+    /**
+     * Whether any trigger uses {@code keyCode}, i.e. whether its events should be fed here.
+     */
+    public boolean handles(int keyCode) {
+        for (int key : keyCodes) {
+            if (key == keyCode) return true;
+        }
+        return false;
+    }
+
+    public void onKeyDown(int keyCode, long nowNanos) {
+        expire(nowNanos);
+        if (keyCode == pendingKey || keyCode == countedKey) {
+            // Auto-repeat of a held key
+            return;
+        }
+        resolvePending(nowNanos);
+        if (hasTransition(state, symbol(keyCode, true)) || (state != 0 && hasTransition(0, symbol(keyCode, true)))) {
+            pendingKey = keyCode;
+            pendingSinceNanos = nowNanos;
+        } else {
+            countedKey = keyCode;
+            press(symbol(keyCode, false), nowNanos);
+        }
+    }
+
+    public void onKeyUp(int keyCode, long nowNanos) {
+        if (keyCode == countedKey) {
+            countedKey = -1;
+            return;
+        }
+        if (keyCode == pendingKey) {
+            pendingKey = -1;
+            boolean longPress = nowNanos - pendingSinceNanos >= longPressNanos;
+            press(symbol(keyCode, longPress), longPress ? pendingSinceNanos + longPressNanos : nowNanos);
+        }
+        expire(nowNanos);
+    }
+
+    /**
+     * Recognizes long presses and fires triggers waiting for the sequence timeout.
+     */
+    public void onTimeout(long nowNanos) {
+        if (pendingKey >= 0 && nowNanos - pendingSinceNanos >= longPressNanos) {
+            // The key is still down; its up is ignored
+            countedKey = pendingKey;
+            pendingKey = -1;
+            press(symbol(countedKey, true), pendingSinceNanos + longPressNanos);
+        }
+        expire(nowNanos);
+    }
+
+    /**
+     * When {@link #onTimeout} should be called next, or -1 if nothing is pending.
+     */
+    public long getNextTimeoutNanos() {
+        long next = -1;
+        if (pendingKey >= 0) {
+            next = pendingSinceNanos + longPressNanos;
+        }
+        if (state != 0 && pendingKey < 0) {
+            long sequenceEnd = lastPressNanos + sequenceTimeoutNanos;
+            next = next < 0 ? sequenceEnd : Math.min(next, sequenceEnd);
+        }
+        return next;
+    }
+
+    /**
+     * Forgets any partly entered trigger.
+     */
+    public void reset() {
+        state = 0;
+        pendingKey = -1;
+        countedKey = -1;
+    }
+
+    private void resolvePending(long nowNanos) {
+        if (pendingKey >= 0) {
+            // Another key went down while this one was held: count the held key as a tap
+            int key = pendingKey;
+            pendingKey = -1;
+            press(symbol(key, false), nowNanos);
+        }
+    }
+
+    private void expire(long nowNanos) {
+        if (state != 0 && pendingKey < 0 && nowNanos - lastPressNanos >= sequenceTimeoutNanos) {
+            String name = accepts[state];
+            state = 0;
+            if (name != null) {
+                listener.onTrigger(name);
+            }
+        }
+    }
+
+    private void press(int symbol, long nowNanos) {
+        int next = find(symbols[state], targets[state], symbol);
+        if (next < 0 && state != 0) {
+            if (accepts[state] != null) {
+                // This press rules out the longer triggers, so the one completed so far fires first
+                String completed = accepts[state];
+                state = 0;
+                listener.onTrigger(completed);
+            }
+            // Start over with this press
+            next = find(symbols[0], targets[0], symbol);
+        }
+        lastPressNanos = nowNanos;
+        if (next < 0) {
+            state = 0;
+            return;
+        }
+        if (symbols[next].length == 0) {
+            state = 0;
+            listener.onTrigger(accepts[next]);
+        } else {
+            // A longer trigger may follow; decided by the next press or the sequence timeout
+            state = next;
+        }
+    }
+
+    private boolean hasTransition(int node, int symbol) {
+        return find(symbols[node], targets[node], symbol) >= 0;
+    }
+
+    private static int symbol(int keyCode, boolean longPress) {
+        return keyCode << 1 | (longPress ? 1 : 0);
+    }
+
+    private static int keyOf(int symbol) {
+        return symbol >> 1;
+    }
+
+    private static int find(int[] keys, int[] values, int key) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] == key) return values[i];
+        }
+        return -1;
+    }
+
+    private static int[] append(int[] array, int value) {
+        int[] grown = Arrays.copyOf(array, array.length + 1);
+        grown[array.length] = value;
+        return grown;
+    }
+
+    static int[] parse(String spec) {
+        List<Integer> presses = new ArrayList<>();
+        for (String token : spec.trim().split("\\s+")) {
+            if (token.isEmpty()) continue;
+            int count = 1;
+            int star = token.indexOf('*');
+            if (star >= 0) {
+                count = parseNumber(token.substring(star + 1), spec);
+                token = token.substring(0, star);
+            }
+            boolean longPress = token.endsWith(":long");
+            if (longPress) {
+                token = token.substring(0, token.length() - ":long".length());
+            }
+            int keyCode = token.equals("up") ? KEYCODE_VOLUME_UP
+                    : token.equals("down") ? KEYCODE_VOLUME_DOWN : parseNumber(token, spec);
+            if (count < 1 || count > 8 || keyCode <= 0) {
+                throw new IllegalArgumentException("bad presses '" + spec + "'");
+            }
+            for (int i = 0; i < count; i++) {
+                presses.add(symbol(keyCode, longPress));
+            }
+        }
+        if (presses.isEmpty()) {
+            throw new IllegalArgumentException("no presses in '" + spec + "'");
+        }
+        int[] sequence = new int[presses.size()];
+        for (int i = 0; i < sequence.length; i++) {
+            sequence[i] = presses.get(i);
+        }
+        return sequence;
+    }
+
+    private static int parseNumber(String text, String spec) {
+        try {
+            return Integer.parseInt(text);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("bad presses '" + spec + "'");
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.magic_insta;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Keeps the most recent latency samples in a ring buffer and reports percentiles.
+ *
+ * Recording never allocates; computing percentiles copies and sorts the window.
+ */
+public class LatencyRecorder {
+    private final String name;
+    private final long[] samples;
+    private int next = 0;
+    private long count = 0;
+
+    public LatencyRecorder(String name, int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        this.name = name;
+        this.samples = new long[capacity];
+    }
+
+    public synchronized void record(long nanos) {
+        samples[next] = nanos;
+        next = (next + 1) % samples.length;
+        count++;
+    }
+
+    /**
+     * Total number of samples recorded, including those that fell out of the window.
+     */
+    public synchronized long getCount() {
+        return count;
+    }
+
+    /**
+     * @param percentile value between 0 and 100
+     * @return latency in nanoseconds at that percentile of the current window, or 0 if empty
+     */
+    public long percentile(double percentile) {
+        long[] window = snapshot();
+        if (window.length == 0) {
+            return 0;
+        }
+        Arrays.sort(window);
+        return valueAt(window, percentile);
+    }
+
+    public synchronized void reset() {
+        next = 0;
+        count = 0;
+    }
+
+    private synchronized long[] snapshot() {
+        int size = (int) Math.min(count, samples.length);
+        return Arrays.copyOf(samples, size);
+    }
+
+    private static long valueAt(long[] sorted, double percentile) {
+        int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+
+    /**
+     * One-line summary with p50/p90/p99 in milliseconds.
+     */
+    @Override
+    public String toString() {
+        long[] window = snapshot();
+        if (window.length == 0) {
+            return name + ": no samples";
+        }
+        Arrays.sort(window);
+        return String.format(Locale.US, "%s: n=%d p50=%.2fms p90=%.2fms p99=%.2fms max=%.2fms",
+                name, getCount(),
+                valueAt(window, 50) / 1e6,
+                valueAt(window, 90) / 1e6,
+                valueAt(window, 99) / 1e6,
+                window[window.length - 1] / 1e6);
+    }
+}
@@ -0,0 +1,168 @@
+package com.example.magic_insta;
+
+import android.graphics.SurfaceTexture;
+import android.hardware.Camera;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Message;
+import android.os.Process;
+import android.util.Log;
+import android.view.SurfaceHolder;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link FrameSource} backed by the deprecated {@link android.hardware.Camera} API.
+ *
+ * The camera is opened on a dedicated "CameraThread", so preview callbacks arrive there, and
+ * frames are NV21 buffers from a {@link PreviewBufferPool}. Each pool buffer has one
+ * {@link Frame} wrapper that is reused for the lifetime of the source.
+ *
+ * Preview goes to {@code previewHolder} when given, otherwise to an offscreen texture.
+ */
+public class LegacyCameraFrameSource implements FrameSource, Camera.PreviewCallback, Frame.Releaser {
+    private static final String TAG = "LegacyFrameSource";
+    private static final int MSG_RELEASE = 1;
+
+    private final SurfaceHolder previewHolder;
+
+    private HandlerThread cameraThread;
+    private Handler cameraHandler;
+    private Camera camera;
+    private SurfaceTexture offscreenTexture;
+    private PreviewBufferPool bufferPool;
+    private final Map<byte[], Frame> frames = new IdentityHashMap<>();
+    private volatile Listener listener;
+
+    public LegacyCameraFrameSource(SurfaceHolder previewHolder) {
+        this.previewHolder = previewHolder;
+    }
+
+    @Override
+    public void start(Listener listener) {
+        if (cameraThread != null) return;
+        this.listener = listener;
+
+        cameraThread = new HandlerThread("CameraThread", Process.THREAD_PRIORITY_DISPLAY);
+        cameraThread.start();
+        cameraHandler = new Handler(cameraThread.getLooper(), this::handleCameraMessage);
+        cameraHandler.post(this::openCamera);
+    }
+
+    private void openCamera() {
+        try {
+            // Preview callbacks are delivered on the looper of the thread that opens the camera
+            camera = Camera.open(findFrontCamera());
+            bufferPool = new PreviewBufferPool(camera);
+            frames.clear();
+            if (previewHolder != null) {
+                camera.setPreviewDisplay(previewHolder);
+            } else {
+                offscreenTexture = new SurfaceTexture(0);
+                camera.setPreviewTexture(offscreenTexture);
+            }
+            bufferPool.attach(this);
+            camera.startPreview();
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to open camera", e);
+        }
+    }
+
+    private int findFrontCamera() {
+        Camera.CameraInfo cameraInfo = new Camera.CameraInfo();
+        int cameraCount = Camera.getNumberOfCameras();
+        for (int i = 0; i < cameraCount; i++) {
+            Camera.getCameraInfo(i, cameraInfo);
+            if (cameraInfo.facing == Camera.CameraInfo.CAMERA_FACING_FRONT) {
+                return i;
+            }
+        }
+        return 0; // fallback
+    }
+
+    @Override
+    public void onPreviewFrame(byte[] data, Camera camera) {
+        if (data == null || bufferPool == null) return;
+        bufferPool.onFrameArrived(data);
+
+        Listener current = listener;
+        if (current == null) {
+            bufferPool.drop(data);
+            return;
+        }
+
+        Frame frame = frames.get(data);
+        if (frame == null) {
+            frame = new Frame(this).setNv21(data, bufferPool.getWidth(), bufferPool.getHeight()).setTag(data);
+            frames.put(data, frame);
+        }
+        frame.setTimestampNanos(System.nanoTime());
+        current.onFrame(frame);
+    }
+
+    @Override
+    public void onRelease(Frame frame) {
+        Handler handler = cameraHandler;
+        if (handler == null) return;
+        if (Looper.myLooper() == handler.getLooper()) {
+            recycle(frame);
+        } else {
+            // Buffers are only handed back to the camera from the thread that opened it
+            handler.obtainMessage(MSG_RELEASE, frame).sendToTarget();
+        }
+    }
+
+    private boolean handleCameraMessage(Message msg) {
+        if (msg.what == MSG_RELEASE) {
+            recycle((Frame) msg.obj);
+        }
+        return true;
+    }
+
+    private void recycle(Frame frame) {
+        if (camera == null || bufferPool == null) return;
+        bufferPool.recycle((byte[]) frame.getTag());
+    }
+
+    @Override
+    public void stop() {
+        if (cameraThread == null) return;
+        listener = null;
+
+        CountDownLatch released = new CountDownLatch(1);
+        cameraHandler.post(() -> {
+            if (camera != null) {
+                bufferPool.detach();
+                Log.d(TAG, "Released camera: " + bufferPool);
+                camera.stopPreview();
+                camera.release();
+                camera = null;
+            }
+            if (offscreenTexture != null) {
+                offscreenTexture.release();
+                offscreenTexture = null;
+            }
+            released.countDown();
+        });
+        try {
+            // The preview surface may be destroyed as soon as we return
+            released.await(500, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        cameraThread.quitSafely();
+        cameraThread = null;
+        cameraHandler = null;
+    }
+
+    @Override
+    public long getSkippedFrameCount() {
+        PreviewBufferPool pool = bufferPool;
+        return pool != null ? pool.getMisses() : 0;
+    }
+}
@@ -1,7 +1,6 @@
 package com.example.magic_insta;
 
 import android.content.Intent;
-import android.content.SharedPreferences;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
@@ -13,10 +12,6 @@ import androidx.appcompat.app.AppCompatActivity;
 
 public class MainActivity extends AppCompatActivity {
     
-    private static final String PREFS_NAME = "MagicInstaPrefs";
-    private static final String FAKE_LOCKSCREEN_KEY = "fake_lockscreen_enabled";
-    private static final String INSTAGRAM_MANAGER_KEY = "instagram_manager_enabled";
-    
     private CheckBox checkboxFakeLockscreen;
     private CheckBox checkboxInstagramManager;
     
@@ -38,31 +33,27 @@ public class MainActivity extends AppCompatActivity {
         checkboxInstagramManager = findViewById(R.id.checkbox_instagram_manager);
         
         // Load the saved states
-        SharedPreferences prefs = getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
-        boolean isFakeLockscreenEnabled = prefs.getBoolean(FAKE_LOCKSCREEN_KEY, false);
-        boolean isInstagramManagerEnabled = prefs.getBoolean(INSTAGRAM_MANAGER_KEY, false);
-        
-        checkboxFakeLockscreen.setChecked(isFakeLockscreenEnabled);
-        checkboxInstagramManager.setChecked(isInstagramManagerEnabled);
+        SettingsStore settings = SettingsStore.get(this);
+        checkboxFakeLockscreen.setChecked(settings.isFakeLockscreenEnabled());
+        checkboxInstagramManager.setChecked(settings.isInstagramManagerEnabled());
         
         // Set up checkbox listeners
         checkboxFakeLockscreen.setOnCheckedChangeListener(new CompoundButton.OnCheckedChangeListener() {
             @Override
             public void onCheckedChanged(CompoundButton buttonView, boolean isChecked) {
-                SharedPreferences prefs = getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
-                SharedPreferences.Editor editor = prefs.edit();
-                editor.putBoolean(FAKE_LOCKSCREEN_KEY, isChecked);
-                editor.apply();
+                settings.setFakeLockscreenEnabled(isChecked);
             }
         });
         
         checkboxInstagramManager.setOnCheckedChangeListener(new CompoundButton.OnCheckedChangeListener() {
             @Override
             public void onCheckedChanged(CompoundButton buttonView, boolean isChecked) {
-                SharedPreferences prefs = getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
-                SharedPreferences.Editor editor = prefs.edit();
-                editor.putBoolean(INSTAGRAM_MANAGER_KEY, isChecked);
-                editor.apply();
+                settings.setInstagramManagerEnabled(isChecked);
+                if (isChecked) {
+                    // Arming the reveal: start Instagram's process now so the reveal launch is warm
+                    InstagramLauncher.get(MainActivity.this).prewarm(MainActivity.this,
+                            new Intent(MainActivity.this, MainActivity.class));
+                }
             }
         });
     }
@@ -79,6 +70,15 @@ public class MainActivity extends AppCompatActivity {
         startActivity(intent);
     }
     
+    /**
+     * Asks the accessibility service to walk Instagram's archive and record where each photo is.
+     */
+    public void calibrateArchive(View view) {
+        Intent intent = new Intent(AccessibilityKeyDetector.ACTION_CALIBRATE_ARCHIVE);
+        intent.setPackage(getPackageName());
+        sendBroadcast(intent);
+    }
+    
     private boolean canDrawOverlays() {
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
             return Settings.canDrawOverlays(this);
@@ -97,13 +97,11 @@ public class MainActivity extends AppCompatActivity {
     
     // Static method to check if fake lockscreen is enabled
     public static boolean isFakeLockscreenEnabled(android.content.Context context) {
-        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, android.content.Context.MODE_PRIVATE);
-        return prefs.getBoolean(FAKE_LOCKSCREEN_KEY, false);
+        return SettingsStore.get(context).isFakeLockscreenEnabled();
     }
     
     // Static method to check if instagram manager is enabled
     public static boolean isInstagramManagerEnabled(android.content.Context context) {
-        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, android.content.Context.MODE_PRIVATE);
-        return prefs.getBoolean(INSTAGRAM_MANAGER_KEY, false);
+        return SettingsStore.get(context).isInstagramManagerEnabled();
     }
 }
\ No newline at end of file
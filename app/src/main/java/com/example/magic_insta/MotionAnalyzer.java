@@ -0,0 +1,308 @@
+package com.example.magic_insta;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reveals a card when frames from a {@link FrameSource} show one being moved into view.
+ *
+ * Frames arrive on the source's thread and are handed to a separate "FrameAnalysis" thread
+ * through a {@link FrameHandoff}; with the latest-only policy a slow analysis just skips stale
+ * frames instead of queueing them.
+ *
+ * After motion, frames keep being analyzed until the scene settles while a {@link RoiSelector}
+ * collects where the motion was. The settled frame is encoded cropped to that region and, as a
+ * backup, uncropped; both go to the {@link CardDetector} chosen by {@link CardDetectors} through
+ * a {@link DetectionScheduler}, which hedges slow requests and keeps the most confident answer.
+ *
+ * Analysis can be paused without stopping the source: frames are then released as they arrive,
+ * so the camera stays open without anything being detected. {@link #arm} resumes it from a clean
+ * motion state and times the wait for the first analyzed frame.
+ */
+public class MotionAnalyzer {
+    private static final String TAG = "MotionAnalyzer";
+    // Mean luma difference per sampled pixel (0-255) that counts as motion
+    private static final float MOTION_THRESHOLD = 3.0f;
+    // A card entering a small part of the frame lights up a few blocks before the global score
+    private static final float BLOCK_THRESHOLD = 24.0f;
+    private static final int MIN_ACTIVE_BLOCKS = 4;
+    // Consecutive frames below this score mean the card has stopped moving
+    private static final float STABLE_THRESHOLD = 1.5f;
+    private static final int STABLE_FRAMES = 3;
+    private static final long SETTLE_TIMEOUT_MS = 1000;
+    // Longest side of the image sent for detection
+    private static final int CAPTURE_MAX_SIDE = 416;
+    private static final int JPEG_MAX_QUALITY = 90;
+    private static final int JPEG_MIN_QUALITY = 60;
+    private static final int JPEG_MAX_BYTES = 24 * 1024;
+    // Crop around the motion, never smaller than 40% of the short side nor above 80% of the frame
+    private static final int ROI_MARGIN_BLOCKS = 2;
+    private static final float ROI_MIN_SIDE = 0.4f;
+    private static final float ROI_MAX_AREA = 0.8f;
+    private static final int LATENCY_LOG_INTERVAL = 300;
+    // Detection gives up after the deadline; slow requests are hedged, failed ones backed off
+    private static final long DETECTION_DEADLINE_MS = 6000;
+    private static final long INITIAL_HEDGE_DELAY_MS = 1500;
+    private static final long MIN_HEDGE_DELAY_MS = 300;
+    private static final long BACKOFF_BASE_MS = 250;
+    private static final long BACKOFF_MAX_MS = 2000;
+    // Shared so the hedge delay keeps learning request latency across reveals
+    private static final DetectionScheduler detectionScheduler = new DetectionScheduler(
+            Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "CardDetectionRequest");
+                thread.setDaemon(true);
+                return thread;
+            }),
+            TimeUnit.MILLISECONDS.toNanos(DETECTION_DEADLINE_MS),
+            TimeUnit.MILLISECONDS.toNanos(INITIAL_HEDGE_DELAY_MS),
+            TimeUnit.MILLISECONDS.toNanos(MIN_HEDGE_DELAY_MS),
+            TimeUnit.MILLISECONDS.toNanos(BACKOFF_BASE_MS),
+            TimeUnit.MILLISECONDS.toNanos(BACKOFF_MAX_MS),
+            new Random());
+    private final Context context;
+    private final FrameSource frameSource;
+    private MotionDetector motionDetector;
+    private final CaptureTrigger captureTrigger = new CaptureTrigger(
+            MOTION_THRESHOLD, BLOCK_THRESHOLD, MIN_ACTIVE_BLOCKS,
+            STABLE_THRESHOLD, STABLE_FRAMES, TimeUnit.MILLISECONDS.toNanos(SETTLE_TIMEOUT_MS));
+    private final RoiSelector roiSelector = new RoiSelector(
+            BLOCK_THRESHOLD, ROI_MARGIN_BLOCKS, ROI_MIN_SIDE, ROI_MAX_AREA);
+    private final int[] roi = new int[4];
+    private final PreviewJpegEncoder jpegEncoder = new PreviewJpegEncoder(
+            CAPTURE_MAX_SIDE, JPEG_MAX_BYTES, JPEG_MAX_QUALITY, JPEG_MIN_QUALITY);
+    private volatile boolean isDetecting = false;
+    private volatile boolean active;
+    // Set by arm(): frames that arrived before it are stale, the first one after it is timed
+    private volatile long armedAtNanos;
+    private volatile LatencyRecorder armLatency;
+    private volatile long frameCount;
+
+    private HandlerThread analysisThread;
+    private Handler analysisHandler;
+    private final FrameHandoff<Frame> frameHandoff = new FrameHandoff<>(FrameHandoff.Policy.LATEST_ONLY, 1);
+    private final LatencyRecorder frameLatency = new LatencyRecorder("Frame arrival to decision", 512);
+    private final LatencyRecorder motionToRequest = new LatencyRecorder("Motion to detection request", 32);
+    private final Runnable drainFrames = this::drainFrames;
+    private final Runnable resetMotion = this::resetMotion;
+    private long droppedFrames = 0;
+
+    /**
+     * @param active whether frames are analyzed from the start, or only once {@link #arm}ed
+     */
+    public MotionAnalyzer(Context context, FrameSource frameSource, boolean active) {
+        this.context = context.getApplicationContext();
+        this.frameSource = frameSource;
+        this.active = active;
+    }
+
+    /**
+     * Starts the analysis thread and the source. Must be called on the main thread.
+     */
+    public void start() {
+        if (analysisThread != null) return;
+        analysisThread = new HandlerThread("FrameAnalysis", Process.THREAD_PRIORITY_DISPLAY);
+        analysisThread.start();
+        analysisHandler = new Handler(analysisThread.getLooper());
+
+        if (active) {
+            TrickState.setDetectedCard(null);
+        }
+        // Load the card model while the camera opens rather than on the first reveal
+        analysisHandler.post(() -> CardDetectors.get(context));
+        frameSource.start(this::onFrame);
+    }
+
+    /**
+     * Analyzes frames that arrive from now on, from a clean motion state, and records the wait
+     * for the first one in {@code latency}. The card detected before is cleared.
+     */
+    public void arm(long nowNanos, LatencyRecorder latency) {
+        TrickState.setDetectedCard(null);
+        armLatency = latency;
+        armedAtNanos = nowNanos;
+        active = true;
+        if (analysisHandler != null) {
+            analysisHandler.post(resetMotion);
+        }
+    }
+
+    /**
+     * Releases frames unread until the next {@link #arm}; the source keeps running.
+     */
+    public void pause() {
+        active = false;
+        armLatency = null;
+    }
+
+    /**
+     * Frames the source has delivered so far, analyzed or not; 0 until the camera is open.
+     */
+    public long getFrameCount() {
+        return frameCount;
+    }
+
+    private void onFrame(Frame frame) {
+        frameCount++;
+        if (!active || isDetecting || frame.getTimestampNanos() < armedAtNanos) {
+            droppedFrames++;
+            frame.release();
+            return;
+        }
+
+        Frame evicted = frameHandoff.offer(frame, System.nanoTime());
+        if (evicted != null) {
+            droppedFrames++;
+            evicted.release();
+        }
+        analysisHandler.post(drainFrames);
+    }
+
+    private void drainFrames() {
+        Frame frame;
+        while ((frame = frameHandoff.poll()) != null) {
+            long arrivedAt = frameHandoff.getPolledTimestamp();
+            try {
+                if (active && !isDetecting) {
+                    LatencyRecorder latency = armLatency;
+                    if (latency != null) {
+                        armLatency = null;
+                        latency.record(System.nanoTime() - armedAtNanos);
+                        Log.d(TAG, latency.toString());
+                    }
+                    analyzeFrame(frame, arrivedAt);
+                }
+            } finally {
+                frame.release();
+            }
+        }
+    }
+
+    private void resetMotion() {
+        captureTrigger.reset();
+        roiSelector.reset();
+        if (motionDetector != null) {
+            motionDetector.reset();
+        }
+    }
+
+    private void analyzeFrame(Frame frame, long arrivedAt) {
+        if (motionDetector == null
+                || motionDetector.getWidth() != frame.getWidth()
+                || motionDetector.getHeight() != frame.getHeight()) {
+            motionDetector = new MotionDetector(frame.getWidth(), frame.getHeight());
+        }
+
+        boolean wasSettling = captureTrigger.isSettling();
+        motionDetector.process(frame);
+        boolean capture = captureTrigger.onFrame(motionDetector, System.nanoTime());
+        frameLatency.record(System.nanoTime() - arrivedAt);
+
+        if (captureTrigger.isSettling() || capture) {
+            roiSelector.accumulate(motionDetector);
+        }
+        if (captureTrigger.isSettling() && !wasSettling) {
+            Log.d(TAG, "Motion detected (score " + motionDetector.getLastScore() + ", blocks "
+                    + motionDetector.countActiveBlocks(BLOCK_THRESHOLD) + ")! Waiting for stabilization...");
+        }
+        if (capture) {
+            captureImage(frame);
+        }
+        if (frameLatency.getCount() % LATENCY_LOG_INTERVAL == 0) {
+            Log.d(TAG, frameLatency.toString());
+        }
+    }
+
+    /**
+     * Arrival-to-decision latency of analyzed frames.
+     */
+    public LatencyRecorder getFrameLatency() {
+        return frameLatency;
+    }
+
+    private void captureImage(Frame frame) {
+        boolean cropped = roiSelector.select(frame.getWidth(), frame.getHeight(), roi);
+        roiSelector.reset();
+        List<CardImage> candidates = new ArrayList<>(2);
+        candidates.add(encode(frame, cropped ? roi : null));
+        if (cropped) {
+            // The crop can cut off a card held still at the edge of the motion; the full frame backs it up
+            candidates.add(encode(frame, null));
+        }
+        Log.d(TAG, jpegEncoder.getEncodeLatency() + ", avg bytes/request=" + jpegEncoder.getAverageBytes());
+
+        isDetecting = true;
+        motionDetector.reset();
+        motionToRequest.record(System.nanoTime() - captureTrigger.getMotionStartNanos());
+        Log.d(TAG, motionToRequest.toString());
+        detectCard(candidates);
+    }
+
+    private CardImage encode(Frame frame, int[] crop) {
+        CardImage image = jpegEncoder.encode(frame, crop);
+        Log.d(TAG, "Captured preview frame " + frame.getWidth() + "x" + frame.getHeight()
+                + (crop != null ? " cropped to " + crop[2] + "x" + crop[3] + " at " + crop[0] + "," + crop[1] : "")
+                + " as " + image.getWidth() + "x" + image.getHeight() + ", "
+                + image.getJpeg().length + " byte JPEG (quality " + jpegEncoder.getLastQuality() + ") in "
+                + TimeUnit.NANOSECONDS.toMillis(jpegEncoder.getLastEncodeNanos()) + " ms");
+        return image;
+    }
+
+    /**
+     * Time from the start of motion to the detection request for each reveal.
+     */
+    public LatencyRecorder getMotionToRequestLatency() {
+        return motionToRequest;
+    }
+
+    private void detectCard(List<CardImage> candidates) {
+        Log.d(TAG, "Starting card detection on " + candidates.size() + " candidate(s)...");
+        isDetecting = true;
+        long armedAt = armedAtNanos;
+
+        new Thread(() -> {
+            try {
+                CardDetector detector = CardDetectors.get(context);
+                DetectionScheduler.Result result = detectionScheduler.detect(detector, candidates);
+                Log.d(TAG, detector.getName() + " detection: " + result);
+                if (result.best.hasCard) {
+                    Log.d(TAG, "SUCCESS! Card detected:");
+                    Log.d(TAG, "Class: " + result.best.cardClass);
+                    Log.d(TAG, "Confidence: " + result.best.confidence);
+                    // The reveal opens the post registered for this card, unless it was re-armed since
+                    if (armedAt == armedAtNanos) {
+                        TrickState.setDetectedCard(result.best);
+                    }
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Card detection failed", e);
+            } finally {
+                isDetecting = false;
+            }
+        }, "CardDetection").start();
+    }
+
+    /**
+     * Stops the source and the analysis thread. Must be called on the main thread.
+     */
+    public void stop() {
+        if (analysisThread == null) return;
+
+        frameSource.stop();
+        Log.d(TAG, frameLatency.toString() + ", dropped=" + droppedFrames
+                + ", skipped by source=" + frameSource.getSkippedFrameCount());
+
+        frameHandoff.drainTo(Frame::release);
+        analysisThread.quitSafely();
+        analysisThread = null;
+        analysisHandler = null;
+    }
+}
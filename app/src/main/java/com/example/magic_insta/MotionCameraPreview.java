@@ -1,155 +1,56 @@
 package com.example.magic_insta;
 
 import android.content.Context;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.hardware.Camera;
-import android.os.Handler;
-import android.util.Log;
 import android.view.SurfaceHolder;
 import android.view.SurfaceView;
-import java.util.Arrays;
 
-public class MotionCameraPreview extends SurfaceView implements SurfaceHolder.Callback, Camera.PreviewCallback {
-    private static final String TAG = "MotionPreview";
-    private Camera camera;
-    private SurfaceHolder holder;
-    private byte[] lastFrame;
-    private boolean isWaitingToCapture = false;
-    private boolean isDetecting = false;
-    private Context context;
-    private final Handler handler = new Handler();
+/**
+ * Front camera preview that reveals a card when it detects motion, for when the camera cannot
+ * be kept warm by {@link CameraStandbyService}.
+ *
+ * Frames from a {@link FrameSource} go to a {@link MotionAnalyzer} while the view's surface
+ * exists. Without an explicit source the legacy camera previews into this view. The preview
+ * never stops.
+ */
+public class MotionCameraPreview extends SurfaceView implements SurfaceHolder.Callback {
+    private final MotionAnalyzer analyzer;
 
     public MotionCameraPreview(Context context) {
+        this(context, null);
+    }
+
+    /**
+     * @param frameSource where frames come from, or null to preview the legacy camera here
+     */
+    public MotionCameraPreview(Context context, FrameSource frameSource) {
         super(context);
-        this.context = context;
-        holder = getHolder();
+        SurfaceHolder holder = getHolder();
         holder.addCallback(this);
+        analyzer = new MotionAnalyzer(context,
+                frameSource != null ? frameSource : new LegacyCameraFrameSource(holder), true);
     }
 
     @Override
     public void surfaceCreated(SurfaceHolder holder) {
-        camera = Camera.open(findFrontCamera());
-        try {
-            camera.setPreviewDisplay(holder);
-            camera.setPreviewCallback(this);
-            camera.startPreview();
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-    }
-
-    private int findFrontCamera() {
-        Camera.CameraInfo cameraInfo = new Camera.CameraInfo();
-        int cameraCount = Camera.getNumberOfCameras();
-        for (int i = 0; i < cameraCount; i++) {
-            Camera.getCameraInfo(i, cameraInfo);
-            if (cameraInfo.facing == Camera.CameraInfo.CAMERA_FACING_FRONT) {
-                return i;
-            }
-        }
-        return 0; // fallback
+        analyzer.start();
     }
 
-    @Override
-    public void onPreviewFrame(byte[] data, Camera camera) {
-        if (data == null || isWaitingToCapture || isDetecting) return;
-
-        Camera.Size size = camera.getParameters().getPreviewSize();
-        if (lastFrame == null) {
-            lastFrame = Arrays.copyOf(data, data.length);
-            return;
-        }
-
-        int diff = computeFrameDifference(lastFrame, data);
-        if (diff > 100000) { // Adjust threshold as needed
-            isWaitingToCapture = true;
-            Log.d(TAG, "Motion detected! Waiting for stabilization...");
-            handler.postDelayed(() -> captureImage(), 400);
-        }
-        lastFrame = Arrays.copyOf(data, data.length);
+    /**
+     * Arrival-to-decision latency of analyzed preview frames.
+     */
+    public LatencyRecorder getFrameLatency() {
+        return analyzer.getFrameLatency();
     }
 
-    private int computeFrameDifference(byte[] frame1, byte[] frame2) {
-        int diff = 0;
-        for (int i = 0; i < frame1.length; i += 10) {
-            diff += Math.abs((frame1[i] & 0xFF) - (frame2[i] & 0xFF));
-        }
-        return diff;
-    }
-
-    private void captureImage() {
-        Log.d(TAG, "Capturing image...");
-        camera.takePicture(null, null, (data, camera) -> {
-            Bitmap bitmap = BitmapFactory.decodeByteArray(data, 0, data.length);
-            detectCard(bitmap);
-            camera.startPreview();
-            isWaitingToCapture = false;
-        });
-    }
-
-    private void detectCard(Bitmap bitmap) {
-        Log.d(TAG, "Starting card detection...");
-        isDetecting = true;
-        
-        new Thread(() -> {
-            try {
-                detectCardUntilFound(bitmap);
-            } catch (Exception e) {
-                Log.e(TAG, "Card detection failed", e);
-                isDetecting = false;
-            }
-        }).start();
-    }
-    
-    private void detectCardUntilFound(Bitmap bitmap) throws Exception {
-        int attempts = 0;
-        int maxAttempts = 10; // Prevent infinite loop
-        
-        while (attempts < maxAttempts) {
-            attempts++;
-            Log.d(TAG, "Detection attempt " + attempts);
-            
-            try {
-                CardDetectionUploader.DetectionResult result = CardDetectionUploader.detectCard(bitmap);
-                
-                if (result.hasCard) {
-                    Log.d(TAG, "SUCCESS! Card detected:");
-                    Log.d(TAG, "SUCCESS! Card detected:");
-                    Log.d(TAG, "SUCCESS! Card detected:");
-                    Log.d(TAG, "Class: " + result.cardClass);
-                    Log.d(TAG, "Confidence: " + result.confidence);
-                    Log.d(TAG, "SUCCESS! Card detected:");
-                    Log.d(TAG, "SUCCESS! Card detected:");
-                    
-                    // You can add additional logic here when a card is found
-                    // For example, show a toast, update UI, etc.
-                    
-                    isDetecting = false;
-                    return; // Stop detection, card found!
-                } else {
-                    Log.d(TAG, "No card detected, continuing...");
-                    // Small delay before next attempt
-                    Thread.sleep(500);
-                }
-                
-            } catch (Exception e) {
-                Log.e(TAG, "API call failed on attempt " + attempts, e);
-                Thread.sleep(1000); // Wait longer on API error
-            }
-        }
-        
-        Log.d(TAG, "Stopped detection after " + maxAttempts + " attempts");
-        isDetecting = false;
+    /**
+     * Time from the start of motion to the detection request for each reveal.
+     */
+    public LatencyRecorder getMotionToRequestLatency() {
+        return analyzer.getMotionToRequestLatency();
     }
 
     public void releaseCamera() {
-        if (camera != null) {
-            camera.setPreviewCallback(null);
-            camera.stopPreview();
-            camera.release();
-            camera = null;
-        }
+        analyzer.stop();
     }
 
     @Override 
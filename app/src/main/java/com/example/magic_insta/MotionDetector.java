@@ -0,0 +1,235 @@
+package com.example.magic_insta;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Luma-only frame differencing for NV21 preview frames and YUV_420_888 {@link Frame}s.
+ *
+ * Only every {@code stride}-th pixel of every {@code stride}-th row of the Y plane is sampled,
+ * and the samples are kept in two buffers (background and current) that are swapped after
+ * each frame, so nothing is allocated once the detector is constructed.
+ *
+ * The global score is the mean absolute difference per sampled pixel (0-255), which keeps
+ * thresholds independent of the preview resolution. Differences are also accumulated per
+ * square block of {@code blockSize} pixels to give a coarse motion map.
+ */
+public class MotionDetector {
+    public static final int DEFAULT_STRIDE = 4;
+    public static final int DEFAULT_BLOCK_SIZE = 16;
+
+    private final int width;
+    private final int height;
+    private final int stride;
+    private final int blockSize;
+    private final int blockCols;
+    private final int blockRows;
+
+    // Block index of each sampled column, so the inner loop never divides
+    private final int[] columnBlock;
+    private final int[] blockSamples;
+    private final int[] blockSums;
+    private final float[] blockScores;
+
+    private byte[] background;
+    private byte[] current;
+    private boolean hasBackground = false;
+    private float lastScore = 0f;
+
+    public MotionDetector(int width, int height) {
+        this(width, height, DEFAULT_STRIDE, DEFAULT_BLOCK_SIZE);
+    }
+
+    public MotionDetector(int width, int height, int stride, int blockSize) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Invalid frame size " + width + "x" + height);
+        }
+        if (stride <= 0 || blockSize <= 0) {
+            throw new IllegalArgumentException("Stride and block size must be positive");
+        }
+        // Every block, edge blocks included, then starts on a sampled row and column, so no
+        // block score divides by zero samples
+        if (blockSize % stride != 0) {
+            throw new IllegalArgumentException("Block size " + blockSize + " is not a multiple of stride " + stride);
+        }
+        this.width = width;
+        this.height = height;
+        this.stride = stride;
+        this.blockSize = blockSize;
+        this.blockCols = (width + blockSize - 1) / blockSize;
+        this.blockRows = (height + blockSize - 1) / blockSize;
+
+        int sampledCols = (width + stride - 1) / stride;
+        int sampledRows = (height + stride - 1) / stride;
+        background = new byte[sampledCols * sampledRows];
+        current = new byte[sampledCols * sampledRows];
+
+        columnBlock = new int[sampledCols];
+        for (int i = 0; i < sampledCols; i++) {
+            columnBlock[i] = (i * stride) / blockSize;
+        }
+
+        blockSamples = new int[blockCols * blockRows];
+        blockSums = new int[blockCols * blockRows];
+        blockScores = new float[blockCols * blockRows];
+        for (int y = 0; y < height; y += stride) {
+            int rowBlock = (y / blockSize) * blockCols;
+            for (int i = 0; i < sampledCols; i++) {
+                blockSamples[rowBlock + columnBlock[i]]++;
+            }
+        }
+    }
+
+    /**
+     * Compares the luma plane of an NV21 (or any Y-first) frame against the previous one.
+     *
+     * @return mean absolute luma difference per sampled pixel, or 0 for the first frame
+     */
+    public float process(byte[] frame) {
+        if (frame == null || frame.length < width * height) {
+            throw new IllegalArgumentException("Frame smaller than " + width + "x" + height + " luma plane");
+        }
+        return processLuma(frame, 0, width);
+    }
+
+    /**
+     * Compares the luma plane of {@code frame} against the previous one without copying it.
+     *
+     * @return mean absolute luma difference per sampled pixel, or 0 for the first frame
+     */
+    public float process(Frame frame) {
+        if (frame.getWidth() != width || frame.getHeight() != height) {
+            throw new IllegalArgumentException("Expected " + width + "x" + height + " frame, got "
+                    + frame.getWidth() + "x" + frame.getHeight());
+        }
+        ByteBuffer luma = frame.getYPlane();
+        if (luma.hasArray()) {
+            return processLuma(luma.array(), luma.arrayOffset() + luma.position(), frame.getYRowStride());
+        }
+        return processLuma(luma, frame.getYRowStride());
+    }
+
+    private float processLuma(byte[] frame, int offset, int rowStride) {
+        byte[] bg = background;
+        byte[] cur = current;
+        int[] sums = blockSums;
+        int[] colBlock = columnBlock;
+        int sampledCols = colBlock.length;
+        long total = 0;
+        int k = 0;
+
+        Arrays.fill(sums, 0);
+        for (int y = 0; y < height; y += stride) {
+            int row = offset + y * rowStride;
+            int rowBlock = (y / blockSize) * blockCols;
+            for (int i = 0, x = 0; i < sampledCols; i++, x += stride) {
+                int v = frame[row + x] & 0xFF;
+                int d = v - (bg[k] & 0xFF);
+                if (d < 0) d = -d;
+                cur[k++] = (byte) v;
+                sums[rowBlock + colBlock[i]] += d;
+                total += d;
+            }
+        }
+        return finishFrame(total, k);
+    }
+
+    // Direct buffers (CameraX planes) are read with absolute gets instead of being copied
+    private float processLuma(ByteBuffer frame, int rowStride) {
+        byte[] bg = background;
+        byte[] cur = current;
+        int[] sums = blockSums;
+        int[] colBlock = columnBlock;
+        int sampledCols = colBlock.length;
+        int base = frame.position();
+        long total = 0;
+        int k = 0;
+
+        Arrays.fill(sums, 0);
+        for (int y = 0; y < height; y += stride) {
+            int row = base + y * rowStride;
+            int rowBlock = (y / blockSize) * blockCols;
+            for (int i = 0, x = 0; i < sampledCols; i++, x += stride) {
+                int v = frame.get(row + x) & 0xFF;
+                int d = v - (bg[k] & 0xFF);
+                if (d < 0) d = -d;
+                cur[k++] = (byte) v;
+                sums[rowBlock + colBlock[i]] += d;
+                total += d;
+            }
+        }
+        return finishFrame(total, k);
+    }
+
+    private float finishFrame(long total, int samples) {
+        // Current frame becomes the background for the next call
+        byte[] bg = background;
+        background = current;
+        current = bg;
+
+        if (!hasBackground) {
+            hasBackground = true;
+            Arrays.fill(blockScores, 0f);
+            lastScore = 0f;
+            return lastScore;
+        }
+
+        for (int b = 0; b < blockSums.length; b++) {
+            blockScores[b] = (float) blockSums[b] / blockSamples[b];
+        }
+        lastScore = (float) total / samples;
+        return lastScore;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Number of blocks whose mean difference in the last frame is at least {@code threshold}.
+     */
+    public int countActiveBlocks(float threshold) {
+        int count = 0;
+        for (float score : blockScores) {
+            if (score >= threshold) count++;
+        }
+        return count;
+    }
+
+    /**
+     * Per-block mean differences of the last processed frame, row-major with
+     * {@link #getBlockCols()} columns. The array is reused between frames.
+     */
+    public float[] getBlockScores() {
+        return blockScores;
+    }
+
+    public int getBlockCols() {
+        return blockCols;
+    }
+
+    public int getBlockRows() {
+        return blockRows;
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    public float getLastScore() {
+        return lastScore;
+    }
+
+    /**
+     * Forgets the background so the next frame only primes the detector.
+     */
+    public void reset() {
+        hasBackground = false;
+        lastScore = 0f;
+        Arrays.fill(blockScores, 0f);
+    }
+}
@@ -0,0 +1,145 @@
+package com.example.magic_insta;
+
+import android.view.accessibility.AccessibilityNodeInfo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Owns the {@link AccessibilityNodeInfo}s obtained during one traversal and recycles them when
+ * closed, so a walk over the tree cannot leak nodes even when it ends early or throws:
+ * <pre>
+ * try (NodeScope scope = new NodeScope()) {
+ *     AccessibilityNodeInfo child = scope.track(node.getChild(0));
+ *     ...
+ *     keep = scope.retain(child);  // survives close; release with NodeScope.release
+ * }
+ * </pre>
+ * Before API 33 every node obtained from the framework comes from a small pool and its parcel
+ * stays on the heap until {@link AccessibilityNodeInfo#recycle()}; later releases ignore
+ * recycling, so this only costs a list per walk there.
+ *
+ * With {@link #setLeakTracking} on (debuggable builds), obtained, recycled and retained nodes
+ * are counted across all scopes; {@link #getOutstandingCount()} staying above zero between
+ * flow runs is a leak. Scopes are not thread-safe; the counters are.
+ */
+public final class NodeScope implements AutoCloseable {
+    private static volatile boolean leakTracking;
+    private static final AtomicInteger obtained = new AtomicInteger();
+    private static final AtomicInteger recycled = new AtomicInteger();
+    private static final AtomicInteger retained = new AtomicInteger();
+
+    // Obtained nodes not yet recycled or retained. Walks track and settle nodes in stack order,
+    // so lookups scan from the end.
+    private final List<AccessibilityNodeInfo> nodes = new ArrayList<>();
+    private boolean closed;
+
+    /**
+     * Counts nodes for {@link #getOutstandingCount()}; meant for debuggable builds.
+     */
+    public static void setLeakTracking(boolean enabled) {
+        leakTracking = enabled;
+    }
+
+    /**
+     * Takes ownership of a node the caller obtained, e.g. from {@code getChild}.
+     *
+     * @param node may be null, which is returned as is
+     */
+    public AccessibilityNodeInfo track(AccessibilityNodeInfo node) {
+        if (closed) {
+            throw new IllegalStateException("Scope is closed");
+        }
+        if (node != null) {
+            nodes.add(node);
+            if (leakTracking) obtained.incrementAndGet();
+        }
+        return node;
+    }
+
+    /**
+     * Keeps {@code node} alive past {@link #close()}; its owner must {@link #release} it.
+     */
+    public AccessibilityNodeInfo retain(AccessibilityNodeInfo node) {
+        if (remove(node) && leakTracking) {
+            retained.incrementAndGet();
+        }
+        return node;
+    }
+
+    /**
+     * Recycles a tracked node now instead of at {@link #close()}.
+     */
+    public void recycle(AccessibilityNodeInfo node) {
+        if (remove(node)) {
+            node.recycle();
+            if (leakTracking) recycled.incrementAndGet();
+        }
+    }
+
+    /**
+     * Recycles a node that was {@link #retain}ed from a scope.
+     */
+    public static void release(AccessibilityNodeInfo node) {
+        if (node == null) return;
+        node.recycle();
+        if (leakTracking) {
+            recycled.incrementAndGet();
+            retained.decrementAndGet();
+        }
+    }
+
+    /**
+     * Number of nodes this scope still owns.
+     */
+    public int size() {
+        return nodes.size();
+    }
+
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+        for (int i = nodes.size() - 1; i >= 0; i--) {
+            nodes.get(i).recycle();
+        }
+        if (leakTracking) recycled.addAndGet(nodes.size());
+        nodes.clear();
+    }
+
+    private boolean remove(AccessibilityNodeInfo node) {
+        for (int i = nodes.size() - 1; i >= 0; i--) {
+            if (nodes.get(i) == node) {
+                nodes.remove(i);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Nodes obtained and not yet recycled, including retained ones; 0 when tracking is off.
+     */
+    public static int getOutstandingCount() {
+        return obtained.get() - recycled.get();
+    }
+
+    /**
+     * Retained nodes not yet released; 0 when tracking is off.
+     */
+    public static int getRetainedCount() {
+        return retained.get();
+    }
+
+    public static String leakReport() {
+        return "Nodes: " + obtained.get() + " obtained, " + recycled.get() + " recycled, "
+                + retained.get() + " retained, " + getOutstandingCount() + " outstanding";
+    }
+
+    static void resetCounters() {
+        obtained.set(0);
+        recycled.set(0);
+        retained.set(0);
+    }
+}
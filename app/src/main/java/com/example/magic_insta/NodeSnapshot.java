@@ -0,0 +1,515 @@
+package com.example.magic_insta;
+
+import android.graphics.Rect;
+import android.view.accessibility.AccessibilityNodeInfo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Flat, indexed copy of an accessibility tree.
+ *
+ * Every {@link AccessibilityNodeInfo#getChild} is a binder call into the target app, so walking
+ * the live tree once per lookup multiplies the IPC cost by the number of lookups. A snapshot
+ * walks the tree once, copies class, text, content description, view id, screen bounds and
+ * flags into parallel arrays, and answers every query from memory. The walk is bounded in
+ * depth, node count and time, so a heavy feed is cut short instead of stalling the caller.
+ *
+ * Nodes are numbered in pre-order (parent before children, children in order), the order the
+ * recursive finders used, so "first match" and "last match" mean the same thing as before.
+ * Content descriptions (case-insensitive) and class names are hash-indexed; walks by bounds or
+ * any other condition go through {@link NodeTraversal}.
+ *
+ * Queries return node indexes, or -1 when nothing matches; {@link #getNode} gives the live node
+ * to act on. Only clickable, long-clickable and scrollable nodes are kept live; every other node
+ * is recycled during the capture, and the kept ones by {@link #release()}. Snapshots made with
+ * {@link Builder} have no live nodes, which is what tests use.
+ */
+public final class NodeSnapshot {
+    public static final int FLAG_CLICKABLE = 1;
+    public static final int FLAG_LONG_CLICKABLE = 1 << 1;
+    public static final int FLAG_ENABLED = 1 << 2;
+    public static final int FLAG_SCROLLABLE = 1 << 3;
+    public static final int FLAG_VISIBLE = 1 << 4;
+
+    public static final int DEFAULT_MAX_DEPTH = 48;
+    // Every screen of the reveal fits well within these; a runaway feed is cut off instead of
+    // stalling the main looper on child lookups
+    public static final int DEFAULT_MAX_NODES = 2000;
+    public static final long DEFAULT_BUDGET_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+    // Nodes between two looks at the clock during a capture
+    private static final int BUDGET_CHECK_INTERVAL = 16;
+    private static final int[] NONE = new int[0];
+    // Nodes that can be acted on, and so stay live in a captured snapshot
+    private static final int ACTIONABLE = FLAG_CLICKABLE | FLAG_LONG_CLICKABLE | FLAG_SCROLLABLE;
+
+    private final int size;
+    private final AccessibilityNodeInfo[] nodes;
+    private final int[] parents;
+    private final int[] depths;
+    private final int[] childCounts;
+    // Tree links derived from parents, for NodeTraversal
+    private final int[] subtreeEnds;
+    private final int[] lastChildren;
+    private final int[] previousSiblings;
+    private final String[] classNames;
+    private final String[] texts;
+    private final String[] descriptions;
+    private final String[] viewIds;
+    private final int[] lefts;
+    private final int[] tops;
+    private final int[] rights;
+    private final int[] bottoms;
+    private final int[] flags;
+    private final String packageName;
+    private final int truncated;
+    private final long buildNanos;
+
+    private final Map<String, int[]> byDescription;
+    private final Map<String, int[]> byClassName;
+
+    /**
+     * Captures the tree under {@code root} within {@link #DEFAULT_MAX_DEPTH},
+     * {@link #DEFAULT_MAX_NODES} and {@link #DEFAULT_BUDGET_NANOS}, taking ownership of
+     * {@code root}.
+     */
+    public static NodeSnapshot capture(AccessibilityNodeInfo root) {
+        return capture(root, DEFAULT_MAX_DEPTH, DEFAULT_MAX_NODES, DEFAULT_BUDGET_NANOS);
+    }
+
+    /**
+     * Captures the tree under {@code root} in pre-order; children of nodes at {@code maxDepth}
+     * are not visited, and the walk ends after {@code maxNodes} nodes or once it has taken
+     * {@code budgetNanos} (0 for no limit). Nodes it did not get to count as truncated.
+     * {@code root} belongs to the snapshot afterwards.
+     *
+     * @param root may be null, giving an empty snapshot
+     */
+    public static NodeSnapshot capture(AccessibilityNodeInfo root, int maxDepth, int maxNodes, long budgetNanos) {
+        long start = System.nanoTime();
+        Builder builder = new Builder();
+        if (root == null) {
+            return builder.build(System.nanoTime() - start);
+        }
+
+        Rect bounds = new Rect();
+        // Explicit stack in place of recursion: deep trees cannot overflow the thread stack
+        List<AccessibilityNodeInfo> stack = new ArrayList<>();
+        List<int[]> positions = new ArrayList<>();
+        try (NodeScope scope = new NodeScope()) {
+            builder.setPackageName(string(scope.track(root).getPackageName()));
+            stack.add(root);
+            positions.add(new int[] {-1, 0});
+            while (!stack.isEmpty()) {
+                if (builder.size >= maxNodes || (budgetNanos > 0 && builder.size % BUDGET_CHECK_INTERVAL == 0
+                        && System.nanoTime() - start >= budgetNanos)) {
+                    // The scope recycles the nodes still on the stack
+                    builder.truncated += stack.size();
+                    break;
+                }
+                int last = stack.size() - 1;
+                AccessibilityNodeInfo node = stack.remove(last);
+                int[] position = positions.remove(last);
+                if (node == null) continue;
+
+                node.getBoundsInScreen(bounds);
+                int childCount = node.getChildCount();
+                int nodeFlags = flagsOf(node);
+                boolean actionable = (nodeFlags & ACTIONABLE) != 0;
+                int index = builder.add(position[0], actionable ? scope.retain(node) : null,
+                        string(node.getClassName()), string(node.getText()), string(node.getContentDescription()),
+                        node.getViewIdResourceName(), bounds.left, bounds.top, bounds.right, bounds.bottom,
+                        nodeFlags, childCount);
+
+                if (position[1] >= maxDepth) {
+                    builder.truncated += childCount;
+                } else {
+                    // Reverse push so children pop in order
+                    for (int i = childCount - 1; i >= 0; i--) {
+                        stack.add(scope.track(node.getChild(i)));
+                        positions.add(new int[] {index, position[1] + 1});
+                    }
+                }
+                if (!actionable) {
+                    scope.recycle(node);
+                }
+            }
+            return builder.build(System.nanoTime() - start);
+        } catch (RuntimeException e) {
+            // Nodes already kept would otherwise never be released
+            builder.releaseNodes();
+            throw e;
+        }
+    }
+
+    private static int flagsOf(AccessibilityNodeInfo node) {
+        int flags = 0;
+        if (node.isClickable()) flags |= FLAG_CLICKABLE;
+        if (node.isLongClickable()) flags |= FLAG_LONG_CLICKABLE;
+        if (node.isEnabled()) flags |= FLAG_ENABLED;
+        if (node.isScrollable()) flags |= FLAG_SCROLLABLE;
+        if (node.isVisibleToUser()) flags |= FLAG_VISIBLE;
+        return flags;
+    }
+
+    private static String string(CharSequence text) {
+        return text != null ? text.toString() : null;
+    }
+
+    /**
+     * Assembles a snapshot node by node in pre-order, either from a live tree or by hand.
+     */
+    public static class Builder {
+        private int size;
+        private AccessibilityNodeInfo[] nodes = new AccessibilityNodeInfo[64];
+        private int[] parents = new int[64];
+        private int[] depths = new int[64];
+        private int[] childCounts = new int[64];
+        private String[] classNames = new String[64];
+        private String[] texts = new String[64];
+        private String[] descriptions = new String[64];
+        private String[] viewIds = new String[64];
+        private int[] lefts = new int[64];
+        private int[] tops = new int[64];
+        private int[] rights = new int[64];
+        private int[] bottoms = new int[64];
+        private int[] flags = new int[64];
+        private String packageName;
+        private int truncated;
+
+        /**
+         * Package of the app that owns the window.
+         */
+        public Builder setPackageName(String packageName) {
+            this.packageName = packageName;
+            return this;
+        }
+
+        /**
+         * Adds a node under {@code parent} (-1 for the root). Nodes must be added in pre-order,
+         * so the parent is always an earlier node.
+         *
+         * @return the new node's index
+         */
+        public int add(int parent, String className, String text, String description, String viewId,
+                       int left, int top, int right, int bottom, int flags) {
+            return add(parent, null, className, text, description, viewId, left, top, right, bottom, flags, -1);
+        }
+
+        // childCount -1 counts children as they are added
+        int add(int parent, AccessibilityNodeInfo node, String className, String text, String description,
+                String viewId, int left, int top, int right, int bottom, int nodeFlags, int childCount) {
+            if (parent >= size || (parent < 0 && size > 0)) {
+                throw new IllegalArgumentException("Parent " + parent + " must be an earlier node");
+            }
+            if (size == parents.length) {
+                grow();
+            }
+            int index = size++;
+            nodes[index] = node;
+            parents[index] = parent;
+            depths[index] = parent < 0 ? 0 : depths[parent] + 1;
+            if (childCount < 0) {
+                childCounts[index] = 0;
+                if (parent >= 0) childCounts[parent]++;
+            } else {
+                childCounts[index] = childCount;
+            }
+            classNames[index] = className;
+            texts[index] = text;
+            descriptions[index] = description;
+            viewIds[index] = viewId;
+            lefts[index] = left;
+            tops[index] = top;
+            rights[index] = right;
+            bottoms[index] = bottom;
+            flags[index] = nodeFlags;
+            return index;
+        }
+
+        private void grow() {
+            int capacity = parents.length * 2;
+            nodes = Arrays.copyOf(nodes, capacity);
+            parents = Arrays.copyOf(parents, capacity);
+            depths = Arrays.copyOf(depths, capacity);
+            childCounts = Arrays.copyOf(childCounts, capacity);
+            classNames = Arrays.copyOf(classNames, capacity);
+            texts = Arrays.copyOf(texts, capacity);
+            descriptions = Arrays.copyOf(descriptions, capacity);
+            viewIds = Arrays.copyOf(viewIds, capacity);
+            lefts = Arrays.copyOf(lefts, capacity);
+            tops = Arrays.copyOf(tops, capacity);
+            rights = Arrays.copyOf(rights, capacity);
+            bottoms = Arrays.copyOf(bottoms, capacity);
+            flags = Arrays.copyOf(flags, capacity);
+        }
+
+        public NodeSnapshot build() {
+            return build(0);
+        }
+
+        void releaseNodes() {
+            for (int i = 0; i < size; i++) {
+                NodeScope.release(nodes[i]);
+                nodes[i] = null;
+            }
+        }
+
+        NodeSnapshot build(long buildNanos) {
+            return new NodeSnapshot(this, buildNanos);
+        }
+    }
+
+    private NodeSnapshot(Builder builder, long captureNanos) {
+        long start = System.nanoTime();
+        size = builder.size;
+        nodes = builder.nodes;
+        parents = builder.parents;
+        depths = builder.depths;
+        childCounts = builder.childCounts;
+        classNames = builder.classNames;
+        texts = builder.texts;
+        descriptions = builder.descriptions;
+        viewIds = builder.viewIds;
+        lefts = builder.lefts;
+        tops = builder.tops;
+        rights = builder.rights;
+        bottoms = builder.bottoms;
+        flags = builder.flags;
+        packageName = builder.packageName;
+        truncated = builder.truncated;
+
+        subtreeEnds = new int[size];
+        lastChildren = new int[size];
+        previousSiblings = new int[size];
+        Arrays.fill(lastChildren, -1);
+        for (int i = 0; i < size; i++) {
+            subtreeEnds[i] = i + 1;
+            int parent = parents[i];
+            previousSiblings[i] = parent >= 0 ? lastChildren[parent] : -1;
+            if (parent >= 0) lastChildren[parent] = i;
+        }
+        // Children come after their parent, so each end is final before it is passed up
+        for (int i = size - 1; i > 0; i--) {
+            subtreeEnds[parents[i]] = Math.max(subtreeEnds[parents[i]], subtreeEnds[i]);
+        }
+
+        byDescription = index(descriptions, true);
+        byClassName = index(classNames, false);
+        buildNanos = captureNanos + System.nanoTime() - start;
+    }
+
+    private Map<String, int[]> index(String[] values, boolean ignoreCase) {
+        Map<String, List<Integer>> lists = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            if (values[i] == null) continue;
+            String key = ignoreCase ? values[i].toLowerCase(Locale.ROOT) : values[i];
+            List<Integer> list = lists.get(key);
+            if (list == null) {
+                list = new ArrayList<>(1);
+                lists.put(key, list);
+            }
+            list.add(i);
+        }
+        Map<String, int[]> index = new HashMap<>(lists.size() * 2);
+        for (Map.Entry<String, List<Integer>> entry : lists.entrySet()) {
+            index.put(entry.getKey(), toArray(entry.getValue()));
+        }
+        return index;
+    }
+
+    private static int[] toArray(List<Integer> list) {
+        int[] array = new int[list.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = list.get(i);
+        }
+        return array;
+    }
+
+    // Node data
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Package of the app that owns the window, or null if unknown.
+     */
+    public String getPackageName() {
+        return packageName;
+    }
+
+    /**
+     * Nodes not captured: children of nodes at the depth cap, and nodes left when the node or
+     * time budget ran out.
+     */
+    public int getTruncatedCount() {
+        return truncated;
+    }
+
+    /**
+     * The live node to act on, or null if it was not kept, the snapshot was released, or it was
+     * made with {@link Builder}.
+     */
+    public AccessibilityNodeInfo getNode(int index) {
+        return index < 0 ? null : nodes[index];
+    }
+
+    /**
+     * Recycles the live nodes kept by {@link #capture}; {@link #getNode} returns null afterwards.
+     * Queries on the copied data keep working. Safe to call more than once.
+     */
+    public void release() {
+        for (int i = 0; i < size; i++) {
+            if (nodes[i] != null) {
+                NodeScope.release(nodes[i]);
+                nodes[i] = null;
+            }
+        }
+    }
+
+    public int getParent(int index) {
+        return parents[index];
+    }
+
+    public int getDepth(int index) {
+        return depths[index];
+    }
+
+    /**
+     * Index just past the last node under {@code index}; its subtree is
+     * {@code index .. getSubtreeEnd(index) - 1}.
+     */
+    int getSubtreeEnd(int index) {
+        return subtreeEnds[index];
+    }
+
+    int getLastChild(int index) {
+        return lastChildren[index];
+    }
+
+    int getPreviousSibling(int index) {
+        return previousSiblings[index];
+    }
+
+    public int getChildCount(int index) {
+        return childCounts[index];
+    }
+
+    public String getClassName(int index) {
+        return classNames[index];
+    }
+
+    public String getText(int index) {
+        return texts[index];
+    }
+
+    public String getContentDescription(int index) {
+        return descriptions[index];
+    }
+
+    public String getViewId(int index) {
+        return viewIds[index];
+    }
+
+    public int getLeft(int index) {
+        return lefts[index];
+    }
+
+    public int getTop(int index) {
+        return tops[index];
+    }
+
+    public int getRight(int index) {
+        return rights[index];
+    }
+
+    public int getBottom(int index) {
+        return bottoms[index];
+    }
+
+    /**
+     * All {@code FLAG_*} bits of node {@code index}.
+     */
+    public int getFlags(int index) {
+        return flags[index];
+    }
+
+    public boolean hasFlags(int index, int mask) {
+        return (flags[index] & mask) == mask;
+    }
+
+    public boolean isClickable(int index) {
+        return hasFlags(index, FLAG_CLICKABLE);
+    }
+
+    public String boundsToString(int index) {
+        return lefts[index] + " " + tops[index] + " " + rights[index] + " " + bottoms[index];
+    }
+
+    // Queries
+
+    /**
+     * First node whose content description equals {@code description}, ignoring case.
+     */
+    public int findByContentDescription(String description) {
+        return first(byDescription.get(description.toLowerCase(Locale.ROOT)));
+    }
+
+    /**
+     * All nodes of {@code className}, in pre-order. The array must not be modified.
+     */
+    public int[] findAllByClassName(String className) {
+        int[] matches = byClassName.get(className);
+        return matches != null ? matches : NONE;
+    }
+
+    /**
+     * Last node in pre-order of {@code className} that is clickable.
+     */
+    public int findLastClickable(String className) {
+        int[] matches = findAllByClassName(className);
+        for (int i = matches.length - 1; i >= 0; i--) {
+            if (isClickable(matches[i])) return matches[i];
+        }
+        return -1;
+    }
+
+    /**
+     * Nodes of {@code className} whose content description starts with {@code prefix}.
+     */
+    public List<Integer> findByClassAndDescriptionPrefix(String className, String prefix) {
+        List<Integer> result = new ArrayList<>();
+        for (int index : findAllByClassName(className)) {
+            if (descriptions[index] != null && descriptions[index].startsWith(prefix)) {
+                result.add(index);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Nearest scrollable ancestor of {@code index}, or -1.
+     */
+    public int findScrollableAncestor(int index) {
+        for (int i = parents[index]; i >= 0; i = parents[i]) {
+            if (hasFlags(i, FLAG_SCROLLABLE)) return i;
+        }
+        return -1;
+    }
+
+    private static int first(int[] matches) {
+        return matches != null ? matches[0] : -1;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "NodeSnapshot of %s: %d nodes (%d truncated) in %.2f ms",
+                packageName, size, truncated, buildNanos / 1e6);
+    }
+}
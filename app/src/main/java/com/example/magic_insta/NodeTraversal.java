@@ -0,0 +1,197 @@
+package com.example.magic_insta;
+
+/**
+ * A configurable walk over a {@link NodeSnapshot} for queries the snapshot's indexes do not
+ * cover. The visitor decides after each node whether to go on, skip the node's children or
+ * stop, and the traversal itself can be limited to:
+ * <ul>
+ * <li>a screen region: subtrees whose root does not intersect it are skipped without visiting
+ * their nodes (nodes with empty bounds are always descended into, as their children may still
+ * have bounds);</li>
+ * <li>a depth below the root;</li>
+ * <li>a time budget, checked every few nodes, after which the walk ends with
+ * {@link Status#OUT_OF_BUDGET}.</li>
+ * </ul>
+ * Forward order is pre-order, the order of the snapshot's indexes. {@link #reverse()} visits the
+ * exact reverse of it, so "last match" queries stop at the first node they accept; in reverse,
+ * a node's descendants come before it and {@link #SKIP_CHILDREN} has no effect.
+ *
+ * A traversal holds its configuration and the statistics of its last run; it can be reused but
+ * not shared between threads.
+ */
+public final class NodeTraversal {
+    public static final int CONTINUE = 0;
+    public static final int SKIP_CHILDREN = 1;
+    public static final int STOP = 2;
+    // Nodes between two looks at the clock
+    private static final int BUDGET_CHECK_INTERVAL = 16;
+
+    public enum Status {
+        COMPLETED, STOPPED, OUT_OF_BUDGET
+    }
+
+    public interface Visitor {
+        /**
+         * @return {@link #CONTINUE}, {@link #SKIP_CHILDREN} or {@link #STOP}
+         */
+        int visit(NodeSnapshot snapshot, int index);
+    }
+
+    public interface Filter {
+        boolean accept(NodeSnapshot snapshot, int index);
+    }
+
+    private boolean reverse;
+    private boolean hasRegion;
+    private int regionLeft;
+    private int regionTop;
+    private int regionRight;
+    private int regionBottom;
+    private int maxDepth = Integer.MAX_VALUE;
+    private long budgetNanos;
+
+    private int visited;
+    private Status status = Status.COMPLETED;
+    private int found = -1;
+
+    public NodeTraversal reverse() {
+        reverse = true;
+        return this;
+    }
+
+    /**
+     * Only visits nodes whose bounds intersect the region, or are empty.
+     */
+    public NodeTraversal within(int left, int top, int right, int bottom) {
+        hasRegion = true;
+        regionLeft = left;
+        regionTop = top;
+        regionRight = right;
+        regionBottom = bottom;
+        return this;
+    }
+
+    /**
+     * Does not visit nodes deeper than {@code maxDepth}; the root is at depth 0.
+     */
+    public NodeTraversal maxDepth(int maxDepth) {
+        this.maxDepth = maxDepth;
+        return this;
+    }
+
+    /**
+     * Ends a run once it has taken {@code budgetNanos}; 0 for no limit.
+     */
+    public NodeTraversal budget(long budgetNanos) {
+        this.budgetNanos = budgetNanos;
+        return this;
+    }
+
+    /**
+     * Walks {@code snapshot}, calling {@code visitor} for each node in range.
+     */
+    public Status run(NodeSnapshot snapshot, Visitor visitor) {
+        return walk(snapshot, visitor, null);
+    }
+
+    /**
+     * First node in traversal order that {@code filter} accepts, or -1 if none does or the
+     * budget ran out first.
+     */
+    public int find(NodeSnapshot snapshot, Filter filter) {
+        walk(snapshot, null, filter);
+        return found;
+    }
+
+    /**
+     * Nodes visited by the last run.
+     */
+    public int getVisitedCount() {
+        return visited;
+    }
+
+    /**
+     * How the last run ended.
+     */
+    public Status getStatus() {
+        return status;
+    }
+
+    // Exactly one of visitor and filter is set; a filter match stops the walk
+    private Status walk(NodeSnapshot snapshot, Visitor visitor, Filter filter) {
+        visited = 0;
+        status = Status.COMPLETED;
+        found = -1;
+        if (snapshot.size() == 0 || !inRegion(snapshot, 0)) {
+            return status;
+        }
+        long deadline = budgetNanos > 0 ? System.nanoTime() + budgetNanos : 0;
+        int index = reverse ? deepestLastChild(snapshot, 0) : 0;
+        while (index >= 0) {
+            if (deadline != 0 && visited % BUDGET_CHECK_INTERVAL == 0 && visited > 0
+                    && System.nanoTime() - deadline > 0) {
+                status = Status.OUT_OF_BUDGET;
+                break;
+            }
+            visited++;
+            int result;
+            if (visitor != null) {
+                result = visitor.visit(snapshot, index);
+            } else if (filter.accept(snapshot, index)) {
+                found = index;
+                result = STOP;
+            } else {
+                result = CONTINUE;
+            }
+            if (result == STOP) {
+                status = Status.STOPPED;
+                break;
+            }
+            index = reverse ? previous(snapshot, index) : next(snapshot, index, result == SKIP_CHILDREN);
+        }
+        return status;
+    }
+
+    // Next node in pre-order that is in range, or -1
+    private int next(NodeSnapshot snapshot, int index, boolean skipChildren) {
+        int next = skipChildren || snapshot.getDepth(index) >= maxDepth ? snapshot.getSubtreeEnd(index) : index + 1;
+        while (next < snapshot.size() && !inRegion(snapshot, next)) {
+            next = snapshot.getSubtreeEnd(next);
+        }
+        return next < snapshot.size() ? next : -1;
+    }
+
+    // Previous node in pre-order that is in range, or -1
+    private int previous(NodeSnapshot snapshot, int index) {
+        int sibling = previousInRegion(snapshot, snapshot.getPreviousSibling(index));
+        return sibling >= 0 ? deepestLastChild(snapshot, sibling) : snapshot.getParent(index);
+    }
+
+    // The last node in pre-order of the subtree under index
+    private int deepestLastChild(NodeSnapshot snapshot, int index) {
+        while (snapshot.getDepth(index) < maxDepth) {
+            int child = previousInRegion(snapshot, snapshot.getLastChild(index));
+            if (child < 0) break;
+            index = child;
+        }
+        return index;
+    }
+
+    // index or its nearest previous sibling that is in range, or -1
+    private int previousInRegion(NodeSnapshot snapshot, int index) {
+        while (index >= 0 && !inRegion(snapshot, index)) {
+            index = snapshot.getPreviousSibling(index);
+        }
+        return index;
+    }
+
+    private boolean inRegion(NodeSnapshot snapshot, int index) {
+        if (!hasRegion) return true;
+        int left = snapshot.getLeft(index);
+        int top = snapshot.getTop(index);
+        int right = snapshot.getRight(index);
+        int bottom = snapshot.getBottom(index);
+        if (right <= left || bottom <= top) return true;
+        return left < regionRight && right > regionLeft && top < regionBottom && bottom > regionTop;
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.magic_insta;
+
+/**
+ * Crops and resizes NV21 images with nearest-neighbour sampling, writing into caller-owned
+ * buffers. Good enough for detector input, where the output is much smaller than the source.
+ */
+public final class Nv21Scaler {
+
+    private Nv21Scaler() {
+    }
+
+    /**
+     * Largest even size that fits in {@code maxSide} while keeping the aspect ratio.
+     *
+     * @return {width, height}
+     */
+    public static int[] fitWithin(int width, int height, int maxSide) {
+        if (width <= maxSide && height <= maxSide) {
+            return new int[] {width & ~1, height & ~1};
+        }
+        float scale = (float) maxSide / Math.max(width, height);
+        int w = Math.max(2, Math.round(width * scale) & ~1);
+        int h = Math.max(2, Math.round(height * scale) & ~1);
+        return new int[] {w, h};
+    }
+
+    /**
+     * Copies the crop rectangle of {@code src} into {@code dst}, resized to dstWidth x dstHeight.
+     * Crop origin and all sizes are rounded down to even values so chroma stays aligned.
+     *
+     * @param dst buffer of at least dstWidth * dstHeight * 3 / 2 bytes
+     */
+    public static void cropAndScale(byte[] src, int srcWidth, int srcHeight,
+                                    int cropLeft, int cropTop, int cropWidth, int cropHeight,
+                                    byte[] dst, int dstWidth, int dstHeight) {
+        cropLeft &= ~1;
+        cropTop &= ~1;
+        cropWidth &= ~1;
+        cropHeight &= ~1;
+        dstWidth &= ~1;
+        dstHeight &= ~1;
+        if (cropLeft < 0 || cropTop < 0 || cropWidth <= 0 || cropHeight <= 0
+                || cropLeft + cropWidth > srcWidth || cropTop + cropHeight > srcHeight) {
+            throw new IllegalArgumentException("Crop outside " + srcWidth + "x" + srcHeight + " frame");
+        }
+        if (dst.length < dstWidth * dstHeight * 3 / 2) {
+            throw new IllegalArgumentException("Destination too small for " + dstWidth + "x" + dstHeight);
+        }
+
+        // Luma
+        for (int y = 0; y < dstHeight; y++) {
+            int srcRow = (cropTop + y * cropHeight / dstHeight) * srcWidth + cropLeft;
+            int dstRow = y * dstWidth;
+            for (int x = 0; x < dstWidth; x++) {
+                dst[dstRow + x] = src[srcRow + x * cropWidth / dstWidth];
+            }
+        }
+
+        // Interleaved V/U at half resolution
+        int srcChroma = srcWidth * srcHeight;
+        int dstChroma = dstWidth * dstHeight;
+        int chromaWidth = dstWidth / 2;
+        int chromaHeight = dstHeight / 2;
+        for (int y = 0; y < chromaHeight; y++) {
+            int srcRow = srcChroma + (cropTop / 2 + y * (cropHeight / 2) / chromaHeight) * srcWidth + cropLeft;
+            int dstRow = dstChroma + y * dstWidth;
+            for (int x = 0; x < chromaWidth; x++) {
+                int srcIndex = srcRow + (x * (cropWidth / 2) / chromaWidth) * 2;
+                dst[dstRow + x * 2] = src[srcIndex];
+                dst[dstRow + x * 2 + 1] = src[srcIndex + 1];
+            }
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.magic_insta;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.ServiceConnection;
+import android.os.IBinder;
+import android.util.Log;
+
+/**
+ * In-process channel to {@link TouchBlockOverlayService}. The service is bound once, for the
+ * life of the process, and commands are method calls on it: no {@code startService} round trip
+ * through the activity manager and {@code onStartCommand} at the start and end of each reveal,
+ * and no background start for the system to refuse.
+ *
+ * The controller holds the state the overlay should be in rather than a queue of commands.
+ * Show, hide and progress updates overwrite it in call order and are idempotent, and what was
+ * asked before the service connected, or while it was being restarted, is applied when it
+ * connects. Call on the main thread.
+ */
+public final class OverlayController {
+    private static final String TAG = "OverlayController";
+
+    private static OverlayController shared;
+
+    private final Context context;
+    private TouchBlockOverlayService service;
+    private boolean bound;
+    private boolean showing;
+    private int progressDone;
+    private int progressTotal;
+    private final ServiceConnection connection = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder binder) {
+            service = ((TouchBlockOverlayService.LocalBinder) binder).getService();
+            Log.d(TAG, "Overlay service connected");
+            apply();
+        }
+
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            // The binding stays; the system reconnects once it restarts the service
+            service = null;
+            Log.w(TAG, "Overlay service disconnected");
+        }
+    };
+
+    /**
+     * Returns the process-wide controller, binding the overlay service on first use.
+     */
+    public static synchronized OverlayController get(Context context) {
+        if (shared == null) {
+            shared = new OverlayController(context.getApplicationContext());
+        }
+        return shared;
+    }
+
+    private OverlayController(Context context) {
+        this.context = context;
+        bind();
+    }
+
+    private void bind() {
+        bound = context.bindService(new Intent(context, TouchBlockOverlayService.class), connection,
+                Context.BIND_AUTO_CREATE);
+        if (!bound) {
+            Log.e(TAG, "Failed to bind the overlay service");
+        }
+    }
+
+    /**
+     * Blocks touches, with an empty progress bar.
+     */
+    public void show() {
+        showing = true;
+        progressDone = 0;
+        progressTotal = 0;
+        apply();
+    }
+
+    public void hide() {
+        showing = false;
+        apply();
+    }
+
+    /**
+     * Reports that {@code done} of {@code total} steps of the automation are complete. Ignored
+     * while the overlay is hidden.
+     */
+    public void setProgress(int done, int total) {
+        if (!showing || (done == progressDone && total == progressTotal)) {
+            return;
+        }
+        progressDone = done;
+        progressTotal = total;
+        if (service != null) {
+            service.setProgress(done, total);
+        }
+    }
+
+    /**
+     * Whether the overlay is meant to be showing; it is once the service is connected.
+     */
+    public boolean isShowing() {
+        return showing;
+    }
+
+    private void apply() {
+        if (service == null) {
+            if (!bound) {
+                bind();
+            }
+            return;
+        }
+        if (showing) {
+            service.setProgress(progressDone, progressTotal);
+            service.show();
+        } else {
+            service.hide();
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.example.magic_insta;
+
+import android.graphics.ImageFormat;
+import android.hardware.Camera;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fixed set of preview callback buffers for the legacy camera API.
+ *
+ * The buffers are sized once from the preview size and format and handed to the camera with
+ * {@link Camera#addCallbackBuffer(byte[])}. Every frame must be given back through
+ * {@link #recycle(byte[])} or {@link #drop(byte[])}, so steady-state preview allocates nothing.
+ *
+ * Counters:
+ * - hits: frames delivered in one of our buffers
+ * - misses: frames delivered in a buffer we do not own, or times the camera was left with no
+ *   queued buffer (the driver silently skips frames until one is recycled)
+ * - dropped: frames handed back without being analyzed
+ */
+public class PreviewBufferPool {
+    public static final int DEFAULT_BUFFER_COUNT = 3;
+
+    private final Camera camera;
+    private final int width;
+    private final int height;
+    private final int bufferSize;
+    private final byte[][] buffers;
+
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    public PreviewBufferPool(Camera camera) {
+        this(camera, DEFAULT_BUFFER_COUNT);
+    }
+
+    public PreviewBufferPool(Camera camera, int bufferCount) {
+        if (bufferCount <= 0) {
+            throw new IllegalArgumentException("Buffer count must be positive");
+        }
+        this.camera = camera;
+
+        Camera.Parameters params = camera.getParameters();
+        Camera.Size size = params.getPreviewSize();
+        width = size.width;
+        height = size.height;
+        int bitsPerPixel = ImageFormat.getBitsPerPixel(params.getPreviewFormat());
+        bufferSize = width * height * bitsPerPixel / 8;
+
+        buffers = new byte[bufferCount][];
+        for (int i = 0; i < bufferCount; i++) {
+            buffers[i] = new byte[bufferSize];
+        }
+    }
+
+    /**
+     * Routes preview frames to {@code callback} and queues every buffer with the camera.
+     */
+    public void attach(Camera.PreviewCallback callback) {
+        camera.setPreviewCallbackWithBuffer(callback);
+        for (byte[] buffer : buffers) {
+            camera.addCallbackBuffer(buffer);
+        }
+        queued.set(buffers.length);
+    }
+
+    /**
+     * Stops frame delivery. The camera forgets all queued buffers.
+     */
+    public void detach() {
+        camera.setPreviewCallbackWithBuffer(null);
+        queued.set(0);
+    }
+
+    /**
+     * Must be called once for every frame the camera delivers, before the buffer is used.
+     */
+    public void onFrameArrived(byte[] data) {
+        if (isPooled(data)) {
+            hits.incrementAndGet();
+            if (queued.decrementAndGet() <= 0) {
+                misses.incrementAndGet();
+            }
+        } else {
+            misses.incrementAndGet();
+        }
+    }
+
+    /**
+     * Returns an analyzed frame's buffer to the camera.
+     */
+    public void recycle(byte[] data) {
+        if (!isPooled(data)) {
+            return;
+        }
+        queued.incrementAndGet();
+        camera.addCallbackBuffer(data);
+    }
+
+    /**
+     * Returns a frame's buffer to the camera without analyzing it.
+     */
+    public void drop(byte[] data) {
+        dropped.incrementAndGet();
+        recycle(data);
+    }
+
+    private boolean isPooled(byte[] data) {
+        if (data == null || data.length != bufferSize) {
+            return false;
+        }
+        for (byte[] buffer : buffers) {
+            if (buffer == data) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    @Override
+    public String toString() {
+        return "PreviewBufferPool{" + buffers.length + "x" + bufferSize + " bytes"
+                + ", hits=" + hits.get()
+                + ", misses=" + misses.get()
+                + ", dropped=" + dropped.get() + "}";
+    }
+}
@@ -0,0 +1,116 @@
+package com.example.magic_insta;
+
+import android.graphics.ImageFormat;
+import android.graphics.Rect;
+import android.graphics.YuvImage;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+/**
+ * Turns a preview {@link Frame} into a downscaled {@link CardImage} in one pass: the frame is
+ * read as NV21, optionally cropped to a region of interest, resized so its longest side fits
+ * {@code maxSide}, and compressed. The returned image owns copies of the scaled pixels and JPEG;
+ * intermediate buffers are kept between calls. Not thread-safe.
+ *
+ * JPEG quality is adaptive: encoding starts at {@code maxQuality} and steps down, at most to
+ * {@code minQuality}, until the JPEG fits in {@code maxBytes}. Each encode starts one step above
+ * the quality that fitted last time, so a steady scene usually needs a single compression.
+ */
+public class PreviewJpegEncoder {
+    private static final int QUALITY_STEP = 10;
+
+    private final int maxSide;
+    private final int maxBytes;
+    private final int maxQuality;
+    private final int minQuality;
+    private final ByteArrayOutputStream jpeg = new ByteArrayOutputStream(64 * 1024);
+    private final LatencyRecorder encodeLatency = new LatencyRecorder("JPEG encode", 64);
+    private byte[] nv21Buffer;
+    private byte[] scaledBuffer;
+    private int startQuality;
+    private int lastQuality;
+    private long lastEncodeNanos;
+    private long encodedImages;
+    private long encodedBytes;
+
+    public PreviewJpegEncoder(int maxSide, int maxBytes, int maxQuality, int minQuality) {
+        this.maxSide = maxSide;
+        this.maxBytes = maxBytes;
+        this.maxQuality = maxQuality;
+        this.minQuality = minQuality;
+        this.startQuality = maxQuality;
+    }
+
+    public CardImage encode(Frame frame) {
+        return encode(frame, null);
+    }
+
+    /**
+     * @param crop {left, top, width, height} in frame pixels, or null for the whole frame
+     */
+    public CardImage encode(Frame frame, int[] crop) {
+        long start = System.nanoTime();
+        int width = frame.getWidth();
+        int height = frame.getHeight();
+        nv21Buffer = frame.toNv21(nv21Buffer);
+
+        int cropLeft = crop != null ? crop[0] : 0;
+        int cropTop = crop != null ? crop[1] : 0;
+        int cropWidth = crop != null ? crop[2] : width;
+        int cropHeight = crop != null ? crop[3] : height;
+        int[] size = Nv21Scaler.fitWithin(cropWidth, cropHeight, maxSide);
+        byte[] source = nv21Buffer;
+        if (crop != null || size[0] != width || size[1] != height) {
+            int scaledSize = size[0] * size[1] * 3 / 2;
+            if (scaledBuffer == null || scaledBuffer.length < scaledSize) {
+                scaledBuffer = new byte[scaledSize];
+            }
+            Nv21Scaler.cropAndScale(nv21Buffer, width, height, cropLeft, cropTop, cropWidth, cropHeight,
+                    scaledBuffer, size[0], size[1]);
+            source = scaledBuffer;
+        }
+
+        YuvImage yuv = new YuvImage(source, ImageFormat.NV21, size[0], size[1], null);
+        Rect rect = new Rect(0, 0, size[0], size[1]);
+        int quality = startQuality;
+        while (true) {
+            jpeg.reset();
+            yuv.compressToJpeg(rect, quality, jpeg);
+            if (jpeg.size() <= maxBytes || quality <= minQuality) break;
+            quality = Math.max(minQuality, quality - QUALITY_STEP);
+        }
+        lastQuality = quality;
+        startQuality = Math.min(maxQuality, quality + QUALITY_STEP);
+
+        CardImage image = new CardImage(Arrays.copyOf(source, size[0] * size[1] * 3 / 2),
+                size[0], size[1], jpeg.toByteArray());
+        lastEncodeNanos = System.nanoTime() - start;
+        encodeLatency.record(lastEncodeNanos);
+        encodedImages++;
+        encodedBytes += jpeg.size();
+        return image;
+    }
+
+    /**
+     * Time spent in the last {@link #encode} call, including the NV21 read, crop and resize.
+     */
+    public long getLastEncodeNanos() {
+        return lastEncodeNanos;
+    }
+
+    public int getLastQuality() {
+        return lastQuality;
+    }
+
+    public LatencyRecorder getEncodeLatency() {
+        return encodeLatency;
+    }
+
+    /**
+     * Mean JPEG size per encoded image, i.e. per detection request.
+     */
+    public long getAverageBytes() {
+        return encodedImages == 0 ? 0 : encodedBytes / encodedImages;
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.magic_insta;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link UiDriver} that passes everything through to another one and keeps a
+ * {@link FlowRecording} of the run: every snapshot that differs from the previous one, and every
+ * action with its node index, timed from {@link #start}.
+ *
+ * Snapshots are compared by their serialized form, so a flow polling an unchanged screen adds
+ * nothing to the recording. Not thread-safe; use from the flow's thread.
+ */
+public class RecordingUiDriver implements UiDriver {
+    private final UiDriver delegate;
+    private FlowRecording recording = new FlowRecording();
+    private long startNanos;
+    private String label;
+    private String lastSnapshot;
+
+    public RecordingUiDriver(UiDriver delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * Starts a new recording.
+     */
+    public void start(long nowNanos) {
+        recording = new FlowRecording();
+        startNanos = nowNanos;
+        label = null;
+        lastSnapshot = null;
+    }
+
+    /**
+     * Label for the frames recorded from now on, e.g. the name of the current step.
+     */
+    public void setLabel(String label) {
+        this.label = label;
+    }
+
+    public FlowRecording getRecording() {
+        return recording;
+    }
+
+    @Override
+    public NodeSnapshot snapshot() {
+        NodeSnapshot snapshot = delegate.snapshot();
+        if (snapshot != null) {
+            String serialized = serialize(snapshot);
+            if (!serialized.equals(lastSnapshot)) {
+                recording.addFrame(elapsedMs(), label, snapshot);
+                lastSnapshot = serialized;
+            }
+        }
+        return snapshot;
+    }
+
+    @Override
+    public boolean click(NodeSnapshot snapshot, int index) {
+        long timeMs = elapsedMs();
+        boolean delivered = delegate.click(snapshot, index);
+        recording.addAction(timeMs, FlowRecording.ActionKind.CLICK, index, delivered);
+        return delivered;
+    }
+
+    @Override
+    public boolean scrollForward(NodeSnapshot snapshot, int index) {
+        long timeMs = elapsedMs();
+        boolean delivered = delegate.scrollForward(snapshot, index);
+        recording.addAction(timeMs, FlowRecording.ActionKind.SCROLL, index, delivered);
+        return delivered;
+    }
+
+    @Override
+    public boolean performGlobalAction(int action) {
+        long timeMs = elapsedMs();
+        boolean delivered = delegate.performGlobalAction(action);
+        recording.addAction(timeMs, FlowRecording.ActionKind.GLOBAL, action, delivered);
+        return delivered;
+    }
+
+    private long elapsedMs() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    private static String serialize(NodeSnapshot snapshot) {
+        StringWriter writer = new StringWriter(snapshot.size() * 64);
+        try {
+            FlowRecording.writeSnapshot(snapshot, writer);
+        } catch (IOException e) {
+            // StringWriter does not throw
+            throw new IllegalStateException(e);
+        }
+        return writer.toString();
+    }
+}
@@ -0,0 +1,21 @@
+package com.example.magic_insta;
+
+/**
+ * {@link CardDetector} that posts the JPEG to the hosted Roboflow model through
+ * {@link CardDetectionUploader}.
+ */
+public class RemoteCardDetector implements CardDetector {
+
+    @Override
+    public CardDetectionUploader.DetectionResult detect(CardImage image) throws Exception {
+        if (image.getJpeg() == null) {
+            throw new IllegalArgumentException("Remote detection needs a JPEG encoding");
+        }
+        return CardDetectionUploader.detectCard(image.getJpeg());
+    }
+
+    @Override
+    public String getName() {
+        return "remote";
+    }
+}
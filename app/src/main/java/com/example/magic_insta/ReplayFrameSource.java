@@ -0,0 +1,142 @@
+package com.example.magic_insta;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link FrameSource} that replays a recording of raw NV21 frames (width * height * 3 / 2 bytes
+ * each, back to back), e.g. preview buffers dumped from {@link LegacyCameraFrameSource}.
+ *
+ * With a positive frame rate the replay is paced like a camera: frames that arrive while every
+ * buffer is still held by the listener are skipped. With a frame rate of 0 it runs as fast as
+ * the listener releases frames and never skips, which is what benchmarks want.
+ *
+ * Plain Java, so the whole analysis pipeline can run on a desktop JVM.
+ */
+public class ReplayFrameSource implements FrameSource, Frame.Releaser {
+    private static final int BUFFER_COUNT = 3;
+
+    private final File recording;
+    private final int width;
+    private final int height;
+    private final int fps;
+    private final boolean loop;
+
+    private final BlockingQueue<Frame> freeFrames = new ArrayBlockingQueue<>(BUFFER_COUNT);
+    private final CountDownLatch finished = new CountDownLatch(1);
+    private volatile boolean running = false;
+    private volatile long deliveredFrames = 0;
+    private volatile long skippedFrames = 0;
+    private Thread replayThread;
+
+    public ReplayFrameSource(File recording, int width, int height, int fps, boolean loop) {
+        this.recording = recording;
+        this.width = width;
+        this.height = height;
+        this.fps = fps;
+        this.loop = loop;
+        for (int i = 0; i < BUFFER_COUNT; i++) {
+            freeFrames.add(new Frame(this).setNv21(new byte[width * height * 3 / 2], width, height));
+        }
+    }
+
+    @Override
+    public synchronized void start(Listener listener) {
+        if (replayThread != null) return;
+        running = true;
+        replayThread = new Thread(() -> replay(listener), "ReplayFrameSource");
+        replayThread.start();
+    }
+
+    private void replay(Listener listener) {
+        int frameSize = width * height * 3 / 2;
+        long frameIntervalNanos = fps > 0 ? 1_000_000_000L / fps : 0;
+        byte[] scratch = new byte[frameSize];
+
+        try {
+            do {
+                try (DataInputStream in = new DataInputStream(
+                        new BufferedInputStream(new FileInputStream(recording)))) {
+                    long nextFrameAt = System.nanoTime();
+                    while (running) {
+                        Frame frame = fps > 0 ? freeFrames.poll() : freeFrames.take();
+                        byte[] target = frame != null ? frame.toNv21(null) : scratch;
+                        try {
+                            in.readFully(target, 0, frameSize);
+                        } catch (EOFException e) {
+                            if (frame != null) freeFrames.add(frame);
+                            break;
+                        }
+
+                        if (frameIntervalNanos > 0) {
+                            long wait = nextFrameAt - System.nanoTime();
+                            if (wait > 0) {
+                                TimeUnit.NANOSECONDS.sleep(wait);
+                            }
+                            nextFrameAt += frameIntervalNanos;
+                        }
+
+                        if (frame == null) {
+                            skippedFrames++;
+                            continue;
+                        }
+                        deliveredFrames++;
+                        listener.onFrame(frame.setTimestampNanos(System.nanoTime()));
+                    }
+                }
+            } while (running && loop);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to read " + recording, e);
+        } finally {
+            running = false;
+            finished.countDown();
+        }
+    }
+
+    @Override
+    public void onRelease(Frame frame) {
+        freeFrames.offer(frame);
+    }
+
+    @Override
+    public void stop() {
+        Thread thread;
+        synchronized (this) {
+            thread = replayThread;
+            running = false;
+        }
+        if (thread == null) return;
+        thread.interrupt();
+        try {
+            thread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Blocks until the recording has been played to the end (never, when looping) or stopped.
+     */
+    public boolean awaitCompletion(long timeout, TimeUnit unit) throws InterruptedException {
+        return finished.await(timeout, unit);
+    }
+
+    public long getDeliveredFrameCount() {
+        return deliveredFrames;
+    }
+
+    @Override
+    public long getSkippedFrameCount() {
+        return skippedFrames;
+    }
+}
@@ -0,0 +1,250 @@
+package com.example.magic_insta;
+
+import android.accessibilityservice.AccessibilityService;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The Instagram reveal as {@link FlowStep}s. The walk goes from the freshly launched app to the
+ * profile, its archive, the chosen archived photo, "Show on profile", and back home; when the
+ * post was opened directly through its link only the last three steps are left. The
+ * calibration walk goes to the archive and records its {@link ArchiveLayout}.
+ *
+ * Each step's condition recognizes the screen the step acts on, so the flow moves on as soon
+ * as Instagram has drawn it. Timeouts only bound how long a missing screen is waited for.
+ */
+public final class RevealFlow {
+    public static final String INSTAGRAM_PACKAGE = "com.instagram.android";
+    static final String PHOTO_DESCRIPTION_PREFIX = "Photo by Dhia";
+
+    // Screen the element bounds below were recorded on
+    private static final int REFERENCE_WIDTH = 720;
+    private static final int REFERENCE_HEIGHT = 1600;
+
+    /**
+     * The "Archive" row of the profile options sheet. Its label, when exposed at all, is on a
+     * child of the clickable row; clicks on the label go to the row.
+     */
+    static final ElementLocator ARCHIVE_ITEM = ElementLocator.named("Archive item")
+            .text("Archive", 3)
+            .description("Archive", 3)
+            .className("android.view.View", 1)
+            .bounds(0, 784, 720, 875, REFERENCE_WIDTH, REFERENCE_HEIGHT, 2)
+            .minScore(2)
+            .build();
+
+    /**
+     * "Show on profile" in the post's menu; the label may be on a child of the clickable row.
+     */
+    static final ElementLocator SHOW_ON_PROFILE = ElementLocator.named("Show on profile")
+            .text("Show on profile", 4)
+            .className("android.widget.Button", 1)
+            .bounds(144, 903, 576, 1001, REFERENCE_WIDTH, REFERENCE_HEIGHT, 2)
+            .minScore(2)
+            .build();
+
+    private RevealFlow() {
+    }
+
+    /**
+     * The archived photo the walk goes to. Set it before each run.
+     */
+    public static final class ArchiveTarget {
+        private int index;
+        private String description;
+        private int scrolls;
+        private int scrolled;
+
+        /**
+         * Goes to a calibrated photo: scrolls the grid {@code scrolls} pages, then clicks the
+         * photo with its description.
+         */
+        public void set(ArchiveLayout.Entry entry) {
+            index = entry.index;
+            description = entry.description;
+            scrolls = entry.scrolls;
+            scrolled = 0;
+        }
+
+        /**
+         * Goes to the photo at {@code index} of the first page, without calibration.
+         */
+        public void setVisibleIndex(int index) {
+            this.index = index;
+            description = null;
+            scrolls = 0;
+            scrolled = 0;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+    }
+
+    /**
+     * Steps for a post that Instagram was asked to open directly; they start on the post page.
+     */
+    public static List<FlowStep> createForPost() {
+        // The post page is the first screen after launch, so it gets the launch timeout
+        return watchInstagram(Arrays.asList(moreActionsStep(10000), showOnProfileStep(), closeStep()));
+    }
+
+    /**
+     * @param target which archived photo to show; read when the flow reaches the archive
+     */
+    public static List<FlowStep> create(ArchiveTarget target) {
+        return watchInstagram(Arrays.asList(
+                profileTabStep(),
+                optionsStep(),
+                archiveStep(),
+                // Scrolls straight to the photo's recorded page, then picks it
+                new FlowStep("Archived photo", 10000,
+                        s -> !findPhotoButtons(s).isEmpty(),
+                        (s, driver) -> openArchivedPhoto(s, driver, target)),
+                moreActionsStep(6000),
+                showOnProfileStep(),
+                closeStep()));
+    }
+
+    /**
+     * Walks to the archive and pages through it, recording each photo into {@code recorder},
+     * until the grid cannot scroll further.
+     */
+    public static List<FlowStep> createCalibration(ArchiveLayout.Recorder recorder) {
+        return watchInstagram(Arrays.asList(
+                profileTabStep(),
+                optionsStep(),
+                archiveStep(),
+                // However long the archive, each page only has to show new photos in time
+                new FlowStep("Record archive", 10000,
+                        s -> !findPhotoButtons(s).isEmpty(),
+                        (s, driver) -> recordArchivePage(s, driver, recorder))
+                        .timeoutSinceProgress(recorder::size),
+                closeStep()));
+    }
+
+    private static boolean openArchivedPhoto(NodeSnapshot snapshot, UiDriver driver, ArchiveTarget target) {
+        List<Integer> photos = findPhotoButtons(snapshot);
+        if (target.scrolled < target.scrolls) {
+            int grid = snapshot.findScrollableAncestor(photos.get(0));
+            if (grid >= 0 && driver.scrollForward(snapshot, grid)) {
+                target.scrolled++;
+            }
+            return false;
+        }
+        int photo = -1;
+        if (target.description != null) {
+            for (int index : photos) {
+                if (target.description.equals(snapshot.getContentDescription(index))) {
+                    photo = index;
+                    break;
+                }
+            }
+        } else if (photos.size() > target.index) {
+            photo = photos.get(target.index);
+        }
+        // Not drawn yet: look again after the next change
+        return photo >= 0 && driver.click(snapshot, photo);
+    }
+
+    private static boolean recordArchivePage(NodeSnapshot snapshot, UiDriver driver, ArchiveLayout.Recorder recorder) {
+        List<Integer> photos = findPhotoButtons(snapshot);
+        List<String> descriptions = new ArrayList<>(photos.size());
+        for (int index : photos) {
+            descriptions.add(snapshot.getContentDescription(index));
+        }
+        recorder.addPage(descriptions);
+        if (recorder.getDuplicate() != null) {
+            // The layout cannot be trusted; stop paging and let the caller report it
+            return true;
+        }
+
+        int grid = snapshot.findScrollableAncestor(photos.get(0));
+        if (grid >= 0 && driver.scrollForward(snapshot, grid)) {
+            recorder.onScrolled();
+            return false;
+        }
+        // The grid is at its end
+        return true;
+    }
+
+    private static FlowStep profileTabStep() {
+        // A cold start of Instagram can take several seconds
+        return new FlowStep("Profile tab", 10000,
+                s -> INSTAGRAM_PACKAGE.equals(s.getPackageName()) && findProfileTab(s) >= 0,
+                (s, driver) -> driver.click(s, findProfileTab(s)));
+    }
+
+    private static FlowStep optionsStep() {
+        return new FlowStep("Options", 5000,
+                s -> isClickable(s, s.findByContentDescription("Options")),
+                (s, driver) -> driver.click(s, s.findByContentDescription("Options")));
+    }
+
+    private static FlowStep archiveStep() {
+        return new FlowStep("Archive", 5000,
+                s -> findArchiveItem(s) >= 0,
+                (s, driver) -> driver.click(s, findArchiveItem(s)));
+    }
+
+    // Every screen of the reveal is Instagram's, so other apps' events never wake the flow
+    private static List<FlowStep> watchInstagram(List<FlowStep> steps) {
+        for (FlowStep step : steps) {
+            step.watching(FlowStep.DEFAULT_EVENT_TYPES, INSTAGRAM_PACKAGE);
+        }
+        return steps;
+    }
+
+    // The photo page has the post menu and no longer shows the archive grid
+    private static FlowStep moreActionsStep(long timeoutMs) {
+        return new FlowStep("More actions", timeoutMs,
+                s -> isClickable(s, s.findByContentDescription("More actions for this post"))
+                        && findPhotoButtons(s).size() <= 1,
+                (s, driver) -> driver.click(s, s.findByContentDescription("More actions for this post")));
+    }
+
+    private static FlowStep showOnProfileStep() {
+        return new FlowStep("Show on profile", 5000,
+                s -> findShowOnProfileButton(s) >= 0,
+                (s, driver) -> driver.click(s, findShowOnProfileButton(s)));
+    }
+
+    // Leave once the menu has closed, or after the timeout if it never visibly does
+    private static FlowStep closeStep() {
+        return new FlowStep("Close Instagram", 3000,
+                s -> findShowOnProfileButton(s) < 0,
+                (s, driver) -> {
+                    driver.performGlobalAction(AccessibilityService.GLOBAL_ACTION_HOME);
+                    return true;
+                }).proceedOnTimeout();
+    }
+
+    private static boolean isClickable(NodeSnapshot snapshot, int index) {
+        return index >= 0 && snapshot.isClickable(index);
+    }
+
+    /**
+     * The profile tab, the last clickable frame of the tree, or -1. A capture that was cut short
+     * may not reach the tab bar, which comes after the feed, so only complete snapshots count.
+     */
+    static int findProfileTab(NodeSnapshot snapshot) {
+        if (snapshot.getTruncatedCount() > 0) {
+            return -1;
+        }
+        return snapshot.findLastClickable("android.widget.FrameLayout");
+    }
+
+    static int findArchiveItem(NodeSnapshot snapshot) {
+        return ARCHIVE_ITEM.find(snapshot);
+    }
+
+    static List<Integer> findPhotoButtons(NodeSnapshot snapshot) {
+        return snapshot.findByClassAndDescriptionPrefix("android.widget.Button", PHOTO_DESCRIPTION_PREFIX);
+    }
+
+    static int findShowOnProfileButton(NodeSnapshot snapshot) {
+        return SHOW_ON_PROFILE.find(snapshot);
+    }
+}
@@ -0,0 +1,134 @@
+package com.example.magic_insta;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Which archived Instagram post reveals which card, keyed by the detector's card class.
+ *
+ * Read from {@link #FILE_NAME} in the app's files directory, one target per line:
+ * {@code <cardClass><TAB><postId>[<TAB><archiveIndex>]}. The post id is the shortcode in the
+ * post's URL ({@code instagram.com/p/<postId>/}), or {@code -} if the post is only reached
+ * through the archive; the archive index is the post's position in the archive grid, counted
+ * from 0, as recorded in {@link ArchiveLayout}. Blank lines and lines starting with {@code #}
+ * are ignored. Pure Java, so it can be parsed on the JVM.
+ */
+public final class RevealTargets {
+    public static final String FILE_NAME = "reveal_targets.txt";
+    private static final Pattern POST_ID = Pattern.compile("[A-Za-z0-9_-]+");
+
+    private static final RevealTargets EMPTY = new RevealTargets(Collections.emptyMap());
+
+    private final Map<String, Target> targets;
+
+    public static class Target {
+        public final String cardClass;
+        // Null if the post has no registered link
+        public final String postId;
+        // Position in the archive grid, or -1 if not registered
+        public final int archiveIndex;
+
+        public Target(String cardClass, String postId, int archiveIndex) {
+            this.cardClass = cardClass;
+            this.postId = postId;
+            this.archiveIndex = archiveIndex;
+        }
+
+        public boolean hasPostId() {
+            return postId != null;
+        }
+
+        /**
+         * Web link to the post, which Instagram opens on the post page.
+         */
+        public String getPostUrl() {
+            return "https://www.instagram.com/p/" + postId + "/";
+        }
+
+        @Override
+        public String toString() {
+            return cardClass + " -> " + (postId != null ? postId : "-")
+                    + (archiveIndex >= 0 ? " (archive #" + archiveIndex + ")" : "");
+        }
+    }
+
+    private RevealTargets(Map<String, Target> targets) {
+        this.targets = targets;
+    }
+
+    public static RevealTargets empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Loads the targets file, or returns no targets if it does not exist.
+     */
+    public static RevealTargets load(File file) throws IOException {
+        if (!file.exists()) {
+            return EMPTY;
+        }
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            return parse(reader);
+        }
+    }
+
+    /**
+     * @throws IOException if a line is malformed; the message has the line number
+     */
+    public static RevealTargets parse(Reader reader) throws IOException {
+        Map<String, Target> targets = new HashMap<>();
+        BufferedReader lines = new BufferedReader(reader);
+        String line;
+        int number = 0;
+        while ((line = lines.readLine()) != null) {
+            number++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+
+            String[] fields = line.split("\t");
+            if (fields.length < 2 || fields.length > 3) {
+                throw new IOException("Line " + number + ": expected <cardClass><TAB><postId>[<TAB><archiveIndex>]");
+            }
+            String cardClass = fields[0].trim();
+            String postId = fields[1].trim();
+            int archiveIndex = fields.length == 3 ? parseIndex(fields[2].trim()) : -1;
+            boolean noPost = postId.equals("-");
+            // A target needs at least one way to reach its post
+            if (cardClass.isEmpty() || (noPost ? archiveIndex < 0 : !POST_ID.matcher(postId).matches())
+                    || (fields.length == 3 && archiveIndex < 0)) {
+                throw new IOException("Line " + number + ": bad target '" + line + "'");
+            }
+            targets.put(cardClass, new Target(cardClass, noPost ? null : postId, archiveIndex));
+        }
+        return new RevealTargets(targets);
+    }
+
+    // -1 for anything that is not a valid index
+    private static int parseIndex(String field) {
+        try {
+            return Math.max(-1, Integer.parseInt(field));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * The target for a detected card class, or null if none is registered.
+     */
+    public Target get(String cardClass) {
+        return cardClass == null ? null : targets.get(cardClass);
+    }
+
+    public int size() {
+        return targets.size();
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.magic_insta;
+
+/**
+ * Tracks where motion happened between motion start and capture, so the captured frame can be
+ * cropped to the card instead of sending the whole scene.
+ *
+ * Active blocks of every analyzed frame are merged into one bounding box of the motion map. The
+ * crop is that box plus a margin, grown to a minimum size around its centre, in frame pixels.
+ * When motion covered most of the frame the full frame is used.
+ */
+public class RoiSelector {
+    private final float blockThreshold;
+    private final int marginBlocks;
+    private final float minSideFraction;
+    private final float maxAreaFraction;
+
+    private int blockSize;
+    private int minCol;
+    private int minRow;
+    private int maxCol;
+    private int maxRow;
+
+    /**
+     * @param blockThreshold  block score that counts as motion
+     * @param marginBlocks    blocks added around the motion box on every side
+     * @param minSideFraction smallest crop side as a fraction of the frame's shorter side
+     * @param maxAreaFraction crops covering more of the frame than this fall back to the full frame
+     */
+    public RoiSelector(float blockThreshold, int marginBlocks, float minSideFraction, float maxAreaFraction) {
+        this.blockThreshold = blockThreshold;
+        this.marginBlocks = marginBlocks;
+        this.minSideFraction = minSideFraction;
+        this.maxAreaFraction = maxAreaFraction;
+        reset();
+    }
+
+    /**
+     * Adds the active blocks of the detector's last frame to the motion box.
+     */
+    public void accumulate(MotionDetector detector) {
+        blockSize = detector.getBlockSize();
+        float[] scores = detector.getBlockScores();
+        int cols = detector.getBlockCols();
+        for (int i = 0; i < scores.length; i++) {
+            if (scores[i] < blockThreshold) continue;
+            int col = i % cols;
+            int row = i / cols;
+            if (col < minCol) minCol = col;
+            if (col > maxCol) maxCol = col;
+            if (row < minRow) minRow = row;
+            if (row > maxRow) maxRow = row;
+        }
+    }
+
+    public boolean hasMotion() {
+        return maxCol >= 0;
+    }
+
+    /**
+     * Writes the crop for a width x height frame into {@code out} as {left, top, width, height}.
+     *
+     * @return false if there is no useful crop and the full frame should be used
+     */
+    public boolean select(int width, int height, int[] out) {
+        if (!hasMotion()) {
+            return false;
+        }
+
+        int left = Math.max(0, (minCol - marginBlocks) * blockSize);
+        int top = Math.max(0, (minRow - marginBlocks) * blockSize);
+        int right = Math.min(width, (maxCol + 1 + marginBlocks) * blockSize);
+        int bottom = Math.min(height, (maxRow + 1 + marginBlocks) * blockSize);
+
+        int minSide = Math.round(Math.min(width, height) * minSideFraction);
+        int cropWidth = Math.min(width, Math.max(right - left, minSide));
+        int cropHeight = Math.min(height, Math.max(bottom - top, minSide));
+        if ((float) cropWidth * cropHeight > maxAreaFraction * width * height) {
+            return false;
+        }
+
+        // Grow around the centre of the motion box, shifted back inside the frame
+        left = clamp((left + right - cropWidth) / 2, 0, width - cropWidth);
+        top = clamp((top + bottom - cropHeight) / 2, 0, height - cropHeight);
+
+        out[0] = left & ~1;
+        out[1] = top & ~1;
+        out[2] = cropWidth & ~1;
+        out[3] = cropHeight & ~1;
+        return true;
+    }
+
+    public void reset() {
+        minCol = Integer.MAX_VALUE;
+        minRow = Integer.MAX_VALUE;
+        maxCol = -1;
+        maxRow = -1;
+    }
+
+    private static int clamp(int value, int min, int max) {
+        return value < min ? min : (value > max ? max : value);
+    }
+}
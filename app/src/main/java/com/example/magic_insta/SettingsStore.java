@@ -0,0 +1,75 @@
+package com.example.magic_insta;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+/**
+ * Process-wide cache of the app's switches in {@link #PREFS_NAME}.
+ *
+ * The preferences are read once into volatile fields and kept current by an
+ * {@link SharedPreferences.OnSharedPreferenceChangeListener}, so the accessibility service's key
+ * filter reads a field instead of going through {@code getSharedPreferences} on the input
+ * dispatch path. Setters write the field first and persist asynchronously with
+ * {@code apply()}. Reads are safe from any thread.
+ */
+public final class SettingsStore implements SharedPreferences.OnSharedPreferenceChangeListener {
+    static final String PREFS_NAME = "MagicInstaPrefs";
+    static final String FAKE_LOCKSCREEN_KEY = "fake_lockscreen_enabled";
+    static final String INSTAGRAM_MANAGER_KEY = "instagram_manager_enabled";
+
+    // Also keeps the listener reachable: SharedPreferences only holds listeners weakly
+    private static SettingsStore shared;
+
+    private final SharedPreferences prefs;
+    private volatile boolean fakeLockscreenEnabled;
+    private volatile boolean instagramManagerEnabled;
+
+    /**
+     * Returns the process-wide store, loading the preferences on first use.
+     */
+    public static synchronized SettingsStore get(Context context) {
+        if (shared == null) {
+            shared = new SettingsStore(context.getApplicationContext()
+                    .getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE));
+        }
+        return shared;
+    }
+
+    SettingsStore(SharedPreferences prefs) {
+        this.prefs = prefs;
+        fakeLockscreenEnabled = prefs.getBoolean(FAKE_LOCKSCREEN_KEY, false);
+        instagramManagerEnabled = prefs.getBoolean(INSTAGRAM_MANAGER_KEY, false);
+        prefs.registerOnSharedPreferenceChangeListener(this);
+    }
+
+    public boolean isFakeLockscreenEnabled() {
+        return fakeLockscreenEnabled;
+    }
+
+    public boolean isInstagramManagerEnabled() {
+        return instagramManagerEnabled;
+    }
+
+    public void setFakeLockscreenEnabled(boolean enabled) {
+        fakeLockscreenEnabled = enabled;
+        prefs.edit().putBoolean(FAKE_LOCKSCREEN_KEY, enabled).apply();
+    }
+
+    public void setInstagramManagerEnabled(boolean enabled) {
+        instagramManagerEnabled = enabled;
+        prefs.edit().putBoolean(INSTAGRAM_MANAGER_KEY, enabled).apply();
+    }
+
+    /**
+     * Picks up changes made through the preferences directly; a null key means they were cleared.
+     */
+    @Override
+    public void onSharedPreferenceChanged(SharedPreferences preferences, String key) {
+        if (key == null || FAKE_LOCKSCREEN_KEY.equals(key)) {
+            fakeLockscreenEnabled = preferences.getBoolean(FAKE_LOCKSCREEN_KEY, false);
+        }
+        if (key == null || INSTAGRAM_MANAGER_KEY.equals(key)) {
+            instagramManagerEnabled = preferences.getBoolean(INSTAGRAM_MANAGER_KEY, false);
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.example.magic_insta;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.content.res.AssetManager;
+import android.util.Log;
+
+import org.tensorflow.lite.DataType;
+import org.tensorflow.lite.Interpreter;
+import org.tensorflow.lite.Tensor;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * On-device playing-card classifier running a TensorFlow Lite model from assets on the CPU.
+ *
+ * Expects {@link #MODEL_ASSET}, an image classifier with one [1, height, width, 3] input (uint8
+ * or float32 in [0, 1]) and one [1, classes] output (uint8 quantized or float32 scores), and
+ * {@link #LABELS_ASSET}, one class name per line in output order. Class names should match the
+ * remote model's classes; the {@link #NO_CARD_LABEL} class means no card is visible.
+ */
+public class TfliteCardDetector implements CardDetector, Closeable {
+    private static final String TAG = "TfliteCardDetector";
+    public static final String MODEL_ASSET = "card_classifier.tflite";
+    public static final String LABELS_ASSET = "card_labels.txt";
+    public static final String NO_CARD_LABEL = "none";
+    private static final double CONFIDENCE_THRESHOLD = 0.5;
+    private static final int NUM_THREADS = 2;
+
+    private final Interpreter interpreter;
+    private final List<String> labels;
+    private final int inputWidth;
+    private final int inputHeight;
+    private final boolean floatInput;
+    private final ByteBuffer input;
+    private final boolean quantizedOutput;
+    private final float outputScale;
+    private final int outputZeroPoint;
+    private final byte[][] quantizedScores;
+    private final float[][] floatScores;
+
+    public static boolean isAvailable(Context context) {
+        try {
+            context.getAssets().openFd(MODEL_ASSET).close();
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    public TfliteCardDetector(Context context) throws IOException {
+        // Labels first, so a missing labels file cannot leak a created interpreter
+        labels = loadLabels(context.getAssets());
+        Interpreter.Options options = new Interpreter.Options()
+                .setNumThreads(NUM_THREADS)
+                .setUseXNNPACK(true);
+        interpreter = new Interpreter(loadModel(context.getAssets()), options);
+
+        Tensor inputTensor = interpreter.getInputTensor(0);
+        checkDataType("input", inputTensor);
+        int[] inputShape = inputTensor.shape();
+        inputHeight = inputShape[1];
+        inputWidth = inputShape[2];
+        floatInput = inputTensor.dataType() == DataType.FLOAT32;
+        input = ByteBuffer.allocateDirect(inputWidth * inputHeight * 3 * (floatInput ? 4 : 1))
+                .order(ByteOrder.nativeOrder());
+
+        Tensor outputTensor = interpreter.getOutputTensor(0);
+        checkDataType("output", outputTensor);
+        int classes = outputTensor.shape()[1];
+        if (classes != labels.size()) {
+            interpreter.close();
+            throw new IOException("Model has " + classes + " classes but " + labels.size() + " labels");
+        }
+        quantizedOutput = outputTensor.dataType() == DataType.UINT8;
+        outputScale = outputTensor.quantizationParams().getScale();
+        outputZeroPoint = outputTensor.quantizationParams().getZeroPoint();
+        quantizedScores = quantizedOutput ? new byte[1][classes] : null;
+        floatScores = quantizedOutput ? null : new float[1][classes];
+
+        Log.d(TAG, "Loaded card model " + inputWidth + "x" + inputHeight
+                + (floatInput ? " float" : " uint8") + " input, " + classes + " classes");
+    }
+
+    // Only uint8 and float32 are read and written; anything else, like int8, fails the load
+    private void checkDataType(String name, Tensor tensor) throws IOException {
+        DataType type = tensor.dataType();
+        if (type != DataType.FLOAT32 && type != DataType.UINT8) {
+            interpreter.close();
+            throw new IOException("Unsupported " + name + " type " + type + ", expected FLOAT32 or UINT8");
+        }
+    }
+
+    private static MappedByteBuffer loadModel(AssetManager assets) throws IOException {
+        try (AssetFileDescriptor fd = assets.openFd(MODEL_ASSET);
+             FileInputStream in = new FileInputStream(fd.getFileDescriptor())) {
+            return in.getChannel().map(FileChannel.MapMode.READ_ONLY, fd.getStartOffset(), fd.getDeclaredLength());
+        }
+    }
+
+    private static List<String> loadLabels(AssetManager assets) throws IOException {
+        List<String> labels = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(assets.open(LABELS_ASSET), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.trim().isEmpty()) {
+                    labels.add(line.trim());
+                }
+            }
+        }
+        return labels;
+    }
+
+    @Override
+    public synchronized CardDetectionUploader.DetectionResult detect(CardImage image) {
+        input.rewind();
+        image.toRgb(inputWidth, inputHeight, input, floatInput);
+        input.rewind();
+
+        int best = 0;
+        float bestScore = -Float.MAX_VALUE;
+        if (quantizedOutput) {
+            interpreter.run(input, quantizedScores);
+            for (int i = 0; i < labels.size(); i++) {
+                float score = ((quantizedScores[0][i] & 0xFF) - outputZeroPoint) * outputScale;
+                if (score > bestScore) {
+                    bestScore = score;
+                    best = i;
+                }
+            }
+        } else {
+            interpreter.run(input, floatScores);
+            for (int i = 0; i < labels.size(); i++) {
+                if (floatScores[0][i] > bestScore) {
+                    bestScore = floatScores[0][i];
+                    best = i;
+                }
+            }
+        }
+
+        String cardClass = labels.get(best);
+        if (NO_CARD_LABEL.equals(cardClass) || bestScore < CONFIDENCE_THRESHOLD) {
+            Log.d(TAG, "No confident card (best " + cardClass + " " + bestScore + ")");
+            return new CardDetectionUploader.DetectionResult(false, null, 0.0);
+        }
+        Log.d(TAG, "Card detected - Class: " + cardClass + ", Confidence: " + bestScore);
+        return new CardDetectionUploader.DetectionResult(true, cardClass, bestScore);
+    }
+
+    @Override
+    public String getName() {
+        return "tflite";
+    }
+
+    @Override
+    public void close() {
+        interpreter.close();
+    }
+}
@@ -4,70 +4,138 @@ import android.app.Service;
 import android.content.Intent;
 import android.graphics.Color;
 import android.graphics.PixelFormat;
+import android.os.Binder;
 import android.os.Build;
+import android.os.Handler;
 import android.os.IBinder;
+import android.os.Looper;
 import android.util.Log;
+import android.view.Choreographer;
 import android.view.Gravity;
 import android.view.MotionEvent;
 import android.view.View;
 import android.view.WindowManager;
 import android.widget.FrameLayout;
 
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full-screen window that keeps touches away from Instagram while the reveal runs.
+ *
+ * The window is added on the first show and stays attached while the reveal toggles it. Hiding
+ * makes the view gone and the window transparent and not touchable; showing undoes that with one
+ * {@code updateViewLayout}, so neither goes through {@code addView}/{@code removeView}. After
+ * {@link #IDLE_DETACH_MS} hidden the window is removed, so the system's "displaying over other
+ * apps" notice does not stay up between reveals. The view is drawn into a hardware layer. {@link OverlayController} binds to the service and calls {@link #show()} and
+ * {@link #hide()} through {@link LocalBinder}, on the main thread; the
+ * {@link #ACTION_SHOW_OVERLAY} and {@link #ACTION_HIDE_OVERLAY} intents still work.
+ *
+ * A thin bar along the bottom edge shows the automation's progress, set with
+ * {@link #setProgress}; it moves by scaling, which does not redraw the layer.
+ *
+ * Blocked touches are counted rather than logged. Show and hide latency run from the call to
+ * the start of the frame that draws the change, and frames are counted while the overlay is up
+ * to see frames dropped during automation; the numbers are logged on each hide.
+ */
 public class TouchBlockOverlayService extends Service {
     private static final String TAG = "TouchBlockOverlay";
-    
-    private WindowManager windowManager;
-    private View overlayView;
-    
+
     public static final String ACTION_SHOW_OVERLAY = "SHOW_OVERLAY";
     public static final String ACTION_HIDE_OVERLAY = "HIDE_OVERLAY";
-    
+    // Hidden this long, the window is removed until the next show
+    static final long IDLE_DETACH_MS = TimeUnit.SECONDS.toMillis(30);
+
+    public class LocalBinder extends Binder {
+        public TouchBlockOverlayService getService() {
+            return TouchBlockOverlayService.this;
+        }
+    }
+
+    private final LocalBinder binder = new LocalBinder();
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable idleDetach = this::detach;
+    private WindowManager windowManager;
+    private View overlayView;
+    private View progressView;
+    private WindowManager.LayoutParams params;
+    private boolean attached;
+    private boolean showing;
+    private long blockedTouches;
+    private long blockedGestures;
+
+    private Choreographer choreographer;
+    private FrameStats frameStats;
+    private final LatencyRecorder showLatency = new LatencyRecorder("Overlay show", 32);
+    private final LatencyRecorder hideLatency = new LatencyRecorder("Overlay hide", 32);
+    // The show or hide waiting for its first frame, or null
+    private LatencyRecorder pendingLatency;
+    private long toggleNanos;
+    private final Choreographer.FrameCallback frameCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            if (pendingLatency != null) {
+                pendingLatency.record(System.nanoTime() - toggleNanos);
+                pendingLatency = null;
+            }
+            if (showing) {
+                frameStats.onFrame(frameTimeNanos);
+                choreographer.postFrameCallback(this);
+            }
+        }
+    };
+
     @Override
     public void onCreate() {
         super.onCreate();
         windowManager = (WindowManager) getSystemService(WINDOW_SERVICE);
+        choreographer = Choreographer.getInstance();
+        float refreshRate = windowManager.getDefaultDisplay().getRefreshRate();
+        frameStats = new FrameStats("Overlay frames", (long) (1e9 / (refreshRate > 0 ? refreshRate : 60)));
         createOverlayView();
     }
-    
+
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
         if (intent != null) {
             String action = intent.getAction();
             if (ACTION_SHOW_OVERLAY.equals(action)) {
-                showOverlay();
+                show();
             } else if (ACTION_HIDE_OVERLAY.equals(action)) {
-                hideOverlay();
+                hide();
             }
         }
         return START_STICKY;
     }
-      private void createOverlayView() {
+
+    private void createOverlayView() {
         // Create a FrameLayout that will serve as the overlay
         FrameLayout overlayLayout = new FrameLayout(this);
-        
+
         // Set 90% black
         overlayLayout.setBackgroundColor(Color.parseColor("#E6000000"));
+        // Drawn once into a layer that the window composes until it changes
+        overlayLayout.setLayerType(View.LAYER_TYPE_HARDWARE, null);
+        overlayLayout.setVisibility(View.GONE);
 
-        // Set up touch interceptor to block all touches
-        overlayLayout.setOnTouchListener(new View.OnTouchListener() {
-            @Override
-            public boolean onTouch(View v, MotionEvent event) {
-                // Consume all touch events to prevent them from reaching the underlying apps
-                Log.d(TAG, "Touch event blocked during automation");
-                return true; // Return true to consume the event
+        // Consume all touch events to prevent them from reaching the underlying apps
+        overlayLayout.setOnTouchListener((v, event) -> {
+            blockedTouches++;
+            if (event.getActionMasked() == MotionEvent.ACTION_DOWN) {
+                blockedGestures++;
             }
+            return true;
         });
-        
+
+        progressView = new View(this);
+        progressView.setBackgroundColor(Color.parseColor("#33FFFFFF"));
+        progressView.setPivotX(0);
+        progressView.setScaleX(0);
+        overlayLayout.addView(progressView, new FrameLayout.LayoutParams(
+                FrameLayout.LayoutParams.MATCH_PARENT, dpToPx(3), Gravity.BOTTOM));
+
         overlayView = overlayLayout;
-    }
-    
-    private void showOverlay() {
-        if (overlayView == null || overlayView.getParent() != null) {
-            Log.d(TAG, "Overlay already showing or view is null");
-            return;
-        }
-        
-        try {            WindowManager.LayoutParams params = new WindowManager.LayoutParams(
+
+        params = new WindowManager.LayoutParams(
                 WindowManager.LayoutParams.MATCH_PARENT,
                 WindowManager.LayoutParams.MATCH_PARENT,
                 Build.VERSION.SDK_INT >= Build.VERSION_CODES.O ?
@@ -78,41 +146,154 @@ public class TouchBlockOverlayService extends Service {
                 WindowManager.LayoutParams.FLAG_WATCH_OUTSIDE_TOUCH |
                 WindowManager.LayoutParams.FLAG_FULLSCREEN |
                 WindowManager.LayoutParams.FLAG_LAYOUT_IN_SCREEN |
-                WindowManager.LayoutParams.FLAG_LAYOUT_NO_LIMITS,
+                WindowManager.LayoutParams.FLAG_LAYOUT_NO_LIMITS |
+                WindowManager.LayoutParams.FLAG_HARDWARE_ACCELERATED |
+                WindowManager.LayoutParams.FLAG_NOT_TOUCHABLE,
                 PixelFormat.TRANSLUCENT
-            );
-            
-            params.gravity = Gravity.TOP | Gravity.START;
-            params.x = 0;
-            params.y = 0;
-            
+        );
+        params.gravity = Gravity.TOP | Gravity.START;
+        params.x = 0;
+        params.y = 0;
+        // Android 12+ only lets touches through overlays of other apps that are mostly transparent
+        params.alpha = 0f;
+    }
+
+    /**
+     * Adds the hidden window, unless it already is; fails without the overlay permission.
+     */
+    private boolean attach() {
+        if (attached) {
+            return true;
+        }
+        try {
             windowManager.addView(overlayView, params);
-            Log.d(TAG, "Touch blocking overlay shown");
-            
+            attached = true;
+            Log.d(TAG, "Touch blocking overlay attached");
         } catch (Exception e) {
-            Log.e(TAG, "Error showing overlay: " + e.getMessage());
+            Log.e(TAG, "Error attaching overlay: " + e.getMessage());
         }
+        return attached;
     }
-    
-    private void hideOverlay() {
-        if (overlayView != null && overlayView.getParent() != null) {
-            try {
-                windowManager.removeView(overlayView);
-                Log.d(TAG, "Touch blocking overlay hidden");
-            } catch (Exception e) {
-                Log.e(TAG, "Error hiding overlay: " + e.getMessage());
-            }
+
+    private void detach() {
+        handler.removeCallbacks(idleDetach);
+        if (!attached || showing) {
+            return;
+        }
+        try {
+            windowManager.removeView(overlayView);
+            Log.d(TAG, "Touch blocking overlay detached");
+        } catch (Exception e) {
+            Log.e(TAG, "Error removing overlay: " + e.getMessage());
+        }
+        attached = false;
+    }
+
+    /**
+     * Starts blocking touches. Does nothing if the overlay is already showing.
+     */
+    public void show() {
+        if (showing) {
+            Log.d(TAG, "Overlay already showing");
+            return;
+        }
+        handler.removeCallbacks(idleDetach);
+        if (!attach()) {
+            return;
+        }
+        showing = true;
+        params.flags &= ~WindowManager.LayoutParams.FLAG_NOT_TOUCHABLE;
+        params.alpha = 1f;
+        windowManager.updateViewLayout(overlayView, params);
+        overlayView.setVisibility(View.VISIBLE);
+        frameStats.pause();
+        startLatency(showLatency);
+        Log.d(TAG, "Touch blocking overlay shown");
+    }
+
+    /**
+     * Lets touches through again. Does nothing if the overlay is not showing.
+     */
+    public void hide() {
+        if (!showing) {
+            return;
         }
+        showing = false;
+        params.flags |= WindowManager.LayoutParams.FLAG_NOT_TOUCHABLE;
+        params.alpha = 0f;
+        windowManager.updateViewLayout(overlayView, params);
+        overlayView.setVisibility(View.GONE);
+        startLatency(hideLatency);
+        handler.postDelayed(idleDetach, IDLE_DETACH_MS);
+        Log.d(TAG, "Touch blocking overlay hidden, " + blockedGestures + " gesture(s) and "
+                + blockedTouches + " touch event(s) blocked so far");
+        Log.d(TAG, frameStats.toString());
+        Log.d(TAG, showLatency.toString());
+        Log.d(TAG, hideLatency.toString());
+    }
+
+    /**
+     * Fills the progress bar to {@code done} of {@code total}; a total of 0 empties it.
+     */
+    public void setProgress(int done, int total) {
+        progressView.setScaleX(total > 0 ? Math.min(1f, (float) done / total) : 0f);
+    }
+
+    private int dpToPx(int dp) {
+        return Math.round(dp * getResources().getDisplayMetrics().density);
     }
-    
+
+    public boolean isShowing() {
+        return showing;
+    }
+
+    // Times the change just made to the first frame that draws it
+    private void startLatency(LatencyRecorder recorder) {
+        toggleNanos = System.nanoTime();
+        pendingLatency = recorder;
+        choreographer.removeFrameCallback(frameCallback);
+        choreographer.postFrameCallback(frameCallback);
+    }
+
+    /**
+     * Touch events blocked since the service started.
+     */
+    public long getBlockedTouchCount() {
+        return blockedTouches;
+    }
+
+    /**
+     * Gestures, i.e. touch downs, blocked since the service started.
+     */
+    public long getBlockedGestureCount() {
+        return blockedGestures;
+    }
+
+    public LatencyRecorder getShowLatency() {
+        return showLatency;
+    }
+
+    public LatencyRecorder getHideLatency() {
+        return hideLatency;
+    }
+
+    /**
+     * Frames drawn and dropped while the overlay was showing.
+     */
+    public FrameStats getFrameStats() {
+        return frameStats;
+    }
+
     @Override
     public void onDestroy() {
         super.onDestroy();
-        hideOverlay();
+        choreographer.removeFrameCallback(frameCallback);
+        showing = false;
+        detach();
     }
-    
+
     @Override
     public IBinder onBind(Intent intent) {
-        return null;
+        return binder;
     }
 }
@@ -0,0 +1,24 @@
+package com.example.magic_insta;
+
+/**
+ * State shared between the camera side of the trick and the accessibility service, which run
+ * as separate components of one process: the card the spectator picked, once it was detected.
+ * It is cleared each time the fake lock is armed, so a reveal never opens the previous card.
+ */
+public final class TrickState {
+    private static volatile CardDetectionUploader.DetectionResult detectedCard;
+
+    private TrickState() {
+    }
+
+    public static void setDetectedCard(CardDetectionUploader.DetectionResult card) {
+        detectedCard = card;
+    }
+
+    /**
+     * The card detected since the fake lock was last armed, or null.
+     */
+    public static CardDetectionUploader.DetectionResult getDetectedCard() {
+        return detectedCard;
+    }
+}
@@ -0,0 +1,33 @@
+package com.example.magic_insta;
+
+/**
+ * What a {@link FlowEngine} needs from the accessibility service: a snapshot of the active
+ * window and a way to act on it. Tests drive flows with a scripted implementation.
+ */
+public interface UiDriver {
+
+    /**
+     * Captures the active window, or returns null if there is none. The caller releases the
+     * snapshot with {@link NodeSnapshot#release()} once done acting on it.
+     */
+    NodeSnapshot snapshot();
+
+    /**
+     * Clicks the node at {@code index} of {@code snapshot}.
+     *
+     * @return true if the click was delivered
+     */
+    boolean click(NodeSnapshot snapshot, int index);
+
+    /**
+     * Scrolls the scrollable node at {@code index} of {@code snapshot} forward by a page.
+     *
+     * @return true if the node scrolled
+     */
+    boolean scrollForward(NodeSnapshot snapshot, int index);
+
+    /**
+     * Performs an {@code AccessibilityService.GLOBAL_ACTION_*} action.
+     */
+    boolean performGlobalAction(int action);
+}
@@ -0,0 +1,79 @@
+package com.example.magic_insta;
+
+import android.graphics.Bitmap;
+import android.util.Base64;
+import android.util.Base64OutputStream;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes base64 image request bodies straight into an {@link HttpURLConnection} without building
+ * the encoded image as a String or byte array.
+ *
+ * The image goes through a {@link Base64OutputStream} wrapped around the connection's output
+ * stream, between an optional prefix and suffix (e.g. the JSON around the image field). JPEG
+ * bytes of known size are sent in fixed-length streaming mode; bitmaps are compressed into the
+ * encoder in chunked mode. Either way the connection does not buffer the whole body, so the
+ * memory used per request stays at a few small buffers whatever the image size.
+ */
+public final class UploadBodyWriter {
+    private static final int CHUNK_SIZE = 16 * 1024;
+    private static final int BASE64_FLAGS = Base64.NO_WRAP | Base64.NO_CLOSE;
+
+    private UploadBodyWriter() {
+    }
+
+    /**
+     * Source of the raw image bytes written through the encoder.
+     */
+    interface ImageWriter {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    public static void writeBase64(HttpURLConnection conn, byte[] jpeg) throws IOException {
+        writeBase64(conn, jpeg, null, null);
+    }
+
+    public static void writeBase64(HttpURLConnection conn, byte[] jpeg, String prefix, String suffix) throws IOException {
+        byte[] head = bytes(prefix);
+        byte[] tail = bytes(suffix);
+        conn.setFixedLengthStreamingMode(head.length + base64Length(jpeg.length) + tail.length);
+        try (OutputStream out = conn.getOutputStream()) {
+            writeBody(out, head, o -> o.write(jpeg), tail);
+        }
+    }
+
+    public static void writeBase64(HttpURLConnection conn, Bitmap bitmap, int quality,
+                                   String prefix, String suffix) throws IOException {
+        conn.setChunkedStreamingMode(CHUNK_SIZE);
+        try (OutputStream out = conn.getOutputStream()) {
+            writeBody(out, bytes(prefix), o -> bitmap.compress(Bitmap.CompressFormat.JPEG, quality, o), bytes(suffix));
+        }
+    }
+
+    /**
+     * Writes prefix, base64 of the image and suffix to {@code out}, leaving it open.
+     */
+    static void writeBody(OutputStream out, byte[] prefix, ImageWriter image, byte[] suffix) throws IOException {
+        out.write(prefix);
+        // Closing the encoder writes the final padding but leaves out open for the suffix
+        try (OutputStream encoder = new Base64OutputStream(out, BASE64_FLAGS)) {
+            image.writeTo(encoder);
+        }
+        out.write(suffix);
+    }
+
+    /**
+     * Length of the padded, unwrapped base64 encoding of {@code length} bytes.
+     */
+    public static long base64Length(long length) {
+        return (length + 2) / 3 * 4;
+    }
+
+    private static byte[] bytes(String text) {
+        return text == null ? new byte[0] : text.getBytes(StandardCharsets.UTF_8);
+    }
+}
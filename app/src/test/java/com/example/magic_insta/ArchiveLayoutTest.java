@@ -0,0 +1,82 @@
+package com.example.magic_insta;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Recording and the on-disk format of {@link ArchiveLayout}.
+ */
+public class ArchiveLayoutTest {
+
+    @Test
+    public void recorderNumbersNewPhotosByFirstPage() {
+        ArchiveLayout.Recorder recorder = new ArchiveLayout.Recorder();
+        assertEquals(2, recorder.addPage(Arrays.asList("a", "b")));
+        recorder.onScrolled();
+        assertEquals(1, recorder.addPage(Arrays.asList("b", "c", null)));
+
+        ArchiveLayout layout = recorder.build();
+        assertEquals(3, layout.size());
+        assertEquals("c", layout.get(2).description);
+        assertEquals(2, layout.get(2).index);
+        assertEquals(1, layout.get(2).scrolls);
+        assertEquals(0, layout.get(1).scrolls);
+        assertNull(layout.get(3));
+        assertNull(layout.get(-1));
+
+        recorder.reset();
+        assertEquals(0, recorder.build().size());
+    }
+
+    @Test
+    public void recorderStopsOnSharedDescriptions() {
+        ArchiveLayout.Recorder recorder = new ArchiveLayout.Recorder();
+        recorder.addPage(Arrays.asList("a", "b"));
+        recorder.onScrolled();
+        // "b" is the overlap with the first page; "a" is back after a page without it
+        recorder.addPage(Arrays.asList("b", "c"));
+        recorder.onScrolled();
+        assertEquals(0, recorder.addPage(Arrays.asList("c", "a", "d")));
+        assertEquals("a", recorder.getDuplicate());
+        assertEquals(3, recorder.build().size());
+
+        recorder.reset();
+        assertNull(recorder.getDuplicate());
+        assertEquals(0, recorder.addPage(Arrays.asList("x", "y", "x")));
+        assertEquals("x", recorder.getDuplicate());
+        assertEquals(0, recorder.build().size());
+    }
+
+    @Test
+    public void roundTripsThroughText() throws IOException {
+        ArchiveLayout.Recorder recorder = new ArchiveLayout.Recorder();
+        recorder.addPage(Arrays.asList("Photo by Dhia at row 1, column 1", "Photo\tby Dhia"));
+        recorder.onScrolled();
+        recorder.onScrolled();
+        recorder.addPage(Arrays.asList("Photo by Dhia at row 9, column 3"));
+
+        StringWriter text = new StringWriter();
+        recorder.build().write(text);
+        ArchiveLayout layout = ArchiveLayout.parse(new StringReader(text.toString()));
+        assertEquals(3, layout.size());
+        assertEquals("Photo\tby Dhia", layout.get(1).description);
+        assertEquals("Photo by Dhia at row 9, column 3", layout.get(2).description);
+        assertEquals(2, layout.get(2).scrolls);
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsOtherFiles() throws IOException {
+        ArchiveLayout.parse(new StringReader("ace\tC1a\n"));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsOutOfOrderEntries() throws IOException {
+        ArchiveLayout.parse(new StringReader("archive-layout 1\n1\t0\tb\n"));
+    }
+}
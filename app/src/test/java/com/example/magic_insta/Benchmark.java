@@ -0,0 +1,43 @@
+package com.example.magic_insta;
+
+import java.util.Locale;
+import java.util.function.IntConsumer;
+
+/**
+ * Micro-benchmarks that run as part of the JVM tests. They are always measured, so a broken
+ * benchmark still fails the build, but the timings are only printed when the tests run with
+ * {@code -Pbenchmark}.
+ */
+final class Benchmark {
+    private static final boolean REPORT = Boolean.getBoolean("benchmark");
+
+    private Benchmark() {
+    }
+
+    /**
+     * Runs {@code body} {@code warmup} times, then {@code runs} more times under the clock.
+     * The body gets the run number, counting from 0 for warmup and timed runs alike.
+     *
+     * @return mean microseconds per timed run
+     */
+    static double micros(int warmup, int runs, IntConsumer body) {
+        for (int i = 0; i < warmup; i++) {
+            body.accept(i);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < runs; i++) {
+            body.accept(i);
+        }
+        return (System.nanoTime() - start) / 1000.0 / runs;
+    }
+
+    static void report(String name, double micros) {
+        report(String.format(Locale.US, "%-40s %8.3f us", name, micros));
+    }
+
+    static void report(String line) {
+        if (REPORT) {
+            System.out.println(line);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.magic_insta;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Drives {@link CaptureTrigger} with a {@link MotionDetector} over synthetic NV21 frames.
+ */
+public class CaptureTriggerTest {
+    private static final int WIDTH = 320;
+    private static final int HEIGHT = 240;
+    private static final long FRAME_NANOS = 33_000_000L;
+    private static final long SETTLE_TIMEOUT = 1_000_000_000L;
+
+    private final MotionDetector detector = new MotionDetector(WIDTH, HEIGHT);
+    // The thresholds the preview uses
+    private final CaptureTrigger trigger = new CaptureTrigger(3.0f, 24.0f, 4, 1.5f, 3, SETTLE_TIMEOUT);
+    private long now;
+
+    private static byte[] frame(int luma) {
+        byte[] nv21 = new byte[WIDTH * HEIGHT * 3 / 2];
+        Arrays.fill(nv21, 0, WIDTH * HEIGHT, (byte) luma);
+        Arrays.fill(nv21, WIDTH * HEIGHT, nv21.length, (byte) 128);
+        return nv21;
+    }
+
+    private boolean feed(byte[] nv21) {
+        detector.process(nv21);
+        now += FRAME_NANOS;
+        return trigger.onFrame(detector, now);
+    }
+
+    @Test
+    public void capturesOnTheThirdStableFrame() {
+        assertFalse(feed(frame(100)));
+        assertFalse(trigger.isSettling());
+        assertFalse(feed(frame(140)));
+        assertTrue(trigger.isSettling());
+        long motionStart = now;
+
+        assertFalse(feed(frame(140)));
+        // Still moving: the stable count starts over
+        assertFalse(feed(frame(180)));
+        assertFalse(feed(frame(180)));
+        assertFalse(feed(frame(180)));
+        assertTrue(feed(frame(180)));
+        assertFalse(trigger.isSettling());
+        assertEquals(motionStart, trigger.getMotionStartNanos());
+
+        // Back to waiting for motion
+        assertFalse(feed(frame(180)));
+        assertFalse(trigger.isSettling());
+    }
+
+    @Test
+    public void smallMotionStartsSettlingThroughBlocks() {
+        feed(frame(100));
+        byte[] card = frame(100);
+        // Four 16x16 blocks change a lot; the global score stays under the motion threshold
+        for (int y = 32; y < 64; y++) {
+            Arrays.fill(card, y * WIDTH + 32, y * WIDTH + 64, (byte) 140);
+        }
+        feed(card);
+        assertTrue(detector.getLastScore() < 3.0f);
+        assertTrue(trigger.isSettling());
+    }
+
+    @Test
+    public void capturesAtTheSettleTimeoutIfTheSceneKeepsMoving() {
+        feed(frame(100));
+        feed(frame(140));
+        long motionStart = now;
+        int luma = 140;
+        boolean captured = false;
+        while (!captured) {
+            luma = luma == 140 ? 100 : 140;
+            captured = feed(frame(luma));
+            assertTrue(captured || now - motionStart < SETTLE_TIMEOUT);
+        }
+        assertTrue(now - motionStart >= SETTLE_TIMEOUT);
+        assertTrue(now - motionStart < SETTLE_TIMEOUT + FRAME_NANOS);
+    }
+
+    @Test
+    public void resetDropsPendingMotion() {
+        feed(frame(100));
+        feed(frame(140));
+        assertTrue(trigger.isSettling());
+        trigger.reset();
+        assertFalse(trigger.isSettling());
+        assertFalse(feed(frame(140)));
+        assertFalse(trigger.isSettling());
+    }
+}
@@ -0,0 +1,136 @@
+package com.example.magic_insta;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs {@link CardDetectorEvaluator} over a generated labelled set with a fake classifier.
+ */
+public class CardDetectorEvaluatorTest {
+    private static final int WIDTH = 32;
+    private static final int HEIGHT = 24;
+
+    private File root;
+
+    @Before
+    public void writeDataset() throws IOException {
+        root = File.createTempFile("cards", "");
+        assertTrue(root.delete());
+        writeImage("AH", "bright_1", 240);
+        writeImage("AH", "bright_2", 220);
+        // Too dark for the fake classifier: a miss
+        writeImage("AH", "dark_1", 90);
+        writeImage("none", "empty_1", 10);
+        // Mid grey reads as the wrong card
+        writeImage("none", "grey_1", 150);
+    }
+
+    @After
+    public void deleteDataset() {
+        for (File dir : root.listFiles()) {
+            for (File file : dir.listFiles()) {
+                file.delete();
+            }
+            dir.delete();
+        }
+        root.delete();
+    }
+
+    private void writeImage(String label, String name, int luma) throws IOException {
+        File dir = new File(root, label);
+        dir.mkdirs();
+        byte[] nv21 = new byte[WIDTH * HEIGHT * 3 / 2];
+        Arrays.fill(nv21, 0, WIDTH * HEIGHT, (byte) luma);
+        Arrays.fill(nv21, WIDTH * HEIGHT, nv21.length, (byte) 128);
+        try (FileOutputStream out = new FileOutputStream(new File(dir, name + "_" + WIDTH + "x" + HEIGHT + ".nv21"))) {
+            out.write(nv21);
+        }
+    }
+
+    /**
+     * Calls bright images the ace of hearts and mid grey the king of spades, via the same RGB
+     * conversion the on-device model input uses.
+     */
+    private static class BrightnessDetector implements CardDetector {
+        int calls;
+
+        @Override
+        public CardDetectionUploader.DetectionResult detect(CardImage image) {
+            calls++;
+            ByteBuffer rgb = ByteBuffer.allocate(4 * 4 * 3);
+            image.toRgb(4, 4, rgb, false);
+            int red = rgb.get(0) & 0xFF;
+            if (red > 200) {
+                return new CardDetectionUploader.DetectionResult(true, "AH", 0.9);
+            } else if (red > 120) {
+                return new CardDetectionUploader.DetectionResult(true, "KS", 0.6);
+            }
+            return new CardDetectionUploader.DetectionResult(false, null, 0.0);
+        }
+
+        @Override
+        public String getName() {
+            return "brightness";
+        }
+    }
+
+    @Test
+    public void loadsSamplesByDirectory() throws IOException {
+        List<CardDetectorEvaluator.Sample> samples = CardDetectorEvaluator.load(root);
+
+        assertEquals(5, samples.size());
+        assertEquals("AH", samples.get(0).label);
+        assertEquals(WIDTH, samples.get(0).image.getWidth());
+        assertEquals(HEIGHT, samples.get(0).image.getHeight());
+        assertNull(samples.get(0).image.getJpeg());
+        assertEquals("none", samples.get(4).label);
+    }
+
+    @Test
+    public void scoresHitsMissesAndWrongClasses() throws IOException {
+        BrightnessDetector detector = new BrightnessDetector();
+        CardDetectorEvaluator.Report report =
+                CardDetectorEvaluator.evaluate(detector, CardDetectorEvaluator.load(root), 2);
+
+        assertEquals(5, report.total);
+        assertEquals(3, report.correct);
+        assertEquals(1, report.missed);
+        assertEquals(1, report.wrong);
+        assertEquals(0, report.errors);
+        assertEquals(0.6, report.getAccuracy(), 1e-9);
+        assertEquals(5, report.latency.getCount());
+        assertEquals(7, detector.calls);
+    }
+
+    @Test
+    public void countsDetectorFailuresAsErrors() throws IOException {
+        CardDetector failing = new CardDetector() {
+            @Override
+            public CardDetectionUploader.DetectionResult detect(CardImage image) throws Exception {
+                throw new IOException("offline");
+            }
+
+            @Override
+            public String getName() {
+                return "failing";
+            }
+        };
+
+        CardDetectorEvaluator.Report report =
+                CardDetectorEvaluator.evaluate(failing, CardDetectorEvaluator.load(root), 0);
+
+        assertEquals(5, report.errors);
+        assertEquals(0, report.correct);
+        assertTrue(report.toString().startsWith("failing: accuracy 0.000"));
+    }
+}
@@ -0,0 +1,242 @@
+package com.example.magic_insta;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Timing behaviour of {@link DetectionScheduler} with scripted fake detectors.
+ */
+public class DetectionSchedulerTest {
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @After
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private DetectionScheduler scheduler(long deadlineMs, long hedgeDelayMs) {
+        return new DetectionScheduler(executor, deadlineMs * MS, hedgeDelayMs * MS, 0,
+                20 * MS, 100 * MS, new Random(1));
+    }
+
+    private static CardImage image(int tag) {
+        byte[] nv21 = new byte[6];
+        nv21[0] = (byte) tag;
+        return new CardImage(nv21, 2, 2, null);
+    }
+
+    private static CardDetectionUploader.DetectionResult card(String cardClass, double confidence) {
+        return new CardDetectionUploader.DetectionResult(true, cardClass, confidence);
+    }
+
+    /**
+     * Answers each call after a scripted delay; calls beyond the script use the last entry.
+     */
+    private static class ScriptedDetector implements CardDetector {
+        final long[] delaysMs;
+        final AtomicInteger calls = new AtomicInteger();
+        final AtomicInteger interrupted = new AtomicInteger();
+
+        ScriptedDetector(long... delaysMs) {
+            this.delaysMs = delaysMs;
+        }
+
+        @Override
+        public CardDetectionUploader.DetectionResult detect(CardImage image) throws Exception {
+            int call = calls.getAndIncrement();
+            try {
+                Thread.sleep(delaysMs[Math.min(call, delaysMs.length - 1)]);
+            } catch (InterruptedException e) {
+                interrupted.incrementAndGet();
+                throw e;
+            }
+            return card("AH", 0.9);
+        }
+
+        @Override
+        public String getName() {
+            return "scripted";
+        }
+    }
+
+    @Test
+    public void fastAnswerIsNotHedged() throws InterruptedException {
+        ScriptedDetector detector = new ScriptedDetector(10);
+
+        DetectionScheduler.Result result = scheduler(2000, 200).detect(detector, Collections.singletonList(image(0)));
+
+        assertTrue(result.best.hasCard);
+        assertEquals(0, result.candidate);
+        assertEquals(1, result.requests);
+        assertEquals(0, result.hedges);
+        assertEquals(1, detector.calls.get());
+    }
+
+    @Test
+    public void slowRequestIsHedgedAndTheLoserCancelled() throws InterruptedException {
+        // First request stalls, the hedge sent after 100 ms answers in 20 ms
+        ScriptedDetector detector = new ScriptedDetector(5000, 20);
+
+        DetectionScheduler.Result result = scheduler(3000, 100).detect(detector, Collections.singletonList(image(0)));
+
+        assertTrue(result.best.hasCard);
+        assertEquals(1, result.hedges);
+        assertEquals(2, result.requests);
+        assertFalse(result.timedOut);
+        assertTrue("took " + result.elapsedNanos / MS + " ms", result.elapsedNanos < 1000 * MS);
+        Thread.sleep(50);
+        assertEquals(1, detector.interrupted.get());
+    }
+
+    @Test
+    public void noCardAnswerIsFinal() throws InterruptedException {
+        AtomicInteger calls = new AtomicInteger();
+        CardDetector detector = new CardDetector() {
+            @Override
+            public CardDetectionUploader.DetectionResult detect(CardImage image) {
+                calls.incrementAndGet();
+                return new CardDetectionUploader.DetectionResult(false, null, 0.0);
+            }
+
+            @Override
+            public String getName() {
+                return "empty";
+            }
+        };
+
+        DetectionScheduler.Result result = scheduler(2000, 500).detect(detector, Collections.singletonList(image(0)));
+
+        assertFalse(result.best.hasCard);
+        assertEquals(-1, result.candidate);
+        assertEquals(1, calls.get());
+        assertEquals(0, result.retries);
+    }
+
+    @Test
+    public void errorsAreRetriedWithBackoff() throws InterruptedException {
+        AtomicInteger calls = new AtomicInteger();
+        CardDetector detector = new CardDetector() {
+            @Override
+            public CardDetectionUploader.DetectionResult detect(CardImage image) throws Exception {
+                if (calls.incrementAndGet() <= 2) {
+                    throw new IOException("connection reset");
+                }
+                return card("QS", 0.8);
+            }
+
+            @Override
+            public String getName() {
+                return "flaky";
+            }
+        };
+
+        DetectionScheduler.Result result = scheduler(2000, 1000).detect(detector, Collections.singletonList(image(0)));
+
+        assertTrue(result.best.hasCard);
+        assertEquals("QS", result.best.cardClass);
+        assertEquals(2, result.errors);
+        assertEquals(2, result.retries);
+        assertEquals(3, calls.get());
+    }
+
+    @Test
+    public void deadlineBoundsTotalTime() throws InterruptedException {
+        ScriptedDetector detector = new ScriptedDetector(5000);
+
+        DetectionScheduler.Result result = scheduler(200, 50).detect(detector, Collections.singletonList(image(0)));
+
+        assertTrue(result.timedOut);
+        assertFalse(result.best.hasCard);
+        assertTrue("took " + result.elapsedNanos / MS + " ms", result.elapsedNanos < 1000 * MS);
+    }
+
+    @Test
+    public void candidatesRunConcurrentlyAndTheMostConfidentWins() throws InterruptedException {
+        List<CardImage> candidates = Arrays.asList(image(0), image(1), image(2));
+        CardDetector detector = new CardDetector() {
+            @Override
+            public CardDetectionUploader.DetectionResult detect(CardImage image) throws Exception {
+                Thread.sleep(100);
+                switch (image.getNv21()[0]) {
+                    case 0:
+                        return card("10H", 0.6);
+                    case 1:
+                        return card("10D", 0.95);
+                    default:
+                        return new CardDetectionUploader.DetectionResult(false, null, 0.0);
+                }
+            }
+
+            @Override
+            public String getName() {
+                return "candidates";
+            }
+        };
+
+        DetectionScheduler.Result result = scheduler(2000, 1000).detect(detector, candidates);
+
+        assertEquals("10D", result.best.cardClass);
+        assertEquals(1, result.candidate);
+        assertEquals(3, result.requests);
+        // Three 100 ms requests in parallel, not one after the other
+        assertTrue("took " + result.elapsedNanos / MS + " ms", result.elapsedNanos < 250 * MS);
+    }
+
+    @Test
+    public void hedgeDelayFollowsMeasuredLatency() throws InterruptedException {
+        DetectionScheduler scheduler = new DetectionScheduler(executor, 2000 * MS, 1500 * MS, 30 * MS,
+                20 * MS, 100 * MS, new Random(1));
+        assertEquals(1500 * MS, scheduler.getHedgeDelayNanos());
+
+        ScriptedDetector detector = new ScriptedDetector(5);
+        for (int i = 0; i < 5; i++) {
+            scheduler.detect(detector, Collections.singletonList(image(0)));
+        }
+
+        // p95 of ~5 ms requests is below the floor
+        assertEquals(30 * MS, scheduler.getHedgeDelayNanos());
+    }
+
+    @Test
+    public void cancelledPrimariesKeepTheHedgeDelayUp() throws InterruptedException {
+        DetectionScheduler scheduler = new DetectionScheduler(executor, 2000 * MS, 100 * MS, 0,
+                20 * MS, 100 * MS, new Random(1));
+        // Every primary stalls and every hedge answers in 10 ms
+        ScriptedDetector detector = new ScriptedDetector(1000, 10, 1000, 10, 1000, 10, 1000, 10, 1000, 10);
+        for (int i = 0; i < 5; i++) {
+            DetectionScheduler.Result result = scheduler.detect(detector, Collections.singletonList(image(0)));
+            assertEquals(1, result.hedges);
+        }
+
+        // Each cancelled primary counts with the ~110 ms it ran, so the delay does not collapse
+        // to the hedges' 10 ms
+        assertEquals(10, scheduler.getRequestLatency().getCount());
+        long hedgeDelay = scheduler.getHedgeDelayNanos();
+        assertTrue("hedge delay " + hedgeDelay / MS + " ms", hedgeDelay >= 100 * MS);
+    }
+
+    @Test
+    public void hedgeDelayIsP95OfSpreadLatencies() {
+        DetectionScheduler scheduler = new DetectionScheduler(executor, 2000 * MS, 1500 * MS, 30 * MS,
+                20 * MS, 100 * MS, new Random(1));
+        // 40, 50, ..., 230 ms: the 19th of 20 sorted samples is the p95
+        for (int i = 19; i >= 0; i--) {
+            scheduler.getRequestLatency().record((40 + 10 * i) * MS);
+        }
+        assertEquals(220 * MS, scheduler.getHedgeDelayNanos());
+    }
+}
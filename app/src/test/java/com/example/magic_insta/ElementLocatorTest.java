@@ -0,0 +1,124 @@
+package com.example.magic_insta;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link ElementLocator} and the reveal's locators on synthetic snapshots built in code: the
+ * same screens laid out for several screen sizes.
+ */
+public class ElementLocatorTest {
+    private static final int CLICKABLE = NodeSnapshot.FLAG_CLICKABLE | NodeSnapshot.FLAG_ENABLED;
+    private static final String[] OPTION_ROWS = {"Settings and privacy", "Archive", "Your activity"};
+
+    /**
+     * The profile options sheet, anchored to the bottom of the screen. Rows are 91 px high on the
+     * 720 x 1600 reference and scale with the screen width.
+     */
+    private static NodeSnapshot optionsSheet(int width, int height, boolean labelled) {
+        float scale = width / 720f;
+        NodeSnapshot.Builder builder = new NodeSnapshot.Builder().setPackageName(RevealFlow.INSTAGRAM_PACKAGE);
+        int root = builder.add(-1, "android.widget.FrameLayout", null, null, null, 0, 0, width, height, 0);
+        int sheet = builder.add(root, "android.widget.LinearLayout", null, null, null,
+                0, height - Math.round(907 * scale), width, height, 0);
+        for (int i = 0; i < OPTION_ROWS.length; i++) {
+            int top = height - Math.round((907 - 91 * i) * scale);
+            int row = builder.add(sheet, "android.view.View", null, null, null,
+                    0, top, width, top + Math.round(91 * scale), CLICKABLE);
+            if (labelled) {
+                builder.add(row, "android.widget.TextView", OPTION_ROWS[i], null, null,
+                        Math.round(96 * scale), top + 10, Math.round(600 * scale), top + Math.round(81 * scale), 0);
+            }
+        }
+        return builder.build();
+    }
+
+    private static int rowIndex(NodeSnapshot snapshot, int row) {
+        int[] rows = snapshot.findAllByClassName("android.view.View");
+        return rows[row];
+    }
+
+    @Test
+    public void findsUnlabelledArchiveRowOnScaledScreens() {
+        for (int[] size : new int[][]{{720, 1600}, {1080, 2400}, {1440, 3200}}) {
+            NodeSnapshot sheet = optionsSheet(size[0], size[1], false);
+            assertEquals(size[0] + "x" + size[1], rowIndex(sheet, 1), RevealFlow.findArchiveItem(sheet));
+        }
+    }
+
+    @Test
+    public void findsLabelledArchiveRowOnOtherAspectRatios() {
+        NodeSnapshot tall = optionsSheet(1440, 3040, true);
+        int archive = RevealFlow.findArchiveItem(tall);
+        assertEquals("Archive", tall.getText(archive));
+        assertEquals(rowIndex(tall, 1), tall.getParent(archive));
+    }
+
+    @Test
+    public void doesNotGuessANeighbourWhenNothingFits() {
+        // Unlabelled and shifted by the different aspect ratio: no row overlaps enough
+        assertEquals(-1, RevealFlow.findArchiveItem(optionsSheet(1440, 3040, false)));
+    }
+
+    @Test
+    public void findsShowOnProfileByLabelOrPosition() {
+        NodeSnapshot.Builder builder = new NodeSnapshot.Builder();
+        int root = builder.add(-1, "android.widget.FrameLayout", null, null, null, 0, 0, 1080, 2400, 0);
+        int button = builder.add(root, "android.widget.Button", null, null, null, 216, 1354, 864, 1502, CLICKABLE);
+        int label = builder.add(button, "android.widget.TextView", "Show on Profile", null, null, 260, 1390, 820, 1466, 0);
+        NodeSnapshot labelled = builder.build();
+        assertEquals(label, RevealFlow.findShowOnProfileButton(labelled));
+
+        builder = new NodeSnapshot.Builder();
+        root = builder.add(-1, "android.widget.FrameLayout", null, null, null, 0, 0, 1080, 2400, 0);
+        builder.add(root, "android.widget.Button", null, "Delete", null, 216, 1200, 864, 1340, CLICKABLE);
+        button = builder.add(root, "android.widget.Button", null, null, null, 216, 1354, 864, 1502, CLICKABLE);
+        assertEquals(button, RevealFlow.findShowOnProfileButton(builder.build()));
+    }
+
+    @Test
+    public void rejectsAnotherButtonInTheSlot() {
+        NodeSnapshot.Builder builder = new NodeSnapshot.Builder();
+        int root = builder.add(-1, "android.widget.FrameLayout", null, null, null, 0, 0, 1080, 2400, 0);
+        int button = builder.add(root, "android.widget.Button", null, null, null, 216, 1354, 864, 1502, CLICKABLE);
+        builder.add(button, "android.widget.TextView", "Delete", null, null, 260, 1390, 820, 1466, 0);
+        assertEquals(-1, RevealFlow.findShowOnProfileButton(builder.build()));
+
+        // Labelled on the button itself, as a content description
+        builder = new NodeSnapshot.Builder();
+        root = builder.add(-1, "android.widget.FrameLayout", null, null, null, 0, 0, 1080, 2400, 0);
+        builder.add(root, "android.widget.Button", null, "Delete", null, 216, 1354, 864, 1502, CLICKABLE);
+        assertEquals(-1, RevealFlow.findShowOnProfileButton(builder.build()));
+
+        builder = new NodeSnapshot.Builder();
+        root = builder.add(-1, "android.widget.FrameLayout", null, null, null, 0, 0, 1080, 2400, 0);
+        builder.add(root, "android.view.View", "Delete", null, null, 0, 1176, 1080, 1313, CLICKABLE);
+        assertEquals(-1, RevealFlow.findArchiveItem(builder.build()));
+    }
+
+    @Test
+    public void scoresEachFeature() {
+        ElementLocator locator = ElementLocator.named("Options")
+                .viewId("options", 4)
+                .description("Options", 2)
+                .className("android.widget.Button", 1)
+                .minScore(3)
+                .build();
+        NodeSnapshot.Builder builder = new NodeSnapshot.Builder();
+        int root = builder.add(-1, "android.widget.FrameLayout", null, null, null, 0, 0, 720, 1600, 0);
+        int byId = builder.add(root, "android.widget.ImageView", null, null, "com.instagram.android:id/options",
+                0, 0, 10, 10, CLICKABLE);
+        int byLabel = builder.add(root, "android.widget.Button", null, "More options", null, 0, 0, 10, 10, CLICKABLE);
+        NodeSnapshot snapshot = builder.build();
+
+        assertEquals(4f, locator.score(snapshot, byId), 0f);
+        assertEquals(2f, locator.score(snapshot, byLabel), 0f);
+        assertEquals(byId, locator.find(snapshot));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void requiresMinimumScore() {
+        ElementLocator.named("Anything").text("x", 1).build();
+    }
+}
@@ -0,0 +1,338 @@
+package com.example.magic_insta;
+
+import android.view.accessibility.AccessibilityEvent;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Drives {@link FlowEngine} with a scripted {@link UiDriver} whose screens are hand-built
+ * {@link NodeSnapshot}s.
+ */
+public class FlowEngineTest {
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long POLL = 500 * MS;
+    private static final int CLICKABLE = NodeSnapshot.FLAG_CLICKABLE | NodeSnapshot.FLAG_ENABLED;
+
+    private ScriptedDriver driver;
+
+    private static class ScriptedDriver implements UiDriver {
+        NodeSnapshot screen;
+        // Screens shown by successive forward scrolls
+        final List<NodeSnapshot> nextPages = new ArrayList<>();
+        final List<String> clicks = new ArrayList<>();
+        final List<Integer> globalActions = new ArrayList<>();
+        int snapshots;
+
+        @Override
+        public NodeSnapshot snapshot() {
+            snapshots++;
+            return screen;
+        }
+
+        @Override
+        public boolean click(NodeSnapshot snapshot, int index) {
+            clicks.add(snapshot.getContentDescription(index));
+            return true;
+        }
+
+        @Override
+        public boolean scrollForward(NodeSnapshot snapshot, int index) {
+            if (!snapshot.hasFlags(index, NodeSnapshot.FLAG_SCROLLABLE) || nextPages.isEmpty()) {
+                return false;
+            }
+            screen = nextPages.remove(0);
+            return true;
+        }
+
+        @Override
+        public boolean performGlobalAction(int action) {
+            globalActions.add(action);
+            return true;
+        }
+    }
+
+    private static NodeSnapshot screen(String... buttons) {
+        NodeSnapshot.Builder builder = new NodeSnapshot.Builder().setPackageName("com.instagram.android");
+        int root = builder.add(-1, "android.widget.FrameLayout", null, null, null, 0, 0, 720, 1600, 0);
+        int top = 0;
+        for (String button : buttons) {
+            builder.add(root, "android.widget.Button", null, button, null, 0, top, 720, top + 100, CLICKABLE);
+            top += 100;
+        }
+        return builder.build();
+    }
+
+    private static NodeSnapshot archivePage(int firstRow, int rows) {
+        NodeSnapshot.Builder builder = new NodeSnapshot.Builder().setPackageName(RevealFlow.INSTAGRAM_PACKAGE);
+        int root = builder.add(-1, "android.widget.FrameLayout", null, null, null, 0, 0, 720, 1600, 0);
+        int grid = builder.add(root, "androidx.recyclerview.widget.RecyclerView", null, null, null, 0, 120, 720, 1500,
+                NodeSnapshot.FLAG_SCROLLABLE);
+        for (int row = firstRow; row < firstRow + rows; row++) {
+            int top = 120 + (row - firstRow) * 240;
+            for (int column = 1; column <= 3; column++) {
+                builder.add(grid, "android.widget.Button", null, photo(row, column), null,
+                        (column - 1) * 240, top, column * 240, top + 240, CLICKABLE);
+            }
+        }
+        return builder.build();
+    }
+
+    private static String photo(int row, int column) {
+        return "Photo by Dhia at row " + row + ", column " + column;
+    }
+
+    private static FlowStep clickStep(String description, long timeoutMs) {
+        return new FlowStep(description, timeoutMs,
+                s -> s.findByContentDescription(description) >= 0,
+                (s, d) -> d.click(s, s.findByContentDescription(description)));
+    }
+
+    private FlowEngine engine(FlowStep... steps) {
+        return new FlowEngine("Test", Arrays.asList(steps), driver, POLL);
+    }
+
+    @Before
+    public void createDriver() {
+        driver = new ScriptedDriver();
+    }
+
+    @Test
+    public void actsAsSoonAsEachScreenShows() {
+        FlowEngine engine = engine(clickStep("First", 1000), clickStep("Second", 1000));
+        engine.start(0);
+
+        driver.screen = screen("Loading");
+        assertEquals(FlowEngine.State.RUNNING, engine.evaluate(10 * MS, true));
+        assertTrue(driver.clicks.isEmpty());
+
+        driver.screen = screen("First");
+        assertEquals(FlowEngine.State.RUNNING, engine.evaluate(40 * MS, true));
+        assertEquals(Arrays.asList("First"), driver.clicks);
+        assertEquals("Second", engine.getCurrentStepName());
+
+        driver.screen = screen("Second");
+        assertEquals(FlowEngine.State.SUCCEEDED, engine.evaluate(70 * MS, true));
+        assertEquals(Arrays.asList("First", "Second"), driver.clicks);
+        assertEquals(1, engine.getTotalLatency().getCount());
+        assertEquals(70 * MS, engine.getTotalLatency().percentile(50));
+        assertEquals(30 * MS, engine.getStepLatency(1).percentile(50));
+        assertEquals(-1, engine.getNextWakeNanos());
+    }
+
+    @Test
+    public void waitsForWindowChangeAfterActing() {
+        FlowEngine engine = engine(clickStep("Both", 1000), clickStep("Both", 1000));
+        driver.screen = screen("Both");
+        engine.start(0);
+
+        engine.evaluate(0, false);
+        assertEquals(1, driver.clicks.size());
+        int snapshots = driver.snapshots;
+
+        // A timer firing before the poll interval must not match the screen being left
+        engine.evaluate(100 * MS, false);
+        assertEquals(snapshots, driver.snapshots);
+        assertEquals(1, driver.clicks.size());
+        assertEquals(POLL, engine.getNextWakeNanos());
+
+        engine.evaluate(120 * MS, true);
+        assertEquals(FlowEngine.State.SUCCEEDED, engine.getState());
+        assertEquals(2, driver.clicks.size());
+    }
+
+    @Test
+    public void pollsWhenNoEventArrives() {
+        FlowEngine engine = engine(clickStep("First", 5000), clickStep("Second", 5000));
+        driver.screen = screen("First");
+        engine.start(0);
+        engine.evaluate(0, true);
+
+        driver.screen = screen("Second");
+        assertEquals(POLL, engine.getNextWakeNanos());
+        assertEquals(FlowEngine.State.SUCCEEDED, engine.evaluate(POLL, false));
+    }
+
+    @Test
+    public void failsWhenStepTimesOut() {
+        FlowEngine engine = engine(clickStep("First", 1000), clickStep("Missing", 800));
+        driver.screen = screen("First");
+        engine.start(0);
+        engine.evaluate(0, true);
+
+        assertEquals(500 * MS, engine.getNextWakeNanos());
+        engine.evaluate(500 * MS, false);
+        // The step timeout comes before the next poll
+        assertEquals(800 * MS, engine.getNextWakeNanos());
+        assertEquals(FlowEngine.State.FAILED, engine.evaluate(800 * MS, false));
+        assertEquals("timed out in step 'Missing'", engine.getFailureReason());
+        assertEquals(0, engine.getTotalLatency().getCount());
+        assertTrue(engine.report().contains("Missing: -"));
+    }
+
+    @Test
+    public void proceedOnTimeoutRunsActionAnyway() {
+        FlowEngine engine = engine(clickStep("First", 1000),
+                new FlowStep("Leave", 300, s -> false, (s, d) -> d.performGlobalAction(2)).proceedOnTimeout());
+        driver.screen = screen("First");
+        engine.start(0);
+        engine.evaluate(0, true);
+
+        assertEquals(FlowEngine.State.RUNNING, engine.evaluate(100 * MS, true));
+        assertTrue(driver.globalActions.isEmpty());
+        assertEquals(FlowEngine.State.SUCCEEDED, engine.evaluate(300 * MS, false));
+        assertEquals(Arrays.asList(2), driver.globalActions);
+        assertTrue(engine.report().contains("(timeout)"));
+    }
+
+    @Test
+    public void exposesCurrentStepSubscription() {
+        FlowEngine engine = engine(clickStep("First", 1000),
+                clickStep("Second", 1000).watching(AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED, "com.instagram.android"));
+        assertNull(engine.getCurrentStep());
+        driver.screen = screen("First");
+        engine.start(0);
+        assertEquals(FlowStep.DEFAULT_EVENT_TYPES, engine.getCurrentStep().getEventTypes());
+        assertNull(engine.getCurrentStep().getPackageName());
+
+        engine.evaluate(0, true);
+        assertEquals(AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED, engine.getCurrentStep().getEventTypes());
+        assertEquals("com.instagram.android", engine.getCurrentStep().getPackageName());
+        for (FlowStep step : RevealFlow.create(new RevealFlow.ArchiveTarget())) {
+            assertEquals(RevealFlow.INSTAGRAM_PACKAGE, step.getPackageName());
+        }
+    }
+
+    @Test
+    public void postFlowStartsOnPostPage() {
+        List<FlowStep> steps = RevealFlow.createForPost();
+        assertEquals("More actions", steps.get(0).getName());
+        assertEquals("Close Instagram", steps.get(steps.size() - 1).getName());
+        assertTrue(steps.get(0).isReady(screen("More actions for this post")));
+
+        FlowEngine engine = engine(steps.toArray(new FlowStep[0]));
+        driver.screen = screen("Loading");
+        engine.start(0);
+        engine.evaluate(9000 * MS, false);
+        assertEquals(FlowEngine.State.FAILED, engine.evaluate(10000 * MS, false));
+        assertEquals(0, engine.getCompletedStepCount());
+    }
+
+    @Test
+    public void cancelStopsTheRun() {
+        FlowEngine engine = engine(clickStep("First", 1000));
+        driver.screen = screen("Loading");
+        engine.start(0);
+        engine.cancel();
+        assertEquals(FlowEngine.State.FAILED, engine.evaluate(10 * MS, true));
+        assertEquals("cancelled", engine.getFailureReason());
+        assertNull(engine.getCurrentStepName());
+    }
+
+    @Test
+    public void walkPicksVisiblePhotoWithoutCalibration() {
+        RevealFlow.ArchiveTarget target = new RevealFlow.ArchiveTarget();
+        List<FlowStep> walk = RevealFlow.create(target);
+        FlowEngine engine = engine(walk.get(3), walk.get(4));
+        driver.screen = archivePage(1, 2);
+
+        target.setVisibleIndex(7);
+        engine.start(0);
+        engine.evaluate(0, true);
+        assertTrue(driver.clicks.isEmpty());
+        // Still on the grid, so the photo page has not opened yet
+        assertFalse(walk.get(4).isReady(driver.screen));
+
+        target.setVisibleIndex(1);
+        engine.start(0);
+        engine.evaluate(0, true);
+        assertEquals(Arrays.asList(photo(1, 2)), driver.clicks);
+    }
+
+    @Test
+    public void calibrationTimeoutCountsFromTheLastNewPage() {
+        ArchiveLayout.Recorder recorder = new ArchiveLayout.Recorder();
+        FlowEngine calibration = engine(RevealFlow.createCalibration(recorder).get(3));
+        driver.screen = archivePage(1, 3);
+        for (int row = 3; row < 30; row += 2) {
+            driver.nextPages.add(archivePage(row, 3));
+        }
+        calibration.start(0);
+        long now = 0;
+        // A slow page every 8 s: far longer than the step's timeout in total, never per page
+        while (calibration.getState() == FlowEngine.State.RUNNING) {
+            calibration.evaluate(now += 8000 * MS, true);
+        }
+        assertEquals(FlowEngine.State.SUCCEEDED, calibration.getState());
+        assertEquals(31 * 3, recorder.size());
+    }
+
+    @Test
+    public void calibrationFailsWhenPagesStopShowingNewPhotos() {
+        ArchiveLayout.Recorder recorder = new ArchiveLayout.Recorder();
+        FlowEngine calibration = engine(RevealFlow.createCalibration(recorder).get(3));
+        driver.screen = archivePage(1, 3);
+        // The grid claims to scroll but keeps showing the same photos
+        for (int i = 0; i < 20; i++) {
+            driver.nextPages.add(archivePage(1, 3));
+        }
+        calibration.start(0);
+        long now = 0;
+        while (calibration.getState() == FlowEngine.State.RUNNING) {
+            calibration.evaluate(now += 1000 * MS, true);
+        }
+        assertEquals(FlowEngine.State.FAILED, calibration.getState());
+        assertEquals("timed out in step 'Record archive'", calibration.getFailureReason());
+        // The first page was the last progress
+        assertEquals(11000 * MS, now);
+    }
+
+    @Test
+    public void calibrationRecordsEveryPageThenWalkScrollsStraightToPhoto() {
+        ArchiveLayout.Recorder recorder = new ArchiveLayout.Recorder();
+        FlowEngine calibration = engine(RevealFlow.createCalibration(recorder).get(3));
+        // Pages overlap by one row, as a scrolled grid does
+        driver.screen = archivePage(1, 3);
+        driver.nextPages.add(archivePage(3, 3));
+        driver.nextPages.add(archivePage(5, 2));
+        calibration.start(0);
+        long now = 0;
+        while (calibration.getState() == FlowEngine.State.RUNNING) {
+            calibration.evaluate(now += 20 * MS, true);
+        }
+        assertEquals(FlowEngine.State.SUCCEEDED, calibration.getState());
+
+        ArchiveLayout layout = recorder.build();
+        assertEquals(18, layout.size());
+        assertEquals(photo(1, 1), layout.get(0).description);
+        assertEquals(0, layout.get(8).scrolls);
+        assertEquals(photo(4, 1), layout.get(9).description);
+        assertEquals(1, layout.get(9).scrolls);
+        assertEquals(photo(6, 3), layout.get(17).description);
+        assertEquals(2, layout.get(17).scrolls);
+
+        RevealFlow.ArchiveTarget target = new RevealFlow.ArchiveTarget();
+        target.set(layout.get(16));
+        FlowEngine walk = engine(RevealFlow.create(target).get(3));
+        driver.screen = archivePage(1, 3);
+        driver.nextPages.add(archivePage(3, 3));
+        driver.nextPages.add(archivePage(5, 2));
+        int snapshots = driver.snapshots;
+        walk.start(0);
+        now = 0;
+        while (walk.getState() == FlowEngine.State.RUNNING) {
+            walk.evaluate(now += 20 * MS, true);
+        }
+        assertEquals(FlowEngine.State.SUCCEEDED, walk.getState());
+        assertEquals(photo(6, 2), driver.clicks.get(driver.clicks.size() - 1));
+        // Two scrolls and the click, one snapshot each
+        assertEquals(3, driver.snapshots - snapshots);
+    }
+}
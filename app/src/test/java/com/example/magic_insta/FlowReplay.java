@@ -0,0 +1,142 @@
+package com.example.magic_insta;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays a {@link FlowRecording} into a {@link FlowEngine} on a virtual clock.
+ *
+ * Screens appear with the gaps they had on the device. A screen that followed an action only
+ * appears once the flow performs the same action (kind and node index), timed from when it
+ * does, so a flow that acts sooner than the recorded one finishes sooner. A different action is
+ * a mismatch and the recording stops advancing. The engine is woken for each screen and at
+ * {@link FlowEngine#getNextWakeNanos()}, as the service does.
+ */
+final class FlowReplay implements UiDriver {
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final List<FlowRecording.Event> events;
+    // Next event of the recording to happen
+    private int cursor;
+    // Virtual time at which the previous event happened
+    private long anchorNanos;
+    private long nowNanos;
+    private NodeSnapshot screen;
+    private int actions;
+    private final List<String> mismatches = new ArrayList<>();
+
+    static final class Result {
+        final FlowEngine.State state;
+        final long elapsedNanos;
+        final int evaluations;
+        final int actions;
+        final int screensShown;
+        // Wall time spent inside evaluate: the flow's own lookup cost
+        final long evaluateNanos;
+        final List<String> mismatches;
+
+        Result(FlowEngine.State state, long elapsedNanos, int evaluations, int actions, int screensShown,
+               long evaluateNanos, List<String> mismatches) {
+            this.state = state;
+            this.elapsedNanos = elapsedNanos;
+            this.evaluations = evaluations;
+            this.actions = actions;
+            this.screensShown = screensShown;
+            this.evaluateNanos = evaluateNanos;
+            this.mismatches = mismatches;
+        }
+
+        @Override
+        public String toString() {
+            return state + " after " + elapsedNanos / MS + " ms, " + evaluations + " evaluations ("
+                    + evaluateNanos / 1000 + " us), " + actions + " actions, " + screensShown + " screens"
+                    + (mismatches.isEmpty() ? "" : ", mismatches " + mismatches);
+        }
+    }
+
+    FlowReplay(FlowRecording recording) {
+        events = recording.getEvents();
+    }
+
+    /**
+     * Runs {@code engine}, which must use this replay as its driver, until it finishes or
+     * {@code limitMs} of virtual time pass.
+     */
+    Result run(FlowEngine engine, long limitMs) {
+        cursor = 0;
+        anchorNanos = 0;
+        nowNanos = 0;
+        screen = null;
+        actions = 0;
+        mismatches.clear();
+
+        int evaluations = 0;
+        int screensShown = 0;
+        long evaluateNanos = 0;
+        engine.start(0);
+        while (engine.getState() == FlowEngine.State.RUNNING) {
+            long screenAt = nextScreenNanos();
+            long wake = engine.getNextWakeNanos();
+            boolean windowChanged = screenAt >= 0 && screenAt <= wake;
+            nowNanos = windowChanged ? screenAt : wake;
+            if (nowNanos > limitMs * MS) {
+                break;
+            }
+            if (windowChanged) {
+                screen = events.get(cursor).snapshot;
+                anchorNanos = nowNanos;
+                cursor++;
+                screensShown++;
+            }
+            long begin = System.nanoTime();
+            engine.evaluate(nowNanos, windowChanged);
+            evaluateNanos += System.nanoTime() - begin;
+            evaluations++;
+        }
+        return new Result(engine.getState(), nowNanos, evaluations, actions, screensShown, evaluateNanos,
+                new ArrayList<>(mismatches));
+    }
+
+    // When the next recorded screen appears, or -1 while the recording waits for an action
+    private long nextScreenNanos() {
+        if (cursor >= events.size() || !events.get(cursor).isFrame()) {
+            return -1;
+        }
+        long gapMs = cursor == 0 ? events.get(0).timeMs : events.get(cursor).timeMs - events.get(cursor - 1).timeMs;
+        return Math.max(nowNanos, anchorNanos + gapMs * MS);
+    }
+
+    private boolean replay(FlowRecording.ActionKind kind, int argument) {
+        actions++;
+        FlowRecording.Event expected = cursor < events.size() ? events.get(cursor) : null;
+        if (expected == null || expected.isFrame() || expected.action != kind || expected.argument != argument) {
+            mismatches.add(kind.name().toLowerCase() + " " + argument + " at " + nowNanos / MS + " ms, expected "
+                    + (expected != null ? expected : "the end"));
+            return false;
+        }
+        anchorNanos = nowNanos;
+        cursor++;
+        return expected.delivered;
+    }
+
+    @Override
+    public NodeSnapshot snapshot() {
+        return screen;
+    }
+
+    @Override
+    public boolean click(NodeSnapshot snapshot, int index) {
+        return replay(FlowRecording.ActionKind.CLICK, index);
+    }
+
+    @Override
+    public boolean scrollForward(NodeSnapshot snapshot, int index) {
+        return replay(FlowRecording.ActionKind.SCROLL, index);
+    }
+
+    @Override
+    public boolean performGlobalAction(int action) {
+        return replay(FlowRecording.ActionKind.GLOBAL, action);
+    }
+}
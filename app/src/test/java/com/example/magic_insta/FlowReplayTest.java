@@ -0,0 +1,197 @@
+package com.example.magic_insta;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Replays recorded accessibility trees of real reveal runs through {@link RevealFlow}, and checks
+ * the recording format. The recordings are in {@code src/test/resources/recordings}.
+ */
+public class FlowReplayTest {
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long POLL = 500 * MS;
+
+    private static FlowRecording load(String name) throws IOException {
+        InputStream in = FlowReplayTest.class.getResourceAsStream("/recordings/" + name);
+        assertNotNull("Missing recording " + name, in);
+        try (Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+            return FlowRecording.read(reader);
+        }
+    }
+
+    private static long recordedEndNanos(FlowRecording recording) {
+        List<FlowRecording.Event> events = recording.getEvents();
+        return events.get(events.size() - 1).timeMs * MS;
+    }
+
+    // At most as slow as the recorded run, and not faster than its screens could show
+    private static void assertPacedWithDevice(FlowRecording recording, FlowReplay.Result result) {
+        long recorded = recordedEndNanos(recording);
+        assertTrue(result.toString(), result.elapsedNanos <= recorded);
+        assertTrue(result.toString(), result.elapsedNanos > recorded - 50 * MS);
+    }
+
+    @Test
+    public void replaysArchiveWalk() throws IOException {
+        FlowRecording recording = load("reveal_walk_720x1600.txt");
+        RevealFlow.ArchiveTarget target = new RevealFlow.ArchiveTarget();
+        target.setVisibleIndex(1);
+        FlowReplay replay = new FlowReplay(recording);
+        FlowEngine engine = new FlowEngine("Reveal walk", RevealFlow.create(target), replay, POLL);
+
+        FlowReplay.Result result = replay.run(engine, 30000);
+
+        assertEquals(result.toString(), FlowEngine.State.SUCCEEDED, result.state);
+        assertTrue(result.mismatches.isEmpty());
+        assertEquals(recording.getFrameCount(), result.screensShown);
+        assertEquals(7, result.actions);
+        // Acting on each screen as it shows keeps pace with the device
+        assertPacedWithDevice(recording, result);
+        // One look per screen; polls only while Instagram draws its first screen
+        long firstScreenNanos = recording.getEvents().get(0).timeMs * MS;
+        assertEquals(recording.getFrameCount() + firstScreenNanos / POLL, result.evaluations);
+    }
+
+    @Test
+    public void replaysPostFlowOnLargerScreen() throws IOException {
+        FlowRecording recording = load("reveal_post_1080x2400.txt");
+        FlowReplay replay = new FlowReplay(recording);
+        FlowEngine engine = new FlowEngine("Reveal post", RevealFlow.createForPost(), replay, POLL);
+
+        FlowReplay.Result result = replay.run(engine, 30000);
+
+        assertEquals(result.toString(), FlowEngine.State.SUCCEEDED, result.state);
+        assertTrue(result.mismatches.isEmpty());
+        assertEquals(3, result.actions);
+        assertPacedWithDevice(recording, result);
+    }
+
+    @Test
+    public void reportsDivergenceFromRecording() throws IOException {
+        FlowRecording recording = load("reveal_walk_720x1600.txt");
+        RevealFlow.ArchiveTarget target = new RevealFlow.ArchiveTarget();
+        // The recorded run opened the second photo
+        target.setVisibleIndex(4);
+        FlowReplay replay = new FlowReplay(recording);
+        FlowEngine engine = new FlowEngine("Reveal walk", RevealFlow.create(target), replay, POLL);
+
+        FlowReplay.Result result = replay.run(engine, 30000);
+
+        assertEquals(FlowEngine.State.FAILED, result.state);
+        assertFalse(result.mismatches.isEmpty());
+        assertTrue(result.mismatches.get(0), result.mismatches.get(0).startsWith("click"));
+        assertEquals("timed out in step 'Archived photo'", engine.getFailureReason());
+    }
+
+    @Test
+    public void lookupsStayCheapAcrossReplays() throws IOException {
+        FlowRecording recording = load("reveal_walk_720x1600.txt");
+        RevealFlow.ArchiveTarget target = new RevealFlow.ArchiveTarget();
+        FlowReplay replay = new FlowReplay(recording);
+        FlowEngine engine = new FlowEngine("Reveal walk", RevealFlow.create(target), replay, POLL);
+
+        long best = Long.MAX_VALUE;
+        for (int run = 0; run < 200; run++) {
+            target.setVisibleIndex(1);
+            FlowReplay.Result result = replay.run(engine, 30000);
+            assertEquals(FlowEngine.State.SUCCEEDED, result.state);
+            best = Math.min(best, result.evaluateNanos);
+        }
+        // Generous bound: the whole walk's lookups take well under a frame
+        assertTrue("Walk lookups took " + best / 1000 + " us", best < 16 * MS);
+        assertEquals(200, engine.getTotalLatency().getCount());
+    }
+
+    @Test
+    public void roundTripsRecording() throws IOException {
+        NodeSnapshot.Builder builder = new NodeSnapshot.Builder().setPackageName(RevealFlow.INSTAGRAM_PACKAGE);
+        int root = builder.add(-1, "android.widget.FrameLayout", null, null, null, 0, 0, 720, 1600, 0);
+        int list = builder.add(root, "android.widget.ListView", null, null, "android:id/list", 0, 100, 720, 1500,
+                NodeSnapshot.FLAG_SCROLLABLE);
+        builder.add(list, "android.widget.TextView", "Tab\there\nand \\ there", null, null, 0, 100, 720, 200, 0);
+        builder.add(root, "android.widget.Button", null, "OK", null, 0, 1500, 720, 1600,
+                NodeSnapshot.FLAG_CLICKABLE | NodeSnapshot.FLAG_ENABLED);
+        FlowRecording recording = new FlowRecording();
+        recording.addFrame(120, "First", builder.build());
+        recording.addAction(125, FlowRecording.ActionKind.SCROLL, list, false);
+        recording.addAction(130, FlowRecording.ActionKind.GLOBAL, 2, true);
+
+        StringWriter written = new StringWriter();
+        recording.write(written);
+        FlowRecording read = FlowRecording.read(new StringReader(written.toString()));
+
+        StringWriter rewritten = new StringWriter();
+        read.write(rewritten);
+        assertEquals(written.toString(), rewritten.toString());
+        NodeSnapshot snapshot = read.getEvents().get(0).snapshot;
+        assertEquals("Tab\there\nand \\ there", snapshot.getText(2));
+        assertEquals(list, snapshot.getParent(2));
+        assertEquals(root, snapshot.getParent(3));
+        assertNull(snapshot.getContentDescription(2));
+        assertEquals(RevealFlow.INSTAGRAM_PACKAGE, snapshot.getPackageName());
+        assertFalse(read.getEvents().get(1).delivered);
+        assertEquals(FlowRecording.ActionKind.GLOBAL, read.getEvents().get(2).action);
+    }
+
+    @Test
+    public void recordsOnlyChangedScreens() {
+        NodeSnapshot.Builder builder = new NodeSnapshot.Builder();
+        builder.add(-1, "android.widget.FrameLayout", null, "Screen", null, 0, 0, 720, 1600, 0);
+        NodeSnapshot[] screen = {builder.build()};
+        RecordingUiDriver driver = new RecordingUiDriver(new UiDriver() {
+            @Override
+            public NodeSnapshot snapshot() {
+                return screen[0];
+            }
+
+            @Override
+            public boolean click(NodeSnapshot snapshot, int index) {
+                return true;
+            }
+
+            @Override
+            public boolean scrollForward(NodeSnapshot snapshot, int index) {
+                return false;
+            }
+
+            @Override
+            public boolean performGlobalAction(int action) {
+                return true;
+            }
+        });
+        driver.start(System.nanoTime());
+
+        driver.snapshot();
+        driver.snapshot();
+        driver.click(screen[0], 0);
+        builder = new NodeSnapshot.Builder();
+        builder.add(-1, "android.widget.FrameLayout", null, "Next screen", null, 0, 0, 720, 1600, 0);
+        screen[0] = builder.build();
+        driver.snapshot();
+        driver.scrollForward(screen[0], 0);
+
+        List<FlowRecording.Event> events = driver.getRecording().getEvents();
+        assertEquals(4, events.size());
+        assertTrue(events.get(0).isFrame());
+        assertEquals(FlowRecording.ActionKind.CLICK, events.get(1).action);
+        assertEquals("Next screen", events.get(2).snapshot.getContentDescription(0));
+        assertFalse(events.get(3).delivered);
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsTruncatedSnapshot() throws IOException {
+        FlowRecording.read(new StringReader("flow-recording 1\nframe\t0\t\nsnapshot\tpkg\t2\n"
+                + "0\tandroid.widget.FrameLayout\t0\t0,0,10,10\t\t\t\n"));
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.magic_insta;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class FrameHandoffTest {
+
+    @Test
+    public void latestOnlyReplacesTheWaitingItem() {
+        FrameHandoff<String> handoff = new FrameHandoff<>(FrameHandoff.Policy.LATEST_ONLY, 4);
+        assertNull(handoff.offer("a", 1));
+        assertEquals("a", handoff.offer("b", 2));
+        assertEquals("b", handoff.offer("c", 3));
+        assertEquals(1, handoff.size());
+        assertEquals(2, handoff.getEvictedCount());
+
+        assertEquals("c", handoff.poll());
+        assertEquals(3, handoff.getPolledTimestamp());
+        assertNull(handoff.poll());
+    }
+
+    @Test
+    public void dropOldestEvictsInArrivalOrder() {
+        FrameHandoff<String> handoff = new FrameHandoff<>(FrameHandoff.Policy.DROP_OLDEST, 3);
+        assertNull(handoff.offer("a", 1));
+        assertNull(handoff.offer("b", 2));
+        assertNull(handoff.offer("c", 3));
+        assertEquals("a", handoff.offer("d", 4));
+        assertEquals("b", handoff.offer("e", 5));
+        assertEquals(2, handoff.getEvictedCount());
+
+        assertEquals("c", handoff.poll());
+        assertEquals(3, handoff.getPolledTimestamp());
+        // Wraps around the ring after a poll
+        assertNull(handoff.offer("f", 6));
+        List<String> drained = new ArrayList<>();
+        handoff.drainTo(drained::add);
+        assertEquals(List.of("d", "e", "f"), drained);
+        assertEquals(0, handoff.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsEmptyCapacity() {
+        new FrameHandoff<String>(FrameHandoff.Policy.DROP_OLDEST, 0);
+    }
+}
@@ -0,0 +1,42 @@
+package com.example.magic_insta;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class FrameStatsTest {
+    private static final long FRAME = 16_666_667L;
+
+    @Test
+    public void countsMissedVsyncsAsDropped() {
+        FrameStats stats = new FrameStats("Test", FRAME);
+        long time = 1_000_000_000L;
+        for (int i = 0; i < 10; i++) {
+            // A little jitter is not a drop
+            stats.onFrame(time + (i % 2 == 0 ? 2_000_000 : 0));
+            time += FRAME;
+        }
+        assertEquals(10, stats.getFrameCount());
+        assertEquals(0, stats.getDroppedFrameCount());
+
+        stats.onFrame(time - FRAME + 3 * FRAME);
+        assertEquals(2, stats.getDroppedFrameCount());
+        assertEquals(3 * FRAME, stats.getLongestGapNanos());
+    }
+
+    @Test
+    public void pauseStartsANewRun() {
+        FrameStats stats = new FrameStats("Test", FRAME);
+        stats.onFrame(0);
+        stats.onFrame(FRAME);
+        stats.pause();
+        stats.onFrame(FRAME + 1_000_000_000L);
+        stats.onFrame(2 * FRAME + 1_000_000_000L);
+        assertEquals(4, stats.getFrameCount());
+        assertEquals(0, stats.getDroppedFrameCount());
+
+        stats.reset();
+        assertEquals(0, stats.getFrameCount());
+        assertEquals(0, stats.getLongestGapNanos());
+    }
+}
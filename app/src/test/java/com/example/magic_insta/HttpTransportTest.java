@@ -0,0 +1,159 @@
+package com.example.magic_insta;
+
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs {@link HttpTransport} against a local stand-in server and checks that requests after the
+ * first, or after a warm-up, reuse the same connection.
+ */
+public class HttpTransportTest {
+    private static final int REQUESTS = 20;
+
+    private HttpServer server;
+    private String baseUrl;
+    // Client port of every request the server saw; the same port means the same connection
+    private final List<Integer> clientPorts = new ArrayList<>();
+    private HttpTransport transport;
+
+    @Before
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/detect", exchange -> {
+            recordPort(exchange.getRemoteAddress().getPort());
+            byte[] request = readAll(exchange.getRequestBody());
+            byte[] response = ("{\"received\":" + request.length + "}").getBytes(StandardCharsets.UTF_8);
+            if ("HEAD".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(200, -1);
+            } else {
+                exchange.sendResponseHeaders(200, response.length);
+                exchange.getResponseBody().write(response);
+            }
+            exchange.close();
+        });
+        server.createContext("/gzip", exchange -> {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+                gzip.write("{\"predictions\":[]}".getBytes(StandardCharsets.UTF_8));
+            }
+            exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+            exchange.sendResponseHeaders(200, compressed.size());
+            exchange.getResponseBody().write(compressed.toByteArray());
+            exchange.close();
+        });
+        server.createContext("/fail", exchange -> {
+            byte[] response = "overloaded".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(503, response.length);
+            exchange.getResponseBody().write(response);
+            exchange.close();
+        });
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+        transport = new HttpTransport(2000, 2000);
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    private synchronized void recordPort(int port) {
+        clientPorts.add(port);
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    private String post(byte[] body) throws IOException {
+        return transport.post(baseUrl + "/detect", "application/octet-stream", conn -> {
+            conn.setFixedLengthStreamingMode(body.length);
+            try (OutputStream out = conn.getOutputStream()) {
+                out.write(body);
+            }
+        });
+    }
+
+    @Test
+    public void reusesTheConnectionAfterTheFirstRequest() throws IOException {
+        byte[] body = new byte[32 * 1024];
+        long[] latencies = new long[REQUESTS];
+        for (int i = 0; i < REQUESTS; i++) {
+            long start = System.nanoTime();
+            assertEquals("{\"received\":" + body.length + "}", post(body));
+            latencies[i] = System.nanoTime() - start;
+        }
+
+        long warmTotal = 0;
+        for (int i = 1; i < REQUESTS; i++) {
+            warmTotal += latencies[i];
+        }
+        Benchmark.report(String.format(Locale.US, "cold request %.2f ms, warm mean %.2f ms over %d requests",
+                latencies[0] / 1e6, warmTotal / 1e6 / (REQUESTS - 1), REQUESTS - 1));
+        Benchmark.report(transport.getRequestLatency().toString());
+
+        assertEquals(REQUESTS, clientPorts.size());
+        for (int port : clientPorts) {
+            assertEquals("every request should use the first connection", (int) clientPorts.get(0), port);
+        }
+        assertEquals(REQUESTS, transport.getRequestLatency().getCount());
+    }
+
+    @Test
+    public void warmUpOpensTheConnectionForTheFirstRequest() throws Exception {
+        transport.warmUp(baseUrl + "/detect").get(2, TimeUnit.SECONDS);
+        post(new byte[16]);
+
+        assertEquals(2, clientPorts.size());
+        assertEquals(clientPorts.get(0), clientPorts.get(1));
+    }
+
+    @Test
+    public void decodesGzipResponses() throws IOException {
+        String response = transport.post(baseUrl + "/gzip", "application/json", conn -> {
+            try (OutputStream out = conn.getOutputStream()) {
+                out.write('x');
+            }
+        });
+
+        assertEquals("{\"predictions\":[]}", response);
+    }
+
+    @Test
+    public void errorResponsesThrowWithStatusAndBody() {
+        try {
+            transport.post(baseUrl + "/fail", "application/json", conn -> {
+                try (OutputStream out = conn.getOutputStream()) {
+                    out.write('x');
+                }
+            });
+            fail("expected IOException");
+        } catch (IOException e) {
+            assertEquals("HTTP 503: overloaded", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package com.example.magic_insta;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Taps, long presses, multi-taps and sequences recognized by {@link KeySequenceMatcher}, and the
+ * cost of feeding it one key event.
+ */
+public class KeySequenceMatcherTest {
+    private static final int UP = KeySequenceMatcher.KEYCODE_VOLUME_UP;
+    private static final int DOWN = KeySequenceMatcher.KEYCODE_VOLUME_DOWN;
+
+    private final List<String> fired = new ArrayList<>();
+    private long now;
+
+    private static long ms(long millis) {
+        return TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    private KeySequenceMatcher build(KeySequenceMatcher.Builder builder) {
+        return builder.longPress(ms(500)).sequenceTimeout(ms(400)).build(fired::add);
+    }
+
+    // Advances the clock, calling onTimeout when the matcher asks for it
+    private void advance(KeySequenceMatcher matcher, long millis) {
+        long until = now + ms(millis);
+        long next;
+        while ((next = matcher.getNextTimeoutNanos()) >= 0 && next <= until) {
+            now = Math.max(now, next);
+            matcher.onTimeout(now);
+        }
+        now = until;
+    }
+
+    private void press(KeySequenceMatcher matcher, int keyCode, long heldMillis) {
+        matcher.onKeyDown(keyCode, now);
+        advance(matcher, heldMillis);
+        matcher.onKeyUp(keyCode, now);
+    }
+
+    @Test
+    public void tapFiresOnKeyDownWhenNothingWaitsForALongPress() {
+        KeySequenceMatcher matcher = build(new KeySequenceMatcher.Builder().add("reveal", "down").add("rearm", "up:long"));
+        matcher.onKeyDown(DOWN, now);
+        assertEquals(List.of("reveal"), fired);
+        assertEquals(-1, matcher.getNextTimeoutNanos());
+        matcher.onKeyUp(DOWN, now + ms(80));
+        assertEquals(List.of("reveal"), fired);
+    }
+
+    @Test
+    public void tellsTapsFromLongPresses() {
+        KeySequenceMatcher matcher = build(new KeySequenceMatcher.Builder().add("abort", "up").add("rearm", "up:long"));
+        matcher.onKeyDown(UP, now);
+        assertTrue(fired.isEmpty());
+        advance(matcher, 100);
+        matcher.onKeyUp(UP, now);
+        assertEquals(List.of("abort"), fired);
+
+        advance(matcher, 1000);
+        matcher.onKeyDown(UP, now);
+        advance(matcher, 499);
+        assertEquals(1, fired.size());
+        // Recognized while the key is still down; auto-repeats and the up change nothing
+        advance(matcher, 1);
+        assertEquals(List.of("abort", "rearm"), fired);
+        matcher.onKeyDown(UP, now + ms(50));
+        matcher.onKeyUp(UP, now + ms(900));
+        assertEquals(List.of("abort", "rearm"), fired);
+    }
+
+    @Test
+    public void multiTapWaitsForTheSequenceTimeoutOnlyWhenAmbiguous() {
+        KeySequenceMatcher matcher = build(new KeySequenceMatcher.Builder()
+                .add("one", "down").add("two", "down*2").add("three", "down*3"));
+        press(matcher, DOWN, 60);
+        advance(matcher, 399 - 60);
+        assertTrue(fired.isEmpty());
+        advance(matcher, 1);
+        assertEquals(List.of("one"), fired);
+
+        advance(matcher, 1000);
+        press(matcher, DOWN, 60);
+        advance(matcher, 100);
+        press(matcher, DOWN, 60);
+        advance(matcher, 1000);
+        assertEquals(List.of("one", "two"), fired);
+
+        advance(matcher, 1000);
+        press(matcher, DOWN, 60);
+        advance(matcher, 100);
+        press(matcher, DOWN, 60);
+        advance(matcher, 100);
+        // The longest trigger fires on its last press
+        matcher.onKeyDown(DOWN, now);
+        assertEquals(List.of("one", "two", "three"), fired);
+    }
+
+    @Test
+    public void pressThatEndsACompletedTriggerFiresItFirst() {
+        KeySequenceMatcher matcher = build(new KeySequenceMatcher.Builder()
+                .add("reveal", "down").add("card", "down*2").add("abort", "up"));
+        press(matcher, DOWN, 60);
+        advance(matcher, 100);
+        assertTrue(fired.isEmpty());
+        // Not a second down, so the reveal is complete; the up then starts over and aborts
+        matcher.onKeyDown(UP, now);
+        assertEquals(List.of("reveal", "abort"), fired);
+        assertEquals(-1, matcher.getNextTimeoutNanos());
+    }
+
+    @Test
+    public void sequencesRestartOnAWrongPress() {
+        KeySequenceMatcher matcher = build(new KeySequenceMatcher.Builder()
+                .add("card", "up up down").add("abort", "down:long"));
+        press(matcher, UP, 50);
+        advance(matcher, 100);
+        press(matcher, DOWN, 50);
+        advance(matcher, 100);
+        // The down above broke the sequence; this one starts it again
+        press(matcher, UP, 50);
+        advance(matcher, 100);
+        press(matcher, UP, 50);
+        advance(matcher, 100);
+        press(matcher, DOWN, 50);
+        assertEquals(List.of("card"), fired);
+
+        advance(matcher, 1000);
+        press(matcher, UP, 50);
+        advance(matcher, 500);
+        // Too slow: the sequence has timed out
+        press(matcher, UP, 50);
+        advance(matcher, 100);
+        press(matcher, DOWN, 50);
+        advance(matcher, 1000);
+        assertEquals(List.of("card"), fired);
+    }
+
+    @Test
+    public void anotherKeyEndsAPendingPressAsATap() {
+        KeySequenceMatcher matcher = build(new KeySequenceMatcher.Builder()
+                .add("chord", "up down").add("rearm", "up:long"));
+        matcher.onKeyDown(UP, now);
+        advance(matcher, 100);
+        matcher.onKeyDown(DOWN, now);
+        assertEquals(List.of("chord"), fired);
+    }
+
+    @Test
+    public void laterTriggersReplaceEarlierOnes() throws IOException {
+        KeySequenceMatcher matcher = build(new KeySequenceMatcher.Builder()
+                .add("reveal", "down")
+                .load(new StringReader("# photo 3 instead\nreveal:3\tdown\n\nabort\t24\n")));
+        assertTrue(matcher.handles(UP));
+        assertFalse(matcher.handles(0));
+        press(matcher, DOWN, 50);
+        press(matcher, UP, 50);
+        assertEquals(List.of("reveal:3", "abort"), fired);
+    }
+
+    @Test
+    public void rejectsMalformedTriggers() {
+        for (String spec : new String[] {"", "left", "down*0", "down*x", "up:short"}) {
+            try {
+                new KeySequenceMatcher.Builder().add("x", spec);
+                fail(spec);
+            } catch (IllegalArgumentException expected) {
+                // Expected
+            }
+        }
+        try {
+            new KeySequenceMatcher.Builder().load(new StringReader("reveal\tdown\nabort up\n"));
+            fail("line 2 is malformed");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Line 2"));
+        }
+    }
+
+    @Test
+    public void benchmarkPerEventCost() {
+        int[] count = new int[1];
+        KeySequenceMatcher matcher = new KeySequenceMatcher.Builder()
+                .add("reveal", "down")
+                .add("abort", "up")
+                .add("rearm", "up:long")
+                .add("card", "up*2 down")
+                .add("card 2", "up*2 down*2")
+                .add("card 3", "up*3 down:long")
+                .build(name -> count[0]++);
+        // Mixed taps, long presses and sequences, 120 ms apart
+        int[] keys = {DOWN, UP, UP, DOWN, UP, UP, UP, DOWN};
+        long[] held = {ms(60), ms(80), ms(700), ms(60), ms(50), ms(50), ms(50), ms(600)};
+        int events = 0;
+        long time = 0;
+        long start = 0;
+        int runs = 200_000;
+        for (int run = -20_000; run < runs; run++) {
+            if (run == 0) {
+                start = System.nanoTime();
+                events = 0;
+            }
+            int k = run & 7;
+            matcher.onKeyDown(keys[k], time);
+            long next = matcher.getNextTimeoutNanos();
+            if (next >= 0 && next <= time + held[k]) {
+                matcher.onTimeout(next);
+            }
+            time += held[k];
+            matcher.onKeyUp(keys[k], time);
+            time += ms(120);
+            events += 2;
+        }
+        double micros = (System.nanoTime() - start) / 1000.0 / events;
+        Benchmark.report("key event", micros);
+        assertTrue(count[0] > 0);
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.magic_insta;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LatencyRecorderTest {
+
+    @Test
+    public void percentilesTakeZeroToHundred() {
+        LatencyRecorder recorder = new LatencyRecorder("Test", 100);
+        // 1..100 in shuffled order
+        for (int i = 0; i < 100; i++) {
+            recorder.record((i * 37) % 100 + 1);
+        }
+        assertEquals(50, recorder.percentile(50));
+        assertEquals(95, recorder.percentile(95));
+        assertEquals(100, recorder.percentile(100));
+        assertEquals(1, recorder.percentile(0));
+        // A fraction is a tiny percentile, not a quantile
+        assertEquals(1, recorder.percentile(0.95));
+    }
+
+    @Test
+    public void keepsTheMostRecentWindow() {
+        LatencyRecorder recorder = new LatencyRecorder("Test", 4);
+        assertEquals(0, recorder.percentile(50));
+        for (int i = 1; i <= 10; i++) {
+            recorder.record(i * 10);
+        }
+        assertEquals(10, recorder.getCount());
+        // Only 70, 80, 90 and 100 are left
+        assertEquals(70, recorder.percentile(0));
+        assertEquals(80, recorder.percentile(50));
+        assertEquals(100, recorder.percentile(100));
+
+        recorder.reset();
+        assertEquals(0, recorder.getCount());
+        assertEquals("Test: no samples", recorder.toString());
+    }
+}
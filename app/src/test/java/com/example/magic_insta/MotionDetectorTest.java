@@ -0,0 +1,179 @@
+package com.example.magic_insta;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Exercises {@link MotionDetector} with synthetic NV21 frames.
+ */
+public class MotionDetectorTest {
+    private static final int WIDTH = 64;
+    private static final int HEIGHT = 48;
+
+    private static byte[] frame(int luma) {
+        byte[] nv21 = new byte[WIDTH * HEIGHT * 3 / 2];
+        Arrays.fill(nv21, 0, WIDTH * HEIGHT, (byte) luma);
+        Arrays.fill(nv21, WIDTH * HEIGHT, nv21.length, (byte) 128);
+        return nv21;
+    }
+
+    private static void paintSquare(byte[] nv21, int left, int top, int size, int luma) {
+        for (int y = top; y < top + size; y++) {
+            Arrays.fill(nv21, y * WIDTH + left, y * WIDTH + left + size, (byte) luma);
+        }
+    }
+
+    @Test
+    public void firstFrameOnlyPrimesBackground() {
+        MotionDetector detector = new MotionDetector(WIDTH, HEIGHT);
+        assertEquals(0f, detector.process(frame(200)), 0f);
+        assertEquals(0, detector.countActiveBlocks(1f));
+    }
+
+    @Test
+    public void identicalFramesScoreZero() {
+        MotionDetector detector = new MotionDetector(WIDTH, HEIGHT);
+        detector.process(frame(90));
+        assertEquals(0f, detector.process(frame(90)), 0f);
+    }
+
+    @Test
+    public void scoreIsMeanDifferencePerSampledPixel() {
+        MotionDetector detector = new MotionDetector(WIDTH, HEIGHT, 2, 16);
+        detector.process(frame(100));
+        assertEquals(40f, detector.process(frame(140)), 0.001f);
+        // The previous frame is now the background
+        assertEquals(10f, detector.process(frame(130)), 0.001f);
+    }
+
+    @Test
+    public void scoreDoesNotDependOnResolution() {
+        MotionDetector small = new MotionDetector(32, 24);
+        MotionDetector large = new MotionDetector(640, 480);
+        byte[] smallA = new byte[32 * 24 * 3 / 2];
+        byte[] smallB = new byte[32 * 24 * 3 / 2];
+        byte[] largeA = new byte[640 * 480 * 3 / 2];
+        byte[] largeB = new byte[640 * 480 * 3 / 2];
+        Arrays.fill(smallB, (byte) 25);
+        Arrays.fill(largeB, (byte) 25);
+
+        small.process(smallA);
+        large.process(largeA);
+        assertEquals(small.process(smallB), large.process(largeB), 0.001f);
+    }
+
+    @Test
+    public void chromaChangesAreIgnored() {
+        MotionDetector detector = new MotionDetector(WIDTH, HEIGHT);
+        byte[] a = frame(50);
+        byte[] b = frame(50);
+        Arrays.fill(b, WIDTH * HEIGHT, b.length, (byte) 0);
+        detector.process(a);
+        assertEquals(0f, detector.process(b), 0f);
+    }
+
+    @Test
+    public void motionMapLocalizesChange() {
+        MotionDetector detector = new MotionDetector(WIDTH, HEIGHT, 1, 16);
+        assertEquals(4, detector.getBlockCols());
+        assertEquals(3, detector.getBlockRows());
+
+        detector.process(frame(0));
+        byte[] moved = frame(0);
+        paintSquare(moved, 16, 16, 16, 255);
+        detector.process(moved);
+
+        float[] scores = detector.getBlockScores();
+        assertEquals(255f, scores[1 * 4 + 1], 0.001f);
+        assertEquals(1, detector.countActiveBlocks(1f));
+    }
+
+    @Test
+    public void partialEdgeBlocksAreNormalizedBySampleCount() {
+        // 40x40 with 16px blocks leaves 8px edge blocks
+        MotionDetector detector = new MotionDetector(40, 40, 1, 16);
+        byte[] a = new byte[40 * 40];
+        byte[] b = new byte[40 * 40];
+        Arrays.fill(b, (byte) 60);
+        detector.process(a);
+        detector.process(b);
+        for (float score : detector.getBlockScores()) {
+            assertEquals(60f, score, 0.001f);
+        }
+    }
+
+    @Test
+    public void resetForgetsBackground() {
+        MotionDetector detector = new MotionDetector(WIDTH, HEIGHT);
+        detector.process(frame(0));
+        detector.reset();
+        assertEquals(0f, detector.process(frame(255)), 0f);
+        assertEquals(255f, detector.process(frame(0)), 0.001f);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsShortFrames() {
+        new MotionDetector(WIDTH, HEIGHT).process(new byte[WIDTH]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsBlocksSmallerThanTheStride() {
+        new MotionDetector(WIDTH, HEIGHT, 8, 4);
+    }
+
+    @Test
+    public void rejectsBlocksThatCanMissEverySample() {
+        // With 4px stride and 5px blocks, the 1px edge block of an 11px wide frame has no samples
+        try {
+            new MotionDetector(11, 11, 4, 5);
+            fail("Block size 5 with stride 4 should be rejected");
+        } catch (IllegalArgumentException expected) {
+        }
+        assertEquals(3, new MotionDetector(11, 11, 4, 4).getBlockCols());
+    }
+
+    @Test
+    public void benchmarkAgainstFullFrameLoop() {
+        int width = 640;
+        int height = 480;
+        Random random = new Random(1);
+        byte[][] frames = new byte[2][width * height * 3 / 2];
+        random.nextBytes(frames[0]);
+        random.nextBytes(frames[1]);
+
+        MotionDetector detector = new MotionDetector(width, height);
+        float[] score = new float[1];
+        double detectorMicros = Benchmark.micros(500, 2_000,
+                run -> score[0] += detector.process(frames[run & 1]));
+
+        byte[][] previous = new byte[1][];
+        long[] diff = new long[1];
+        double loopMicros = Benchmark.micros(500, 2_000, run -> {
+            byte[] data = frames[run & 1];
+            if (previous[0] != null) {
+                diff[0] += computeFrameDifference(previous[0], data);
+            }
+            previous[0] = Arrays.copyOf(data, data.length);
+        });
+
+        Benchmark.report("MotionDetector 640x480", detectorMicros);
+        Benchmark.report("computeFrameDifference 640x480", loopMicros);
+        // Uniform noise differs by about 85 per sample in both
+        assertTrue(score[0] > 0);
+        assertTrue(diff[0] > 0);
+    }
+
+    // The previous motion check: the whole NV21 buffer, chroma included, copied every frame and
+    // every 10th byte compared
+    private static int computeFrameDifference(byte[] frame1, byte[] frame2) {
+        int diff = 0;
+        for (int i = 0; i < frame1.length; i += 10) {
+            diff += Math.abs((frame1[i] & 0xFF) - (frame2[i] & 0xFF));
+        }
+        return diff;
+    }
+}
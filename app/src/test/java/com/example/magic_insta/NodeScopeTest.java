@@ -0,0 +1,205 @@
+package com.example.magic_insta;
+
+import android.graphics.Rect;
+import android.view.accessibility.AccessibilityNodeInfo;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Node lifetimes of {@link NodeScope} and {@link NodeSnapshot#capture}, on fake nodes that
+ * count their recycles.
+ */
+public class NodeScopeTest {
+    private final List<FakeNode> allNodes = new ArrayList<>();
+
+    private class FakeNode extends AccessibilityNodeInfo {
+        final String className;
+        final boolean clickable;
+        final boolean scrollable;
+        final List<FakeNode> children = new ArrayList<>();
+        int recycles;
+        boolean failOnChildren;
+
+        FakeNode(String className, boolean clickable, boolean scrollable) {
+            this.className = className;
+            this.clickable = clickable;
+            this.scrollable = scrollable;
+            allNodes.add(this);
+        }
+
+        FakeNode add(FakeNode child) {
+            children.add(child);
+            return child;
+        }
+
+        @Override
+        public CharSequence getClassName() {
+            return className;
+        }
+
+        @Override
+        public int getChildCount() {
+            return children.size();
+        }
+
+        @Override
+        public AccessibilityNodeInfo getChild(int index) {
+            if (failOnChildren) {
+                throw new IllegalStateException("Window went away");
+            }
+            return children.get(index);
+        }
+
+        @Override
+        public boolean isClickable() {
+            return clickable;
+        }
+
+        @Override
+        public boolean isScrollable() {
+            return scrollable;
+        }
+
+        @Override
+        public void getBoundsInScreen(Rect bounds) {
+            bounds.left = 0;
+            bounds.top = 0;
+            bounds.right = 720;
+            bounds.bottom = 1600;
+        }
+
+        @Override
+        public void recycle() {
+            recycles++;
+        }
+    }
+
+    private FakeNode root;
+    private FakeNode grid;
+
+    @Before
+    public void buildTree() {
+        NodeScope.resetCounters();
+        NodeScope.setLeakTracking(true);
+        root = new FakeNode("android.widget.FrameLayout", false, false);
+        grid = root.add(new FakeNode("androidx.recyclerview.widget.RecyclerView", false, true));
+        for (int i = 0; i < 3; i++) {
+            FakeNode photo = grid.add(new FakeNode("android.widget.Button", true, false));
+            photo.add(new FakeNode("android.widget.ImageView", false, false));
+        }
+        root.add(new FakeNode("android.widget.TextView", false, false));
+    }
+
+    @After
+    public void stopTracking() {
+        NodeScope.setLeakTracking(false);
+    }
+
+    @Test
+    public void captureKeepsOnlyActionableNodes() {
+        NodeSnapshot snapshot = NodeSnapshot.capture(root);
+
+        assertEquals(allNodes.size(), snapshot.size());
+        assertEquals(3, snapshot.getChildCount(1));
+        assertSame(grid, snapshot.getNode(1));
+        assertNotNull(snapshot.getNode(2));
+        assertNull(snapshot.getNode(0));
+        assertNull(snapshot.getNode(3));
+        // The grid and its three photos stay live for actions
+        assertEquals(4, NodeScope.getRetainedCount());
+        assertEquals(4, NodeScope.getOutstandingCount());
+        for (FakeNode node : allNodes) {
+            boolean kept = node.clickable || node.scrollable;
+            assertEquals(node.className, kept ? 0 : 1, node.recycles);
+        }
+
+        snapshot.release();
+        snapshot.release();
+        assertEquals(0, NodeScope.getOutstandingCount());
+        assertEquals(0, NodeScope.getRetainedCount());
+        assertNull(snapshot.getNode(1));
+        assertEquals("android.widget.Button", snapshot.getClassName(2));
+        for (FakeNode node : allNodes) {
+            assertEquals(node.className, 1, node.recycles);
+        }
+    }
+
+    @Test
+    public void captureRecyclesEverythingWhenTheWalkFails() {
+        grid.children.get(1).failOnChildren = true;
+        try {
+            NodeSnapshot.capture(root);
+            fail("Capture should have failed");
+        } catch (IllegalStateException expected) {
+        }
+        assertEquals(0, NodeScope.getOutstandingCount());
+        assertEquals(0, NodeScope.getRetainedCount());
+        // Kept and not-yet-visited nodes alike are recycled once; nodes below the failure were
+        // never obtained
+        assertEquals(1, root.recycles);
+        assertEquals(1, grid.recycles);
+        assertEquals(1, grid.children.get(0).recycles);
+        assertEquals(1, grid.children.get(2).recycles);
+        assertEquals(0, grid.children.get(1).children.get(0).recycles);
+        for (FakeNode node : allNodes) {
+            assertTrue(node.className + " recycled " + node.recycles + " times", node.recycles <= 1);
+        }
+    }
+
+    @Test
+    public void captureStopsAtTheNodeBudget() {
+        NodeSnapshot snapshot = NodeSnapshot.capture(root, NodeSnapshot.DEFAULT_MAX_DEPTH, 3, 0);
+
+        // The root, the grid and its first photo; the photo's image, the other two photos and
+        // the text were obtained but not visited
+        assertEquals(3, snapshot.size());
+        assertEquals(4, snapshot.getTruncatedCount());
+        assertSame(grid.children.get(0), snapshot.getNode(2));
+        assertEquals(2, NodeScope.getOutstandingCount());
+        assertEquals(1, grid.children.get(0).children.get(0).recycles);
+        assertEquals(1, grid.children.get(1).recycles);
+        assertEquals(0, grid.children.get(1).children.get(0).recycles);
+
+        snapshot.release();
+        assertEquals(0, NodeScope.getOutstandingCount());
+        for (FakeNode node : allNodes) {
+            assertTrue(node.className + " recycled " + node.recycles + " times", node.recycles <= 1);
+        }
+    }
+
+    @Test
+    public void scopeRecyclesUnretainedNodesOnClose() {
+        FakeNode kept;
+        try (NodeScope scope = new NodeScope()) {
+            scope.track(root);
+            scope.track(grid);
+            kept = (FakeNode) scope.retain(scope.track(grid.children.get(0)));
+            scope.recycle(grid);
+            assertNull(scope.track(null));
+            assertEquals(1, scope.size());
+        }
+        assertEquals(1, root.recycles);
+        assertEquals(1, grid.recycles);
+        assertEquals(0, kept.recycles);
+        assertEquals(1, NodeScope.getOutstandingCount());
+
+        NodeScope.release(kept);
+        assertEquals(1, kept.recycles);
+        assertEquals(0, NodeScope.getOutstandingCount());
+        assertTrue(NodeScope.leakReport(), NodeScope.leakReport().endsWith("0 outstanding"));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void closedScopeRejectsNodes() {
+        NodeScope scope = new NodeScope();
+        scope.close();
+        scope.track(root);
+    }
+}
@@ -0,0 +1,131 @@
+package com.example.magic_insta;
+
+import android.view.accessibility.AccessibilityNodeInfo;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Index queries of a hand-built {@link NodeSnapshot}, and what a capture cut short
+ * by its budget leaves out.
+ */
+public class NodeSnapshotTest {
+    private static final int CLICKABLE = NodeSnapshot.FLAG_CLICKABLE | NodeSnapshot.FLAG_ENABLED;
+
+    private NodeSnapshot snapshot;
+    private int optionsButton;
+    private int lastTab;
+
+    @Before
+    public void buildTree() {
+        NodeSnapshot.Builder builder = new NodeSnapshot.Builder();
+        int root = builder.add(-1, "android.widget.FrameLayout", null, null, null, 0, 0, 720, 1600, 0);
+        int header = builder.add(root, "android.widget.LinearLayout", null, null, null, 0, 0, 720, 120, 0);
+        optionsButton = builder.add(header, "android.widget.Button", null, "Options", "com.instagram.android:id/options",
+                640, 20, 700, 100, CLICKABLE);
+        int grid = builder.add(root, "android.widget.GridView", null, null, null, 0, 120, 720, 900, NodeSnapshot.FLAG_SCROLLABLE);
+        builder.add(grid, "android.widget.Button", null, "Photo by Dhia at row 1, column 1", null, 0, 120, 240, 360, CLICKABLE);
+        builder.add(grid, "android.widget.Button", null, "Photo by Dhia at row 1, column 2", null, 240, 120, 480, 360, CLICKABLE);
+        builder.add(root, "android.widget.Button", "Show on profile", null, null, 144, 903, 576, 1001, CLICKABLE);
+        int tabs = builder.add(root, "android.widget.LinearLayout", null, null, null, 0, 1500, 720, 1600, 0);
+        builder.add(tabs, "android.widget.FrameLayout", null, "Home", null, 0, 1500, 360, 1600, CLICKABLE);
+        lastTab = builder.add(tabs, "android.widget.FrameLayout", null, "Profile", null, 360, 1500, 720, 1600, CLICKABLE);
+        snapshot = builder.build();
+    }
+
+    @Test
+    public void recordsTreeStructure() {
+        assertEquals(10, snapshot.size());
+        assertEquals(-1, snapshot.getParent(0));
+        assertEquals(4, snapshot.getChildCount(0));
+        assertEquals(2, snapshot.getDepth(optionsButton));
+        assertEquals("com.instagram.android:id/options", snapshot.getViewId(optionsButton));
+        assertNull(snapshot.getNode(optionsButton));
+    }
+
+    @Test
+    public void findsByDescriptionIgnoringCase() {
+        assertEquals(optionsButton, snapshot.findByContentDescription("options"));
+        assertEquals(-1, snapshot.findByContentDescription("Settings"));
+    }
+
+    @Test
+    public void findsByClass() {
+        assertEquals(lastTab, snapshot.findLastClickable("android.widget.FrameLayout"));
+        assertEquals(4, snapshot.findAllByClassName("android.widget.Button").length);
+        assertEquals(Arrays.asList(4, 5),
+                snapshot.findByClassAndDescriptionPrefix("android.widget.Button", "Photo by Dhia"));
+    }
+
+    private static class FakeNode extends AccessibilityNodeInfo {
+        final String className;
+        final boolean clickable;
+        final List<FakeNode> children = new ArrayList<>();
+
+        FakeNode(String className, boolean clickable) {
+            this.className = className;
+            this.clickable = clickable;
+        }
+
+        FakeNode add(FakeNode child) {
+            children.add(child);
+            return child;
+        }
+
+        @Override
+        public CharSequence getClassName() {
+            return className;
+        }
+
+        @Override
+        public boolean isClickable() {
+            return clickable;
+        }
+
+        @Override
+        public int getChildCount() {
+            return children.size();
+        }
+
+        @Override
+        public AccessibilityNodeInfo getChild(int index) {
+            return children.get(index);
+        }
+    }
+
+    @Test
+    public void truncatedCaptureHidesTheTabBar() {
+        FakeNode root = new FakeNode("android.widget.FrameLayout", false);
+        FakeNode feed = root.add(new FakeNode("androidx.recyclerview.widget.RecyclerView", false));
+        for (int i = 0; i < 20; i++) {
+            feed.add(new FakeNode("android.widget.FrameLayout", true));
+        }
+        FakeNode tabs = root.add(new FakeNode("android.widget.LinearLayout", false));
+        tabs.add(new FakeNode("android.widget.FrameLayout", true));
+        tabs.add(new FakeNode("android.widget.FrameLayout", true));
+
+        NodeSnapshot complete = NodeSnapshot.capture(root, NodeSnapshot.DEFAULT_MAX_DEPTH, 100, 0);
+        assertEquals(0, complete.getTruncatedCount());
+        assertEquals(complete.size() - 1, RevealFlow.findProfileTab(complete));
+
+        // The node budget runs out inside the feed
+        NodeSnapshot partial = NodeSnapshot.capture(root, NodeSnapshot.DEFAULT_MAX_DEPTH, 12, 0);
+        assertTrue(partial.getTruncatedCount() > 0);
+        int last = partial.findLastClickable("android.widget.FrameLayout");
+        assertEquals(feed.getClassName(), partial.getClassName(partial.getParent(last)));
+        assertEquals(-1, RevealFlow.findProfileTab(partial));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsForwardParents() {
+        NodeSnapshot.Builder builder = new NodeSnapshot.Builder();
+        builder.add(-1, "android.widget.FrameLayout", null, null, null, 0, 0, 10, 10, 0);
+        builder.add(3, "android.widget.Button", null, null, null, 0, 0, 10, 10, 0);
+    }
+}
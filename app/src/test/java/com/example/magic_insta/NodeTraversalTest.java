@@ -0,0 +1,247 @@
+package com.example.magic_insta;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Visiting order, pruning and budgets of {@link NodeTraversal}, and microbenchmarks of typical
+ * lookups on a feed-sized tree and on the recorded reveal screens.
+ */
+public class NodeTraversalTest {
+    private static final int CLICKABLE = NodeSnapshot.FLAG_CLICKABLE | NodeSnapshot.FLAG_ENABLED;
+
+    /**
+     * A random tree with nested bounds: each child takes a horizontal band of its parent.
+     */
+    private static NodeSnapshot randomTree(long seed, int size) {
+        Random random = new Random(seed);
+        NodeSnapshot.Builder builder = new NodeSnapshot.Builder();
+        List<int[]> bounds = new ArrayList<>();
+        builder.add(-1, "android.widget.FrameLayout", null, null, null, 0, 0, 720, 1600, 0);
+        bounds.add(new int[] {0, 0, 720, 1600});
+        // Pre-order: a new node's parent is the previous node or one of its ancestors
+        List<Integer> path = new ArrayList<>(Collections.singletonList(0));
+        for (int i = 1; i < size; i++) {
+            int keep = 1 + random.nextInt(path.size());
+            while (path.size() > keep) path.remove(path.size() - 1);
+            int parent = path.get(path.size() - 1);
+            int[] outer = bounds.get(parent);
+            int height = Math.max(1, (outer[3] - outer[1]) / 3);
+            int top = outer[1] + random.nextInt(Math.max(1, outer[3] - outer[1] - height + 1));
+            int index = builder.add(parent, random.nextBoolean() ? "android.widget.Button" : "android.view.View",
+                    null, null, null, outer[0], top, outer[2], top + height, random.nextBoolean() ? CLICKABLE : 0);
+            bounds.add(new int[] {outer[0], top, outer[2], top + height});
+            path.add(index);
+        }
+        return builder.build();
+    }
+
+    private static List<Integer> visit(NodeTraversal traversal, NodeSnapshot snapshot) {
+        List<Integer> order = new ArrayList<>();
+        traversal.run(snapshot, (s, i) -> {
+            order.add(i);
+            return NodeTraversal.CONTINUE;
+        });
+        return order;
+    }
+
+    private static boolean intersects(NodeSnapshot s, int i, int left, int top, int right, int bottom) {
+        return s.getLeft(i) < right && s.getRight(i) > left && s.getTop(i) < bottom && s.getBottom(i) > top;
+    }
+
+    // Nodes in range: the node and all its ancestors intersect the region and are shallow enough
+    private static List<Integer> expected(NodeSnapshot s, int maxDepth, int left, int top, int right, int bottom) {
+        List<Integer> nodes = new ArrayList<>();
+        for (int i = 0; i < s.size(); i++) {
+            boolean inRange = s.getDepth(i) <= maxDepth;
+            for (int a = i; a >= 0 && inRange; a = s.getParent(a)) {
+                inRange = intersects(s, a, left, top, right, bottom);
+            }
+            if (inRange) nodes.add(i);
+        }
+        return nodes;
+    }
+
+    @Test
+    public void visitsInPreOrderAndExactReverse() {
+        for (long seed = 0; seed < 20; seed++) {
+            NodeSnapshot snapshot = randomTree(seed, 200);
+            List<Integer> forward = visit(new NodeTraversal(), snapshot);
+            assertEquals(expected(snapshot, Integer.MAX_VALUE, 0, 0, 720, 1600), forward);
+
+            List<Integer> reverse = visit(new NodeTraversal().reverse(), snapshot);
+            Collections.reverse(reverse);
+            assertEquals("seed " + seed, forward, reverse);
+        }
+    }
+
+    @Test
+    public void prunesSubtreesOutsideRegionAndBelowDepth() {
+        for (long seed = 0; seed < 20; seed++) {
+            NodeSnapshot snapshot = randomTree(seed, 300);
+            List<Integer> expected = expected(snapshot, 4, 0, 1200, 720, 1600);
+            assertEquals(expected, visit(new NodeTraversal().within(0, 1200, 720, 1600).maxDepth(4), snapshot));
+
+            List<Integer> reverse = visit(new NodeTraversal().reverse().within(0, 1200, 720, 1600).maxDepth(4), snapshot);
+            Collections.reverse(reverse);
+            assertEquals("seed " + seed, expected, reverse);
+        }
+    }
+
+    @Test
+    public void stopsAndSkipsChildrenOnRequest() {
+        NodeSnapshot snapshot = randomTree(7, 100);
+        NodeTraversal traversal = new NodeTraversal();
+        List<Integer> order = new ArrayList<>();
+        assertEquals(NodeTraversal.Status.COMPLETED, traversal.run(snapshot, (s, i) -> {
+            order.add(i);
+            return s.getDepth(i) == 1 ? NodeTraversal.SKIP_CHILDREN : NodeTraversal.CONTINUE;
+        }));
+        for (int i : order) {
+            assertTrue(snapshot.getDepth(i) <= 1);
+        }
+        assertEquals(order.size(), traversal.getVisitedCount());
+
+        assertEquals(NodeTraversal.Status.STOPPED, traversal.run(snapshot, (s, i) -> i == 10 ? NodeTraversal.STOP
+                : NodeTraversal.CONTINUE));
+        assertEquals(11, traversal.getVisitedCount());
+    }
+
+    @Test
+    public void findsFirstAndLastMatch() {
+        NodeSnapshot snapshot = randomTree(3, 500);
+        int last = snapshot.findLastClickable("android.widget.Button");
+        NodeTraversal reverse = new NodeTraversal().reverse();
+        assertEquals(last, reverse.find(snapshot, (s, i) -> s.isClickable(i)
+                && "android.widget.Button".equals(s.getClassName(i))));
+        assertEquals(NodeTraversal.Status.STOPPED, reverse.getStatus());
+        assertTrue(reverse.getVisitedCount() < snapshot.size());
+
+        assertEquals(-1, new NodeTraversal().find(snapshot, (s, i) -> false));
+    }
+
+    @Test
+    public void endsWhenBudgetRunsOut() {
+        NodeSnapshot snapshot = randomTree(5, 1000);
+        NodeTraversal traversal = new NodeTraversal().budget(TimeUnit.MILLISECONDS.toNanos(2));
+        NodeTraversal.Status status = traversal.run(snapshot, (s, i) -> {
+            long until = System.nanoTime() + TimeUnit.MICROSECONDS.toNanos(100);
+            while (System.nanoTime() < until) {
+                // Simulates an expensive visitor
+            }
+            return NodeTraversal.CONTINUE;
+        });
+        assertEquals(NodeTraversal.Status.OUT_OF_BUDGET, status);
+        assertTrue(traversal.getVisitedCount() < snapshot.size());
+        assertTrue(traversal.getVisitedCount() >= 16);
+    }
+
+    /**
+     * A long feed: a list of posts, each a header, media, a row of buttons and a caption, with
+     * the tab bar last.
+     */
+    private static NodeSnapshot feed(int posts) {
+        NodeSnapshot.Builder builder = new NodeSnapshot.Builder().setPackageName(RevealFlow.INSTAGRAM_PACKAGE);
+        int root = builder.add(-1, "android.widget.FrameLayout", null, null, null, 0, 0, 720, 1600, 0);
+        int list = builder.add(root, "androidx.recyclerview.widget.RecyclerView", null, null, null, 0, 112, 720, 1504,
+                NodeSnapshot.FLAG_SCROLLABLE);
+        for (int p = 0; p < posts; p++) {
+            int top = 112 + p * 1100;
+            int post = builder.add(list, "android.widget.LinearLayout", null, null, null, 0, top, 720, top + 1100, 0);
+            int header = builder.add(post, "android.widget.FrameLayout", null, null, null, 0, top, 720, top + 80, CLICKABLE);
+            builder.add(header, "android.widget.TextView", "user_" + p, null, null, 96, top + 20, 400, top + 60, 0);
+            int media = builder.add(post, "android.widget.FrameLayout", null, "Photo by user_" + p, null,
+                    0, top + 80, 720, top + 800, CLICKABLE);
+            for (int layer = 0; layer < 6; layer++) {
+                builder.add(media, "android.view.View", null, null, null, 0, top + 80, 720, top + 800, 0);
+            }
+            int buttons = builder.add(post, "android.widget.LinearLayout", null, null, null, 0, top + 800, 720, top + 880, 0);
+            for (String button : new String[] {"Like", "Comment", "Share", "Save"}) {
+                builder.add(buttons, "android.widget.ImageView", null, button, null, 0, top + 800, 80, top + 880, CLICKABLE);
+            }
+            builder.add(post, "android.widget.TextView", "Caption of post " + p, null, null, 16, top + 900, 704, top + 1080, 0);
+        }
+        int tabs = builder.add(root, "android.widget.LinearLayout", null, null, null, 0, 1504, 720, 1600, 0);
+        for (int t = 0; t < 5; t++) {
+            builder.add(tabs, "android.widget.FrameLayout", null, null, null, t * 144, 1504, (t + 1) * 144, 1600, CLICKABLE);
+        }
+        return builder.build();
+    }
+
+    private interface Lookup {
+        int find();
+    }
+
+    private static double benchmark(String name, Lookup lookup, int expected) {
+        for (int i = 0; i < 2000; i++) {
+            assertEquals(name, expected, lookup.find());
+        }
+        int runs = 20000;
+        long start = System.nanoTime();
+        for (int i = 0; i < runs; i++) {
+            lookup.find();
+        }
+        double micros = (System.nanoTime() - start) / 1000.0 / runs;
+        Benchmark.report(name, micros);
+        return micros;
+    }
+
+    @Test
+    public void benchmarkFeedLookups() {
+        NodeSnapshot feed = feed(200);
+        int profileTab = feed.size() - 1;
+        NodeTraversal full = new NodeTraversal();
+        NodeTraversal reverse = new NodeTraversal().reverse();
+        NodeTraversal tabBar = new NodeTraversal().within(0, 1504, 720, 1600);
+        NodeTraversal.Filter clickableFrame = (s, i) -> s.isClickable(i)
+                && "android.widget.FrameLayout".equals(s.getClassName(i));
+        int[] last = new int[1];
+
+        Benchmark.report(feed.size() + " node feed");
+        benchmark("last clickable frame, full pre-order", () -> {
+            last[0] = -1;
+            full.run(feed, (s, i) -> {
+                if (clickableFrame.accept(s, i)) last[0] = i;
+                return NodeTraversal.CONTINUE;
+            });
+            return last[0];
+        }, profileTab);
+        benchmark("last clickable frame, reverse", () -> reverse.find(feed, clickableFrame), profileTab);
+        assertEquals(1, reverse.getVisitedCount());
+        benchmark("last clickable frame, class index", () -> feed.findLastClickable("android.widget.FrameLayout"),
+                profileTab);
+        benchmark("clickable in tab bar, bounds pruned", () -> tabBar.find(feed, clickableFrame), profileTab - 4);
+        // Only the root, the tab bar and its first tab; the list and its posts are skipped whole
+        assertEquals(3, tabBar.getVisitedCount());
+    }
+
+    @Test
+    public void benchmarkRecordedScreens() throws IOException {
+        FlowRecording recording;
+        try (Reader reader = new InputStreamReader(
+                NodeTraversalTest.class.getResourceAsStream("/recordings/reveal_walk_720x1600.txt"),
+                StandardCharsets.UTF_8)) {
+            recording = FlowRecording.read(reader);
+        }
+        NodeTraversal reverse = new NodeTraversal().reverse();
+        for (FlowRecording.Event event : recording.getEvents()) {
+            if (!event.isFrame()) continue;
+            NodeSnapshot screen = event.snapshot;
+            benchmark(event.label + " (" + screen.size() + " nodes), profile tab",
+                    () -> reverse.find(screen, (s, i) -> s.isClickable(i)
+                            && "android.widget.FrameLayout".equals(s.getClassName(i))),
+                    screen.findLastClickable("android.widget.FrameLayout"));
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.magic_insta;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class Nv21ScalerTest {
+
+    // Luma is x + 10 * y, chroma V is the chroma column and U 100 + the chroma row
+    private static byte[] pattern(int width, int height) {
+        byte[] nv21 = new byte[width * height * 3 / 2];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                nv21[y * width + x] = (byte) (x + 10 * y);
+            }
+        }
+        for (int y = 0; y < height / 2; y++) {
+            for (int x = 0; x < width / 2; x++) {
+                nv21[width * height + y * width + x * 2] = (byte) x;
+                nv21[width * height + y * width + x * 2 + 1] = (byte) (100 + y);
+            }
+        }
+        return nv21;
+    }
+
+    @Test
+    public void fitsWithinTheLongestSideKeepingAspect() {
+        assertArrayEquals(new int[] {416, 312}, Nv21Scaler.fitWithin(640, 480, 416));
+        assertArrayEquals(new int[] {234, 416}, Nv21Scaler.fitWithin(720, 1280, 416));
+        // Small enough already: only rounded down to even
+        assertArrayEquals(new int[] {300, 200}, Nv21Scaler.fitWithin(301, 201, 416));
+    }
+
+    @Test
+    public void cropsAndHalvesSize() {
+        byte[] src = pattern(16, 12);
+        byte[] dst = new byte[4 * 4 * 3 / 2];
+        Nv21Scaler.cropAndScale(src, 16, 12, 4, 2, 8, 8, dst, 4, 4);
+
+        for (int y = 0; y < 4; y++) {
+            for (int x = 0; x < 4; x++) {
+                assertEquals("luma " + x + "," + y, (4 + 2 * x) + 10 * (2 + 2 * y), dst[y * 4 + x]);
+            }
+        }
+        for (int y = 0; y < 2; y++) {
+            for (int x = 0; x < 2; x++) {
+                assertEquals(2 + 2 * x, dst[16 + y * 4 + x * 2]);
+                assertEquals(100 + 1 + 2 * y, dst[16 + y * 4 + x * 2 + 1]);
+            }
+        }
+    }
+
+    @Test
+    public void roundsOddCropsDownToEven() {
+        byte[] src = pattern(16, 12);
+        byte[] dst = new byte[4 * 4 * 3 / 2];
+        // Same as a crop at 4,2 of 8x8
+        Nv21Scaler.cropAndScale(src, 16, 12, 5, 3, 9, 9, dst, 5, 5);
+        assertEquals(4 + 10 * 2, dst[0]);
+        assertEquals(10 + 10 * 8, dst[3 * 4 + 3]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsCropOutsideFrame() {
+        Nv21Scaler.cropAndScale(pattern(16, 12), 16, 12, 10, 0, 8, 8, new byte[96], 8, 8);
+    }
+}
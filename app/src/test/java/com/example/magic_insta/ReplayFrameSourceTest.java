@@ -0,0 +1,102 @@
+package com.example.magic_insta;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Drives {@link MotionDetector} from a recorded NV21 file through {@link ReplayFrameSource}.
+ */
+public class ReplayFrameSourceTest {
+    private static final int WIDTH = 64;
+    private static final int HEIGHT = 48;
+    private static final int FRAME_SIZE = WIDTH * HEIGHT * 3 / 2;
+
+    private File recording;
+
+    @Before
+    public void writeRecording() throws IOException {
+        recording = File.createTempFile("replay", ".nv21");
+        try (FileOutputStream out = new FileOutputStream(recording)) {
+            for (int i = 0; i < 10; i++) {
+                byte[] frame = new byte[FRAME_SIZE];
+                // A bright square appears from frame 6 on
+                if (i >= 6) {
+                    for (int y = 8; y < 24; y++) {
+                        Arrays.fill(frame, y * WIDTH + 8, y * WIDTH + 24, (byte) 255);
+                    }
+                }
+                out.write(frame);
+            }
+        }
+    }
+
+    @After
+    public void deleteRecording() {
+        recording.delete();
+    }
+
+    @Test
+    public void replaysEveryFrameInOrderWhenUnpaced() throws Exception {
+        MotionDetector detector = new MotionDetector(WIDTH, HEIGHT);
+        List<Float> scores = new ArrayList<>();
+        ReplayFrameSource source = new ReplayFrameSource(recording, WIDTH, HEIGHT, 0, false);
+
+        source.start(frame -> {
+            scores.add(detector.process(frame));
+            frame.release();
+        });
+        assertTrue(source.awaitCompletion(5, TimeUnit.SECONDS));
+
+        assertEquals(10, source.getDeliveredFrameCount());
+        assertEquals(0, source.getSkippedFrameCount());
+        for (int i = 0; i < scores.size(); i++) {
+            if (i == 6) {
+                assertTrue("motion expected at frame 6", scores.get(i) > 0f);
+            } else {
+                assertEquals("frame " + i, 0f, scores.get(i), 0f);
+            }
+        }
+    }
+
+    @Test
+    public void pacedReplaySkipsFramesWhileListenerHoldsAllBuffers() throws Exception {
+        List<Frame> held = new ArrayList<>();
+        ReplayFrameSource source = new ReplayFrameSource(recording, WIDTH, HEIGHT, 1000, false);
+
+        source.start(held::add);
+        assertTrue(source.awaitCompletion(5, TimeUnit.SECONDS));
+
+        assertEquals(3, source.getDeliveredFrameCount());
+        assertEquals(7, source.getSkippedFrameCount());
+    }
+
+    @Test
+    public void planarFramesConvertToNv21() {
+        // I420-style planes with padded rows, as CameraX may deliver them
+        int width = 4;
+        int height = 2;
+        ByteBuffer y = ByteBuffer.wrap(new byte[] {1, 2, 3, 4, 0, 0, 5, 6, 7, 8, 0, 0});
+        ByteBuffer u = ByteBuffer.wrap(new byte[] {20, 21});
+        ByteBuffer v = ByteBuffer.wrap(new byte[] {30, 31});
+        Frame frame = new Frame(null).setPlanes(width, height, y, 6, u, v, 2, 1);
+
+        byte[] nv21 = frame.toNv21(null);
+        assertArrayEquals(new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 30, 20, 31, 21}, nv21);
+
+        MotionDetector detector = new MotionDetector(width, height, 1, 2);
+        detector.process(new byte[] {0, 0, 0, 0, 0, 0, 0, 0});
+        assertEquals(4.5f, detector.process(frame), 0.001f);
+    }
+}
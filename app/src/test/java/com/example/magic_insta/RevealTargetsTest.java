@@ -0,0 +1,66 @@
+package com.example.magic_insta;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import static org.junit.Assert.*;
+
+/**
+ * Parsing of the card to post registry.
+ */
+public class RevealTargetsTest {
+
+    @Test
+    public void parsesTargetsSkippingCommentsAndBlankLines() throws IOException {
+        RevealTargets targets = RevealTargets.parse(new StringReader(
+                "# card\tpost\n"
+                        + "\n"
+                        + "ace_of_spades\tC1a-B2_c3\n"
+                        + "  queen_of_hearts\tXyZ123  \n"));
+
+        assertEquals(2, targets.size());
+        RevealTargets.Target ace = targets.get("ace_of_spades");
+        assertEquals("C1a-B2_c3", ace.postId);
+        assertEquals("https://www.instagram.com/p/C1a-B2_c3/", ace.getPostUrl());
+        assertEquals("XyZ123", targets.get("queen_of_hearts").postId);
+        assertNull(targets.get("two_of_clubs"));
+        assertNull(targets.get(null));
+    }
+
+    @Test
+    public void parsesArchiveIndexWithOrWithoutPost() throws IOException {
+        RevealTargets targets = RevealTargets.parse(new StringReader("ace\tC1a\t4\nking\t-\t0\n"));
+        assertEquals("C1a", targets.get("ace").postId);
+        assertEquals(4, targets.get("ace").archiveIndex);
+        assertFalse(targets.get("king").hasPostId());
+        assertEquals(0, targets.get("king").archiveIndex);
+        assertEquals(-1, RevealTargets.parse(new StringReader("ace\tC1a\n")).get("ace").archiveIndex);
+    }
+
+    @Test
+    public void laterLinesReplaceEarlierOnes() throws IOException {
+        RevealTargets targets = RevealTargets.parse(new StringReader("ace\tfirst\nace\tsecond\n"));
+        assertEquals(1, targets.size());
+        assertEquals("second", targets.get("ace").postId);
+    }
+
+    @Test
+    public void rejectsMalformedLines() {
+        assertParseFails("ace_of_spades\n", "Line 1");
+        assertParseFails("ace\tok\nking\thttps://www.instagram.com/p/x/\n", "Line 2");
+        assertParseFails("ace\t-\n", "Line 1");
+        assertParseFails("ace\tC1a\tfirst\n", "Line 1");
+        assertParseFails("ace\tC1a\t-3\n", "Line 1");
+    }
+
+    private static void assertParseFails(String text, String message) {
+        try {
+            RevealTargets.parse(new StringReader(text));
+            fail("Parsed " + text);
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith(message));
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.magic_insta;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Builds motion maps with {@link MotionDetector} on 320x240 frames, which have 20x15 blocks of
+ * 16 pixels, and checks the crop {@link RoiSelector} picks with the analyzer's settings.
+ */
+public class RoiSelectorTest {
+    private static final int WIDTH = 320;
+    private static final int HEIGHT = 240;
+
+    private final MotionDetector detector = new MotionDetector(WIDTH, HEIGHT);
+    // 2 blocks of margin, at least 96 px a side, at most 80% of the frame
+    private final RoiSelector selector = new RoiSelector(24f, 2, 0.4f, 0.8f);
+    private final int[] roi = new int[4];
+
+    private static byte[] blank() {
+        return new byte[WIDTH * HEIGHT * 3 / 2];
+    }
+
+    private static byte[] paint(byte[] nv21, int left, int top, int width, int height) {
+        byte[] painted = nv21.clone();
+        for (int y = top; y < top + height; y++) {
+            Arrays.fill(painted, y * WIDTH + left, y * WIDTH + left + width, (byte) 255);
+        }
+        return painted;
+    }
+
+    private void move(byte[] from, byte[] to) {
+        detector.reset();
+        detector.process(from);
+        detector.process(to);
+        selector.accumulate(detector);
+    }
+
+    @Test
+    public void noMotionKeepsTheFullFrame() {
+        detector.process(blank());
+        detector.process(blank());
+        selector.accumulate(detector);
+        assertFalse(selector.hasMotion());
+        assertFalse(selector.select(WIDTH, HEIGHT, roi));
+    }
+
+    @Test
+    public void smallMotionIsGrownToTheMinimumSideAroundItsCentre() {
+        // Blocks 10-11 by 6-7, plus the margin, is exactly the 96 px minimum
+        move(blank(), paint(blank(), 160, 96, 32, 32));
+        assertTrue(selector.select(WIDTH, HEIGHT, roi));
+        assertArrayEquals(new int[] {128, 64, 96, 96}, roi);
+    }
+
+    @Test
+    public void cropIsClampedAtTheTopLeftCorner() {
+        move(blank(), paint(blank(), 0, 0, 16, 16));
+        assertTrue(selector.select(WIDTH, HEIGHT, roi));
+        assertArrayEquals(new int[] {0, 0, 96, 96}, roi);
+    }
+
+    @Test
+    public void cropIsClampedAtTheBottomRightCorner() {
+        // The margin runs past the frame and the grown crop is shifted back inside it
+        move(blank(), paint(blank(), WIDTH - 16, HEIGHT - 16, 16, 16));
+        assertTrue(selector.select(WIDTH, HEIGHT, roi));
+        assertArrayEquals(new int[] {WIDTH - 96, HEIGHT - 96, 96, 96}, roi);
+    }
+
+    @Test
+    public void motionIsMergedAcrossFrames() {
+        byte[] first = paint(blank(), 32, 32, 16, 16);
+        byte[] second = paint(first, 192, 128, 16, 16);
+        detector.process(blank());
+        detector.process(first);
+        selector.accumulate(detector);
+        detector.process(second);
+        selector.accumulate(detector);
+
+        // Blocks 2-12 by 2-8 with the margin
+        assertTrue(selector.select(WIDTH, HEIGHT, roi));
+        assertArrayEquals(new int[] {0, 0, 240, 176}, roi);
+    }
+
+    @Test
+    public void motionOverMostOfTheFrameKeepsTheFullFrame() {
+        move(blank(), paint(blank(), 16, 16, WIDTH - 32, HEIGHT - 32));
+        assertFalse(selector.select(WIDTH, HEIGHT, roi));
+    }
+
+    @Test
+    public void resetForgetsMotion() {
+        move(blank(), paint(blank(), 160, 96, 32, 32));
+        selector.reset();
+        assertFalse(selector.select(WIDTH, HEIGHT, roi));
+    }
+}
@@ -0,0 +1,215 @@
+package com.example.magic_insta;
+
+import android.content.SharedPreferences;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link SettingsStore} over in-memory preferences that notify listeners like the framework's.
+ */
+public class SettingsStoreTest {
+
+    private static class MemoryPreferences implements SharedPreferences {
+        final Map<String, Object> values = new HashMap<>();
+        final List<OnSharedPreferenceChangeListener> listeners = new ArrayList<>();
+        int reads;
+        int applies;
+
+        private void changed(String key) {
+            for (OnSharedPreferenceChangeListener listener : listeners) {
+                listener.onSharedPreferenceChanged(this, key);
+            }
+        }
+
+        @Override
+        public Map<String, ?> getAll() {
+            return new HashMap<>(values);
+        }
+
+        @Override
+        public String getString(String key, String defValue) {
+            reads++;
+            return values.containsKey(key) ? (String) values.get(key) : defValue;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Set<String> getStringSet(String key, Set<String> defValues) {
+            reads++;
+            return values.containsKey(key) ? (Set<String>) values.get(key) : defValues;
+        }
+
+        @Override
+        public int getInt(String key, int defValue) {
+            reads++;
+            return values.containsKey(key) ? (Integer) values.get(key) : defValue;
+        }
+
+        @Override
+        public long getLong(String key, long defValue) {
+            reads++;
+            return values.containsKey(key) ? (Long) values.get(key) : defValue;
+        }
+
+        @Override
+        public float getFloat(String key, float defValue) {
+            reads++;
+            return values.containsKey(key) ? (Float) values.get(key) : defValue;
+        }
+
+        @Override
+        public boolean getBoolean(String key, boolean defValue) {
+            reads++;
+            return values.containsKey(key) ? (Boolean) values.get(key) : defValue;
+        }
+
+        @Override
+        public boolean contains(String key) {
+            return values.containsKey(key);
+        }
+
+        @Override
+        public Editor edit() {
+            return new MemoryEditor();
+        }
+
+        @Override
+        public void registerOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener) {
+            listeners.add(listener);
+        }
+
+        @Override
+        public void unregisterOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener) {
+            listeners.remove(listener);
+        }
+
+        private class MemoryEditor implements Editor {
+            private final Map<String, Object> changes = new HashMap<>();
+            private boolean clear;
+
+            private Editor put(String key, Object value) {
+                changes.put(key, value);
+                return this;
+            }
+
+            @Override
+            public Editor putString(String key, String value) {
+                return put(key, value);
+            }
+
+            @Override
+            public Editor putStringSet(String key, Set<String> values) {
+                return put(key, values);
+            }
+
+            @Override
+            public Editor putInt(String key, int value) {
+                return put(key, value);
+            }
+
+            @Override
+            public Editor putLong(String key, long value) {
+                return put(key, value);
+            }
+
+            @Override
+            public Editor putFloat(String key, float value) {
+                return put(key, value);
+            }
+
+            @Override
+            public Editor putBoolean(String key, boolean value) {
+                return put(key, value);
+            }
+
+            @Override
+            public Editor remove(String key) {
+                return put(key, null);
+            }
+
+            @Override
+            public Editor clear() {
+                clear = true;
+                return this;
+            }
+
+            @Override
+            public boolean commit() {
+                if (clear) {
+                    values.clear();
+                    changed(null);
+                }
+                for (Map.Entry<String, Object> change : changes.entrySet()) {
+                    if (change.getValue() == null) {
+                        values.remove(change.getKey());
+                    } else {
+                        values.put(change.getKey(), change.getValue());
+                    }
+                    changed(change.getKey());
+                }
+                return true;
+            }
+
+            @Override
+            public void apply() {
+                applies++;
+                commit();
+            }
+        }
+    }
+
+    private MemoryPreferences prefs;
+
+    @Before
+    public void createPreferences() {
+        prefs = new MemoryPreferences();
+    }
+
+    @Test
+    public void loadsSavedValuesOnce() {
+        prefs.values.put(SettingsStore.INSTAGRAM_MANAGER_KEY, true);
+        SettingsStore store = new SettingsStore(prefs);
+        int reads = prefs.reads;
+
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(store.isInstagramManagerEnabled());
+            assertFalse(store.isFakeLockscreenEnabled());
+        }
+        assertEquals(reads, prefs.reads);
+    }
+
+    @Test
+    public void settersUpdateCacheAndPersist() {
+        SettingsStore store = new SettingsStore(prefs);
+        store.setFakeLockscreenEnabled(true);
+        assertTrue(store.isFakeLockscreenEnabled());
+        assertEquals(Boolean.TRUE, prefs.values.get(SettingsStore.FAKE_LOCKSCREEN_KEY));
+        assertEquals(1, prefs.applies);
+
+        store.setFakeLockscreenEnabled(false);
+        assertFalse(store.isFakeLockscreenEnabled());
+    }
+
+    @Test
+    public void followsChangesMadeElsewhere() {
+        SettingsStore store = new SettingsStore(prefs);
+        prefs.edit().putBoolean(SettingsStore.INSTAGRAM_MANAGER_KEY, true).commit();
+        assertTrue(store.isInstagramManagerEnabled());
+
+        prefs.edit().putBoolean(SettingsStore.FAKE_LOCKSCREEN_KEY, true).putString("other", "x").commit();
+        assertTrue(store.isFakeLockscreenEnabled());
+
+        prefs.edit().clear().commit();
+        assertFalse(store.isInstagramManagerEnabled());
+        assertFalse(store.isFakeLockscreenEnabled());
+    }
+}